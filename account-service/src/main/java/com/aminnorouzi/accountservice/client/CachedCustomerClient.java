@@ -0,0 +1,119 @@
+package com.aminnorouzi.accountservice.client;
+
+import com.aminnorouzi.accountservice.exception.NotValidAccountCustomerException;
+import com.aminnorouzi.accountservice.model.customer.Customer;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import feign.FeignException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@Slf4j
+@Primary
+@Component
+public class CachedCustomerClient implements CustomerClient {
+
+    private final CustomerClient customerClient;
+    private final Cache<Long, Customer> customers;
+    private final Cache<Long, Boolean> missingCustomers;
+
+    public CachedCustomerClient(@Qualifier("remoteCustomerClient") CustomerClient customerClient,
+                                @Value("${customer.cache.maximum-size:10000}") Long maximumSize,
+                                @Value("${customer.cache.ttl:5m}") Duration ttl,
+                                @Value("${customer.cache.negative-ttl:30s}") Duration negativeTtl) {
+        this.customerClient = customerClient;
+        this.customers = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        this.missingCustomers = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(negativeTtl)
+                .recordStats()
+                .build();
+    }
+
+    // resolved through getCustomerById, so a verified customer is already cached for the title
+    @Override
+    public boolean verifyCustomer(Long id) {
+        try {
+            getCustomerById(id);
+            return true;
+        } catch (NotValidAccountCustomerException exception) {
+            return false;
+        }
+    }
+
+    @Override
+    public Customer getCustomerById(Long id) {
+        if (missingCustomers.getIfPresent(id) != null) {
+            throw new NotValidAccountCustomerException(String.format("Customer: %s not found!", id));
+        }
+
+        try {
+            return customers.get(id, customerClient::getCustomerById);
+        } catch (FeignException.NotFound exception) {
+            missingCustomers.put(id, Boolean.TRUE);
+
+            throw new NotValidAccountCustomerException(String.format("Customer: %s not found!", id));
+        }
+    }
+
+    // only the ids missing from both caches are fetched, with one remote call
+    @Override
+    public List<Customer> getCustomersByIds(List<Long> ids) {
+        List<Long> candidateIds = ids.stream()
+                .filter(id -> missingCustomers.getIfPresent(id) == null)
+                .distinct()
+                .collect(Collectors.toList());
+
+        Map<Long, Customer> found = customers.getAll(candidateIds, this::loadCustomersByIds);
+        candidateIds.stream()
+                .filter(id -> !found.containsKey(id))
+                .forEach(id -> missingCustomers.put(id, Boolean.TRUE));
+
+        return ids.stream()
+                .map(found::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    public void evict(Long id) {
+        customers.invalidate(id);
+        missingCustomers.invalidate(id);
+
+        log.info("Evicted a cached customer: id={}", id);
+    }
+
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        putStats(stats, "customers", customers.stats(), customers.estimatedSize());
+        putStats(stats, "missingCustomers", missingCustomers.stats(), missingCustomers.estimatedSize());
+        return stats;
+    }
+
+    private Map<Long, Customer> loadCustomersByIds(Iterable<? extends Long> ids) {
+        List<Long> missingIds = new ArrayList<>();
+        ids.forEach(missingIds::add);
+
+        return customerClient.getCustomersByIds(missingIds).stream()
+                .collect(Collectors.toMap(Customer::getId, Function.identity()));
+    }
+
+    private void putStats(Map<String, Long> stats, String name, CacheStats cacheStats, long size) {
+        stats.put(name + ".size", size);
+        stats.put(name + ".hits", cacheStats.hitCount());
+        stats.put(name + ".misses", cacheStats.missCount());
+        stats.put(name + ".evictions", cacheStats.evictionCount());
+    }
+}
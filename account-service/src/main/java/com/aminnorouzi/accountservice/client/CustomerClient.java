@@ -4,8 +4,12 @@ import com.aminnorouzi.accountservice.model.customer.Customer;
 import org.springframework.cloud.openfeign.FeignClient;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
 
-@FeignClient(name = "customer-service")
+import java.util.List;
+
+// not primary, callers get the cached client in front of it
+@FeignClient(name = "customer-service", primary = false, qualifiers = "remoteCustomerClient")
 public interface CustomerClient {
 
     @GetMapping("/api/v1/customers/verify/{id}")
@@ -13,4 +17,7 @@ public interface CustomerClient {
 
     @GetMapping("/api/v1/customers/{id}")
     Customer getCustomerById(@PathVariable("id") Long id);
+
+    @GetMapping("/api/v1/customers/batch")
+    List<Customer> getCustomersByIds(@RequestParam("ids") List<Long> ids);
 }
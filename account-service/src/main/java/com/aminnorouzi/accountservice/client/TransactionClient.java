@@ -1,14 +1,26 @@
 package com.aminnorouzi.accountservice.client;
 
+import com.aminnorouzi.accountservice.model.transaction.AccountNet;
 import com.aminnorouzi.accountservice.model.transaction.Transaction;
 import com.aminnorouzi.accountservice.model.transaction.TransactionRequest;
 import org.springframework.cloud.openfeign.FeignClient;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
+
+import java.util.List;
 
 @FeignClient(name = "transaction-service")
 public interface TransactionClient {
 
     @PostMapping("/api/v1/transactions")
     Transaction createTransaction(@RequestBody TransactionRequest request);
+
+    @PostMapping("/api/v1/transactions/batch")
+    List<Long> createTransactions(@RequestBody List<TransactionRequest> requests);
+
+    @GetMapping("/api/v1/transactions/nets")
+    List<AccountNet> getNets(@RequestParam("fromAccountId") Long fromAccountId,
+                             @RequestParam("toAccountId") Long toAccountId);
 }
@@ -2,12 +2,17 @@ package com.aminnorouzi.accountservice.controller;
 
 import com.aminnorouzi.accountservice.model.Account;
 import com.aminnorouzi.accountservice.model.AccountRequest;
+import com.aminnorouzi.accountservice.model.TransferRequest;
+import com.aminnorouzi.accountservice.model.WithdrawalRequest;
 import com.aminnorouzi.accountservice.model.customer.Customer;
 import com.aminnorouzi.accountservice.model.transaction.Transaction;
 import com.aminnorouzi.accountservice.service.AccountService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.math.BigDecimal;
 import java.util.List;
@@ -42,8 +47,16 @@ public class AccountController {
     }
 
     @GetMapping()
-    public List<Account> getAllAccounts() {
-        return accountService.getAllAccounts();
+    public List<Account> getAllAccounts(@RequestParam(value = "after", required = false, defaultValue = "0") Long after,
+                                        @RequestParam(value = "size", required = false, defaultValue = "100") Integer size) {
+        return accountService.getAllAccounts(after, size);
+    }
+
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportAccounts() {
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                .body(accountService::exportAccounts);
     }
 
     @GetMapping("/{customerId}")
@@ -51,11 +64,19 @@ public class AccountController {
         return accountService.getAccountsByCustomerId(customerId);
     }
 
+    @PutMapping("/title/{customerId}")
+    public List<Account> changeCustomerTitle(@PathVariable("customerId") Long customerId,
+                                             @RequestParam("fullName") String fullName) {
+        return accountService.changeCustomerTitle(customerId, fullName);
+    }
+
     @GetMapping("/customers/{accountId}")
     public List<Customer> getCustomersByAccount(@PathVariable("accountId") Long accountId) {
         return accountService.getCustomersByAccountId(accountId);
     }
 
+    // balance changes answer before transaction-service logs them: the id (tracking code) is still empty and the
+    // idempotency key is the stable reference, resolved at transaction-service api/v1/transactions/idempotency-keys
     @PutMapping("/deposit")
     public Transaction deposit(@RequestParam("id") Long id,
                                @RequestParam("amount") BigDecimal amount,
@@ -70,6 +91,12 @@ public class AccountController {
         return accountService.withdraw(id, amount, note);
     }
 
+    @PutMapping("/withdraw/batch")
+    public List<Transaction> withdrawAll(@RequestBody List<WithdrawalRequest> requests,
+                                         @RequestParam(value = "chunkSize", required = false) Integer chunkSize) {
+        return accountService.withdrawAll(requests, chunkSize);
+    }
+
     @PutMapping("/transfer")
     public Transaction transfer(@RequestParam("senderId") Long senderId,
                                 @RequestParam("receiverId") Long receiverId,
@@ -77,4 +104,10 @@ public class AccountController {
                                 @RequestParam(value = "note", required = false, defaultValue = "transfer") String note) {
         return accountService.transfer(senderId, receiverId, amount, note);
     }
+
+    @PutMapping("/transfer/batch")
+    public List<Transaction> transferAll(@RequestBody List<TransferRequest> requests,
+                                         @RequestParam(value = "chunkSize", required = false) Integer chunkSize) {
+        return accountService.transferAll(requests, chunkSize);
+    }
 }
@@ -3,6 +3,11 @@ package com.aminnorouzi.accountservice.controller;
 import com.aminnorouzi.accountservice.exception.IllegalAccountStatusException;
 import com.aminnorouzi.accountservice.exception.NotEnoughAccountBalanceException;
 import com.aminnorouzi.accountservice.exception.NotValidAccountCustomerException;
+import com.aminnorouzi.accountservice.exception.NotValidAmountException;
+import com.aminnorouzi.accountservice.exception.NotValidChunkSizeException;
+import com.aminnorouzi.accountservice.exception.NotValidPageSizeException;
+import com.aminnorouzi.accountservice.exception.ReconciliationNotFoundException;
+import com.aminnorouzi.accountservice.exception.ReconciliationRunningException;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -55,6 +60,51 @@ public class AccountExceptionHandler {
         return response;
     }
 
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    @ExceptionHandler(NotValidChunkSizeException.class)
+    public Map<String, String> handleNotValidChunkSizeException(NotValidChunkSizeException exception) {
+        Map<String, String> response = generateResponse("Bad Request", exception.getMessage());
+
+        log.error(ERROR_MESSAGE, response.get("code"), exception.getMessage());
+        return response;
+    }
+
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    @ExceptionHandler(NotValidPageSizeException.class)
+    public Map<String, String> handleNotValidPageSizeException(NotValidPageSizeException exception) {
+        Map<String, String> response = generateResponse("Bad Request", exception.getMessage());
+
+        log.error(ERROR_MESSAGE, response.get("code"), exception.getMessage());
+        return response;
+    }
+
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    @ExceptionHandler(NotValidAmountException.class)
+    public Map<String, String> handleNotValidAmountException(NotValidAmountException exception) {
+        Map<String, String> response = generateResponse("Bad Request", exception.getMessage());
+
+        log.error(ERROR_MESSAGE, response.get("code"), exception.getMessage());
+        return response;
+    }
+
+    @ResponseStatus(HttpStatus.NOT_FOUND)
+    @ExceptionHandler(ReconciliationNotFoundException.class)
+    public Map<String, String> handleReconciliationNotFoundException(ReconciliationNotFoundException exception) {
+        Map<String, String> response = generateResponse("Not Found", exception.getMessage());
+
+        log.error(ERROR_MESSAGE, response.get("code"), exception.getMessage());
+        return response;
+    }
+
+    @ResponseStatus(HttpStatus.CONFLICT)
+    @ExceptionHandler(ReconciliationRunningException.class)
+    public Map<String, String> handleReconciliationRunningException(ReconciliationRunningException exception) {
+        Map<String, String> response = generateResponse("Conflict", exception.getMessage());
+
+        log.error(ERROR_MESSAGE, response.get("code"), exception.getMessage());
+        return response;
+    }
+
     @ResponseStatus(HttpStatus.INTERNAL_SERVER_ERROR)
     @ExceptionHandler(Exception.class)
     public Map<String, String> handleAllExceptions(Exception exception) {
@@ -0,0 +1,27 @@
+package com.aminnorouzi.accountservice.controller;
+
+import com.aminnorouzi.accountservice.client.CachedCustomerClient;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+@RequiredArgsConstructor
+@RestController
+@RequestMapping("api/v1/accounts/cache/customers")
+public class CustomerCacheController {
+
+    private final CachedCustomerClient cachedCustomerClient;
+
+    @GetMapping
+    public Map<String, Long> getCustomerCacheStats() {
+        return cachedCustomerClient.getStats();
+    }
+
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    @DeleteMapping("/{id}")
+    public void evictCustomer(@PathVariable("id") Long id) {
+        cachedCustomerClient.evict(id);
+    }
+}
@@ -0,0 +1,42 @@
+package com.aminnorouzi.accountservice.controller;
+
+import com.aminnorouzi.accountservice.model.ReconciliationMismatch;
+import com.aminnorouzi.accountservice.model.ReconciliationRun;
+import com.aminnorouzi.accountservice.service.ReconciliationService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RequiredArgsConstructor
+@RestController
+@RequestMapping("api/v1/accounts/reconciliations")
+public class ReconciliationController {
+
+    private final ReconciliationService reconciliationService;
+
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    @PostMapping
+    public ReconciliationRun startReconciliation() {
+        return reconciliationService.startReconciliation();
+    }
+
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    @PostMapping("/{id}/resume")
+    public ReconciliationRun resumeReconciliation(@PathVariable("id") Long id) {
+        return reconciliationService.resumeReconciliation(id);
+    }
+
+    @GetMapping("/{id}")
+    public ReconciliationRun getReconciliationById(@PathVariable("id") Long id) {
+        return reconciliationService.getReconciliationById(id);
+    }
+
+    @GetMapping("/{id}/mismatches")
+    public List<ReconciliationMismatch> getMismatches(@PathVariable("id") Long id,
+                                                      @RequestParam(value = "after", required = false, defaultValue = "0") Long after,
+                                                      @RequestParam(value = "size", required = false, defaultValue = "100") Integer size) {
+        return reconciliationService.getMismatches(id, after, size);
+    }
+}
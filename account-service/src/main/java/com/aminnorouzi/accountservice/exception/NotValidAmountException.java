@@ -0,0 +1,12 @@
+package com.aminnorouzi.accountservice.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class NotValidAmountException extends RuntimeException {
+
+    public NotValidAmountException(String message) {
+        super(message);
+    }
+}
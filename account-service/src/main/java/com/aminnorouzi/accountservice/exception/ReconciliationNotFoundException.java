@@ -0,0 +1,12 @@
+package com.aminnorouzi.accountservice.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.NOT_FOUND)
+public class ReconciliationNotFoundException extends RuntimeException {
+
+    public ReconciliationNotFoundException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,12 @@
+package com.aminnorouzi.accountservice.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.CONFLICT)
+public class ReconciliationRunningException extends RuntimeException {
+
+    public ReconciliationRunningException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,250 @@
+package com.aminnorouzi.accountservice.ledger;
+
+import com.aminnorouzi.accountservice.exception.AccountNotFoundException;
+import com.aminnorouzi.accountservice.exception.IllegalAccountStatusException;
+import com.aminnorouzi.accountservice.exception.NotEnoughAccountBalanceException;
+import com.aminnorouzi.accountservice.model.Status;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.LongPredicate;
+
+/**
+ * In memory account balances (in minor units) with every movement appended to a {@link WriteAheadLog}.
+ * <p>
+ * Checks and updates run under one monitor, so they only cost a few array accesses and an in memory append. The
+ * caller then waits for the fsync of its records outside the monitor, letting other movements go ahead meanwhile.
+ * Balance reads take no lock at all.
+ * <p>
+ * A movement stays pending until the database transaction around it is settled by {@link #commit} or
+ * {@link #rollback}. Only movements known to be committed are replayed on recovery, and a snapshot leaves pending
+ * movements out, so a crash before the database commit never brings back a movement nobody committed.
+ */
+public class Ledger implements Closeable {
+
+    public static final long OUTSIDE = 0L; // debits and credits from outside the ledger
+
+    private final LongBalanceMap balances;
+    private final Map<Long, Movement> pending = new TreeMap<>(); // by lsn
+    private WriteAheadLog wal;
+
+    public Ledger(int expectedAccounts) {
+        this.balances = new LongBalanceMap(expectedAccounts);
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Snapshot {
+
+        private final long lsn;
+        private final long[] pendingLsns; // left out of the balances, ascending
+        private final long[] ids;
+        private final long[] balances;
+
+        // a recovery from this snapshot replays the log after here, pending movements are still in it
+        public long getCheckpointLsn() {
+            return pendingLsns.length == 0 ? lsn : pendingLsns[0] - 1;
+        }
+    }
+
+    @AllArgsConstructor
+    private static class Movement {
+
+        private final long from;
+        private final long to;
+        private final long amount;
+    }
+
+    // replays the committed movements of the log over the accounts opened from the last persisted snapshot
+    public void recover(Path directory, int segmentSize, long checkpointLsn, LongPredicate committed) throws IOException {
+        wal = WriteAheadLog.open(directory, segmentSize, checkpointLsn, (lsn, from, to, amount) -> {
+            if (committed.test(lsn)) {
+                move(from, to, amount);
+            }
+        });
+    }
+
+    public synchronized void openAccount(long id, long balance, Status status) {
+        balances.put(id, balance, (byte) status.ordinal());
+    }
+
+    public synchronized void changeStatus(long id, Status status) {
+        balances.setStatusAt(slotOf(id), (byte) status.ordinal());
+    }
+
+    // reads without the monitor, so balance reads never queue behind movements or hold them up
+    public long getBalance(long id) {
+        long balance = balances.balanceOf(id);
+        if (balance == LongBalanceMap.NO_BALANCE) {
+            throw new AccountNotFoundException(String.format("Account: %s not found!", id));
+        }
+
+        return balance;
+    }
+
+    // returns the lsn of the pending movement, it is not durable before awaitDurable(lsn) returns
+    public synchronized long deposit(long id, long amount, Collection<Status> statuses) {
+        validateForDeposit(slotOf(id), id, statuses);
+        return moveAndLog(OUTSIDE, id, amount);
+    }
+
+    public synchronized long withdraw(long id, long amount, Collection<Status> statuses) {
+        validateForWithdrawal(slotOf(id), id, amount, statuses);
+        return moveAndLog(id, OUTSIDE, amount);
+    }
+
+    // both sides are checked before anything moves and the movement is a single record, so it can not half apply
+    public synchronized long transfer(long senderId, long receiverId, long amount,
+                                      Collection<Status> senderStatuses, Collection<Status> receiverStatuses) {
+        validateForWithdrawal(slotOf(senderId), senderId, amount, senderStatuses);
+        validateForDeposit(slotOf(receiverId), receiverId, receiverStatuses);
+        return moveAndLog(senderId, receiverId, amount);
+    }
+
+    // waits for every record up to lsn, so a caller with many movements waits once for the last of them
+    public void awaitDurable(long lsn) {
+        wal.awaitDurable(lsn);
+    }
+
+    public synchronized void commit(long lsn) {
+        pending.remove(lsn);
+    }
+
+    // undoes a pending movement without any check, its record is never replayed since it was not committed
+    public synchronized void rollback(long lsn) {
+        Movement movement = pending.remove(lsn);
+        if (movement != null) {
+            move(movement.to, movement.from, movement.amount);
+        }
+    }
+
+    /**
+     * Cuts a consistent snapshot of every balance changed since the last one. The log moves to a new segment first,
+     * so the returned lsn covers exactly the closed segments. Pending movements are taken out of the balances, their
+     * accounts stay dirty until a later snapshot sees them settled.
+     */
+    public synchronized Snapshot snapshot() {
+        long lsn = wal.rotate();
+
+        long[] pendingLsns = new long[pending.size()];
+        Map<Long, Long> uncommitted = new HashMap<>();
+        int position = 0;
+        for (Map.Entry<Long, Movement> entry : pending.entrySet()) {
+            Movement movement = entry.getValue();
+            pendingLsns[position++] = entry.getKey();
+            if (movement.from != OUTSIDE) {
+                uncommitted.merge(movement.from, -movement.amount, Long::sum);
+            }
+            if (movement.to != OUTSIDE) {
+                uncommitted.merge(movement.to, movement.amount, Long::sum);
+            }
+        }
+
+        int count = 0;
+        for (int slot = 0; slot < balances.capacity(); slot++) {
+            if (balances.isDirtyAt(slot)) {
+                count++;
+            }
+        }
+
+        long[] ids = new long[count];
+        long[] values = new long[count];
+        int index = 0;
+        for (int slot = 0; slot < balances.capacity(); slot++) {
+            if (balances.isDirtyAt(slot)) {
+                long id = balances.keyAt(slot);
+                ids[index] = id;
+                values[index++] = balances.balanceAt(slot) - uncommitted.getOrDefault(id, 0L);
+                balances.clearDirtyAt(slot);
+            }
+        }
+        uncommitted.keySet().forEach(id -> balances.markDirtyAt(balances.slotOf(id)));
+
+        return new Snapshot(lsn, pendingLsns, ids, values);
+    }
+
+    // a snapshot that could not be persisted is written again with the next one
+    public synchronized void restore(Snapshot snapshot) {
+        for (long id : snapshot.getIds()) {
+            balances.markDirtyAt(balances.slotOf(id));
+        }
+    }
+
+    public void truncate(long checkpointLsn) {
+        wal.truncate(checkpointLsn);
+    }
+
+    public synchronized int size() {
+        return balances.size();
+    }
+
+    @Override
+    public void close() {
+        if (wal != null) {
+            wal.close();
+        }
+    }
+
+    // logged first, a closed log then leaves the balances untouched
+    private long moveAndLog(long from, long to, long amount) {
+        long lsn = wal.append(from, to, amount);
+        move(from, to, amount);
+        pending.put(lsn, new Movement(from, to, amount));
+        return lsn;
+    }
+
+    private void move(long from, long to, long amount) {
+        if (from != OUTSIDE) {
+            int slot = slotOf(from);
+            balances.setBalanceAt(slot, Math.subtractExact(balances.balanceAt(slot), amount));
+        }
+
+        if (to != OUTSIDE) {
+            int slot = slotOf(to);
+            balances.setBalanceAt(slot, Math.addExact(balances.balanceAt(slot), amount));
+        }
+    }
+
+    private void validateForDeposit(int slot, long id, Collection<Status> statuses) {
+        if (!isAllowed(slot, statuses)) {
+            throw new IllegalAccountStatusException(String.format("Account: %s is not available for deposit!", id));
+        }
+    }
+
+    private void validateForWithdrawal(int slot, long id, long amount, Collection<Status> statuses) {
+        if (!isAllowed(slot, statuses)) {
+            throw new IllegalAccountStatusException(String.format("Account: %s is not available for withdrawal!", id));
+        }
+
+        if (balances.balanceAt(slot) < amount) {
+            throw new NotEnoughAccountBalanceException(String.format("Account: %s does not have enough balance!", id));
+        }
+    }
+
+    private boolean isAllowed(int slot, Collection<Status> statuses) {
+        byte status = balances.statusAt(slot);
+        for (Status allowed : statuses) {
+            if (allowed.ordinal() == status) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private int slotOf(long id) {
+        int slot = balances.slotOf(id);
+        if (slot == LongBalanceMap.MISSING) {
+            throw new AccountNotFoundException(String.format("Account: %s not found!", id));
+        }
+
+        return slot;
+    }
+}
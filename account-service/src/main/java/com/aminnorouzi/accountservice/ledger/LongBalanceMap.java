@@ -0,0 +1,166 @@
+package com.aminnorouzi.accountservice.ledger;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Open addressing map from account id to balance (in minor units) and status, backed by primitive arrays.
+ * <p>
+ * Writes are not thread safe, the owning {@link Ledger} guards them. {@link #balanceOf} alone may run without that
+ * guard: keys and balances are written with release and read with acquire semantics, and a resize publishes a fully
+ * copied table, so a reader sees a whole balance, never one older than the last write completed before it started.
+ */
+class LongBalanceMap {
+
+    static final int MISSING = -1;
+    static final long NO_BALANCE = Long.MIN_VALUE;
+
+    private static final long FREE = 0L; // account ids start at 1
+    private static final VarHandle LONGS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private volatile Table table;
+    private int size;
+
+    LongBalanceMap(int expectedSize) {
+        table = new Table(Integer.highestOneBit(Math.max(expectedSize, 8)) << 2);
+    }
+
+    int slotOf(long key) {
+        return table.slotOf(key);
+    }
+
+    // lock free, see the class comment
+    long balanceOf(long key) {
+        Table current = table;
+        int slot = current.slotOf(key);
+        return slot == MISSING ? NO_BALANCE : (long) LONGS.getAcquire(current.balances, slot);
+    }
+
+    int put(long key, long balance, byte status) {
+        int slot = slotOf(key);
+        if (slot != MISSING) {
+            LONGS.setRelease(table.balances, slot, balance);
+            table.statuses[slot] = status;
+            return slot;
+        }
+
+        if ((size + 1) * 2 > capacity()) {
+            resize();
+        }
+
+        // the key goes in last, a reader finding it sees the balance too
+        Table current = table;
+        slot = current.freeSlotOf(key);
+        LONGS.setRelease(current.balances, slot, balance);
+        current.statuses[slot] = status;
+        LONGS.setRelease(current.keys, slot, key);
+        size++;
+        return slot;
+    }
+
+    long balanceAt(int slot) {
+        return table.balances[slot];
+    }
+
+    byte statusAt(int slot) {
+        return table.statuses[slot];
+    }
+
+    long keyAt(int slot) {
+        return table.keys[slot];
+    }
+
+    void setBalanceAt(int slot, long balance) {
+        Table current = table;
+        LONGS.setRelease(current.balances, slot, balance);
+        current.dirty[slot] = true;
+    }
+
+    void setStatusAt(int slot, byte status) {
+        table.statuses[slot] = status;
+    }
+
+    boolean isDirtyAt(int slot) {
+        return table.dirty[slot];
+    }
+
+    void markDirtyAt(int slot) {
+        table.dirty[slot] = true;
+    }
+
+    void clearDirtyAt(int slot) {
+        table.dirty[slot] = false;
+    }
+
+    int capacity() {
+        return table.keys.length;
+    }
+
+    int size() {
+        return size;
+    }
+
+    // readers keep using the old table until the copy is published
+    private void resize() {
+        Table old = table;
+        Table resized = new Table(old.keys.length << 1);
+        for (int i = 0; i < old.keys.length; i++) {
+            if (old.keys[i] != FREE) {
+                int slot = resized.freeSlotOf(old.keys[i]);
+                resized.keys[slot] = old.keys[i];
+                resized.balances[slot] = old.balances[i];
+                resized.statuses[slot] = old.statuses[i];
+                resized.dirty[slot] = old.dirty[i];
+            }
+        }
+
+        table = resized;
+    }
+
+    // murmur3 finalizer, sequential ids would otherwise cluster in neighbouring slots
+    private static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+    private static class Table {
+
+        private final long[] keys;
+        private final long[] balances;
+        private final byte[] statuses;
+        private final boolean[] dirty;
+        private final int mask;
+
+        private Table(int capacity) {
+            keys = new long[capacity];
+            balances = new long[capacity];
+            statuses = new byte[capacity];
+            dirty = new boolean[capacity];
+            mask = capacity - 1;
+        }
+
+        private int slotOf(long key) {
+            int slot = hash(key) & mask;
+            long found;
+            while ((found = (long) LONGS.getAcquire(keys, slot)) != FREE) {
+                if (found == key) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+
+            return MISSING;
+        }
+
+        private int freeSlotOf(long key) {
+            int slot = hash(key) & mask;
+            while (keys[slot] != FREE) {
+                slot = (slot + 1) & mask;
+            }
+
+            return slot;
+        }
+    }
+}
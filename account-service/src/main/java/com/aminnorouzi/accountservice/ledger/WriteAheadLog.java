@@ -0,0 +1,317 @@
+package com.aminnorouzi.accountservice.ledger;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append only log of balance movements, written to memory mapped segment files.
+ * <p>
+ * A record is {@code lsn, from, to, amount, crc}: {@code from} is debited and {@code to} is credited, 0 stands for
+ * outside the ledger. Appends only copy into the mapping, a single flusher thread forces everything appended since its
+ * last round with one fsync, so concurrent writers share the cost of a disk flush (group commit).
+ */
+@Slf4j
+class WriteAheadLog implements Closeable {
+
+    static final int RECORD_SIZE = 40;
+
+    private static final int CHECKED_SIZE = 32;
+    private static final String PREFIX = "wal-";
+    private static final String SUFFIX = ".log";
+
+    interface RecordHandler {
+
+        void handle(long lsn, long from, long to, long amount);
+    }
+
+    private final Path directory;
+    private final int segmentSize;
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    private final CRC32C crc = new CRC32C();
+    private final Object durableMonitor = new Object();
+    private final Thread flusher;
+
+    private Segment current;
+    private long nextLsn;
+    private long appendedLsn;
+    private long durableLsn;
+    private boolean open = true;
+    private boolean flushing = true;
+
+    private WriteAheadLog(Path directory, int segmentSize, long lastLsn) {
+        this.directory = directory;
+        this.segmentSize = segmentSize - segmentSize % RECORD_SIZE;
+        this.nextLsn = lastLsn + 1;
+        this.appendedLsn = lastLsn;
+        this.durableLsn = lastLsn;
+        this.flusher = new Thread(this::flushLoop, "ledger-wal-flusher");
+        this.flusher.setDaemon(true);
+    }
+
+    /**
+     * Replays every intact record newer than {@code checkpointLsn}, then starts a fresh segment for new appends.
+     * Reading a segment stops at its first empty or torn record.
+     */
+    static WriteAheadLog open(Path directory, int segmentSize, long checkpointLsn, RecordHandler replay) throws IOException {
+        Files.createDirectories(directory);
+
+        List<Path> paths;
+        try (Stream<Path> files = Files.list(directory)) {
+            paths = files.filter(path -> path.getFileName().toString().startsWith(PREFIX))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+
+        CRC32C crc = new CRC32C();
+        long lastLsn = checkpointLsn;
+        long replayed = 0;
+        Deque<Segment> existing = new ArrayDeque<>();
+        for (Path path : paths) {
+            int records = 0;
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                for (int position = 0; position + RECORD_SIZE <= buffer.limit(); position += RECORD_SIZE) {
+                    long lsn = buffer.getLong(position);
+                    if (lsn == 0 || checksum(crc, buffer, position) != buffer.getInt(position + CHECKED_SIZE)) {
+                        break;
+                    }
+
+                    records++;
+                    if (lsn > lastLsn) {
+                        replay.handle(lsn, buffer.getLong(position + 8), buffer.getLong(position + 16),
+                                buffer.getLong(position + 24));
+                        lastLsn = lsn;
+                        replayed++;
+                    }
+                }
+            }
+
+            // a segment created right before a crash holds nothing, its name would clash with the next segment
+            if (records == 0) {
+                Files.delete(path);
+            } else {
+                existing.add(new Segment(path, firstLsnOf(path), null, null));
+            }
+        }
+
+        WriteAheadLog wal = new WriteAheadLog(directory, segmentSize, lastLsn);
+        wal.segments.addAll(existing);
+        wal.current = wal.createSegment();
+        wal.flusher.start();
+
+        log.info("Opened the ledger log: directory={}, segments={}, replayed={}, lastLsn={}",
+                directory, existing.size(), replayed, lastLsn);
+        return wal;
+    }
+
+    synchronized long append(long from, long to, long amount) {
+        if (!open) {
+            throw new IllegalStateException("Ledger log is closed!");
+        }
+
+        if (current.buffer.position() + RECORD_SIZE > segmentSize) {
+            rotate();
+        }
+
+        long lsn = nextLsn++;
+        MappedByteBuffer buffer = current.buffer;
+        int position = buffer.position();
+        buffer.putLong(position, lsn);
+        buffer.putLong(position + 8, from);
+        buffer.putLong(position + 16, to);
+        buffer.putLong(position + 24, amount);
+        buffer.putInt(position + CHECKED_SIZE, checksum(crc, buffer, position));
+        buffer.position(position + RECORD_SIZE);
+
+        appendedLsn = lsn;
+        notifyAll();
+        return lsn;
+    }
+
+    void awaitDurable(long lsn) {
+        synchronized (durableMonitor) {
+            while (durableLsn < lsn) {
+                if (!flushing) {
+                    throw new IllegalStateException("Ledger log is closed!");
+                }
+
+                try {
+                    durableMonitor.wait();
+                } catch (InterruptedException exception) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for the ledger log!", exception);
+                }
+            }
+        }
+    }
+
+    /**
+     * Moves appends to a new segment and returns the last lsn of the closed ones, which is where a snapshot cut goes.
+     */
+    synchronized long rotate() {
+        if (current.buffer.position() > 0) {
+            current.buffer.force();
+            current.flushedPosition = current.buffer.position();
+            closeQuietly(current);
+
+            current = createSegment();
+        }
+
+        return nextLsn - 1;
+    }
+
+    // drops every closed segment whose records are all covered by a committed snapshot
+    synchronized void truncate(long checkpointLsn) {
+        while (segments.size() > 1) {
+            Segment oldest = segments.removeFirst();
+            if (segments.peekFirst().firstLsn - 1 > checkpointLsn) {
+                segments.addFirst(oldest);
+                return;
+            }
+
+            try {
+                Files.deleteIfExists(oldest.path);
+            } catch (IOException exception) {
+                log.warn("Could not delete a ledger log segment: {}, {}", oldest.path, exception.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (!open) {
+                return;
+            }
+            open = false;
+            notifyAll();
+        }
+
+        try {
+            flusher.join();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (this) {
+            current.buffer.force();
+            closeQuietly(current);
+        }
+    }
+
+    private void flushLoop() {
+        try {
+            while (flushOnce()) {
+                // keeps forcing until the log is closed and fully durable
+            }
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        } finally {
+            synchronized (durableMonitor) {
+                flushing = false;
+                durableMonitor.notifyAll();
+            }
+        }
+    }
+
+    private boolean flushOnce() throws InterruptedException {
+        Segment segment;
+        int from;
+        int to;
+        long target;
+        synchronized (this) {
+            while (open && appendedLsn == durableLsn()) {
+                wait();
+            }
+
+            if (!open && appendedLsn == durableLsn()) {
+                return false;
+            }
+
+            segment = current;
+            from = segment.flushedPosition;
+            to = segment.buffer.position();
+            segment.flushedPosition = to;
+            target = appendedLsn;
+        }
+
+        // records of a segment closed by rotate() were forced there, only the current one is left
+        if (to > from) {
+            segment.buffer.force(from, to - from);
+        }
+
+        synchronized (durableMonitor) {
+            durableLsn = target;
+            durableMonitor.notifyAll();
+        }
+        return true;
+    }
+
+    private long durableLsn() {
+        synchronized (durableMonitor) {
+            return durableLsn;
+        }
+    }
+
+    private Segment createSegment() {
+        Path path = directory.resolve(String.format("%s%020d%s", PREFIX, nextLsn, SUFFIX));
+        try {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            Segment segment = new Segment(path, nextLsn, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize));
+            segments.addLast(segment);
+            return segment;
+        } catch (IOException exception) {
+            throw new IllegalStateException(String.format("Could not create a ledger log segment: %s", path), exception);
+        }
+    }
+
+    private static int checksum(CRC32C crc, ByteBuffer buffer, int position) {
+        crc.reset();
+        crc.update(buffer.slice(position, CHECKED_SIZE));
+        return (int) crc.getValue();
+    }
+
+    private static long firstLsnOf(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    private static void closeQuietly(Segment segment) {
+        try {
+            segment.channel.close();
+        } catch (IOException exception) {
+            log.warn("Could not close a ledger log segment: {}, {}", segment.path, exception.getMessage());
+        }
+    }
+
+    private static class Segment {
+
+        private final Path path;
+        private final long firstLsn;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private int flushedPosition;
+
+        private Segment(Path path, long firstLsn, FileChannel channel, MappedByteBuffer buffer) {
+            this.path = path;
+            this.firstLsn = firstLsn;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+    }
+}
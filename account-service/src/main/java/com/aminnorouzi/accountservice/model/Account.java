@@ -1,6 +1,8 @@
 package com.aminnorouzi.accountservice.model;
 
 import lombok.*;
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.DynamicUpdate;
 
 import javax.persistence.*;
 import java.math.BigDecimal;
@@ -14,17 +16,23 @@ import java.util.List;
 @EqualsAndHashCode
 @AllArgsConstructor
 @NoArgsConstructor
+@DynamicUpdate // an entity save only writes the columns it changed, balances are moved by dedicated statements
 @Entity
-@Table(name = "account")
+@Table(name = "account", indexes = @Index(name = "idx_account_title_customer_id", columnList = "titleCustomerId"))
 public class Account {
 
+    public static final int CUSTOMER_IDS_BATCH_SIZE = 100;
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     @Column(name = "id", nullable = false)
     private Long id; // account/deposit number
 
     private String title;
+    private Long titleCustomerId; // whose name the title carries, the customer ids bag keeps no order
     private BigDecimal balance;
+    private BigDecimal openingBalance; // no transaction is logged for it, reconciliation starts from it
+    private Long balanceVersion; // bumped by every balance change, orders cached balances
 
     @Enumerated(EnumType.STRING)
     private Status status;
@@ -38,8 +46,11 @@ public class Account {
     private LocalDate createdAt;
     private LocalDate closedAt;
 
+    // loaded with one IN query per 100 accounts instead of one query per account
+    @BatchSize(size = CUSTOMER_IDS_BATCH_SIZE)
     @ElementCollection(fetch = FetchType.EAGER)
-    @CollectionTable(name = "customer_ids", joinColumns = @JoinColumn(name = "account_id"))
+    @CollectionTable(name = "customer_ids", joinColumns = @JoinColumn(name = "account_id"),
+            indexes = @Index(name = "idx_customer_ids_customer_id", columnList = "customer_id"))
     @Column(name = "customer_id")
     private List<Long> customerIds;
 }
@@ -0,0 +1,18 @@
+package com.aminnorouzi.accountservice.model;
+
+import lombok.*;
+
+import java.math.BigDecimal;
+
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@ToString
+public class AccountBalance {
+
+    private Long id;
+    private BigDecimal balance;
+    private Long version;
+}
@@ -0,0 +1,18 @@
+package com.aminnorouzi.accountservice.model;
+
+import lombok.*;
+
+import java.math.BigDecimal;
+
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@ToString
+public class AccountOpeningBalance {
+
+    private Long id;
+    private BigDecimal openingBalance;
+    private BigDecimal balance;
+}
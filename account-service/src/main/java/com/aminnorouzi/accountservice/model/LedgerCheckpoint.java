@@ -0,0 +1,25 @@
+package com.aminnorouzi.accountservice.model;
+
+import lombok.*;
+
+import javax.persistence.*;
+
+@Builder
+@Getter
+@Setter
+@ToString
+@EqualsAndHashCode
+@AllArgsConstructor
+@NoArgsConstructor
+@Entity
+@Table(name = "ledger_checkpoint")
+public class LedgerCheckpoint {
+
+    public static final Integer ID = 1;
+
+    @Id
+    @Column(name = "id", nullable = false)
+    private Integer id; // single row
+
+    private Long lsn; // ledger log records up to here are not needed to recover the account balances
+}
@@ -0,0 +1,20 @@
+package com.aminnorouzi.accountservice.model;
+
+import lombok.*;
+
+import javax.persistence.*;
+
+@Getter
+@Setter
+@ToString
+@EqualsAndHashCode
+@AllArgsConstructor
+@NoArgsConstructor
+@Entity
+@Table(name = "ledger_commit")
+public class LedgerCommit {
+
+    @Id
+    @Column(name = "lsn", nullable = false)
+    private Long lsn; // ledger log record of a movement whose database transaction committed
+}
@@ -0,0 +1,31 @@
+package com.aminnorouzi.accountservice.model;
+
+import lombok.*;
+
+import javax.persistence.*;
+import java.math.BigDecimal;
+
+@Builder
+@Getter
+@Setter
+@ToString
+@EqualsAndHashCode
+@AllArgsConstructor
+@NoArgsConstructor
+@Entity
+@Table(name = "reconciliation_mismatch", indexes = @Index(name = "idx_reconciliation_mismatch_run_id_account_id",
+        columnList = "runId, accountId"))
+public class ReconciliationMismatch {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "id", nullable = false)
+    private Long id;
+
+    private Long runId;
+    private Long accountId;
+    private BigDecimal openingBalance;
+    private BigDecimal net; // of the successful transactions in transaction-service
+    private BigDecimal balance;
+    private BigDecimal difference; // balance - (opening balance + net)
+}
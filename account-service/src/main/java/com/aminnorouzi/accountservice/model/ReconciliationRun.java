@@ -0,0 +1,39 @@
+package com.aminnorouzi.accountservice.model;
+
+import lombok.*;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+@Builder
+@Getter
+@Setter
+@ToString
+@EqualsAndHashCode
+@AllArgsConstructor
+@NoArgsConstructor
+@Entity
+@Table(name = "reconciliation_run")
+public class ReconciliationRun {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "id", nullable = false)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    private ReconciliationStatus status;
+
+    private Integer rangeSize;
+    private Long lastAccountId; // highest account id when the run started
+    private Long checkpoint; // every account below it is reconciled, a resumed run starts from it
+
+    private Long accounts;
+    private Long skipped; // accounts with transactions still in the outbox
+    private Long withoutOpeningBalance; // accounts opened before opening balances were kept, they are not checked
+    private Long mismatches;
+
+    private LocalDateTime startedAt;
+    private LocalDateTime updatedAt;
+    private LocalDateTime finishedAt;
+}
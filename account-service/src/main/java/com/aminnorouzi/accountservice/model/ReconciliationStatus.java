@@ -0,0 +1,8 @@
+package com.aminnorouzi.accountservice.model;
+
+public enum ReconciliationStatus {
+
+    RUNNING,
+    COMPLETED,
+    FAILED
+}
@@ -0,0 +1,47 @@
+package com.aminnorouzi.accountservice.model;
+
+import com.aminnorouzi.accountservice.model.transaction.Status;
+import com.aminnorouzi.accountservice.model.transaction.Type;
+import lombok.*;
+
+import javax.persistence.*;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+@Builder
+@Getter
+@Setter
+@ToString
+@EqualsAndHashCode
+@AllArgsConstructor
+@NoArgsConstructor
+@Entity
+@Table(name = "transaction_outbox", indexes = @Index(name = "idx_transaction_outbox_lease_owner", columnList = "leaseOwner"))
+public class TransactionOutbox {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "id", nullable = false)
+    private Long id; // relay order, an auto increment that may be reused once the table was emptied
+
+    @Column(unique = true, length = 64)
+    private String idempotencyKey; // unique for good, sent with every relay of the row
+
+    private Long senderId;
+    private Long receiverId;
+    private BigDecimal amount;
+    private String note;
+
+    @Enumerated(EnumType.STRING)
+    private Type type;
+
+    @Enumerated(EnumType.STRING)
+    private Status status;
+
+    private Integer attempts;
+    private LocalDate createdAt;
+
+    private String leaseOwner; // relay run holding the row, no other run sends it until the lease expires
+    private LocalDateTime leasedUntil;
+}
@@ -0,0 +1,48 @@
+package com.aminnorouzi.accountservice.model;
+
+import com.aminnorouzi.accountservice.model.transaction.Status;
+import com.aminnorouzi.accountservice.model.transaction.Type;
+import lombok.*;
+
+import javax.persistence.*;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+@Builder
+@Getter
+@Setter
+@ToString
+@EqualsAndHashCode
+@AllArgsConstructor
+@NoArgsConstructor
+@Entity
+@Table(name = "transaction_outbox_dead_letter")
+public class TransactionOutboxDeadLetter {
+
+    @Id
+    @Column(name = "id", nullable = false)
+    private Long id; // of the outbox row
+
+    @Column(length = 64)
+    private String idempotencyKey; // of the outbox row, a replay sends it again
+
+    private Long senderId;
+    private Long receiverId;
+    private BigDecimal amount;
+    private String note;
+
+    @Enumerated(EnumType.STRING)
+    private Type type;
+
+    @Enumerated(EnumType.STRING)
+    private Status status;
+
+    private Integer attempts;
+
+    @Column(length = 1000)
+    private String error; // of the last attempt
+
+    private LocalDate createdAt;
+    private LocalDateTime parkedAt;
+}
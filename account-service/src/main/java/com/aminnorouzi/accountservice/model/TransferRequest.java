@@ -0,0 +1,19 @@
+package com.aminnorouzi.accountservice.model;
+
+import lombok.*;
+
+import java.math.BigDecimal;
+
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@ToString
+public class TransferRequest {
+
+    private Long senderId;
+    private Long receiverId;
+    private BigDecimal amount;
+    private String note;
+}
@@ -0,0 +1,30 @@
+package com.aminnorouzi.accountservice.model;
+
+import lombok.*;
+
+import javax.persistence.*;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+// one row per successful batch withdrawal with an idempotency key, written in the commit of its balance change
+@Builder
+@Getter
+@Setter
+@ToString
+@EqualsAndHashCode
+@AllArgsConstructor
+@NoArgsConstructor
+@Entity
+@Table(name = "withdrawal_key", indexes = @Index(name = "idx_withdrawal_key_created_at", columnList = "createdAt"))
+public class WithdrawalKey {
+
+    @Id
+    @Column(name = "idempotency_key", nullable = false, length = 64)
+    private String idempotencyKey;
+
+    private Long accountId;
+    private BigDecimal amount;
+    private String note;
+    private LocalDate createdAt;
+    private String reference; // idempotency key of the logged transaction, returned again for a replay
+}
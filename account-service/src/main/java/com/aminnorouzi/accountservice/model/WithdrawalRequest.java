@@ -0,0 +1,19 @@
+package com.aminnorouzi.accountservice.model;
+
+import lombok.*;
+
+import java.math.BigDecimal;
+
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@ToString
+public class WithdrawalRequest {
+
+    private Long id;
+    private BigDecimal amount;
+    private String note;
+    private String idempotencyKey; // optional, a repeated key is answered without withdrawing again
+}
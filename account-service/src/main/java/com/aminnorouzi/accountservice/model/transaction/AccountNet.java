@@ -0,0 +1,17 @@
+package com.aminnorouzi.accountservice.model.transaction;
+
+import lombok.*;
+
+import java.math.BigDecimal;
+
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@ToString
+public class AccountNet {
+
+    private Long accountId;
+    private BigDecimal net;
+}
@@ -1,5 +1,6 @@
 package com.aminnorouzi.accountservice.model.transaction;
 
+import com.fasterxml.jackson.annotation.JsonFormat;
 import lombok.*;
 
 import java.math.BigDecimal;
@@ -13,6 +14,7 @@ import java.time.LocalDate;
 @ToString
 public class Transaction {
 
+    @JsonFormat(shape = JsonFormat.Shape.STRING) // tracking codes exceed 2^53, a javascript number would round them
     private Long id;
     private Long senderId;
     private Long receiverId;
@@ -21,4 +23,5 @@ public class Transaction {
     private Type type;
     private Status status;
     private LocalDate createdAt;
+    private String idempotencyKey; // stable reference, the id is only assigned by transaction-service once relayed
 }
\ No newline at end of file
@@ -18,4 +18,10 @@ public class TransactionRequest {
     private String note;
     private Type type;
     private Status status;
+    private String idempotencyKey;
+
+    public TransactionRequest(Long senderId, Long receiverId, BigDecimal amount, String note, Type type,
+                              Status status) {
+        this(senderId, receiverId, amount, note, type, status, null);
+    }
 }
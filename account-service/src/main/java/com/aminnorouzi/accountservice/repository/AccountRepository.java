@@ -1,19 +1,80 @@
 package com.aminnorouzi.accountservice.repository;
 
 import com.aminnorouzi.accountservice.model.Account;
-import org.springframework.data.jpa.repository.JpaRepository;
-import org.springframework.data.jpa.repository.Query;
+import com.aminnorouzi.accountservice.model.AccountBalance;
+import com.aminnorouzi.accountservice.model.AccountOpeningBalance;
+import com.aminnorouzi.accountservice.model.Status;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.*;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.LockModeType;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface AccountRepository extends JpaRepository<Account, Long> {
 
     // SELECT a FROM Account AS a JOIN FETCH a.customerIds ci WHERE ci=?1
     // run above query to get only requester id in customer ids list
-    @Query("SELECT a FROM Account AS a INNER JOIN a.customerIds ci WHERE ci=?1")
+    @Query("SELECT DISTINCT a FROM Account AS a INNER JOIN a.customerIds ci WHERE ci=?1")
     List<Account> findByCustomerId(Long customerId);
 
+    List<Account> findByTitleCustomerId(Long titleCustomerId);
+
+    /**
+     * Gives the accounts created before the title owner was stored the first of their customer ids. The rows of an
+     * account are read through its key index in insertion order, which is the order the customers were requested in.
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE account SET title_customer_id = (SELECT c.customer_id FROM customer_ids AS c " +
+            "WHERE c.account_id = account.id LIMIT 1) WHERE title_customer_id IS NULL", nativeQuery = true)
+    int initializeTitleCustomerIds();
+
     boolean existsByIdEquals(Long id);
-}
\ No newline at end of file
+
+    @Query("SELECT new com.aminnorouzi.accountservice.model.AccountBalance(a.id, a.balance, a.balanceVersion) " +
+            "FROM Account AS a WHERE a.id = ?1")
+    Optional<AccountBalance> findBalanceById(Long id);
+
+    @Query("SELECT new com.aminnorouzi.accountservice.model.AccountOpeningBalance(a.id, a.openingBalance, a.balance) " +
+            "FROM Account AS a WHERE a.id BETWEEN ?1 AND ?2 ORDER BY a.id")
+    List<AccountOpeningBalance> findOpeningBalances(Long fromId, Long toId);
+
+    @Query("SELECT MAX(a.id) FROM Account AS a")
+    Long findMaxId();
+
+    // keyset page, the id of the last account of a page is the cursor of the next one
+    List<Account> findByIdGreaterThanOrderByIdAsc(Long id, Pageable pageable);
+
+    // rows are locked in primary key order, so batches sharing accounts can not deadlock each other
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT a FROM Account AS a WHERE a.id IN ?1 ORDER BY a.id")
+    List<Account> findAllByIdForUpdate(Collection<Long> ids);
+
+    // status and title are written on their own, a save of a loaded account would write back a stale balance
+    @Modifying
+    @Query("UPDATE Account AS a SET a.status = ?2, a.closedAt = ?3 " +
+            "WHERE a.id = ?1 AND a.status <> com.aminnorouzi.accountservice.model.Status.CLOSED")
+    int changeStatus(Long id, Status status, LocalDate closedAt);
+
+    @Modifying
+    @Query("UPDATE Account AS a SET a.title = ?2 WHERE a.id = ?1")
+    int changeTitle(Long id, String title);
+
+    // single statement updates, returns affected rows (0 means the account is missing, unavailable or short on balance)
+    @Modifying
+    @Query("UPDATE Account AS a SET a.balance = a.balance + ?2, a.balanceVersion = COALESCE(a.balanceVersion, 0) + 1 " +
+            "WHERE a.id = ?1 AND a.status IN ?3")
+    int increaseBalance(Long id, BigDecimal amount, Collection<Status> statuses);
+
+    @Modifying
+    @Query("UPDATE Account AS a SET a.balance = a.balance - ?2, a.balanceVersion = COALESCE(a.balanceVersion, 0) + 1 " +
+            "WHERE a.id = ?1 AND a.status IN ?3 AND a.balance >= ?2")
+    int decreaseBalance(Long id, BigDecimal amount, Collection<Status> statuses);
+}
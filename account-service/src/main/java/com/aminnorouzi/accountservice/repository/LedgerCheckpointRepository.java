@@ -0,0 +1,9 @@
+package com.aminnorouzi.accountservice.repository;
+
+import com.aminnorouzi.accountservice.model.LedgerCheckpoint;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface LedgerCheckpointRepository extends JpaRepository<LedgerCheckpoint, Integer> {
+}
@@ -0,0 +1,24 @@
+package com.aminnorouzi.accountservice.repository;
+
+import com.aminnorouzi.accountservice.model.ReconciliationMismatch;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+@Repository
+public interface ReconciliationMismatchRepository extends JpaRepository<ReconciliationMismatch, Long> {
+
+    // keyset page by account id
+    List<ReconciliationMismatch> findByRunIdAndAccountIdGreaterThanOrderByAccountIdAsc(Long runId, Long accountId,
+                                                                                      Pageable pageable);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM ReconciliationMismatch AS m WHERE m.runId = ?1 AND m.accountId >= ?2")
+    int deleteFromCheckpoint(Long runId, Long checkpoint);
+}
@@ -0,0 +1,34 @@
+package com.aminnorouzi.accountservice.repository;
+
+import com.aminnorouzi.accountservice.model.ReconciliationRun;
+import com.aminnorouzi.accountservice.model.ReconciliationStatus;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+@Repository
+public interface ReconciliationRunRepository extends JpaRepository<ReconciliationRun, Long> {
+
+    Optional<ReconciliationRun> findFirstByStatusOrderByIdDesc(ReconciliationStatus status);
+
+    // takes over a failed run or a running one without a heartbeat since ?3, only one instance gets a row back
+    @Transactional
+    @Modifying
+    @Query("UPDATE ReconciliationRun AS r " +
+            "SET r.status = com.aminnorouzi.accountservice.model.ReconciliationStatus.RUNNING, " +
+            "r.updatedAt = ?2, r.finishedAt = NULL " +
+            "WHERE r.id = ?1 AND (r.status = com.aminnorouzi.accountservice.model.ReconciliationStatus.FAILED " +
+            "OR r.status = com.aminnorouzi.accountservice.model.ReconciliationStatus.RUNNING " +
+            "AND (r.updatedAt IS NULL OR r.updatedAt < ?3))")
+    int claim(Long id, LocalDateTime now, LocalDateTime staleBefore);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE ReconciliationRun AS r SET r.updatedAt = ?2 WHERE r.id = ?1")
+    int heartbeat(Long id, LocalDateTime now);
+}
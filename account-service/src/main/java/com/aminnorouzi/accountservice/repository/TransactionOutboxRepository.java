@@ -0,0 +1,42 @@
+package com.aminnorouzi.accountservice.repository;
+
+import com.aminnorouzi.accountservice.model.TransactionOutbox;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface TransactionOutboxRepository extends JpaRepository<TransactionOutbox, Long> {
+
+    // keyset page of the rows still to relay, a run pages past the rows of accounts it holds back
+    List<TransactionOutbox> findByAttemptsLessThanAndIdGreaterThanOrderByIdAsc(Integer maxAttempts, Long id,
+                                                                           Pageable pageable);
+
+    // rows left over from before parked rows were moved to the dead-letter table, or above a lowered maximum
+    List<TransactionOutbox> findByAttemptsGreaterThanEqual(Integer maxAttempts);
+
+    // rows not relayed yet that touch a range of accounts, dead-lettered rows are not among them
+    List<TransactionOutbox> findBySenderIdBetweenOrReceiverIdBetween(Long fromSenderId, Long toSenderId,
+                                                                      Long fromReceiverId, Long toReceiverId);
+
+    // claims the rows no other relay run holds, committed on its own so a concurrent run skips them
+    @Transactional
+    @Modifying
+    @Query("UPDATE TransactionOutbox AS o SET o.leaseOwner = ?2, o.leasedUntil = ?3 " +
+            "WHERE o.id IN ?1 AND (o.leasedUntil IS NULL OR o.leasedUntil < ?4)")
+    int claim(Collection<Long> ids, String leaseOwner, LocalDateTime leasedUntil, LocalDateTime now);
+
+    List<TransactionOutbox> findByLeaseOwnerAndIdIn(String leaseOwner, Collection<Long> ids);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE TransactionOutbox AS o SET o.leaseOwner = NULL, o.leasedUntil = NULL WHERE o.leaseOwner = ?1")
+    int release(String leaseOwner);
+}
@@ -0,0 +1,21 @@
+package com.aminnorouzi.accountservice.repository;
+
+import com.aminnorouzi.accountservice.model.WithdrawalKey;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+
+@Repository
+public interface WithdrawalKeyRepository extends JpaRepository<WithdrawalKey, String> {
+
+    // limited, so a purge holds its locks for one short delete at a time
+    @Transactional
+    @Modifying
+    @Query(value = "DELETE FROM withdrawal_key WHERE created_at < :before LIMIT :limit", nativeQuery = true)
+    int deleteCreatedBefore(@Param("before") LocalDate before, @Param("limit") Integer limit);
+}
@@ -1,30 +1,48 @@
 package com.aminnorouzi.accountservice.service;
 
 import com.aminnorouzi.accountservice.client.CustomerClient;
-import com.aminnorouzi.accountservice.client.TransactionClient;
 import com.aminnorouzi.accountservice.exception.AccountNotFoundException;
 import com.aminnorouzi.accountservice.exception.IllegalAccountStatusException;
 import com.aminnorouzi.accountservice.exception.NotEnoughAccountBalanceException;
 import com.aminnorouzi.accountservice.exception.NotValidAccountCustomerException;
+import com.aminnorouzi.accountservice.exception.NotValidChunkSizeException;
+import com.aminnorouzi.accountservice.exception.NotValidPageSizeException;
 import com.aminnorouzi.accountservice.model.Account;
 import com.aminnorouzi.accountservice.model.AccountRequest;
 import com.aminnorouzi.accountservice.model.Status;
+import com.aminnorouzi.accountservice.model.TransferRequest;
 import com.aminnorouzi.accountservice.model.Type;
+import com.aminnorouzi.accountservice.model.WithdrawalKey;
+import com.aminnorouzi.accountservice.model.WithdrawalRequest;
 import com.aminnorouzi.accountservice.model.customer.Customer;
 import com.aminnorouzi.accountservice.model.transaction.Transaction;
 import com.aminnorouzi.accountservice.model.transaction.TransactionRequest;
 import com.aminnorouzi.accountservice.repository.AccountRepository;
+import com.aminnorouzi.accountservice.repository.WithdrawalKeyRepository;
 import com.aminnorouzi.accountservice.util.StringUtils;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceException;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.time.LocalDate;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Objects;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import static com.aminnorouzi.accountservice.model.transaction.Status.FAILED;
 import static com.aminnorouzi.accountservice.model.transaction.Status.SUCCEED;
@@ -35,17 +53,34 @@ import static com.aminnorouzi.accountservice.model.transaction.Type.*;
 @Service
 public class AccountService {
 
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int NEW_LINE = '\n';
+    private static final int PURGE_BATCH_SIZE = 10_000;
+
     private final AccountRepository accountRepository;
     private final CustomerClient customerClient;
-    private final TransactionClient transactionClient;
+    private final TransactionOutboxService transactionOutboxService;
+    private final TransactionTemplate transactionTemplate;
+    private final EntityManager entityManager;
+    private final ObjectMapper objectMapper;
+    private final WithdrawalKeyRepository withdrawalKeyRepository;
+    private final BalanceStore balanceStore;
+
+    @Value("${account.transfer.batch.chunk-size:500}")
+    private Integer transferChunkSize;
+
+    @Value("${account.withdrawal-key.retention:90d}")
+    private Duration withdrawalKeyRetention; // longer than any caller keeps retrying a withdrawal
 
     public Account createAccount(AccountRequest request) {
-        verifyCustomers(request.getCustomerIds());
+        List<Customer> customers = getAndVerifyCustomers(request.getCustomerIds());
 
         Account account = Account.builder()
                 .customerIds(request.getCustomerIds())
-                .title(generateTitle(request))
+                .title(generateTitle(customers.get(0).getFullName(), request.getType()))
+                .titleCustomerId(customers.get(0).getId())
                 .balance(request.getBalance())
+                .openingBalance(request.getBalance())
                 .type(request.getType())
                 .currency(request.getCurrency())
                 .status(Status.OPEN)
@@ -53,6 +88,7 @@ public class AccountService {
                 .build();
 
         Account saved = accountRepository.save(account);
+        balanceStore.openAccount(saved);
 
         log.info("Created new account: {}", saved);
         return saved;
@@ -65,26 +101,29 @@ public class AccountService {
         return verified;
     }
 
+    // only status and closed at are written, a balance moved meanwhile is not overwritten by the one read here
+    @Transactional
     public Account changeAccountStatus(Long id, String status) {
         Account account = getAccountById(id);
         validateAccountStatus(account);
+        entityManager.detach(account);
 
         account.setStatus(Status.valueOf(status.toUpperCase()));
         if (account.getStatus().equals(Status.CLOSED)) {
             account.setClosedAt(LocalDate.now());
         }
 
-        Account updated = accountRepository.save(account);
+        if (accountRepository.changeStatus(id, account.getStatus(), account.getClosedAt()) == 0) {
+            throw new IllegalAccountStatusException(String.format("Account: %s is closed!", id));
+        }
+        balanceStore.changeAccountStatus(id, account.getStatus());
 
-        log.info("Changed an account status: id={}, {}", id, updated);
-        return updated;
+        log.info("Changed an account status: id={}, {}", id, account);
+        return account;
     }
 
     public BigDecimal showAccountBalance(Long id) {
-        Account account = getAccountById(id);
-
-        log.info("Showed an account balance: id={}, {}", id, account);
-        return account.getBalance();
+        return balanceStore.getBalance(id);
     }
 
     public Account getAccountById(Long id) {
@@ -95,38 +134,87 @@ public class AccountService {
         return found;
     }
 
-    public List<Account> getAllAccounts() {
-        List<Account> found = accountRepository.findAll();
+    public List<Account> getAllAccounts(Long after, Integer size) {
+        if (size < 1) {
+            throw new NotValidPageSizeException(String.format("Page size: %s is not valid!", size));
+        }
 
-        log.info("Found all accounts: {}", found);
+        List<Account> found = accountRepository.findByIdGreaterThanOrderByIdAsc(after,
+                PageRequest.of(0, Math.min(size, MAX_PAGE_SIZE)));
+
+        log.info("Found accounts: after={}, count={}", after, found.size());
         return found;
     }
 
-    public List<Account> getAccountsByCustomerId(Long customerId) {
-        Customer customer = getCustomerById(customerId);
+    /**
+     * Streams one json document per line. Accounts are read in keyset pages the size of the customer ids batch, so a
+     * page takes one accounts query and one IN query for its customer ids, and is cleared once written to keep memory
+     * flat.
+     */
+    @Transactional(readOnly = true)
+    public void exportAccounts(OutputStream outputStream) throws IOException {
+        long count = 0;
+        List<Account> accounts;
+        long after = 0;
+        do {
+            accounts = accountRepository.findByIdGreaterThanOrderByIdAsc(after,
+                    PageRequest.of(0, Account.CUSTOMER_IDS_BATCH_SIZE));
+            for (Account account : accounts) {
+                outputStream.write(objectMapper.writeValueAsBytes(account));
+                outputStream.write(NEW_LINE);
+                after = account.getId();
+                count++;
+            }
+            entityManager.clear();
+        } while (accounts.size() == Account.CUSTOMER_IDS_BATCH_SIZE);
+
+        outputStream.flush();
 
+        log.info("Exported all accounts: count={}", count);
+    }
+
+    // titles are stored on creation and refreshed by customer-service on a rename, no remote call here
+    public List<Account> getAccountsByCustomerId(Long customerId) {
         List<Account> found = accountRepository.findByCustomerId(customerId);
-        found.forEach(account -> account.setTitle(generateTitle(customer.getFullName(), account.getType())));
 
-        log.info("Found a customer accounts: customerId={}, {}", customerId, found);
+        log.info("Found a customer accounts: customerId={}, count={}", customerId, found.size());
         return found;
     }
 
-    public List<Customer> getCustomersByAccountId(Long accountId) {
-        List<Customer> found = new ArrayList<>();
+    // an account is titled after the customer stored as its title owner, so only those accounts are renamed
+    @Transactional
+    public List<Account> changeCustomerTitle(Long customerId, String fullName) {
+        List<Account> renamed = accountRepository.findByTitleCustomerId(customerId);
+        renamed.forEach(account -> {
+            entityManager.detach(account);
+            account.setTitle(generateTitle(fullName, account.getType()));
+            accountRepository.changeTitle(account.getId(), account.getTitle());
+        });
+
+        log.info("Changed a customer accounts title: customerId={}, count={}", customerId, renamed.size());
+        return renamed;
+    }
 
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillTitleCustomerIds() {
+        int backfilled = accountRepository.initializeTitleCustomerIds();
+
+        log.info("Backfilled account title owners: count={}", backfilled);
+    }
+
+    public List<Customer> getCustomersByAccountId(Long accountId) {
         List<Long> customerIds = getAccountById(accountId).getCustomerIds();
-        customerIds.forEach(id -> found.add(getCustomerById(id)));
+        List<Customer> found = customerClient.getCustomersByIds(customerIds);
 
         log.info("Found an account customers: accountId={}, {}", accountId, found);
         return found;
     }
 
-    @Transactional
+    // a rejected operation commits too, so its FAILED transaction is kept in the outbox
+    @Transactional(noRollbackFor = {IllegalAccountStatusException.class, NotEnoughAccountBalanceException.class})
     public Transaction deposit(Long id, BigDecimal amount, String note) {
         try {
-            Account account = getAndValidateAccountForDeposit(id);
-            updateAccountBalance(account, amount);
+            balanceStore.deposit(id, amount);
 
             Transaction transaction = logTransaction(new TransactionRequest(id, id, amount, note, DEPOSIT, SUCCEED));
 
@@ -139,11 +227,10 @@ public class AccountService {
         }
     }
 
-    @Transactional
+    @Transactional(noRollbackFor = {IllegalAccountStatusException.class, NotEnoughAccountBalanceException.class})
     public Transaction withdraw(Long id, BigDecimal amount, String note) {
         try {
-            Account account = getAndValidateAccountForWithdrawal(id, amount);
-            updateAccountBalance(account, amount.negate());
+            balanceStore.withdraw(id, amount);
 
             Transaction transaction = logTransaction(new TransactionRequest(id, id, amount, note, WITHDRAWAL, SUCCEED));
 
@@ -156,14 +243,10 @@ public class AccountService {
         }
     }
 
-    @Transactional
+    @Transactional(noRollbackFor = {IllegalAccountStatusException.class, NotEnoughAccountBalanceException.class})
     public Transaction transfer(Long senderId, Long receiverId, BigDecimal amount, String note) {
         try {
-            Account sender = getAndValidateAccountForWithdrawal(senderId, amount);
-            Account receiver = getAndValidateAccountForDeposit(receiverId);
-
-            updateAccountBalance(sender, amount.negate());
-            updateAccountBalance(receiver, amount);
+            balanceStore.transfer(senderId, receiverId, amount);
 
             Transaction transaction = logTransaction(new TransactionRequest(senderId, receiverId, amount, note, TRANSFER, SUCCEED));
 
@@ -176,38 +259,219 @@ public class AccountService {
         }
     }
 
-    private Account getAndValidateAccountForDeposit(Long id) {
-        Account account = getAccountById(id);
+    public List<Transaction> transferAll(List<TransferRequest> requests, Integer chunkSize) {
+        List<Transaction> transactions = applyInChunks(requests, chunkSize, chunk -> inTransaction(chunk, this::transferChunk));
+
+        log.info("Created new batch transactions: count={}, chunkSize={}", transactions.size(), chunkSize);
+        return transactions;
+    }
 
-        if (account.getStatus().equals(Status.CLOSED)
-                || account.getStatus().equals(Status.BLOCKED)
-                || account.getStatus().equals(Status.DEPOSIT_BLOCKED)) {
-            throw new IllegalAccountStatusException(String.format("Account: %s is not available for deposit!", id));
+    public List<Transaction> withdrawAll(List<WithdrawalRequest> requests, Integer chunkSize) {
+        List<Transaction> transactions = applyInChunks(requests, chunkSize, this::withdrawChunkOrReplay);
+
+        log.info("Created new batch withdrawals: count={}, chunkSize={}", transactions.size(), chunkSize);
+        return transactions;
+    }
+
+    // a missing chunk size falls back to the configured one
+    private <T> List<Transaction> applyInChunks(List<T> requests, Integer chunkSize,
+                                                Function<List<T>, List<Transaction>> applyChunk) {
+        int size = getChunkSize(chunkSize);
+
+        List<Transaction> transactions = new ArrayList<>(requests.size());
+        for (int from = 0; from < requests.size(); from += size) {
+            transactions.addAll(applyChunk.apply(requests.subList(from, Math.min(from + size, requests.size()))));
         }
+        return transactions;
+    }
 
-        return account;
+    // every chunk is committed in its own transaction
+    private <T> List<Transaction> inTransaction(List<T> chunk, Function<List<T>, List<Transaction>> applyChunk) {
+        return Objects.requireNonNull(transactionTemplate.execute(status -> applyChunk.apply(chunk)));
     }
 
-    private Account getAndValidateAccountForWithdrawal(Long id, BigDecimal amount) {
-        Account account = getAccountById(id);
+    // a key withdrawn by a concurrent chunk fails the insert of its key and rolls this chunk back, the retry reads
+    // the committed key and answers with that withdrawal
+    private List<Transaction> withdrawChunkOrReplay(List<WithdrawalRequest> chunk) {
+        try {
+            return inTransaction(chunk, this::withdrawChunk);
+        } catch (PersistenceException exception) {
+            if (!(exception.getCause() instanceof ConstraintViolationException)) {
+                throw exception;
+            }
+
+            log.warn("Retrying a batch withdrawal chunk: {}", exception.getMessage());
+            return inTransaction(chunk, this::withdrawChunk);
+        }
+    }
+
+    /**
+     * Locks the accounts of the chunk up front like {@link #transferChunk}. A request whose idempotency key was already
+     * withdrawn is answered with that withdrawal again, so a caller retrying after a lost response or a crash is not
+     * charged twice. Only successful withdrawals keep their key, a rejected one can be retried with the same key.
+     * <p>
+     * The keys read first may be stale: a concurrent chunk with the same key can commit before this one gets its
+     * locks, and ledger mode takes no lock at all. So every new key is inserted before any balance moves, the primary
+     * key then rejects a key taken meanwhile and the chunk is rolled back.
+     */
+    private List<Transaction> withdrawChunk(List<WithdrawalRequest> chunk) {
+        Set<String> keys = chunk.stream()
+                .map(WithdrawalRequest::getIdempotencyKey)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        Map<String, WithdrawalKey> withdrawn = withdrawalKeyRepository.findAllById(keys).stream()
+                .collect(Collectors.toMap(WithdrawalKey::getIdempotencyKey, Function.identity()));
+
+        BalanceStore.Batch batch = balanceStore.startBatch(chunk.stream()
+                .filter(request -> !withdrawn.containsKey(request.getIdempotencyKey()))
+                .map(WithdrawalRequest::getId)
+                .collect(Collectors.toSet()));
+
+        Map<String, WithdrawalKey> reserved = chunk.stream()
+                .filter(request -> request.getIdempotencyKey() != null)
+                .filter(request -> !withdrawn.containsKey(request.getIdempotencyKey()))
+                .collect(Collectors.toMap(WithdrawalRequest::getIdempotencyKey, this::toWithdrawalKey,
+                        (first, second) -> first, LinkedHashMap::new));
+        reserved.values().forEach(entityManager::persist);
+        entityManager.flush();
+
+        Transaction[] transactions = new Transaction[chunk.size()];
+        List<Integer> positions = new ArrayList<>();
+        List<TransactionRequest> transactionRequests = new ArrayList<>();
+        List<WithdrawalKey> newKeys = new ArrayList<>();
+        List<Integer> newKeyPositions = new ArrayList<>();
+        List<Integer> repeatedPositions = new ArrayList<>();
+        for (int index = 0; index < chunk.size(); index++) {
+            WithdrawalRequest request = chunk.get(index);
+            WithdrawalKey key = request.getIdempotencyKey() != null ? withdrawn.get(request.getIdempotencyKey()) : null;
+            if (key != null && newKeys.contains(key)) {
+                repeatedPositions.add(index); // withdrawn earlier in this chunk, answered once its reference is known
+                continue;
+            }
+            if (key != null) {
+                transactions[index] = toTransaction(key);
+                continue;
+            }
 
-        if (account.getStatus().equals(Status.CLOSED)
-                || account.getStatus().equals(Status.BLOCKED)
-                || account.getStatus().equals(Status.WITHDRAWAL_BLOCKED)) {
-            throw new IllegalAccountStatusException(String.format("Account: %s is not available for withdrawal!", id));
+            TransactionRequest transactionRequest = withdrawInBatch(batch, request);
+            if (transactionRequest.getStatus() == SUCCEED && request.getIdempotencyKey() != null) {
+                key = reserved.get(request.getIdempotencyKey());
+                withdrawn.put(key.getIdempotencyKey(), key);
+                newKeys.add(key);
+                newKeyPositions.add(transactionRequests.size());
+            }
+            positions.add(index);
+            transactionRequests.add(transactionRequest);
         }
 
-        if (account.getBalance().doubleValue() < amount.doubleValue()) {
-            throw new NotEnoughAccountBalanceException(String.format("Account: %s does not have enough balance!", id));
+        List<Transaction> appended = transactionOutboxService.appendAll(transactionRequests);
+        for (int index = 0; index < positions.size(); index++) {
+            transactions[positions.get(index)] = appended.get(index);
         }
+        for (int index = 0; index < newKeys.size(); index++) {
+            newKeys.get(index).setReference(appended.get(newKeyPositions.get(index)).getIdempotencyKey());
+        }
+        for (int index : repeatedPositions) {
+            transactions[index] = toTransaction(withdrawn.get(chunk.get(index).getIdempotencyKey()));
+        }
+        reserved.values().stream()
+                .filter(key -> !newKeys.contains(key))
+                .forEach(entityManager::remove); // rejected, the key can be used again
+        batch.complete();
 
-        return account;
+        return Arrays.asList(transactions);
+    }
+
+    // keys carry their creation date only, so the window is kept in whole days and a key lives at least one day
+    @Scheduled(cron = "${account.withdrawal-key.purge-cron:0 45 1 * * *}")
+    public void purgeWithdrawalKeys() {
+        LocalDate before = LocalDate.now().minusDays(Math.max(1, withdrawalKeyRetention.toDays()));
+
+        long purged = 0;
+        int deleted;
+        do {
+            deleted = withdrawalKeyRepository.deleteCreatedBefore(before, PURGE_BATCH_SIZE);
+            purged += deleted;
+        } while (deleted == PURGE_BATCH_SIZE);
+
+        log.info("Purged expired withdrawal keys: before={}, count={}", before, purged);
+    }
+
+    private TransactionRequest withdrawInBatch(BalanceStore.Batch batch, WithdrawalRequest request) {
+        boolean withdrawn = applyBatchRequest(request, () -> batch.withdraw(request.getId(), request.getAmount()));
+
+        return new TransactionRequest(request.getId(), request.getId(), request.getAmount(), request.getNote(),
+                WITHDRAWAL, withdrawn ? SUCCEED : FAILED);
+    }
+
+    private WithdrawalKey toWithdrawalKey(WithdrawalRequest request) {
+        return WithdrawalKey.builder()
+                .idempotencyKey(request.getIdempotencyKey())
+                .accountId(request.getId())
+                .amount(request.getAmount())
+                .note(request.getNote())
+                .createdAt(LocalDate.now())
+                .build();
+    }
+
+    private Transaction toTransaction(WithdrawalKey key) {
+        return Transaction.builder()
+                .senderId(key.getAccountId())
+                .receiverId(key.getAccountId())
+                .amount(key.getAmount())
+                .note(key.getNote())
+                .type(WITHDRAWAL)
+                .status(SUCCEED)
+                .createdAt(key.getCreatedAt())
+                .idempotencyKey(key.getReference())
+                .build();
     }
 
-    private void updateAccountBalance(Account account, BigDecimal amount) {
-        account.setBalance(account.getBalance().add(amount));
+    // the store locks every account of the chunk up front where it needs to
+    private List<Transaction> transferChunk(List<TransferRequest> chunk) {
+        Set<Long> ids = new HashSet<>();
+        chunk.forEach(request -> {
+            ids.add(request.getSenderId());
+            ids.add(request.getReceiverId());
+        });
+
+        BalanceStore.Batch batch = balanceStore.startBatch(ids);
+        List<TransactionRequest> transactionRequests = chunk.stream()
+                .map(request -> toBatchTransactionRequest(request, () -> batch.transfer(
+                        request.getSenderId(), request.getReceiverId(), request.getAmount())))
+                .collect(Collectors.toList());
+        batch.complete();
+
+        return transactionOutboxService.appendAll(transactionRequests);
+    }
 
-        accountRepository.save(account);
+    private TransactionRequest toBatchTransactionRequest(TransferRequest request, Runnable transfer) {
+        boolean transferred = applyBatchRequest(request, transfer);
+
+        return new TransactionRequest(request.getSenderId(), request.getReceiverId(), request.getAmount(),
+                request.getNote(), TRANSFER, transferred ? SUCCEED : FAILED);
+    }
+
+    // a rejected request does not fail its batch, it is logged as a FAILED transaction
+    private boolean applyBatchRequest(Object request, Runnable movement) {
+        try {
+            movement.run();
+            return true;
+        } catch (AccountNotFoundException | IllegalAccountStatusException | NotEnoughAccountBalanceException exception) {
+            log.warn("Rejected a batch request: {}, {}", request, exception.getMessage());
+            return false;
+        }
+    }
+
+    private int getChunkSize(Integer chunkSize) {
+        if (chunkSize == null) {
+            return transferChunkSize;
+        }
+        if (chunkSize < 1) {
+            throw new NotValidChunkSizeException(String.format("Chunk size: %s is not valid!", chunkSize));
+        }
+
+        return chunkSize;
     }
 
     private void validateAccountStatus(Account account) {
@@ -216,29 +480,22 @@ public class AccountService {
         }
     }
 
-    private String generateTitle(AccountRequest request) {
-        Customer customer = getCustomerById(request.getCustomerIds().get(0));
-        return generateTitle(customer.getFullName(), request.getType());
-    }
-
     private String generateTitle(String fullName, Type type) {
         return StringUtils.generateTitle(fullName, type);
     }
 
-    private void verifyCustomers(List<Long> customerIds) {
-        customerIds.forEach(id -> {
-            boolean exists = customerClient.verifyCustomer(id);
-            if (!exists) {
-                throw new NotValidAccountCustomerException(String.format("Customer: %s not found!", id));
-            }
-        });
-    }
+    // one bulk lookup verifies every customer and returns them in request order
+    private List<Customer> getAndVerifyCustomers(List<Long> customerIds) {
+        Map<Long, Customer> found = customerClient.getCustomersByIds(customerIds).stream()
+                .collect(Collectors.toMap(Customer::getId, Function.identity(), (first, second) -> first));
 
-    private Customer getCustomerById(Long customerId) {
-        return Objects.requireNonNull(customerClient.getCustomerById(customerId));
+        return customerIds.stream()
+                .map(id -> Optional.ofNullable(found.get(id))
+                        .orElseThrow(() -> new NotValidAccountCustomerException(String.format("Customer: %s not found!", id))))
+                .collect(Collectors.toList());
     }
 
     private Transaction logTransaction(TransactionRequest request) {
-        return Objects.requireNonNull(transactionClient.createTransaction(request));
+        return transactionOutboxService.append(request);
     }
 }
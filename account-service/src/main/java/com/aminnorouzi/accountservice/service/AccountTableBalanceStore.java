@@ -0,0 +1,171 @@
+package com.aminnorouzi.accountservice.service;
+
+import com.aminnorouzi.accountservice.exception.AccountNotFoundException;
+import com.aminnorouzi.accountservice.exception.IllegalAccountStatusException;
+import com.aminnorouzi.accountservice.exception.NotEnoughAccountBalanceException;
+import com.aminnorouzi.accountservice.model.Account;
+import com.aminnorouzi.accountservice.model.AccountBalance;
+import com.aminnorouzi.accountservice.model.Status;
+import com.aminnorouzi.accountservice.repository.AccountRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Balances moved by conditional updates of the account table, with the balance cache written through on commit.
+ */
+@Slf4j
+@RequiredArgsConstructor
+@Service
+@ConditionalOnProperty(name = "account.ledger.enabled", havingValue = "false", matchIfMissing = true)
+public class AccountTableBalanceStore implements BalanceStore {
+
+    private final AccountRepository accountRepository;
+    private final BalanceCacheService balanceCacheService;
+
+    @Override
+    public void openAccount(Account account) {
+        // the saved row is the balance
+    }
+
+    @Override
+    public void changeAccountStatus(Long id, Status status) {
+        // the updated row is the status
+    }
+
+    // served from the write-through balance cache, mysql is only read on a miss
+    @Override
+    public BigDecimal getBalance(Long id) {
+        AccountBalance balance = balanceCacheService.getBalance(id)
+                .orElseThrow(() -> new AccountNotFoundException(String.format("Account: %s not found!", id)));
+
+        log.info("Showed an account balance: id={}, version={}", id, balance.getVersion());
+        return balance.getBalance();
+    }
+
+    @Override
+    public BigDecimal getBalance(Long id, BigDecimal tableBalance) {
+        return tableBalance;
+    }
+
+    // the update statement checks status and balance itself, the account is only loaded to explain a rejected update
+    @Override
+    public void deposit(Long id, BigDecimal amount) {
+        int updated = accountRepository.increaseBalance(id, amount, DEPOSIT_STATUSES);
+        if (updated == 0) {
+            validateAccountForDeposit(getAccountById(id));
+
+            throw new IllegalAccountStatusException(String.format("Account: %s is not available for deposit!", id));
+        }
+
+        balanceCacheService.refresh(id);
+    }
+
+    @Override
+    public void withdraw(Long id, BigDecimal amount) {
+        int updated = accountRepository.decreaseBalance(id, amount, WITHDRAWAL_STATUSES);
+        if (updated == 0) {
+            validateAccountForWithdrawal(getAccountById(id), amount);
+
+            throw new IllegalAccountStatusException(String.format("Account: %s is not available for withdrawal!", id));
+        }
+
+        balanceCacheService.refresh(id);
+    }
+
+    @Override
+    public void transfer(Long senderId, Long receiverId, BigDecimal amount) {
+        withdraw(senderId, amount);
+
+        try {
+            deposit(receiverId, amount);
+        } catch (IllegalAccountStatusException exception) {
+            // the failed transfer is committed, so the sender debit has to be undone explicitly
+            accountRepository.increaseBalance(senderId, amount, List.of(Status.values()));
+            balanceCacheService.refresh(senderId);
+
+            throw exception;
+        }
+    }
+
+    // every account of the chunk is locked up front, then the movements are applied to the loaded entities
+    @Override
+    public Batch startBatch(Collection<Long> ids) {
+        Map<Long, Account> accounts = accountRepository.findAllByIdForUpdate(new TreeSet<>(ids)).stream()
+                .collect(Collectors.toMap(Account::getId, Function.identity()));
+
+        return new Batch() {
+            @Override
+            public void withdraw(Long id, BigDecimal amount) {
+                Account account = validateAccountForWithdrawal(getLockedAccount(accounts, id), amount);
+                changeBalance(account, amount.negate());
+            }
+
+            @Override
+            public void transfer(Long senderId, Long receiverId, BigDecimal amount) {
+                Account sender = validateAccountForWithdrawal(getLockedAccount(accounts, senderId), amount);
+                Account receiver = validateAccountForDeposit(getLockedAccount(accounts, receiverId));
+
+                changeBalance(sender, amount.negate());
+                changeBalance(receiver, amount);
+            }
+
+            @Override
+            public void complete() {
+                accounts.values().forEach(account -> balanceCacheService.putAfterCommit(toAccountBalance(account)));
+            }
+        };
+    }
+
+    private Account getAccountById(Long id) {
+        return accountRepository.findById(id)
+                .orElseThrow(() -> new AccountNotFoundException(String.format("Account: %s not found!", id)));
+    }
+
+    private Account getLockedAccount(Map<Long, Account> accounts, Long id) {
+        Account account = accounts.get(id);
+        if (account == null) {
+            throw new AccountNotFoundException(String.format("Account: %s not found!", id));
+        }
+
+        return account;
+    }
+
+    private void changeBalance(Account account, BigDecimal amount) {
+        account.setBalance(account.getBalance().add(amount));
+        account.setBalanceVersion((account.getBalanceVersion() != null ? account.getBalanceVersion() : 0L) + 1);
+    }
+
+    private AccountBalance toAccountBalance(Account account) {
+        return new AccountBalance(account.getId(), account.getBalance(), account.getBalanceVersion());
+    }
+
+    private Account validateAccountForDeposit(Account account) {
+        if (!DEPOSIT_STATUSES.contains(account.getStatus())) {
+            throw new IllegalAccountStatusException(String.format("Account: %s is not available for deposit!", account.getId()));
+        }
+
+        return account;
+    }
+
+    private Account validateAccountForWithdrawal(Account account, BigDecimal amount) {
+        if (!WITHDRAWAL_STATUSES.contains(account.getStatus())) {
+            throw new IllegalAccountStatusException(String.format("Account: %s is not available for withdrawal!", account.getId()));
+        }
+
+        if (account.getBalance().compareTo(amount) < 0) {
+            throw new NotEnoughAccountBalanceException(String.format("Account: %s does not have enough balance!", account.getId()));
+        }
+
+        return account;
+    }
+}
@@ -0,0 +1,76 @@
+package com.aminnorouzi.accountservice.service;
+
+import com.aminnorouzi.accountservice.model.AccountBalance;
+import com.aminnorouzi.accountservice.repository.AccountRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Optional;
+
+@Slf4j
+@Service
+public class BalanceCacheService {
+
+    private final AccountRepository accountRepository;
+    private final Cache<Long, AccountBalance> balances;
+
+    public BalanceCacheService(AccountRepository accountRepository,
+                               @Value("${account.balance.cache.maximum-size:100000}") Long maximumSize) {
+        this.accountRepository = accountRepository;
+        this.balances = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .build();
+    }
+
+    // a miss reads only the balance columns, never the whole account
+    public Optional<AccountBalance> getBalance(Long id) {
+        AccountBalance cached = balances.getIfPresent(id);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+
+        Optional<AccountBalance> found = accountRepository.findBalanceById(id);
+        found.ifPresent(this::put);
+        return found;
+    }
+
+    // reads the balance written by the current transaction and publishes it once that transaction commits
+    public void refresh(Long id) {
+        accountRepository.findBalanceById(id).ifPresent(this::putAfterCommit);
+    }
+
+    public void putAfterCommit(AccountBalance balance) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            put(balance);
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                put(balance);
+            }
+        });
+    }
+
+    // a value only replaces an older one, so a slow reader can not overwrite a newer write
+    public void put(AccountBalance balance) {
+        balances.asMap().merge(balance.getId(), balance,
+                (current, candidate) -> versionOf(candidate) > versionOf(current) ? candidate : current);
+    }
+
+    public void evict(Long id) {
+        balances.invalidate(id);
+
+        log.info("Evicted a cached balance: id={}", id);
+    }
+
+    private long versionOf(AccountBalance balance) {
+        return balance.getVersion() != null ? balance.getVersion() : 0L;
+    }
+}
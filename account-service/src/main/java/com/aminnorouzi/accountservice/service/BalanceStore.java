@@ -0,0 +1,48 @@
+package com.aminnorouzi.accountservice.service;
+
+import com.aminnorouzi.accountservice.model.Account;
+import com.aminnorouzi.accountservice.model.Status;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Where account balances are checked and moved: the account table by default, or the in memory ledger in ledger mode.
+ * Every movement runs in the caller's transaction and throws the usual account exceptions when it is rejected.
+ */
+public interface BalanceStore {
+
+    List<Status> DEPOSIT_STATUSES = List.of(Status.OPEN, Status.WITHDRAWAL_BLOCKED);
+    List<Status> WITHDRAWAL_STATUSES = List.of(Status.OPEN, Status.DEPOSIT_BLOCKED);
+
+    // called once the new account row is saved
+    void openAccount(Account account);
+
+    // called once the status is written to the account table
+    void changeAccountStatus(Long id, Status status);
+
+    BigDecimal getBalance(Long id);
+
+    // the current balance of an account whose row in the account table holds tableBalance
+    BigDecimal getBalance(Long id, BigDecimal tableBalance);
+
+    void deposit(Long id, BigDecimal amount);
+
+    void withdraw(Long id, BigDecimal amount);
+
+    void transfer(Long senderId, Long receiverId, BigDecimal amount);
+
+    // prepares the movements of a batch chunk over the given accounts
+    Batch startBatch(Collection<Long> ids);
+
+    interface Batch {
+
+        void withdraw(Long id, BigDecimal amount);
+
+        void transfer(Long senderId, Long receiverId, BigDecimal amount);
+
+        // called once every movement of the chunk is applied
+        void complete();
+    }
+}
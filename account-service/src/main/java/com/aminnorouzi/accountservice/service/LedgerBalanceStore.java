@@ -0,0 +1,77 @@
+package com.aminnorouzi.accountservice.service;
+
+import com.aminnorouzi.accountservice.model.Account;
+import com.aminnorouzi.accountservice.model.Status;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+
+/**
+ * Balances moved by the in memory ledger, the account table only holds its last snapshot.
+ */
+@RequiredArgsConstructor
+@Service
+@ConditionalOnProperty(name = "account.ledger.enabled", havingValue = "true")
+public class LedgerBalanceStore implements BalanceStore {
+
+    private final LedgerService ledgerService;
+
+    @Override
+    public void openAccount(Account account) {
+        ledgerService.openAccount(account.getId(), account.getBalance(), account.getStatus());
+    }
+
+    @Override
+    public void changeAccountStatus(Long id, Status status) {
+        ledgerService.changeAccountStatus(id, status);
+    }
+
+    @Override
+    public BigDecimal getBalance(Long id) {
+        return ledgerService.getBalance(id);
+    }
+
+    @Override
+    public BigDecimal getBalance(Long id, BigDecimal tableBalance) {
+        return ledgerService.getBalance(id);
+    }
+
+    @Override
+    public void deposit(Long id, BigDecimal amount) {
+        ledgerService.deposit(id, amount, DEPOSIT_STATUSES);
+    }
+
+    @Override
+    public void withdraw(Long id, BigDecimal amount) {
+        ledgerService.withdraw(id, amount, WITHDRAWAL_STATUSES);
+    }
+
+    @Override
+    public void transfer(Long senderId, Long receiverId, BigDecimal amount) {
+        ledgerService.transfer(senderId, receiverId, amount, WITHDRAWAL_STATUSES, DEPOSIT_STATUSES);
+    }
+
+    // the ledger checks and moves every request atomically on its own, there is nothing to lock
+    @Override
+    public Batch startBatch(Collection<Long> ids) {
+        return new Batch() {
+            @Override
+            public void withdraw(Long id, BigDecimal amount) {
+                LedgerBalanceStore.this.withdraw(id, amount);
+            }
+
+            @Override
+            public void transfer(Long senderId, Long receiverId, BigDecimal amount) {
+                LedgerBalanceStore.this.transfer(senderId, receiverId, amount);
+            }
+
+            @Override
+            public void complete() {
+                // the movements are settled with the transaction, see LedgerService
+            }
+        };
+    }
+}
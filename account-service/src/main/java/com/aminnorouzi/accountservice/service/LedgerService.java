@@ -0,0 +1,258 @@
+package com.aminnorouzi.accountservice.service;
+
+import com.aminnorouzi.accountservice.exception.NotValidAmountException;
+import com.aminnorouzi.accountservice.ledger.Ledger;
+import com.aminnorouzi.accountservice.model.LedgerCheckpoint;
+import com.aminnorouzi.accountservice.model.Status;
+import com.aminnorouzi.accountservice.repository.LedgerCheckpointRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Ledger mode: balances are kept by an in memory {@link Ledger} and only written to the account table by periodic
+ * snapshots. On startup the last snapshot is read back from the account table and the ledger log is replayed over it.
+ * <p>
+ * The records of a database transaction are made durable once, right before it commits, and the transaction inserts
+ * their lsns into {@code ledger_commit}. Recovery replays only the records found there, so a movement whose
+ * transaction never committed is dropped, and the rows of movements a snapshot includes are deleted with it.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "account.ledger.enabled", havingValue = "true")
+public class LedgerService {
+
+    private static final int SCALE = 2; // balance column is decimal(19, 2)
+
+    private final JdbcTemplate jdbcTemplate;
+    private final LedgerCheckpointRepository ledgerCheckpointRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final Path directory;
+    private final DataSize segmentSize;
+    private final Ledger ledger;
+
+    private long checkpointLsn;
+    private boolean closed;
+
+    public LedgerService(JdbcTemplate jdbcTemplate,
+                         LedgerCheckpointRepository ledgerCheckpointRepository,
+                         TransactionTemplate transactionTemplate,
+                         @Value("${account.ledger.directory:ledger}") Path directory,
+                         @Value("${account.ledger.segment-size:64MB}") DataSize segmentSize,
+                         @Value("${account.ledger.expected-accounts:100000}") Integer expectedAccounts) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.ledgerCheckpointRepository = ledgerCheckpointRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.ledger = new Ledger(expectedAccounts);
+    }
+
+    @PostConstruct
+    public void recover() throws IOException {
+        checkpointLsn = ledgerCheckpointRepository.findById(LedgerCheckpoint.ID)
+                .map(LedgerCheckpoint::getLsn)
+                .orElse(0L);
+
+        Set<Long> committed = new HashSet<>(jdbcTemplate.queryForList(
+                "SELECT lsn FROM ledger_commit WHERE lsn > ?", Long.class, checkpointLsn));
+
+        jdbcTemplate.query("SELECT id, balance, status FROM account", (RowCallbackHandler) row ->
+                ledger.openAccount(row.getLong("id"), toMinorUnits(row.getBigDecimal("balance")),
+                        Status.valueOf(row.getString("status"))));
+        ledger.recover(directory, Math.toIntExact(segmentSize.toBytes()), checkpointLsn, committed::contains);
+
+        log.info("Recovered the ledger: accounts={}, checkpointLsn={}, committed={}",
+                ledger.size(), checkpointLsn, committed.size());
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        snapshot();
+
+        closed = true;
+        ledger.close();
+    }
+
+    public void openAccount(Long id, BigDecimal balance, Status status) {
+        ledger.openAccount(id, toMinorUnits(balance), status);
+    }
+
+    public void changeAccountStatus(Long id, Status status) {
+        ledger.changeStatus(id, status);
+    }
+
+    public BigDecimal getBalance(Long id) {
+        return BigDecimal.valueOf(ledger.getBalance(id), SCALE);
+    }
+
+    public void deposit(Long id, BigDecimal amount, Collection<Status> statuses) {
+        commitWithTransaction(ledger.deposit(id, toMinorUnits(amount), statuses));
+    }
+
+    public void withdraw(Long id, BigDecimal amount, Collection<Status> statuses) {
+        commitWithTransaction(ledger.withdraw(id, toMinorUnits(amount), statuses));
+    }
+
+    public void transfer(Long senderId, Long receiverId, BigDecimal amount,
+                         Collection<Status> senderStatuses, Collection<Status> receiverStatuses) {
+        commitWithTransaction(ledger.transfer(senderId, receiverId, toMinorUnits(amount), senderStatuses, receiverStatuses));
+    }
+
+    // balances and the checkpoint commit together, the covered log segments are dropped only after that
+    @Scheduled(fixedDelayString = "${account.ledger.snapshot.delay:10000}")
+    public synchronized void snapshot() {
+        if (closed) {
+            return;
+        }
+
+        Ledger.Snapshot snapshot = ledger.snapshot();
+        if (snapshot.getIds().length == 0 && snapshot.getCheckpointLsn() == checkpointLsn) {
+            return;
+        }
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                long[] ids = snapshot.getIds();
+                long[] balances = snapshot.getBalances();
+                jdbcTemplate.batchUpdate("UPDATE account SET balance = ? WHERE id = ?", new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement statement, int index) throws SQLException {
+                        statement.setBigDecimal(1, BigDecimal.valueOf(balances[index], SCALE));
+                        statement.setLong(2, ids[index]);
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return ids.length;
+                    }
+                });
+
+                deleteCommits(snapshot);
+                ledgerCheckpointRepository.save(new LedgerCheckpoint(LedgerCheckpoint.ID, snapshot.getCheckpointLsn()));
+            });
+        } catch (RuntimeException exception) {
+            ledger.restore(snapshot);
+
+            log.error("Could not persist a ledger snapshot: lsn={}, {}", snapshot.getLsn(), exception.getMessage());
+            return;
+        }
+
+        checkpointLsn = snapshot.getCheckpointLsn();
+        ledger.truncate(checkpointLsn);
+
+        log.info("Persisted a ledger snapshot: lsn={}, checkpointLsn={}, accounts={}, pending={}",
+                snapshot.getLsn(), checkpointLsn, snapshot.getIds().length, snapshot.getPendingLsns().length);
+    }
+
+    // the movements of a transaction share one synchronization, so a batch chunk waits for a single fsync
+    private void commitWithTransaction(long lsn) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            try {
+                ledger.awaitDurable(lsn);
+                insertCommits(List.of(lsn));
+            } catch (RuntimeException exception) {
+                ledger.rollback(lsn);
+                throw exception;
+            }
+
+            ledger.commit(lsn);
+            return;
+        }
+
+        TransactionMovements movements = (TransactionMovements) TransactionSynchronizationManager.getResource(this);
+        if (movements == null) {
+            movements = new TransactionMovements();
+            TransactionSynchronizationManager.bindResource(this, movements);
+            TransactionSynchronizationManager.registerSynchronization(movements);
+        }
+        movements.lsns.add(lsn);
+    }
+
+    private void insertCommits(List<Long> lsns) {
+        jdbcTemplate.batchUpdate("INSERT INTO ledger_commit (lsn) VALUES (?)", lsns, lsns.size(),
+                (statement, lsn) -> statement.setLong(1, lsn));
+    }
+
+    // movements included in the snapshot are not replayed anymore, the pending ones may still commit after it
+    private void deleteCommits(Ledger.Snapshot snapshot) {
+        long[] pendingLsns = snapshot.getPendingLsns();
+        if (pendingLsns.length == 0) {
+            jdbcTemplate.update("DELETE FROM ledger_commit WHERE lsn <= ?", snapshot.getLsn());
+            return;
+        }
+
+        Object[] arguments = new Object[pendingLsns.length + 1];
+        arguments[0] = snapshot.getLsn();
+        for (int index = 0; index < pendingLsns.length; index++) {
+            arguments[index + 1] = pendingLsns[index];
+        }
+        jdbcTemplate.update(String.format("DELETE FROM ledger_commit WHERE lsn <= ? AND lsn NOT IN (%s)",
+                String.join(", ", Collections.nCopies(pendingLsns.length, "?"))), arguments);
+    }
+
+    // an amount finer than a minor unit or beyond a long is rejected, never rounded
+    private long toMinorUnits(BigDecimal amount) {
+        if (amount == null) {
+            return 0L;
+        }
+
+        if (amount.stripTrailingZeros().scale() > SCALE) {
+            throw new NotValidAmountException(String.format("Amount: %s is not valid!", amount.toPlainString()));
+        }
+
+        try {
+            return amount.setScale(SCALE, RoundingMode.UNNECESSARY).unscaledValue().longValueExact();
+        } catch (ArithmeticException exception) {
+            throw new NotValidAmountException(String.format("Amount: %s is not valid!", amount.toPlainString()));
+        }
+    }
+
+    // durable before the transaction commits, settled in the ledger once it is done
+    private class TransactionMovements implements TransactionSynchronization {
+
+        private final List<Long> lsns = new ArrayList<>();
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            ledger.awaitDurable(lsns.get(lsns.size() - 1));
+            insertCommits(lsns);
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(LedgerService.this);
+            if (status == STATUS_COMMITTED) {
+                lsns.forEach(ledger::commit);
+                return;
+            }
+
+            lsns.forEach(ledger::rollback);
+            log.warn("Rolled back ledger movements: count={}, lsns={}", lsns.size(), lsns);
+        }
+    }
+}
@@ -0,0 +1,381 @@
+package com.aminnorouzi.accountservice.service;
+
+import com.aminnorouzi.accountservice.client.TransactionClient;
+import com.aminnorouzi.accountservice.exception.NotValidPageSizeException;
+import com.aminnorouzi.accountservice.exception.ReconciliationNotFoundException;
+import com.aminnorouzi.accountservice.exception.ReconciliationRunningException;
+import com.aminnorouzi.accountservice.model.AccountOpeningBalance;
+import com.aminnorouzi.accountservice.model.ReconciliationMismatch;
+import com.aminnorouzi.accountservice.model.ReconciliationRun;
+import com.aminnorouzi.accountservice.model.ReconciliationStatus;
+import com.aminnorouzi.accountservice.model.TransactionOutbox;
+import com.aminnorouzi.accountservice.model.transaction.AccountNet;
+import com.aminnorouzi.accountservice.repository.AccountRepository;
+import com.aminnorouzi.accountservice.repository.ReconciliationMismatchRepository;
+import com.aminnorouzi.accountservice.repository.ReconciliationRunRepository;
+import com.aminnorouzi.accountservice.repository.TransactionOutboxRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.Collectors;
+
+/**
+ * Checks every account balance against its opening balance plus the net of its successful transactions in
+ * transaction-service. Accounts are read in id ranges: a range reads its balances with one index range scan here and
+ * its nets from the transaction rollups there, so neither side is ever loaded whole.
+ * <p>
+ * A run goes through waves of ranges split over a fork-join pool. Once a wave is done its mismatches and the next
+ * account id are saved together as the checkpoint, so a failed or interrupted run is resumed from there. Every range
+ * also bumps the run's {@code updatedAt}, a run without a heartbeat for {@code stale-after} is taken as abandoned.
+ */
+@Slf4j
+@Service
+public class ReconciliationService {
+
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int RANGES_PER_WORKER = 4; // per wave, so a slow range does not leave the other workers idle
+
+    private final AccountRepository accountRepository;
+    private final TransactionOutboxRepository transactionOutboxRepository;
+    private final ReconciliationRunRepository reconciliationRunRepository;
+    private final ReconciliationMismatchRepository reconciliationMismatchRepository;
+    private final TransactionClient transactionClient;
+    private final TransactionTemplate transactionTemplate;
+    private final BalanceStore balanceStore; // in ledger mode the account table only holds the last snapshot
+    private final Integer rangeSize;
+    private final Integer parallelism;
+    private final Duration staleAfter;
+    private final ForkJoinPool pool;
+    private final ExecutorService runner;
+
+    private volatile Long activeRunId;
+
+    public ReconciliationService(AccountRepository accountRepository,
+                                 TransactionOutboxRepository transactionOutboxRepository,
+                                 ReconciliationRunRepository reconciliationRunRepository,
+                                 ReconciliationMismatchRepository reconciliationMismatchRepository,
+                                 TransactionClient transactionClient,
+                                 TransactionTemplate transactionTemplate,
+                                 BalanceStore balanceStore,
+                                 @Value("${reconciliation.range-size:10000}") Integer rangeSize,
+                                 @Value("${reconciliation.parallelism:8}") Integer parallelism,
+                                 @Value("${reconciliation.stale-after:5m}") Duration staleAfter) {
+        this.accountRepository = accountRepository;
+        this.transactionOutboxRepository = transactionOutboxRepository;
+        this.reconciliationRunRepository = reconciliationRunRepository;
+        this.reconciliationMismatchRepository = reconciliationMismatchRepository;
+        this.transactionClient = transactionClient;
+        this.transactionTemplate = transactionTemplate;
+        this.balanceStore = balanceStore;
+        this.rangeSize = rangeSize;
+        this.parallelism = parallelism;
+        this.staleAfter = staleAfter;
+        this.pool = new ForkJoinPool(parallelism);
+        this.runner = Executors.newSingleThreadExecutor();
+    }
+
+    @PreDestroy
+    public void close() {
+        runner.shutdownNow();
+        pool.shutdownNow();
+    }
+
+    // a running run is taken over only when its heartbeat has stopped for a while, e.g. after a restart
+    public synchronized ReconciliationRun startReconciliation() {
+        Optional<ReconciliationRun> running = reconciliationRunRepository
+                .findFirstByStatusOrderByIdDesc(ReconciliationStatus.RUNNING);
+        if (running.isPresent()) {
+            return resume(running.get());
+        }
+
+        Long lastAccountId = accountRepository.findMaxId();
+        LocalDateTime now = LocalDateTime.now();
+        ReconciliationRun run = reconciliationRunRepository.save(ReconciliationRun.builder()
+                .status(ReconciliationStatus.RUNNING)
+                .rangeSize(rangeSize)
+                .lastAccountId(lastAccountId != null ? lastAccountId : 0L)
+                .checkpoint(1L)
+                .accounts(0L)
+                .skipped(0L)
+                .withoutOpeningBalance(0L)
+                .mismatches(0L)
+                .startedAt(now)
+                .updatedAt(now)
+                .build());
+
+        log.info("Started a reconciliation: {}", run);
+        return submit(run);
+    }
+
+    public synchronized ReconciliationRun resumeReconciliation(Long id) {
+        ReconciliationRun run = getReconciliationById(id);
+        if (run.getStatus() == ReconciliationStatus.COMPLETED) {
+            return run;
+        }
+        return resume(run);
+    }
+
+    @Scheduled(cron = "${reconciliation.cron:-}")
+    public void scheduleReconciliation() {
+        try {
+            startReconciliation();
+        } catch (ReconciliationRunningException exception) {
+            log.info("Skipped a scheduled reconciliation: {}", exception.getMessage());
+        }
+    }
+
+    public ReconciliationRun getReconciliationById(Long id) {
+        ReconciliationRun found = reconciliationRunRepository.findById(id)
+                .orElseThrow(() -> new ReconciliationNotFoundException(String.format("Reconciliation: %s not found!", id)));
+
+        log.info("Found a reconciliation: id={}, {}", id, found);
+        return found;
+    }
+
+    public List<ReconciliationMismatch> getMismatches(Long id, Long after, Integer size) {
+        if (size < 1) {
+            throw new NotValidPageSizeException(String.format("Page size: %s is not valid!", size));
+        }
+        getReconciliationById(id);
+
+        List<ReconciliationMismatch> found = reconciliationMismatchRepository
+                .findByRunIdAndAccountIdGreaterThanOrderByAccountIdAsc(id, after,
+                        PageRequest.of(0, Math.min(size, MAX_PAGE_SIZE)));
+
+        log.info("Found reconciliation mismatches: id={}, after={}, count={}", id, after, found.size());
+        return found;
+    }
+
+    void execute(Long id) {
+        ReconciliationRun run = reconciliationRunRepository.findById(id)
+                .orElseThrow(() -> new ReconciliationNotFoundException(String.format("Reconciliation: %s not found!", id)));
+        try {
+            // mismatches of a wave that was cut short are found again
+            reconciliationMismatchRepository.deleteFromCheckpoint(id, run.getCheckpoint());
+
+            long waveSize = (long) rangeSize * parallelism * RANGES_PER_WORKER;
+            while (run.getCheckpoint() <= run.getLastAccountId()) {
+                long from = run.getCheckpoint();
+                long to = Math.min(from + waveSize - 1, run.getLastAccountId());
+
+                RangeResult result = pool.invoke(new RangeTask(id, from, to));
+                checkpoint(run, to + 1, result);
+
+                log.info("Reconciled accounts: id={}, from={}, to={}, accounts={}, skipped={}, " +
+                                "withoutOpeningBalance={}, mismatches={}", id, from, to, result.accounts,
+                        result.skipped, result.withoutOpeningBalance, result.mismatches.size());
+            }
+
+            finish(run, ReconciliationStatus.COMPLETED);
+            log.info("Completed a reconciliation: {}", run);
+        } catch (RuntimeException exception) {
+            finish(run, ReconciliationStatus.FAILED);
+            log.error("Failed a reconciliation, it can be resumed from its checkpoint: {}, {}",
+                    run, exception.getMessage());
+        } finally {
+            activeRunId = null;
+        }
+    }
+
+    /**
+     * Reconciles the accounts with ids in a range, both inclusive. Accounts with transactions still in the outbox are
+     * skipped, their balance already counts them but transaction-service does not have them yet. Accounts opened
+     * before opening balances were kept have nothing to start from, they are counted apart instead of reported. A
+     * balance or a net read in the middle of a relay can be off, so every difference is read again on its own before
+     * it is reported.
+     */
+    RangeResult reconcileRange(Long runId, Long from, Long to) {
+        Map<Long, BigDecimal> nets = findNets(from, to);
+        Set<Long> pendingAccountIds = findPendingAccountIds(from, to);
+        List<AccountOpeningBalance> balances = accountRepository.findOpeningBalances(from, to);
+
+        RangeResult result = new RangeResult();
+        for (AccountOpeningBalance balance : balances) {
+            if (balance.getOpeningBalance() == null) {
+                result.withoutOpeningBalance++;
+                continue;
+            }
+            if (pendingAccountIds.contains(balance.getId())) {
+                result.skipped++;
+                continue;
+            }
+            result.accounts++;
+
+            ReconciliationMismatch mismatch = compare(runId, balance, nets.get(balance.getId()));
+            if (mismatch != null) {
+                mismatch = recheck(runId, balance.getId());
+            }
+            if (mismatch != null) {
+                result.mismatches.add(mismatch);
+            }
+        }
+        return result;
+    }
+
+    private ReconciliationMismatch recheck(Long runId, Long accountId) {
+        if (!findPendingAccountIds(accountId, accountId).isEmpty()) {
+            return null;
+        }
+
+        BigDecimal net = findNets(accountId, accountId).get(accountId);
+        return accountRepository.findOpeningBalances(accountId, accountId).stream()
+                .findFirst()
+                .filter(balance -> balance.getOpeningBalance() != null)
+                .map(balance -> compare(runId, balance, net))
+                .orElse(null);
+    }
+
+    private ReconciliationMismatch compare(Long runId, AccountOpeningBalance account, BigDecimal net) {
+        BigDecimal opening = account.getOpeningBalance();
+        BigDecimal netOrZero = net != null ? net : BigDecimal.ZERO;
+        BigDecimal balance = balanceStore.getBalance(account.getId(), account.getBalance());
+
+        BigDecimal difference = balance.subtract(opening.add(netOrZero));
+        if (difference.signum() == 0) {
+            return null;
+        }
+
+        return ReconciliationMismatch.builder()
+                .runId(runId)
+                .accountId(account.getId())
+                .openingBalance(opening)
+                .net(netOrZero)
+                .balance(balance)
+                .difference(difference)
+                .build();
+    }
+
+    private Map<Long, BigDecimal> findNets(Long from, Long to) {
+        return transactionClient.getNets(from, to).stream()
+                .collect(Collectors.toMap(AccountNet::getAccountId, AccountNet::getNet));
+    }
+
+    private Set<Long> findPendingAccountIds(Long from, Long to) {
+        Set<Long> accountIds = new HashSet<>();
+        for (TransactionOutbox outbox : transactionOutboxRepository
+                .findBySenderIdBetweenOrReceiverIdBetween(from, to, from, to)) {
+            accountIds.add(outbox.getSenderId());
+            accountIds.add(outbox.getReceiverId());
+        }
+        return accountIds;
+    }
+
+    private void checkpoint(ReconciliationRun run, long checkpoint, RangeResult result) {
+        transactionTemplate.executeWithoutResult(status -> {
+            reconciliationMismatchRepository.saveAll(result.mismatches);
+
+            run.setCheckpoint(checkpoint);
+            run.setAccounts(run.getAccounts() + result.accounts);
+            run.setSkipped(run.getSkipped() + result.skipped);
+            run.setWithoutOpeningBalance(Optional.ofNullable(run.getWithoutOpeningBalance()).orElse(0L)
+                    + result.withoutOpeningBalance); // runs started before it was counted
+            run.setMismatches(run.getMismatches() + result.mismatches.size());
+            run.setUpdatedAt(LocalDateTime.now());
+            reconciliationRunRepository.save(run);
+        });
+    }
+
+    private void finish(ReconciliationRun run, ReconciliationStatus status) {
+        LocalDateTime now = LocalDateTime.now();
+        run.setStatus(status);
+        run.setUpdatedAt(now);
+        run.setFinishedAt(now);
+        reconciliationRunRepository.save(run);
+    }
+
+    // claimed with a conditional update, so two instances finding the same stale run do not both resume it
+    private ReconciliationRun resume(ReconciliationRun run) {
+        LocalDateTime now = LocalDateTime.now();
+        if (run.getId().equals(activeRunId)
+                || reconciliationRunRepository.claim(run.getId(), now, now.minus(staleAfter)) == 0) {
+            throw new ReconciliationRunningException(String.format("Reconciliation: %s is running!", run.getId()));
+        }
+
+        run.setStatus(ReconciliationStatus.RUNNING);
+        run.setUpdatedAt(now);
+        run.setFinishedAt(null);
+
+        log.info("Resumed a reconciliation: {}", run);
+        return submit(run);
+    }
+
+    private ReconciliationRun submit(ReconciliationRun run) {
+        activeRunId = run.getId();
+        runner.execute(() -> execute(run.getId()));
+        return run;
+    }
+
+    static class RangeResult {
+
+        private long accounts;
+        private long skipped;
+        private long withoutOpeningBalance;
+        private final List<ReconciliationMismatch> mismatches = new ArrayList<>();
+
+        long getAccounts() {
+            return accounts;
+        }
+
+        long getSkipped() {
+            return skipped;
+        }
+
+        long getWithoutOpeningBalance() {
+            return withoutOpeningBalance;
+        }
+
+        List<ReconciliationMismatch> getMismatches() {
+            return mismatches;
+        }
+
+        private RangeResult merge(RangeResult other) {
+            accounts += other.accounts;
+            skipped += other.skipped;
+            withoutOpeningBalance += other.withoutOpeningBalance;
+            mismatches.addAll(other.mismatches);
+            return this;
+        }
+    }
+
+    // halves its range until it is one range size, the left half is forked so mismatches stay in account order
+    private class RangeTask extends RecursiveTask<RangeResult> {
+
+        private final Long runId;
+        private final long from;
+        private final long to;
+
+        private RangeTask(Long runId, long from, long to) {
+            this.runId = runId;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected RangeResult compute() {
+            if (to - from < rangeSize) {
+                RangeResult result = reconcileRange(runId, from, to);
+                reconciliationRunRepository.heartbeat(runId, LocalDateTime.now());
+                return result;
+            }
+
+            long middle = from + (to - from) / 2;
+            RangeTask left = new RangeTask(runId, from, middle);
+            left.fork();
+            RangeResult right = new RangeTask(runId, middle + 1, to).compute();
+            return left.join().merge(right);
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package com.aminnorouzi.accountservice.service;
+
+import com.aminnorouzi.accountservice.client.TransactionClient;
+import com.aminnorouzi.accountservice.model.TransactionOutbox;
+import com.aminnorouzi.accountservice.model.TransactionOutboxDeadLetter;
+import com.aminnorouzi.accountservice.model.transaction.Transaction;
+import com.aminnorouzi.accountservice.model.transaction.TransactionRequest;
+import com.aminnorouzi.accountservice.repository.TransactionOutboxDeadLetterRepository;
+import com.aminnorouzi.accountservice.repository.TransactionOutboxRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@Slf4j
+@RequiredArgsConstructor
+@Service
+public class TransactionOutboxService {
+
+    private static final String IDEMPOTENCY_KEY_PREFIX = "account-outbox-";
+    private static final int ERROR_LENGTH = 1000;
+
+    private final TransactionOutboxRepository transactionOutboxRepository;
+    private final TransactionOutboxDeadLetterRepository transactionOutboxDeadLetterRepository;
+    private final TransactionClient transactionClient;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${outbox.relay.batch-size:100}")
+    private Integer batchSize;
+
+    @Value("${outbox.relay.max-attempts:10}")
+    private Integer maxAttempts;
+
+    @Value("${outbox.relay.max-pages:10}")
+    private Integer maxPages;
+
+    @Value("${outbox.relay.lease:5m}")
+    private Duration lease; // longer than a run, a run outliving it may send a row another run sends too
+
+    // written in the caller's transaction, so the row exists only if the balance change is committed
+    @Transactional(propagation = Propagation.MANDATORY)
+    public Transaction append(TransactionRequest request) {
+        TransactionOutbox saved = transactionOutboxRepository.save(toOutbox(request));
+
+        log.info("Appended new outbox transaction: {}", saved);
+        return toTransaction(saved);
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public List<Transaction> appendAll(List<TransactionRequest> requests) {
+        List<TransactionOutbox> outboxes = requests.stream()
+                .map(this::toOutbox)
+                .collect(Collectors.toList());
+
+        List<TransactionOutbox> saved = transactionOutboxRepository.saveAll(outboxes);
+
+        log.info("Appended new outbox transactions: count={}", saved.size());
+        return saved.stream()
+                .map(this::toTransaction)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Sends the relayable rows of a run in one bulk request. If that fails the rows are sent one by one, so a single
+     * bad row is retried on its own instead of holding back the whole run. A row failed before is always retried on
+     * its own, and the run pages past the rows of the accounts it holds back, so a few failing accounts never stop
+     * the relay of the others. A row that fails {@code max-attempts} times is moved to the dead-letter table.
+     * <p>
+     * Every instance runs the relay, so a run first claims the rows of a page with a lease. Rows another run holds
+     * are treated like failed rows, their accounts are held back until that run is done with them.
+     */
+    @Scheduled(fixedDelayString = "${outbox.relay.delay:1000}")
+    public void relay() {
+        String leaseOwner = UUID.randomUUID().toString();
+        try {
+            relay(leaseOwner);
+        } finally {
+            transactionOutboxRepository.release(leaseOwner);
+        }
+    }
+
+    private void relay(String leaseOwner) {
+        // accounts with a failed row are skipped to keep their transactions in order
+        Set<Long> blockedAccountIds = new HashSet<>();
+        List<TransactionOutbox> relayable = new ArrayList<>(batchSize);
+
+        long afterId = 0;
+        for (int page = 0; page < maxPages && relayable.size() < batchSize; page++) {
+            List<TransactionOutbox> pending = transactionOutboxRepository
+                    .findByAttemptsLessThanAndIdGreaterThanOrderByIdAsc(maxAttempts, afterId, PageRequest.of(0, batchSize));
+            Map<Long, TransactionOutbox> claimed = claim(pending, leaseOwner);
+            for (TransactionOutbox pendingOutbox : pending) {
+                afterId = pendingOutbox.getId();
+                TransactionOutbox outbox = claimed.get(pendingOutbox.getId());
+                if (outbox == null) {
+                    block(pendingOutbox, blockedAccountIds); // held by another run
+                } else if (isBlocked(outbox, blockedAccountIds)) {
+                    block(outbox, blockedAccountIds);
+                } else if (outbox.getAttempts() > 0) {
+                    if (!relayOne(outbox)) {
+                        block(outbox, blockedAccountIds);
+                    }
+                } else {
+                    relayable.add(outbox);
+                    if (relayable.size() == batchSize) {
+                        break;
+                    }
+                }
+            }
+
+            if (pending.size() < batchSize) {
+                break;
+            }
+        }
+
+        if (relayable.isEmpty()) {
+            return;
+        }
+
+        try {
+            List<Long> trackingCodes = transactionClient.createTransactions(relayable.stream()
+                    .map(this::toRequest)
+                    .collect(Collectors.toList()));
+            transactionOutboxRepository.deleteAllInBatch(relayable);
+
+            log.info("Relayed outbox transactions: count={}, trackingCodes={}", relayable.size(), trackingCodes);
+        } catch (RuntimeException exception) {
+            log.warn("Could not relay outbox transactions in bulk, relaying one by one: count={}, {}",
+                    relayable.size(), exception.getMessage());
+
+            relayOneByOne(relayable);
+        }
+    }
+
+    // the claimed rows as they are now, a row claimed by another run or relayed meanwhile is missing
+    private Map<Long, TransactionOutbox> claim(List<TransactionOutbox> pending, String leaseOwner) {
+        if (pending.isEmpty()) {
+            return Map.of();
+        }
+
+        List<Long> ids = pending.stream()
+                .map(TransactionOutbox::getId)
+                .collect(Collectors.toList());
+        LocalDateTime now = LocalDateTime.now();
+        transactionOutboxRepository.claim(ids, leaseOwner, now.plus(lease), now);
+
+        return transactionOutboxRepository.findByLeaseOwnerAndIdIn(leaseOwner, ids).stream()
+                .collect(Collectors.toMap(TransactionOutbox::getId, Function.identity()));
+    }
+
+    // rows parked in the outbox before they were dead-lettered, or parked under a lowered max-attempts
+    @EventListener(ApplicationReadyEvent.class)
+    public void deadLetterParked() {
+        List<TransactionOutbox> parked = transactionOutboxRepository.findByAttemptsGreaterThanEqual(maxAttempts);
+        parked.forEach(outbox -> deadLetter(outbox, "Parked in the outbox"));
+    }
+
+    // accounts with a failed row are skipped for the rest of this run to keep their transactions in order
+    private void relayOneByOne(List<TransactionOutbox> outboxes) {
+        Set<Long> blockedAccountIds = new HashSet<>();
+        for (TransactionOutbox outbox : outboxes) {
+            if (isBlocked(outbox, blockedAccountIds) || !relayOne(outbox)) {
+                block(outbox, blockedAccountIds);
+            }
+        }
+    }
+
+    private boolean relayOne(TransactionOutbox outbox) {
+        try {
+            Transaction transaction = transactionClient.createTransaction(toRequest(outbox));
+            transactionOutboxRepository.delete(outbox);
+
+            log.info("Relayed an outbox transaction: id={}, {}", outbox.getId(), transaction);
+            return true;
+        } catch (RuntimeException exception) {
+            markFailedAttempt(outbox, exception);
+            return false;
+        }
+    }
+
+    private boolean isBlocked(TransactionOutbox outbox, Set<Long> blockedAccountIds) {
+        return blockedAccountIds.contains(outbox.getSenderId())
+                || blockedAccountIds.contains(outbox.getReceiverId());
+    }
+
+    private void block(TransactionOutbox outbox, Set<Long> blockedAccountIds) {
+        blockedAccountIds.add(outbox.getSenderId());
+        blockedAccountIds.add(outbox.getReceiverId());
+    }
+
+    private void markFailedAttempt(TransactionOutbox outbox, RuntimeException exception) {
+        outbox.setAttempts(outbox.getAttempts() + 1);
+        if (outbox.getAttempts() >= maxAttempts) {
+            deadLetter(outbox, exception.getMessage());
+            return;
+        }
+
+        transactionOutboxRepository.save(outbox);
+        log.warn("Failed to relay an outbox transaction: id={}, attempts={}, {}",
+                outbox.getId(), outbox.getAttempts(), exception.getMessage());
+    }
+
+    private void deadLetter(TransactionOutbox outbox, String error) {
+        transactionTemplate.executeWithoutResult(status -> {
+            transactionOutboxDeadLetterRepository.save(toDeadLetter(outbox, error));
+            transactionOutboxRepository.delete(outbox);
+        });
+
+        log.error("Dead-lettered an outbox transaction: id={}, attempts={}, {}",
+                outbox.getId(), outbox.getAttempts(), error);
+    }
+
+    private TransactionOutbox toOutbox(TransactionRequest request) {
+        return TransactionOutbox.builder()
+                .senderId(request.getSenderId())
+                .receiverId(request.getReceiverId())
+                .amount(request.getAmount())
+                .note(request.getNote())
+                .type(request.getType())
+                .status(request.getStatus())
+                .idempotencyKey(IDEMPOTENCY_KEY_PREFIX + UUID.randomUUID())
+                .attempts(0)
+                .createdAt(LocalDate.now())
+                .build();
+    }
+
+    // keyed by the outbox row, a relay retried after a lost response does not log the transaction twice
+    private TransactionRequest toRequest(TransactionOutbox outbox) {
+        return TransactionRequest.builder()
+                .senderId(outbox.getSenderId())
+                .receiverId(outbox.getReceiverId())
+                .amount(outbox.getAmount())
+                .note(outbox.getNote())
+                .type(outbox.getType())
+                .status(outbox.getStatus())
+                .idempotencyKey(toIdempotencyKey(outbox))
+                .build();
+    }
+
+    private TransactionOutboxDeadLetter toDeadLetter(TransactionOutbox outbox, String error) {
+        return TransactionOutboxDeadLetter.builder()
+                .id(outbox.getId())
+                .idempotencyKey(toIdempotencyKey(outbox))
+                .senderId(outbox.getSenderId())
+                .receiverId(outbox.getReceiverId())
+                .amount(outbox.getAmount())
+                .note(outbox.getNote())
+                .type(outbox.getType())
+                .status(outbox.getStatus())
+                .attempts(outbox.getAttempts())
+                .error(error != null && error.length() > ERROR_LENGTH ? error.substring(0, ERROR_LENGTH) : error)
+                .createdAt(outbox.getCreatedAt())
+                .parkedAt(LocalDateTime.now())
+                .build();
+    }
+
+    private Transaction toTransaction(TransactionOutbox outbox) {
+        return Transaction.builder()
+                .senderId(outbox.getSenderId())
+                .receiverId(outbox.getReceiverId())
+                .amount(outbox.getAmount())
+                .note(outbox.getNote())
+                .type(outbox.getType())
+                .status(outbox.getStatus())
+                .createdAt(outbox.getCreatedAt())
+                .idempotencyKey(toIdempotencyKey(outbox))
+                .build();
+    }
+
+    // rows appended before the key column existed were already sent keyed by their id
+    private String toIdempotencyKey(TransactionOutbox outbox) {
+        return outbox.getIdempotencyKey() != null ? outbox.getIdempotencyKey() : IDEMPOTENCY_KEY_PREFIX + outbox.getId();
+    }
+}
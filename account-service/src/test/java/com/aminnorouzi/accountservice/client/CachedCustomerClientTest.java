@@ -0,0 +1,118 @@
+package com.aminnorouzi.accountservice.client;
+
+import com.aminnorouzi.accountservice.exception.NotValidAccountCustomerException;
+import com.aminnorouzi.accountservice.model.customer.Customer;
+import feign.FeignException;
+import feign.Request;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class CachedCustomerClientTest {
+
+    @Mock
+    private CustomerClient customerClient;
+
+    private CachedCustomerClient cachedCustomerClient;
+
+    @BeforeEach
+    void setUp() {
+        cachedCustomerClient = new CachedCustomerClient(customerClient, 100L, Duration.ofMinutes(5), Duration.ofSeconds(30));
+    }
+
+    @Test
+    void shouldCacheFoundCustomer() {
+        // given
+        long id = 10;
+        given(customerClient.getCustomerById(id))
+                .willReturn(Customer.builder().id(id).fullName("test").build());
+
+        // when
+        cachedCustomerClient.getCustomerById(id);
+        boolean verified = cachedCustomerClient.verifyCustomer(id);
+
+        // then
+        assertThat(verified).isTrue();
+        assertThat(cachedCustomerClient.getStats().get("customers.hits")).isEqualTo(1L);
+
+        verify(customerClient, times(1)).getCustomerById(id);
+    }
+
+    @Test
+    void shouldCacheMissingCustomer() {
+        // given
+        long id = 10;
+        given(customerClient.getCustomerById(id))
+                .willThrow(notFound());
+
+        // when
+        boolean verified = cachedCustomerClient.verifyCustomer(id);
+
+        // then
+        assertThat(verified).isFalse();
+        assertThatThrownBy(() -> cachedCustomerClient.getCustomerById(id))
+                .isInstanceOf(NotValidAccountCustomerException.class)
+                .hasMessageContaining(String.format("Customer: %s not found!", id));
+
+        verify(customerClient, times(1)).getCustomerById(id);
+    }
+
+    @Test
+    void shouldReloadCustomerWhenEvicted() {
+        // given
+        long id = 10;
+        given(customerClient.getCustomerById(id))
+                .willReturn(Customer.builder().id(id).fullName("test").build());
+
+        // when
+        cachedCustomerClient.getCustomerById(id);
+        cachedCustomerClient.evict(id);
+        cachedCustomerClient.getCustomerById(id);
+
+        // then
+        verify(customerClient, times(2)).getCustomerById(id);
+    }
+
+    @Test
+    void shouldFetchOnlyUncachedCustomersInBulk() {
+        // given
+        given(customerClient.getCustomerById(10L))
+                .willReturn(Customer.builder().id(10L).fullName("test").build());
+
+        given(customerClient.getCustomersByIds(List.of(11L, 12L)))
+                .willReturn(List.of(Customer.builder().id(11L).fullName("test").build()));
+
+        // when
+        cachedCustomerClient.getCustomerById(10L);
+        List<Customer> found = cachedCustomerClient.getCustomersByIds(List.of(10L, 11L, 12L));
+
+        // then
+        assertThat(found.size()).isEqualTo(2);
+        assertThat(found.get(0).getId()).isEqualTo(10L);
+        assertThat(cachedCustomerClient.verifyCustomer(12L)).isFalse();
+
+        verify(customerClient, times(1)).getCustomersByIds(List.of(11L, 12L));
+        verify(customerClient, never()).getCustomerById(12L);
+    }
+
+    private FeignException.NotFound notFound() {
+        Request request = Request.create(Request.HttpMethod.GET, "/api/v1/customers/10", Collections.emptyMap(),
+                null, StandardCharsets.UTF_8, null);
+        return new FeignException.NotFound("Not Found", request, null, Collections.emptyMap());
+    }
+}
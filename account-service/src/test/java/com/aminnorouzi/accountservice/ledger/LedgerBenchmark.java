@@ -0,0 +1,94 @@
+package com.aminnorouzi.accountservice.ledger;
+
+import com.aminnorouzi.accountservice.model.Status;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deposit, withdraw and transfer throughput of the ledger, every operation waits for its fsync.
+ * Run with {@code mvn test-compile} and then the main method from the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(16)
+public class LedgerBenchmark {
+
+    private static final List<Status> STATUSES = List.of(Status.OPEN);
+
+    @Param({"1", "10000"})
+    private int accounts; // 1 is a single hot account
+
+    private Path directory;
+    private Ledger ledger;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("ledger-benchmark");
+        ledger = new Ledger(accounts);
+        for (long id = 1; id <= accounts + 1; id++) {
+            ledger.openAccount(id, Long.MAX_VALUE / 4, Status.OPEN);
+        }
+        ledger.recover(directory, 64 * 1024 * 1024, 0, lsn -> true);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        ledger.close();
+        try (var files = Files.walk(directory)) {
+            files.sorted((first, second) -> second.compareTo(first)).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public void deposit() {
+        commit(ledger.deposit(randomAccount(), 100, STATUSES));
+    }
+
+    @Benchmark
+    public void withdraw() {
+        commit(ledger.withdraw(randomAccount(), 100, STATUSES));
+    }
+
+    @Benchmark
+    public void transfer() {
+        long sender = randomAccount();
+        commit(ledger.transfer(sender, sender + 1, 100, STATUSES, STATUSES));
+    }
+
+    @Benchmark
+    public long balance() {
+        return ledger.getBalance(randomAccount());
+    }
+
+    // one movement per database transaction, the worst case for the fsync
+    private void commit(long lsn) {
+        ledger.awaitDurable(lsn);
+        ledger.commit(lsn);
+    }
+
+    private long randomAccount() {
+        return ThreadLocalRandom.current().nextLong(accounts) + 1;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(LedgerBenchmark.class.getSimpleName())
+                .build();
+
+        new Runner(options).run();
+    }
+}
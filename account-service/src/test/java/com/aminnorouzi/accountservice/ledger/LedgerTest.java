@@ -0,0 +1,261 @@
+package com.aminnorouzi.accountservice.ledger;
+
+import com.aminnorouzi.accountservice.exception.AccountNotFoundException;
+import com.aminnorouzi.accountservice.exception.IllegalAccountStatusException;
+import com.aminnorouzi.accountservice.exception.NotEnoughAccountBalanceException;
+import com.aminnorouzi.accountservice.model.Status;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+
+class LedgerTest {
+
+    private static final int SEGMENT_SIZE = 10 * WriteAheadLog.RECORD_SIZE;
+    private static final List<Status> DEPOSIT_STATUSES = List.of(Status.OPEN, Status.WITHDRAWAL_BLOCKED);
+    private static final List<Status> WITHDRAWAL_STATUSES = List.of(Status.OPEN, Status.DEPOSIT_BLOCKED);
+
+    @TempDir
+    Path directory;
+
+    private final Set<Long> committed = new HashSet<>(); // stands in for the ledger_commit table
+
+    private Ledger ledger;
+
+    @AfterEach
+    void tearDown() {
+        ledger.close();
+    }
+
+    @Test
+    void shouldMoveBalances() throws IOException {
+        // given
+        ledger = openLedger(0);
+
+        // when
+        commit(ledger.deposit(1, 1000, DEPOSIT_STATUSES));
+        commit(ledger.withdraw(1, 300, WITHDRAWAL_STATUSES));
+        commit(ledger.transfer(1, 2, 200, WITHDRAWAL_STATUSES, DEPOSIT_STATUSES));
+
+        // then
+        assertThat(ledger.getBalance(1)).isEqualTo(1500L);
+        assertThat(ledger.getBalance(2)).isEqualTo(200L);
+    }
+
+    @Test
+    void shouldRejectTransferWithoutMovingAnything() throws IOException {
+        // given
+        ledger = openLedger(0);
+        commit(ledger.deposit(1, 100, DEPOSIT_STATUSES));
+        ledger.changeStatus(2, Status.DEPOSIT_BLOCKED);
+
+        // when
+        // then
+        assertThatThrownBy(() -> ledger.transfer(1, 2, 50, WITHDRAWAL_STATUSES, DEPOSIT_STATUSES))
+                .isInstanceOf(IllegalAccountStatusException.class)
+                .hasMessageContaining("Account: 2 is not available for deposit!");
+        assertThatThrownBy(() -> ledger.withdraw(1, 1101, WITHDRAWAL_STATUSES))
+                .isInstanceOf(NotEnoughAccountBalanceException.class);
+        assertThatThrownBy(() -> ledger.deposit(3, 1, DEPOSIT_STATUSES))
+                .isInstanceOf(AccountNotFoundException.class);
+
+        assertThat(ledger.getBalance(1)).isEqualTo(1100L);
+        assertThat(ledger.getBalance(2)).isEqualTo(0L);
+    }
+
+    @Test
+    void shouldReplayLogAcrossSegmentsOnRecovery() throws IOException {
+        // given
+        ledger = openLedger(0);
+        for (int i = 0; i < 25; i++) {
+            commit(ledger.transfer(i % 2 == 0 ? 1 : 2, i % 2 == 0 ? 2 : 1, 10, WITHDRAWAL_STATUSES, DEPOSIT_STATUSES));
+            commit(ledger.deposit(1, 1, DEPOSIT_STATUSES));
+        }
+        ledger.close();
+
+        // when
+        ledger = openLedger(0);
+
+        // then
+        assertThat(ledger.getBalance(1)).isEqualTo(1000L + 25 - 10);
+        assertThat(ledger.getBalance(2)).isEqualTo(10L);
+    }
+
+    @Test
+    void shouldIgnoreTornRecordOnRecovery() throws IOException {
+        // given
+        ledger = openLedger(0);
+        commit(ledger.deposit(1, 10, DEPOSIT_STATUSES));
+        commit(ledger.deposit(1, 20, DEPOSIT_STATUSES));
+        ledger.close();
+
+        try (RandomAccessFile file = new RandomAccessFile(segments().get(0).toFile(), "rw")) {
+            file.seek(WriteAheadLog.RECORD_SIZE + 24);
+            file.writeLong(999);
+        }
+
+        // when
+        ledger = openLedger(0);
+
+        // then
+        assertThat(ledger.getBalance(1)).isEqualTo(1010L);
+    }
+
+    @Test
+    void shouldDropSegmentsCoveredBySnapshot() throws IOException {
+        // given
+        ledger = openLedger(0);
+        for (int i = 0; i < 25; i++) {
+            commit(ledger.deposit(1, 1, DEPOSIT_STATUSES));
+        }
+
+        // when
+        Ledger.Snapshot snapshot = ledger.snapshot();
+        ledger.truncate(snapshot.getCheckpointLsn());
+        commit(ledger.deposit(2, 5, DEPOSIT_STATUSES));
+        ledger.close();
+
+        ledger = openLedger(snapshot.getCheckpointLsn(), snapshot.getBalances()[0], 0);
+
+        // then
+        assertThat(snapshot.getLsn()).isEqualTo(25L);
+        assertThat(snapshot.getIds().length).isEqualTo(1);
+        assertThat(segments().size()).isEqualTo(2);
+        assertThat(ledger.getBalance(1)).isEqualTo(1025L);
+        assertThat(ledger.getBalance(2)).isEqualTo(5L);
+    }
+
+    @Test
+    void shouldNotReplayUncommittedMovementOnRecovery() throws IOException {
+        // given
+        ledger = openLedger(0);
+        commit(ledger.deposit(1, 10, DEPOSIT_STATUSES));
+        long lsn = ledger.withdraw(1, 500, WITHDRAWAL_STATUSES);
+        ledger.awaitDurable(lsn); // durable, but the database transaction around it never commits
+
+        // when
+        ledger.close();
+        ledger = openLedger(0);
+
+        // then
+        assertThat(ledger.getBalance(1)).isEqualTo(1010L);
+    }
+
+    @Test
+    void shouldUndoRolledBackMovement() throws IOException {
+        // given
+        ledger = openLedger(0);
+        long lsn = ledger.transfer(1, 2, 400, WITHDRAWAL_STATUSES, DEPOSIT_STATUSES);
+
+        // when
+        ledger.rollback(lsn);
+
+        // then
+        assertThat(ledger.getBalance(1)).isEqualTo(1000L);
+        assertThat(ledger.getBalance(2)).isEqualTo(0L);
+    }
+
+    @Test
+    void shouldLeavePendingMovementOutOfSnapshot() throws IOException {
+        // given
+        ledger = openLedger(0);
+        commit(ledger.deposit(1, 10, DEPOSIT_STATUSES));
+        long lsn = ledger.transfer(1, 2, 300, WITHDRAWAL_STATUSES, DEPOSIT_STATUSES);
+        commit(ledger.deposit(2, 7, DEPOSIT_STATUSES));
+
+        // when
+        Ledger.Snapshot snapshot = ledger.snapshot();
+        commit(lsn); // the transfer commits after the snapshot was cut
+        ledger.close();
+
+        committed.removeIf(committedLsn -> committedLsn <= snapshot.getLsn() && committedLsn != lsn);
+        ledger = openLedger(snapshot.getCheckpointLsn(), balanceOf(snapshot, 1), balanceOf(snapshot, 2));
+
+        // then
+        assertThat(snapshot.getPendingLsns().length).isEqualTo(1);
+        assertThat(snapshot.getPendingLsns()[0]).isEqualTo(lsn);
+        assertThat(snapshot.getCheckpointLsn()).isEqualTo(lsn - 1);
+        assertThat(balanceOf(snapshot, 1)).isEqualTo(1010L);
+        assertThat(balanceOf(snapshot, 2)).isEqualTo(7L);
+        assertThat(ledger.getBalance(1)).isEqualTo(710L);
+        assertThat(ledger.getBalance(2)).isEqualTo(307L);
+    }
+
+    @Test
+    void shouldReadBalanceWithoutLockWhileAccountsAreOpened() throws Exception {
+        // given
+        ledger = openLedger(0);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        CompletableFuture<Long> reader = CompletableFuture.supplyAsync(() -> {
+            long last = 0;
+            while (writing.get()) {
+                long balance = ledger.getBalance(1);
+                if (balance < last) {
+                    return balance;
+                }
+                last = balance;
+            }
+            return ledger.getBalance(1);
+        });
+
+        // when
+        for (long id = 3; id < 2000; id++) {
+            ledger.openAccount(id, 0, Status.OPEN); // grows the map past several resizes
+            commit(ledger.deposit(1, 1, DEPOSIT_STATUSES));
+        }
+        writing.set(false);
+
+        // then
+        assertThat(reader.get(5, TimeUnit.SECONDS)).isEqualTo(1000L + 1997);
+    }
+
+    private void commit(long lsn) {
+        ledger.awaitDurable(lsn);
+        committed.add(lsn);
+        ledger.commit(lsn);
+    }
+
+    private Ledger openLedger(long checkpointLsn) throws IOException {
+        return openLedger(checkpointLsn, 1000, 0);
+    }
+
+    // accounts 1 and 2 come from the snapshot with the given balances
+    private Ledger openLedger(long checkpointLsn, long firstBalance, long secondBalance) throws IOException {
+        Ledger opened = new Ledger(16);
+        opened.openAccount(1, firstBalance, Status.OPEN);
+        opened.openAccount(2, secondBalance, Status.OPEN);
+        opened.recover(directory, SEGMENT_SIZE, checkpointLsn, committed::contains);
+        return opened;
+    }
+
+    private long balanceOf(Ledger.Snapshot snapshot, long id) {
+        for (int index = 0; index < snapshot.getIds().length; index++) {
+            if (snapshot.getIds()[index] == id) {
+                return snapshot.getBalances()[index];
+            }
+        }
+
+        throw new IllegalArgumentException(String.format("Account: %s is not in the snapshot!", id));
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.sorted().collect(Collectors.toList());
+        }
+    }
+}
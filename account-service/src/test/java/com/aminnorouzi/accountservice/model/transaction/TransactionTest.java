@@ -0,0 +1,44 @@
+package com.aminnorouzi.accountservice.model.transaction;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+
+class TransactionTest {
+
+    private static final long ID = (1L << 53) + 1; // the first integer a javascript number can not hold
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    @Test
+    void shouldReadAndWriteTrackingCodeAsString() throws Exception {
+        // given
+        String json = String.format("{\"id\":\"%s\",\"senderId\":10}", ID);
+
+        // when
+        Transaction read = objectMapper.readValue(json, Transaction.class);
+        String written = objectMapper.writeValueAsString(read);
+
+        // then
+        assertThat(read.getId()).isEqualTo(ID);
+        assertThat(written).contains(String.format("\"id\":\"%s\"", ID));
+    }
+
+    @Test
+    void shouldReadBatchTrackingCodesSentAsStrings() throws Exception {
+        // given
+        String json = String.format("[\"%s\",\"%s\"]", ID, ID + 1);
+
+        // when
+        List<Long> trackingCodes = objectMapper.readValue(json, new TypeReference<>() {
+        });
+
+        // then
+        assertThat(trackingCodes.get(0)).isEqualTo(ID);
+        assertThat(trackingCodes.get(1)).isEqualTo(ID + 1);
+    }
+}
@@ -0,0 +1,126 @@
+package com.aminnorouzi.accountservice.repository;
+
+import com.aminnorouzi.accountservice.model.Account;
+import com.aminnorouzi.accountservice.model.Currency;
+import com.aminnorouzi.accountservice.model.Status;
+import com.aminnorouzi.accountservice.model.Type;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.cfg.Configuration;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Withdrawal throughput of the way the service worked before, {@code findById} then a balance check in java and
+ * {@code save}, against the single conditional UPDATE of {@link AccountRepository#decreaseBalance}. Both run through
+ * hibernate with the {@link Account} mapping, one transaction per withdrawal, on an in-memory H2. The read and save
+ * path takes no lock, concurrent withdrawals of one account lose updates there. The numbers compare the two paths
+ * under contention and do not predict mysql throughput.
+ * Run with {@code mvn test-compile} and then the main method from the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class AccountBalanceBenchmark {
+
+    private static final BigDecimal AMOUNT = BigDecimal.ONE;
+    private static final List<Status> STATUSES = List.of(Status.OPEN, Status.DEPOSIT_BLOCKED);
+
+    @Param({"1", "1000"})
+    private int accounts; // 1 is a single hot account
+
+    private SessionFactory sessionFactory;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        sessionFactory = new Configuration()
+                .addAnnotatedClass(Account.class)
+                .setProperty("hibernate.connection.url",
+                        "jdbc:h2:mem:account-balance-benchmark;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000")
+                .setProperty("hibernate.connection.pool_size", "16")
+                .setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect")
+                .setProperty("hibernate.hbm2ddl.auto", "create-drop")
+                .buildSessionFactory();
+
+        try (Session session = sessionFactory.openSession()) {
+            Transaction transaction = session.beginTransaction();
+            for (long id = 1; id <= accounts; id++) {
+                session.persist(Account.builder()
+                        .title("benchmark")
+                        .balance(BigDecimal.valueOf(1_000_000_000_000L))
+                        .balanceVersion(0L)
+                        .status(Status.OPEN)
+                        .type(Type.SAVING)
+                        .currency(Currency.IRR)
+                        .createdAt(LocalDate.now())
+                        .customerIds(List.of(id))
+                        .build());
+            }
+            transaction.commit();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        sessionFactory.close();
+    }
+
+    @Benchmark
+    public boolean findAndSave() {
+        try (Session session = sessionFactory.openSession()) {
+            Transaction transaction = session.beginTransaction();
+            Account account = session.find(Account.class, randomAccount());
+            if (!STATUSES.contains(account.getStatus()) || account.getBalance().compareTo(AMOUNT) < 0) {
+                transaction.rollback();
+                return false;
+            }
+
+            account.setBalance(account.getBalance().subtract(AMOUNT));
+            session.merge(account); // what SimpleJpaRepository.save does with a loaded entity
+            transaction.commit();
+            return true;
+        }
+    }
+
+    @Benchmark
+    public int conditionalUpdate() {
+        try (Session session = sessionFactory.openSession()) {
+            Transaction transaction = session.beginTransaction();
+            int updated = session.createQuery("UPDATE Account AS a SET a.balance = a.balance - ?2, " +
+                            "a.balanceVersion = COALESCE(a.balanceVersion, 0) + 1 " +
+                            "WHERE a.id = ?1 AND a.status IN ?3 AND a.balance >= ?2")
+                    .setParameter(1, randomAccount())
+                    .setParameter(2, AMOUNT)
+                    .setParameter(3, STATUSES)
+                    .executeUpdate();
+            transaction.commit();
+            return updated;
+        }
+    }
+
+    private long randomAccount() {
+        return ThreadLocalRandom.current().nextLong(accounts) + 1;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(AccountBalanceBenchmark.class.getSimpleName())
+                .build();
+
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,169 @@
+package com.aminnorouzi.accountservice.repository;
+
+import com.aminnorouzi.accountservice.model.Account;
+import com.aminnorouzi.accountservice.model.Currency;
+import com.aminnorouzi.accountservice.model.Status;
+import com.aminnorouzi.accountservice.model.Type;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.PageRequest;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+class AccountRepositoryTest {
+
+    private static final int ACCOUNTS = 1000;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        statistics = entityManager.getEntityManager().getEntityManagerFactory()
+                .unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @Test
+    void shouldLoadCustomerAccountsInBoundedQueries() {
+        // given
+        long customerId = 10;
+        IntStream.range(0, ACCOUNTS).forEach(i -> entityManager.persist(Account.builder()
+                .title("test")
+                .balance(BigDecimal.ZERO)
+                .status(Status.OPEN)
+                .type(Type.SAVING)
+                .currency(Currency.IRR)
+                .createdAt(LocalDate.now())
+                .customerIds(List.of(customerId, customerId + i + 1))
+                .build()));
+        entityManager.flush();
+        entityManager.clear();
+        statistics.clear();
+
+        // when
+        List<Account> found = accountRepository.findByCustomerId(customerId);
+
+        // then
+        assertThat(found.size()).isEqualTo(ACCOUNTS);
+        assertThat(found.get(0).getCustomerIds().size()).isEqualTo(2);
+        // one account query, then one customer ids query per batch of 100 accounts
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1 + ACCOUNTS / 100L);
+    }
+
+    @Test
+    void shouldLoadAccountsPageWithOneCustomerIdsQuery() {
+        // given
+        IntStream.range(0, Account.CUSTOMER_IDS_BATCH_SIZE + 1).forEach(i -> entityManager.persist(Account.builder()
+                .title("test")
+                .balance(BigDecimal.ZERO)
+                .status(Status.OPEN)
+                .type(Type.SAVING)
+                .currency(Currency.IRR)
+                .createdAt(LocalDate.now())
+                .customerIds(List.of((long) i))
+                .build()));
+        entityManager.flush();
+        entityManager.clear();
+        statistics.clear();
+
+        // when
+        List<Account> found = accountRepository.findByIdGreaterThanOrderByIdAsc(0L,
+                PageRequest.of(0, Account.CUSTOMER_IDS_BATCH_SIZE));
+
+        // then
+        assertThat(found.size()).isEqualTo(Account.CUSTOMER_IDS_BATCH_SIZE);
+        assertThat(found.get(Account.CUSTOMER_IDS_BATCH_SIZE - 1).getCustomerIds().size()).isEqualTo(1);
+        // one accounts query and one customer ids query for the whole page
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(2L);
+    }
+
+    @Test
+    void shouldChangeStatusWithoutWritingBalance() {
+        // given
+        Account account = entityManager.persist(Account.builder()
+                .title("test")
+                .balance(BigDecimal.valueOf(100))
+                .status(Status.OPEN)
+                .type(Type.SAVING)
+                .currency(Currency.IRR)
+                .createdAt(LocalDate.now())
+                .customerIds(List.of(10L))
+                .build());
+        entityManager.flush();
+        entityManager.clear();
+
+        // a deposit committed after the account was read for the status change
+        accountRepository.increaseBalance(account.getId(), BigDecimal.TEN, List.of(Status.OPEN));
+
+        // when
+        int blocked = accountRepository.changeStatus(account.getId(), Status.DEPOSIT_BLOCKED, null);
+        int closed = accountRepository.changeStatus(account.getId(), Status.CLOSED, LocalDate.now());
+        int reopened = accountRepository.changeStatus(account.getId(), Status.OPEN, null);
+        entityManager.clear();
+
+        // then
+        Account found = accountRepository.findById(account.getId()).orElseThrow();
+
+        assertThat(blocked).isEqualTo(1);
+        assertThat(closed).isEqualTo(1);
+        assertThat(reopened).isEqualTo(0);
+        assertThat(found.getStatus()).isEqualTo(Status.CLOSED);
+        assertThat(found.getClosedAt()).isEqualTo(LocalDate.now());
+        assertThat(found.getBalance().compareTo(BigDecimal.valueOf(110))).isEqualTo(0);
+    }
+
+    @Test
+    void shouldBackfillTitleOwnerWithFirstCustomer() {
+        // given
+        Account legacy = entityManager.persist(Account.builder()
+                .title("test")
+                .balance(BigDecimal.ZERO)
+                .status(Status.OPEN)
+                .type(Type.SAVING)
+                .currency(Currency.IRR)
+                .createdAt(LocalDate.now())
+                .customerIds(List.of(20L, 10L))
+                .build());
+        Account titled = entityManager.persist(Account.builder()
+                .title("test")
+                .titleCustomerId(10L)
+                .balance(BigDecimal.ZERO)
+                .status(Status.OPEN)
+                .type(Type.SAVING)
+                .currency(Currency.IRR)
+                .createdAt(LocalDate.now())
+                .customerIds(List.of(20L, 10L))
+                .build());
+        entityManager.flush();
+        entityManager.clear();
+
+        // when
+        int backfilled = accountRepository.initializeTitleCustomerIds();
+        entityManager.clear();
+
+        // then
+        assertThat(backfilled).isEqualTo(1);
+        assertThat(accountRepository.findById(legacy.getId()).orElseThrow().getTitleCustomerId()).isEqualTo(20L);
+        assertThat(accountRepository.findById(titled.getId()).orElseThrow().getTitleCustomerId()).isEqualTo(10L);
+        assertThat(accountRepository.findByTitleCustomerId(20L).size()).isEqualTo(1);
+    }
+}
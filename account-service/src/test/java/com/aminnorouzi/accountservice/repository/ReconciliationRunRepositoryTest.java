@@ -0,0 +1,79 @@
+package com.aminnorouzi.accountservice.repository;
+
+import com.aminnorouzi.accountservice.model.ReconciliationRun;
+import com.aminnorouzi.accountservice.model.ReconciliationStatus;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect")
+class ReconciliationRunRepositoryTest {
+
+    @Autowired
+    private ReconciliationRunRepository reconciliationRunRepository;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Test
+    void shouldClaimStaleRunOnlyOnce() {
+        // given
+        LocalDateTime now = LocalDateTime.now();
+        Long id = persistRun(ReconciliationStatus.RUNNING, now.minusMinutes(10)).getId();
+
+        // when
+        int first = reconciliationRunRepository.claim(id, now, now.minusMinutes(5));
+        int second = reconciliationRunRepository.claim(id, now, now.minusMinutes(5));
+        entityManager.clear();
+
+        // then
+        assertThat(first).isEqualTo(1);
+        assertThat(second).isEqualTo(0);
+        assertThat(reconciliationRunRepository.findById(id).orElseThrow().getUpdatedAt()).isAfter(now.minusMinutes(5));
+    }
+
+    @Test
+    void shouldNotClaimRunWithRecentHeartbeat() {
+        // given
+        LocalDateTime now = LocalDateTime.now();
+        Long running = persistRun(ReconciliationStatus.RUNNING, now.minusMinutes(10)).getId();
+        Long failed = persistRun(ReconciliationStatus.FAILED, now.minusMinutes(1)).getId();
+        Long completed = persistRun(ReconciliationStatus.COMPLETED, now.minusMinutes(10)).getId();
+
+        // when
+        reconciliationRunRepository.heartbeat(running, now.minusMinutes(1));
+        int claimedRunning = reconciliationRunRepository.claim(running, now, now.minusMinutes(5));
+        int claimedFailed = reconciliationRunRepository.claim(failed, now, now.minusMinutes(5));
+        int claimedCompleted = reconciliationRunRepository.claim(completed, now, now.minusMinutes(5));
+        entityManager.clear();
+
+        // then
+        assertThat(claimedRunning).isEqualTo(0);
+        assertThat(claimedFailed).isEqualTo(1);
+        assertThat(claimedCompleted).isEqualTo(0);
+        assertThat(reconciliationRunRepository.findById(failed).orElseThrow().getStatus())
+                .isEqualTo(ReconciliationStatus.RUNNING);
+    }
+
+    private ReconciliationRun persistRun(ReconciliationStatus status, LocalDateTime updatedAt) {
+        ReconciliationRun run = entityManager.persist(ReconciliationRun.builder()
+                .status(status)
+                .rangeSize(2)
+                .lastAccountId(8L)
+                .checkpoint(1L)
+                .accounts(0L)
+                .skipped(0L)
+                .withoutOpeningBalance(0L)
+                .mismatches(0L)
+                .startedAt(updatedAt)
+                .updatedAt(updatedAt)
+                .build());
+        entityManager.flush();
+        return run;
+    }
+}
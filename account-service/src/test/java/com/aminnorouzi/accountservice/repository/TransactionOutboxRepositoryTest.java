@@ -0,0 +1,81 @@
+package com.aminnorouzi.accountservice.repository;
+
+import com.aminnorouzi.accountservice.model.TransactionOutbox;
+import com.aminnorouzi.accountservice.model.transaction.Status;
+import com.aminnorouzi.accountservice.model.transaction.Type;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect")
+class TransactionOutboxRepositoryTest {
+
+    @Autowired
+    private TransactionOutboxRepository transactionOutboxRepository;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Test
+    void shouldClaimRowsOnlyOnceUntilLeaseExpires() {
+        // given
+        List<Long> ids = List.of(persistOutbox().getId(), persistOutbox().getId());
+        LocalDateTime now = LocalDateTime.now();
+
+        // when
+        int first = transactionOutboxRepository.claim(ids, "first", now.plusMinutes(5), now);
+        int second = transactionOutboxRepository.claim(ids, "second", now.plusMinutes(5), now);
+        int expired = transactionOutboxRepository.claim(ids, "third", now.plusMinutes(15), now.plusMinutes(10));
+        entityManager.clear();
+
+        // then
+        assertThat(first).isEqualTo(2);
+        assertThat(second).isEqualTo(0);
+        assertThat(expired).isEqualTo(2);
+        assertThat(transactionOutboxRepository.findByLeaseOwnerAndIdIn("first", ids).size()).isEqualTo(0);
+        assertThat(transactionOutboxRepository.findByLeaseOwnerAndIdIn("third", ids).size()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldReleaseOnlyRowsOfLeaseOwner() {
+        // given
+        Long held = persistOutbox().getId();
+        Long other = persistOutbox().getId();
+        LocalDateTime now = LocalDateTime.now();
+        transactionOutboxRepository.claim(List.of(held), "first", now.plusMinutes(5), now);
+        transactionOutboxRepository.claim(List.of(other), "second", now.plusMinutes(5), now);
+
+        // when
+        int released = transactionOutboxRepository.release("first");
+        entityManager.clear();
+
+        // then
+        assertThat(released).isEqualTo(1);
+        assertThat(transactionOutboxRepository.findById(held).orElseThrow().getLeasedUntil()).isNull();
+        assertThat(transactionOutboxRepository.findById(other).orElseThrow().getLeaseOwner()).isEqualTo("second");
+    }
+
+    private TransactionOutbox persistOutbox() {
+        TransactionOutbox outbox = entityManager.persist(TransactionOutbox.builder()
+                .idempotencyKey("account-outbox-" + UUID.randomUUID())
+                .senderId(10L)
+                .receiverId(10L)
+                .amount(BigDecimal.TEN)
+                .type(Type.DEPOSIT)
+                .status(Status.SUCCEED)
+                .attempts(0)
+                .createdAt(LocalDate.now())
+                .build());
+        entityManager.flush();
+        return outbox;
+    }
+}
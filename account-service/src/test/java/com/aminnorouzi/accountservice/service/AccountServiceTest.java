@@ -1,33 +1,59 @@
 package com.aminnorouzi.accountservice.service;
 
 import com.aminnorouzi.accountservice.client.CustomerClient;
-import com.aminnorouzi.accountservice.client.TransactionClient;
 import com.aminnorouzi.accountservice.exception.AccountNotFoundException;
 import com.aminnorouzi.accountservice.exception.IllegalAccountStatusException;
 import com.aminnorouzi.accountservice.exception.NotEnoughAccountBalanceException;
 import com.aminnorouzi.accountservice.exception.NotValidAccountCustomerException;
+import com.aminnorouzi.accountservice.exception.NotValidChunkSizeException;
+import com.aminnorouzi.accountservice.exception.NotValidPageSizeException;
 import com.aminnorouzi.accountservice.model.*;
 import com.aminnorouzi.accountservice.model.customer.Customer;
 import com.aminnorouzi.accountservice.model.transaction.Transaction;
 import com.aminnorouzi.accountservice.model.transaction.TransactionRequest;
 import com.aminnorouzi.accountservice.repository.AccountRepository;
+import com.aminnorouzi.accountservice.repository.WithdrawalKeyRepository;
 import com.aminnorouzi.accountservice.util.StringUtils;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.hibernate.exception.ConstraintViolationException;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
-
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceException;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
 
+import static com.aminnorouzi.accountservice.model.transaction.Status.FAILED;
+import static com.aminnorouzi.accountservice.model.transaction.Status.SUCCEED;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willDoNothing;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -38,10 +64,25 @@ class AccountServiceTest {
     @Mock
     private CustomerClient customerClient;
     @Mock
-    private TransactionClient transactionClient;
-    @InjectMocks
+    private TransactionOutboxService transactionOutboxService;
+    @Mock
+    private BalanceCacheService balanceCacheService;
+    @Mock
+    private TransactionTemplate transactionTemplate;
+    @Mock
+    private EntityManager entityManager;
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    @Mock
+    private WithdrawalKeyRepository withdrawalKeyRepository;
+
     private AccountService accountService;
 
+    @BeforeEach
+    void setUp() {
+        accountService = buildAccountService(new AccountTableBalanceStore(accountRepository, balanceCacheService));
+    }
+
     @Test
     void shouldCreateAccount() {
         // given
@@ -52,21 +93,18 @@ class AccountServiceTest {
                 .balance(BigDecimal.ZERO)
                 .build();
 
-        given(customerClient.verifyCustomer(any(Long.class)))
-                .willReturn(true);
-
-        given(customerClient.getCustomerById(any(Long.class)))
-                .willReturn(Customer.builder()
-                        .fullName("test")
-                        .build());
+        given(customerClient.getCustomersByIds(request.getCustomerIds()))
+                .willReturn(List.of(
+                        Customer.builder().id(11L).fullName("other").build(),
+                        Customer.builder().id(10L).fullName("test").build()));
 
-        String generatedTitle = StringUtils.generateTitle(
-                customerClient.getCustomerById(request.getCustomerIds().get(0)).getFullName(),
-                request.getType());
+        String generatedTitle = StringUtils.generateTitle("test", request.getType());
 
         Account account = Account.builder()
                 .title(generatedTitle)
+                .titleCustomerId(10L)
                 .balance(request.getBalance())
+                .openingBalance(request.getBalance())
                 .status(Status.OPEN)
                 .type(request.getType())
                 .currency(request.getCurrency())
@@ -97,8 +135,8 @@ class AccountServiceTest {
                 .balance(BigDecimal.ZERO)
                 .build();
 
-        given(customerClient.verifyCustomer(any(Long.class)))
-                .willReturn(false);
+        given(customerClient.getCustomersByIds(request.getCustomerIds()))
+                .willReturn(List.of(Customer.builder().id(20L).build()));
 
         // when
         // then
@@ -107,6 +145,7 @@ class AccountServiceTest {
                 .hasMessageContaining(String.format("Customer: %s not found!", request.getCustomerIds().get(0)));
 
         verify(accountRepository, never()).save(any());
+        verify(customerClient, never()).getCustomerById(any(Long.class));
     }
 
     @Test
@@ -146,12 +185,17 @@ class AccountServiceTest {
                 .willReturn(Optional.of(Account.builder()
                         .status(Status.OPEN)
                         .build()));
+        given(accountRepository.changeStatus(id, Status.DEPOSIT_BLOCKED, null))
+                .willReturn(1);
 
         // when
+        Account changed = accountService.changeAccountStatus(id, status);
+
         // then
-        accountService.changeAccountStatus(id, status);
+        verify(accountRepository, times(1)).changeStatus(id, Status.DEPOSIT_BLOCKED, null);
+        verify(accountRepository, never()).save(any(Account.class));
 
-        verify(accountRepository, times(1)).save(any(Account.class));
+        assertThat(changed.getStatus()).isEqualTo(Status.DEPOSIT_BLOCKED);
     }
 
     @Test
@@ -163,12 +207,36 @@ class AccountServiceTest {
                 .willReturn(Optional.of(Account.builder()
                         .status(Status.OPEN)
                         .build()));
+        given(accountRepository.changeStatus(id, Status.CLOSED, LocalDate.now()))
+                .willReturn(1);
 
         // when
+        Account changed = accountService.changeAccountStatus(id, status);
+
         // then
-        accountService.changeAccountStatus(id, status);
+        verify(accountRepository, times(1)).changeStatus(id, Status.CLOSED, LocalDate.now());
 
-        verify(accountRepository, times(1)).save(any(Account.class));
+        assertThat(changed.getClosedAt()).isEqualTo(LocalDate.now());
+    }
+
+    @Test
+    void shouldNotChangeAccountStatusWhenClosedMeanwhile() {
+        // given
+        long id = 10;
+        String status = "deposit_blocked";
+        given(accountRepository.findById(id))
+                .willReturn(Optional.of(Account.builder()
+                        .id(id)
+                        .status(Status.OPEN)
+                        .build()));
+        given(accountRepository.changeStatus(id, Status.DEPOSIT_BLOCKED, null))
+                .willReturn(0);
+
+        // when
+        // then
+        assertThatThrownBy(() -> accountService.changeAccountStatus(id, status))
+                .isInstanceOf(IllegalAccountStatusException.class)
+                .hasMessageContaining(String.format("Account: %s is closed!", id));
     }
 
     @Test
@@ -185,7 +253,7 @@ class AccountServiceTest {
                 .isInstanceOf(AccountNotFoundException.class)
                 .hasMessageContaining(String.format("Account: %s not found!", id));
 
-        verify(accountRepository, never()).save(any(Account.class));
+        verify(accountRepository, never()).changeStatus(any(Long.class), any(Status.class), any());
     }
 
     @Test
@@ -231,23 +299,21 @@ class AccountServiceTest {
     void shouldShowAccountBalance() {
         // given
         long id = 10;
-        given(accountRepository.findById(id))
-                .willReturn(Optional.of(Account.builder()
-                        .balance(BigDecimal.ZERO)
-                        .build()));
+        given(balanceCacheService.getBalance(id))
+                .willReturn(Optional.of(new AccountBalance(id, BigDecimal.ZERO, 1L)));
 
         // when
         // then
         assertThat(accountService.showAccountBalance(id)).isEqualTo(BigDecimal.ZERO);
 
-        verify(accountRepository, times(1)).findById(id);
+        verify(accountRepository, never()).findById(any(Long.class));
     }
 
     @Test
     void shouldNotShowAccountBalanceWhenAccountNotFound() {
         // given
         long id = 10;
-        given(accountRepository.findById(id))
+        given(balanceCacheService.getBalance(id))
                 .willReturn(Optional.empty());
 
         // when
@@ -255,8 +321,6 @@ class AccountServiceTest {
         assertThatThrownBy(() -> accountService.showAccountBalance(id))
                 .isInstanceOf(AccountNotFoundException.class)
                 .hasMessageContaining(String.format("Account: %s not found!", id));
-
-        verify(accountRepository, times(1)).findById(id);
     }
 
     @Test
@@ -292,24 +356,96 @@ class AccountServiceTest {
     @Test
     void shouldGetAllAccounts() {
         // when
-        accountService.getAllAccounts();
+        accountService.getAllAccounts(10L, 100);
 
         // then
-        verify(accountRepository, times(1)).findAll();
+        verify(accountRepository, times(1)).findByIdGreaterThanOrderByIdAsc(10L, PageRequest.of(0, 100));
+        verify(accountRepository, never()).findAll();
+    }
+
+    @Test
+    void shouldLimitAllAccountsPageSize() {
+        // when
+        accountService.getAllAccounts(0L, 1000000);
+
+        // then
+        verify(accountRepository, times(1)).findByIdGreaterThanOrderByIdAsc(0L, PageRequest.of(0, 1000));
+    }
+
+    @Test
+    void shouldNotGetAllAccountsWhenPageSizeIsNotValid() {
+        // when
+        // then
+        assertThatThrownBy(() -> accountService.getAllAccounts(0L, 0))
+                .isInstanceOf(NotValidPageSizeException.class)
+                .hasMessageContaining("Page size: 0 is not valid!");
+
+        verify(accountRepository, never()).findByIdGreaterThanOrderByIdAsc(any(), any());
+    }
+
+    @Test
+    void shouldExportAccountsInPages() throws IOException {
+        // given
+        List<Account> firstPage = LongStream.rangeClosed(1, Account.CUSTOMER_IDS_BATCH_SIZE)
+                .mapToObj(id -> Account.builder().id(id).build())
+                .collect(Collectors.toList());
+        given(accountRepository.findByIdGreaterThanOrderByIdAsc(0L, PageRequest.of(0, Account.CUSTOMER_IDS_BATCH_SIZE)))
+                .willReturn(firstPage);
+        given(accountRepository.findByIdGreaterThanOrderByIdAsc((long) Account.CUSTOMER_IDS_BATCH_SIZE,
+                PageRequest.of(0, Account.CUSTOMER_IDS_BATCH_SIZE)))
+                .willReturn(List.of(Account.builder().id(1000L).build()));
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        // when
+        accountService.exportAccounts(outputStream);
+
+        // then
+        String[] lines = outputStream.toString(StandardCharsets.UTF_8).split("\n");
+
+        assertThat(lines.length).isEqualTo(Account.CUSTOMER_IDS_BATCH_SIZE + 1);
+        assertThat(lines[Account.CUSTOMER_IDS_BATCH_SIZE]).startsWith("{\"id\":1000");
+
+        verify(entityManager, times(2)).clear();
     }
 
     @Test
     void shouldGetAccountsByCustomerId() {
         // given
         long customerId = 10;
-        given(customerClient.getCustomerById(customerId))
-                .willReturn(new Customer());
 
         // when
         accountService.getAccountsByCustomerId(customerId);
 
         // then
         verify(accountRepository, times(1)).findByCustomerId(customerId);
+        verifyNoInteractions(customerClient);
+    }
+
+    @Test
+    void shouldChangeCustomerTitleOfOwnedAccountsOnly() {
+        // given
+        long customerId = 10;
+        Account owned = Account.builder()
+                .id(1L)
+                .title("old")
+                .titleCustomerId(customerId)
+                .type(Type.SAVING)
+                .customerIds(List.of(20L, customerId))
+                .build();
+        given(accountRepository.findByTitleCustomerId(customerId))
+                .willReturn(List.of(owned));
+
+        // when
+        List<Account> renamed = accountService.changeCustomerTitle(customerId, "test");
+
+        // then
+        assertThat(renamed.size()).isEqualTo(1);
+        verify(accountRepository, never()).findByCustomerId(any());
+        verify(accountRepository, times(1)).changeTitle(1L, StringUtils.generateTitle("test", Type.SAVING));
+
+        assertThat(renamed.get(0)).isSameAs(owned);
+        assertThat(owned.getTitle()).isEqualTo(StringUtils.generateTitle("test", Type.SAVING));
     }
 
     @Test
@@ -322,17 +458,18 @@ class AccountServiceTest {
                         .customerIds(customerIds)
                         .build()));
 
-        given(customerClient.getCustomerById(any(Long.class)))
-                .willReturn(Customer.builder()
-                        .fullName("test")
-                        .build());
+        given(customerClient.getCustomersByIds(customerIds))
+                .willReturn(List.of(
+                        Customer.builder().id(1L).fullName("test").build(),
+                        Customer.builder().id(2L).fullName("test").build()));
 
         // when
         accountService.getCustomersByAccountId(id);
 
         // then
         verify(accountRepository, times(1)).findById(id);
-        verify(customerClient, times(2)).getCustomerById(any(Long.class));
+        verify(customerClient, times(1)).getCustomersByIds(customerIds);
+        verify(customerClient, never()).getCustomerById(any(Long.class));
     }
 
     @Test
@@ -349,7 +486,7 @@ class AccountServiceTest {
 
         // then
         verify(accountRepository, times(1)).findById(id);
-        verify(customerClient, never()).getCustomerById(any(Long.class));
+        verify(customerClient, never()).getCustomersByIds(anyList());
     }
 
     @Test
@@ -358,22 +495,41 @@ class AccountServiceTest {
         long id = 10;
         BigDecimal amount = BigDecimal.valueOf(10000);
         String note = "test";
-        given(accountRepository.findById(id))
-                .willReturn(Optional.of(Account.builder()
-                        .status(Status.OPEN)
-                        .balance(BigDecimal.ZERO)
-                        .build()));
+        given(accountRepository.increaseBalance(eq(id), eq(amount), anyCollection()))
+                .willReturn(1);
 
-        given(transactionClient.createTransaction(any(TransactionRequest.class)))
+        given(transactionOutboxService.append(any(TransactionRequest.class)))
                 .willReturn(new Transaction());
 
         // when
         accountService.deposit(id, amount, note);
 
         // then
-        verify(accountRepository, times(1)).findById(id);
-        verify(accountRepository, times(1)).save(any(Account.class));
-        verify(transactionClient, times(1)).createTransaction(any(TransactionRequest.class));
+        verify(accountRepository, times(1)).increaseBalance(eq(id), eq(amount), anyCollection());
+        verify(accountRepository, never()).findById(any(Long.class));
+        verify(accountRepository, never()).save(any(Account.class));
+        verify(transactionOutboxService, times(1)).append(any(TransactionRequest.class));
+        verify(balanceCacheService, times(1)).refresh(id);
+    }
+
+    @Test
+    void shouldDepositThroughLedgerInLedgerMode() {
+        // given
+        long id = 10;
+        BigDecimal amount = BigDecimal.valueOf(10000);
+        LedgerService ledgerService = mock(LedgerService.class);
+        accountService = buildAccountService(new LedgerBalanceStore(ledgerService));
+
+        given(transactionOutboxService.append(any(TransactionRequest.class)))
+                .willReturn(new Transaction());
+
+        // when
+        accountService.deposit(id, amount, "test");
+
+        // then
+        verify(ledgerService, times(1)).deposit(eq(id), eq(amount), anyCollection());
+        verify(accountRepository, never()).increaseBalance(any(Long.class), any(BigDecimal.class), anyCollection());
+        verify(transactionOutboxService, times(1)).append(any(TransactionRequest.class));
     }
 
     @Test
@@ -382,6 +538,9 @@ class AccountServiceTest {
         long id = 10;
         BigDecimal amount = BigDecimal.valueOf(10000);
         String note = "test";
+        given(accountRepository.increaseBalance(eq(id), eq(amount), anyCollection()))
+                .willReturn(0);
+
         given(accountRepository.findById(id))
                 .willReturn(Optional.empty());
 
@@ -392,8 +551,7 @@ class AccountServiceTest {
 
         // then
         verify(accountRepository, times(1)).findById(id);
-        verify(accountRepository, never()).save(any(Account.class));
-        verify(transactionClient, never()).createTransaction(any(TransactionRequest.class));
+        verify(transactionOutboxService, never()).append(any(TransactionRequest.class));
     }
 
     @Test
@@ -402,6 +560,9 @@ class AccountServiceTest {
         List<Long> ids = List.of(10L, 11L, 12L);
         BigDecimal amount = BigDecimal.valueOf(10000);
         String note = "test";
+        given(accountRepository.increaseBalance(any(Long.class), eq(amount), anyCollection()))
+                .willReturn(0);
+
         given(accountRepository.findById(ids.get(0)))
                 .willReturn(Optional.of(Account.builder()
                         .id(ids.get(0))
@@ -423,7 +584,7 @@ class AccountServiceTest {
                         .balance(BigDecimal.ZERO)
                         .build()));
 
-        given(transactionClient.createTransaction(any(TransactionRequest.class)))
+        given(transactionOutboxService.append(any(TransactionRequest.class)))
                 .willReturn(new Transaction());
 
         // when
@@ -433,8 +594,7 @@ class AccountServiceTest {
 
         // then
         verify(accountRepository, times(3)).findById(any(Long.class));
-        verify(accountRepository, never()).save(any(Account.class));
-        verify(transactionClient, times(3)).createTransaction(any(TransactionRequest.class));
+        verify(transactionOutboxService, times(3)).append(any(TransactionRequest.class));
     }
 
     @Test
@@ -443,22 +603,20 @@ class AccountServiceTest {
         long id = 10;
         BigDecimal amount = BigDecimal.valueOf(10000);
         String note = "test";
-        given(accountRepository.findById(id))
-                .willReturn(Optional.of(Account.builder()
-                        .status(Status.OPEN)
-                        .balance(BigDecimal.valueOf(20000))
-                        .build()));
+        given(accountRepository.decreaseBalance(eq(id), eq(amount), anyCollection()))
+                .willReturn(1);
 
-        given(transactionClient.createTransaction(any(TransactionRequest.class)))
+        given(transactionOutboxService.append(any(TransactionRequest.class)))
                 .willReturn(new Transaction());
 
         // when
         accountService.withdraw(id, amount, note);
 
         // then
-        verify(accountRepository, times(1)).findById(id);
-        verify(accountRepository, times(1)).save(any(Account.class));
-        verify(transactionClient, times(1)).createTransaction(any(TransactionRequest.class));
+        verify(accountRepository, times(1)).decreaseBalance(eq(id), eq(amount), anyCollection());
+        verify(accountRepository, never()).findById(any(Long.class));
+        verify(accountRepository, never()).save(any(Account.class));
+        verify(transactionOutboxService, times(1)).append(any(TransactionRequest.class));
     }
 
     @Test
@@ -467,6 +625,9 @@ class AccountServiceTest {
         long id = 10;
         BigDecimal amount = BigDecimal.valueOf(10000);
         String note = "test";
+        given(accountRepository.decreaseBalance(eq(id), eq(amount), anyCollection()))
+                .willReturn(0);
+
         given(accountRepository.findById(id))
                 .willReturn(Optional.empty());
 
@@ -477,8 +638,7 @@ class AccountServiceTest {
 
         // then
         verify(accountRepository, times(1)).findById(id);
-        verify(accountRepository, never()).save(any(Account.class));
-        verify(transactionClient, never()).createTransaction(any(TransactionRequest.class));
+        verify(transactionOutboxService, never()).append(any(TransactionRequest.class));
     }
 
     @Test
@@ -487,6 +647,9 @@ class AccountServiceTest {
         List<Long> ids = List.of(10L, 11L, 12L);
         BigDecimal amount = BigDecimal.valueOf(10000);
         String note = "test";
+        given(accountRepository.decreaseBalance(any(Long.class), eq(amount), anyCollection()))
+                .willReturn(0);
+
         given(accountRepository.findById(ids.get(0)))
                 .willReturn(Optional.of(Account.builder()
                         .id(ids.get(0))
@@ -508,7 +671,7 @@ class AccountServiceTest {
                         .balance(BigDecimal.ZERO)
                         .build()));
 
-        given(transactionClient.createTransaction(any(TransactionRequest.class)))
+        given(transactionOutboxService.append(any(TransactionRequest.class)))
                 .willReturn(new Transaction());
 
         // when
@@ -518,8 +681,7 @@ class AccountServiceTest {
 
         // then
         verify(accountRepository, times(3)).findById(any(Long.class));
-        verify(accountRepository, never()).save(any(Account.class));
-        verify(transactionClient, times(3)).createTransaction(any(TransactionRequest.class));
+        verify(transactionOutboxService, times(3)).append(any(TransactionRequest.class));
     }
 
     @Test
@@ -528,6 +690,9 @@ class AccountServiceTest {
         long id = 10;
         BigDecimal amount = BigDecimal.valueOf(10000);
         String note = "test";
+        given(accountRepository.decreaseBalance(eq(id), eq(amount), anyCollection()))
+                .willReturn(0);
+
         given(accountRepository.findById(id))
                 .willReturn(Optional.of(Account.builder()
                         .id(id)
@@ -535,7 +700,7 @@ class AccountServiceTest {
                         .balance(BigDecimal.ZERO)
                         .build()));
 
-        given(transactionClient.createTransaction(any(TransactionRequest.class)))
+        given(transactionOutboxService.append(any(TransactionRequest.class)))
                 .willReturn(new Transaction());
 
         // when
@@ -545,8 +710,7 @@ class AccountServiceTest {
 
         // then
         verify(accountRepository, times(1)).findById(any(Long.class));
-        verify(accountRepository, never()).save(any(Account.class));
-        verify(transactionClient, times(1)).createTransaction(any(TransactionRequest.class));
+        verify(transactionOutboxService, times(1)).append(any(TransactionRequest.class));
     }
 
     @Test
@@ -555,28 +719,22 @@ class AccountServiceTest {
         long senderId = 10, receiverId = 11;
         BigDecimal amount = BigDecimal.valueOf(10000);
         String note = "test";
-        given(accountRepository.findById(senderId))
-                .willReturn(Optional.of(Account.builder()
-                        .status(Status.OPEN)
-                        .balance(BigDecimal.valueOf(20000))
-                        .build()));
+        given(accountRepository.decreaseBalance(eq(senderId), eq(amount), anyCollection()))
+                .willReturn(1);
 
-        given(accountRepository.findById(receiverId))
-                .willReturn(Optional.of(Account.builder()
-                        .status(Status.OPEN)
-                        .balance(BigDecimal.ZERO)
-                        .build()));
+        given(accountRepository.increaseBalance(eq(receiverId), eq(amount), anyCollection()))
+                .willReturn(1);
 
-        given(transactionClient.createTransaction(any(TransactionRequest.class)))
+        given(transactionOutboxService.append(any(TransactionRequest.class)))
                 .willReturn(new Transaction());
 
         // when
         accountService.transfer(senderId, receiverId, amount, note);
 
         // then
-        verify(accountRepository, times(2)).findById(any(Long.class));
-        verify(accountRepository, times(2)).save(any(Account.class));
-        verify(transactionClient, times(1)).createTransaction(any(TransactionRequest.class));
+        verify(accountRepository, never()).findById(any(Long.class));
+        verify(accountRepository, never()).save(any(Account.class));
+        verify(transactionOutboxService, times(1)).append(any(TransactionRequest.class));
     }
 
     @Test
@@ -585,6 +743,9 @@ class AccountServiceTest {
         long senderId = 10, receiverId = 11;
         BigDecimal amount = BigDecimal.valueOf(10000);
         String note = "test";
+        given(accountRepository.decreaseBalance(eq(senderId), eq(amount), anyCollection()))
+                .willReturn(0);
+
         given(accountRepository.findById(senderId))
                 .willReturn(Optional.empty());
 
@@ -595,8 +756,8 @@ class AccountServiceTest {
 
         // then
         verify(accountRepository, times(1)).findById(senderId);
-        verify(accountRepository, never()).save(any(Account.class));
-        verify(transactionClient, never()).createTransaction(any(TransactionRequest.class));
+        verify(accountRepository, never()).increaseBalance(any(Long.class), any(BigDecimal.class), anyCollection());
+        verify(transactionOutboxService, never()).append(any(TransactionRequest.class));
     }
 
     @Test
@@ -605,11 +766,11 @@ class AccountServiceTest {
         long senderId = 10, receiverId = 11;
         BigDecimal amount = BigDecimal.valueOf(10000);
         String note = "test";
-        given(accountRepository.findById(senderId))
-                .willReturn(Optional.of(Account.builder()
-                        .status(Status.OPEN)
-                        .balance(BigDecimal.valueOf(20000))
-                        .build()));
+        given(accountRepository.decreaseBalance(eq(senderId), eq(amount), anyCollection()))
+                .willReturn(1);
+
+        given(accountRepository.increaseBalance(eq(receiverId), eq(amount), anyCollection()))
+                .willReturn(0);
 
         given(accountRepository.findById(receiverId))
                 .willReturn(Optional.empty());
@@ -620,9 +781,8 @@ class AccountServiceTest {
                 .hasMessageContaining(String.format("Account: %s not found!", receiverId));
 
         // then
-        verify(accountRepository, times(2)).findById(any(Long.class));
-        verify(accountRepository, never()).save(any(Account.class));
-        verify(transactionClient, never()).createTransaction(any(TransactionRequest.class));
+        verify(accountRepository, times(1)).findById(any(Long.class));
+        verify(transactionOutboxService, never()).append(any(TransactionRequest.class));
     }
 
     @Test
@@ -632,6 +792,9 @@ class AccountServiceTest {
         long receiverId = 13;
         BigDecimal amount = BigDecimal.valueOf(10000);
         String note = "test";
+        given(accountRepository.decreaseBalance(any(Long.class), eq(amount), anyCollection()))
+                .willReturn(0);
+
         given(accountRepository.findById(ids.get(0)))
                 .willReturn(Optional.of(Account.builder()
                         .id(ids.get(0))
@@ -653,7 +816,7 @@ class AccountServiceTest {
                         .balance(BigDecimal.ZERO)
                         .build()));
 
-        given(transactionClient.createTransaction(any(TransactionRequest.class)))
+        given(transactionOutboxService.append(any(TransactionRequest.class)))
                 .willReturn(new Transaction());
 
         // when
@@ -663,8 +826,8 @@ class AccountServiceTest {
 
         // then
         verify(accountRepository, times(3)).findById(any(Long.class));
-        verify(accountRepository, never()).save(any(Account.class));
-        verify(transactionClient, times(3)).createTransaction(any(TransactionRequest.class));
+        verify(accountRepository, never()).increaseBalance(any(Long.class), any(BigDecimal.class), anyCollection());
+        verify(transactionOutboxService, times(3)).append(any(TransactionRequest.class));
     }
 
     @Test
@@ -674,12 +837,11 @@ class AccountServiceTest {
         long senderId = 13;
         BigDecimal amount = BigDecimal.valueOf(10000);
         String note = "test";
-        given(accountRepository.findById(senderId))
-                .willReturn(Optional.of(Account.builder()
-                        .id(senderId)
-                        .status(Status.OPEN)
-                        .balance(BigDecimal.valueOf(20000))
-                        .build()));
+        given(accountRepository.decreaseBalance(eq(senderId), eq(amount), anyCollection()))
+                .willReturn(1);
+
+        given(accountRepository.increaseBalance(any(Long.class), eq(amount), anyCollection()))
+                .willReturn(0);
 
         given(accountRepository.findById(ids.get(0)))
                 .willReturn(Optional.of(Account.builder()
@@ -702,7 +864,7 @@ class AccountServiceTest {
                         .balance(BigDecimal.ZERO)
                         .build()));
 
-        given(transactionClient.createTransaction(any(TransactionRequest.class)))
+        given(transactionOutboxService.append(any(TransactionRequest.class)))
                 .willReturn(new Transaction());
 
         // when
@@ -711,9 +873,10 @@ class AccountServiceTest {
                 .hasMessageContaining(String.format("Account: %s is not available for deposit!", id)));
 
         // then
-        verify(accountRepository, times(6)).findById(any(Long.class));
-        verify(accountRepository, never()).save(any(Account.class));
-        verify(transactionClient, times(3)).createTransaction(any(TransactionRequest.class));
+        verify(accountRepository, times(3)).findById(any(Long.class));
+        verify(accountRepository, times(3)).decreaseBalance(eq(senderId), eq(amount), anyCollection());
+        verify(accountRepository, times(3)).increaseBalance(eq(senderId), eq(amount), anyCollection());
+        verify(transactionOutboxService, times(3)).append(any(TransactionRequest.class));
     }
 
     @Test
@@ -722,6 +885,9 @@ class AccountServiceTest {
         long senderId = 10, receiverId = 11;
         BigDecimal amount = BigDecimal.valueOf(10000);
         String note = "test";
+        given(accountRepository.decreaseBalance(eq(senderId), eq(amount), anyCollection()))
+                .willReturn(0);
+
         given(accountRepository.findById(senderId))
                 .willReturn(Optional.of(Account.builder()
                         .id(senderId)
@@ -729,7 +895,7 @@ class AccountServiceTest {
                         .balance(BigDecimal.ZERO)
                         .build()));
 
-        given(transactionClient.createTransaction(any(TransactionRequest.class)))
+        given(transactionOutboxService.append(any(TransactionRequest.class)))
                 .willReturn(new Transaction());
 
         // when
@@ -739,7 +905,253 @@ class AccountServiceTest {
 
         // then
         verify(accountRepository, times(1)).findById(any(Long.class));
+        verify(accountRepository, never()).increaseBalance(any(Long.class), any(BigDecimal.class), anyCollection());
+        verify(transactionOutboxService, times(1)).append(any(TransactionRequest.class));
+    }
+
+    @Test
+    void shouldTransferAllInOneChunk() {
+        // given
+        List<TransferRequest> requests = List.of(
+                new TransferRequest(11L, 10L, BigDecimal.valueOf(5000), "test"),
+                new TransferRequest(10L, 12L, BigDecimal.valueOf(50000), "test"));
+
+        Account first = Account.builder().id(10L).status(Status.OPEN).balance(BigDecimal.valueOf(20000)).build();
+        Account second = Account.builder().id(11L).status(Status.OPEN).balance(BigDecimal.valueOf(10000)).build();
+        Account third = Account.builder().id(12L).status(Status.OPEN).balance(BigDecimal.ZERO).build();
+
+        givenTransactionTemplateRunsCallbacks();
+        given(accountRepository.findAllByIdForUpdate(anyCollection()))
+                .willReturn(List.of(first, second, third));
+
+        givenOutboxAppendsAll();
+
+        // when
+        List<Transaction> transactions = accountService.transferAll(requests, 10);
+
+        // then
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Collection<Long>> idsArgumentCaptor = ArgumentCaptor.forClass(Collection.class);
+
+        verify(transactionTemplate, times(1)).execute(any());
+        verify(accountRepository, times(1)).findAllByIdForUpdate(idsArgumentCaptor.capture());
         verify(accountRepository, never()).save(any(Account.class));
-        verify(transactionClient, times(1)).createTransaction(any(TransactionRequest.class));
+
+        assertThat(new ArrayList<>(idsArgumentCaptor.getValue())).isEqualTo(List.of(10L, 11L, 12L));
+        assertThat(transactions.get(0).getStatus()).isEqualTo(SUCCEED);
+        assertThat(transactions.get(1).getStatus()).isEqualTo(FAILED);
+        assertThat(first.getBalance()).isEqualTo(BigDecimal.valueOf(25000));
+        assertThat(second.getBalance()).isEqualTo(BigDecimal.valueOf(5000));
+        assertThat(third.getBalance()).isEqualTo(BigDecimal.ZERO);
+        assertThat(first.getBalanceVersion()).isEqualTo(1L);
+        assertThat(third.getBalanceVersion()).isNull();
+
+        verify(balanceCacheService, times(3)).putAfterCommit(any(AccountBalance.class));
+    }
+
+    @Test
+    void shouldTransferAllInChunks() {
+        // given
+        List<TransferRequest> requests = List.of(
+                new TransferRequest(10L, 11L, BigDecimal.valueOf(5000), "test"),
+                new TransferRequest(12L, 13L, BigDecimal.valueOf(5000), "test"),
+                new TransferRequest(14L, 15L, BigDecimal.valueOf(5000), "test"));
+
+        givenTransactionTemplateRunsCallbacks();
+        given(accountRepository.findAllByIdForUpdate(anyCollection()))
+                .willReturn(List.of());
+
+        givenOutboxAppendsAll();
+
+        // when
+        List<Transaction> transactions = accountService.transferAll(requests, 2);
+
+        // then
+        verify(transactionTemplate, times(2)).execute(any());
+        verify(accountRepository, times(2)).findAllByIdForUpdate(anyCollection());
+
+        assertThat(transactions.size()).isEqualTo(3);
+        transactions.forEach(transaction -> assertThat(transaction.getStatus())
+                .isEqualTo(FAILED));
+    }
+
+    @Test
+    void shouldTransferAllThroughLedgerWithoutLockingInLedgerMode() {
+        // given
+        List<TransferRequest> requests = List.of(
+                new TransferRequest(11L, 10L, BigDecimal.valueOf(5000), "test"),
+                new TransferRequest(10L, 12L, BigDecimal.valueOf(50000), "test"));
+        LedgerService ledgerService = mock(LedgerService.class);
+        accountService = buildAccountService(new LedgerBalanceStore(ledgerService));
+
+        givenTransactionTemplateRunsCallbacks();
+        willDoNothing().willThrow(new NotEnoughAccountBalanceException("Account: 10 does not have enough balance!"))
+                .given(ledgerService).transfer(any(Long.class), any(Long.class), any(BigDecimal.class),
+                        anyCollection(), anyCollection());
+
+        givenOutboxAppendsAll();
+
+        // when
+        List<Transaction> transactions = accountService.transferAll(requests, 10);
+
+        // then
+        verify(ledgerService, times(2)).transfer(any(Long.class), any(Long.class), any(BigDecimal.class),
+                anyCollection(), anyCollection());
+        verify(accountRepository, never()).findAllByIdForUpdate(anyCollection());
+
+        assertThat(transactions.get(0).getStatus()).isEqualTo(SUCCEED);
+        assertThat(transactions.get(1).getStatus()).isEqualTo(FAILED);
+    }
+
+    @Test
+    void shouldNotTransferAllWhenChunkSizeIsNotValid() {
+        // given
+        List<TransferRequest> requests = List.of(new TransferRequest(10L, 11L, BigDecimal.valueOf(5000), "test"));
+
+        // when
+        // then
+        assertThatThrownBy(() -> accountService.transferAll(requests, 0))
+                .isInstanceOf(NotValidChunkSizeException.class)
+                .hasMessageContaining("Chunk size: 0 is not valid!");
+
+        verify(transactionTemplate, never()).execute(any());
+    }
+
+    @Test
+    void shouldWithdrawAllOnceByIdempotencyKey() {
+        // given
+        List<WithdrawalRequest> requests = List.of(
+                new WithdrawalRequest(10L, BigDecimal.valueOf(5000), "loan", "loan-1-installment-2"),
+                new WithdrawalRequest(11L, BigDecimal.valueOf(5000), "loan", "loan-2-installment-1"),
+                new WithdrawalRequest(12L, BigDecimal.valueOf(5000), "loan", "loan-3-installment-1"),
+                new WithdrawalRequest(11L, BigDecimal.valueOf(5000), "loan", "loan-2-installment-1"));
+
+        Account second = Account.builder().id(11L).status(Status.OPEN).balance(BigDecimal.valueOf(8000)).build();
+        Account third = Account.builder().id(12L).status(Status.OPEN).balance(BigDecimal.ZERO).build();
+
+        givenTransactionTemplateRunsCallbacks();
+        given(withdrawalKeyRepository.findAllById(anyCollection()))
+                .willReturn(List.of(WithdrawalKey.builder()
+                        .idempotencyKey("loan-1-installment-2")
+                        .accountId(10L)
+                        .amount(BigDecimal.valueOf(5000))
+                        .reference("account-outbox-7")
+                        .build()));
+        given(accountRepository.findAllByIdForUpdate(anyCollection()))
+                .willReturn(List.of(second, third));
+
+        givenOutboxAppendsAll();
+
+        // when
+        List<Transaction> transactions = accountService.withdrawAll(requests, 10);
+
+        // then
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Collection<Long>> idsArgumentCaptor = ArgumentCaptor.forClass(Collection.class);
+        ArgumentCaptor<WithdrawalKey> persistedArgumentCaptor = ArgumentCaptor.forClass(WithdrawalKey.class);
+        ArgumentCaptor<WithdrawalKey> removedArgumentCaptor = ArgumentCaptor.forClass(WithdrawalKey.class);
+
+        verify(accountRepository, times(1)).findAllByIdForUpdate(idsArgumentCaptor.capture());
+        verify(entityManager, times(2)).persist(persistedArgumentCaptor.capture());
+        verify(entityManager, times(1)).flush();
+        verify(entityManager, times(1)).remove(removedArgumentCaptor.capture());
+        verify(transactionOutboxService, times(1)).appendAll(anyList());
+
+        assertThat(new ArrayList<>(idsArgumentCaptor.getValue())).isEqualTo(List.of(11L, 12L));
+        assertThat(persistedArgumentCaptor.getAllValues().get(0).getReference()).isEqualTo("account-outbox-0");
+        assertThat(removedArgumentCaptor.getValue().getIdempotencyKey()).isEqualTo("loan-3-installment-1");
+        assertThat(transactions.size()).isEqualTo(4);
+        assertThat(transactions.get(0).getIdempotencyKey()).isEqualTo("account-outbox-7");
+        assertThat(transactions.get(3).getIdempotencyKey()).isEqualTo("account-outbox-0");
+        assertThat(transactions.get(0).getStatus()).isEqualTo(SUCCEED); // withdrawn before
+        assertThat(transactions.get(1).getStatus()).isEqualTo(SUCCEED);
+        assertThat(transactions.get(2).getStatus()).isEqualTo(FAILED);
+        assertThat(transactions.get(3).getStatus()).isEqualTo(SUCCEED); // repeated in the same batch
+        assertThat(second.getBalance()).isEqualTo(BigDecimal.valueOf(3000));
+    }
+
+    @Test
+    void shouldReplayWithdrawalChunkWhenKeyWasTakenMeanwhile() {
+        // given
+        List<WithdrawalRequest> requests = List.of(
+                new WithdrawalRequest(10L, BigDecimal.valueOf(5000), "loan", "loan-1-installment-2"));
+
+        given(transactionTemplate.execute(any()))
+                .willThrow(new PersistenceException(new ConstraintViolationException("duplicate key", null, null)))
+                .willAnswer(invocation -> invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+        given(withdrawalKeyRepository.findAllById(anyCollection()))
+                .willReturn(List.of(WithdrawalKey.builder()
+                        .idempotencyKey("loan-1-installment-2")
+                        .accountId(10L)
+                        .amount(BigDecimal.valueOf(5000))
+                        .reference("account-outbox-7")
+                        .build()));
+
+        givenOutboxAppendsAll();
+
+        // when
+        List<Transaction> transactions = accountService.withdrawAll(requests, 10);
+
+        // then
+        verify(transactionTemplate, times(2)).execute(any());
+        verify(entityManager, never()).persist(any());
+
+        assertThat(transactions.get(0).getStatus()).isEqualTo(SUCCEED);
+        assertThat(transactions.get(0).getIdempotencyKey()).isEqualTo("account-outbox-7");
+    }
+
+    @Test
+    void shouldPurgeExpiredWithdrawalKeysInBatches() {
+        // given
+        ReflectionTestUtils.setField(accountService, "withdrawalKeyRetention", Duration.ofDays(90));
+        given(withdrawalKeyRepository.deleteCreatedBefore(any(LocalDate.class), eq(10_000)))
+                .willReturn(10_000)
+                .willReturn(3);
+
+        // when
+        accountService.purgeWithdrawalKeys();
+
+        // then
+        verify(withdrawalKeyRepository, times(2)).deleteCreatedBefore(LocalDate.now().minusDays(90), 10_000);
+    }
+
+    @Test
+    void shouldNotWithdrawAllWhenChunkSizeIsNotValid() {
+        // given
+        List<WithdrawalRequest> requests = List.of(new WithdrawalRequest(10L, BigDecimal.valueOf(5000), "test", "key"));
+
+        // when
+        // then
+        assertThatThrownBy(() -> accountService.withdrawAll(requests, -1))
+                .isInstanceOf(NotValidChunkSizeException.class)
+                .hasMessageContaining("Chunk size: -1 is not valid!");
+
+        verify(transactionTemplate, never()).execute(any());
+        verify(withdrawalKeyRepository, never()).findAllById(anyCollection());
+    }
+
+    private void givenTransactionTemplateRunsCallbacks() {
+        given(transactionTemplate.execute(any()))
+                .willAnswer(invocation -> invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+    }
+
+    private void givenOutboxAppendsAll() {
+        given(transactionOutboxService.appendAll(anyList()))
+                .willAnswer(invocation -> {
+                    List<TransactionRequest> requests = invocation.getArgument(0);
+                    return IntStream.range(0, requests.size())
+                            .mapToObj(index -> Transaction.builder()
+                                    .senderId(requests.get(index).getSenderId())
+                                    .receiverId(requests.get(index).getReceiverId())
+                                    .status(requests.get(index).getStatus())
+                                    .idempotencyKey("account-outbox-" + index)
+                                    .build())
+                            .collect(Collectors.toList());
+                });
+    }
+
+    private AccountService buildAccountService(BalanceStore balanceStore) {
+        return new AccountService(accountRepository, customerClient, transactionOutboxService, transactionTemplate,
+                entityManager, objectMapper, withdrawalKeyRepository, balanceStore);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,112 @@
+package com.aminnorouzi.accountservice.service;
+
+import com.aminnorouzi.accountservice.client.CustomerClient;
+import com.aminnorouzi.accountservice.model.Account;
+import com.aminnorouzi.accountservice.model.Currency;
+import com.aminnorouzi.accountservice.model.Status;
+import com.aminnorouzi.accountservice.model.Type;
+import com.aminnorouzi.accountservice.model.WithdrawalRequest;
+import com.aminnorouzi.accountservice.model.transaction.Transaction;
+import com.aminnorouzi.accountservice.model.transaction.TransactionRequest;
+import com.aminnorouzi.accountservice.repository.AccountRepository;
+import com.aminnorouzi.accountservice.repository.WithdrawalKeyRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.aminnorouzi.accountservice.model.transaction.Status.SUCCEED;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.BDDMockito.given;
+
+/**
+ * Runs batch withdrawals in their own committed transactions against H2, so two chunks really race for one key.
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect")
+@Import({AccountService.class, AccountTableBalanceStore.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED) // every chunk commits on its own
+class AccountServiceWithdrawalKeyTest {
+
+    @Autowired
+    private AccountService accountService;
+    @Autowired
+    private AccountRepository accountRepository;
+    @Autowired
+    private WithdrawalKeyRepository withdrawalKeyRepository;
+
+    @MockBean
+    private CustomerClient customerClient;
+    @MockBean
+    private TransactionOutboxService transactionOutboxService;
+    @MockBean
+    private BalanceCacheService balanceCacheService;
+    @MockBean
+    private ObjectMapper objectMapper;
+
+    @AfterEach
+    void tearDown() {
+        withdrawalKeyRepository.deleteAll();
+        accountRepository.deleteAll();
+    }
+
+    @Test
+    void shouldChargeOnceWhenConcurrentChunksShareKey() throws Exception {
+        // given
+        Account account = accountRepository.save(Account.builder()
+                .title("test")
+                .balance(BigDecimal.valueOf(10000))
+                .status(Status.OPEN)
+                .type(Type.SAVING)
+                .currency(Currency.IRR)
+                .createdAt(LocalDate.now())
+                .customerIds(List.of(10L))
+                .build());
+        List<WithdrawalRequest> requests = List.of(
+                new WithdrawalRequest(account.getId(), BigDecimal.valueOf(5000), "loan", "loan-1-installment-2"));
+
+        CountDownLatch withdrawn = new CountDownLatch(1);
+        given(transactionOutboxService.appendAll(anyList()))
+                .willAnswer(invocation -> {
+                    List<TransactionRequest> transactionRequests = invocation.getArgument(0);
+                    if (!transactionRequests.isEmpty()) {
+                        // the first chunk holds its locks until the second one has read the keys and waits
+                        withdrawn.countDown();
+                        Thread.sleep(500);
+                    }
+                    return transactionRequests.stream()
+                            .map(request -> Transaction.builder()
+                                    .senderId(request.getSenderId())
+                                    .status(request.getStatus())
+                                    .idempotencyKey("account-outbox-1")
+                                    .build())
+                            .collect(Collectors.toList());
+                });
+
+        // when
+        CompletableFuture<List<Transaction>> first = CompletableFuture.supplyAsync(
+                () -> accountService.withdrawAll(requests, 10));
+        assertThat(withdrawn.await(5, TimeUnit.SECONDS)).isTrue();
+        List<Transaction> second = accountService.withdrawAll(requests, 10);
+
+        // then
+        assertThat(first.get(5, TimeUnit.SECONDS).get(0).getStatus()).isEqualTo(SUCCEED);
+        assertThat(second.get(0).getStatus()).isEqualTo(SUCCEED);
+        assertThat(second.get(0).getIdempotencyKey()).isEqualTo("account-outbox-1");
+        assertThat(accountRepository.findById(account.getId()).orElseThrow().getBalance()
+                .compareTo(BigDecimal.valueOf(5000))).isEqualTo(0);
+    }
+}
@@ -0,0 +1,91 @@
+package com.aminnorouzi.accountservice.service;
+
+import com.aminnorouzi.accountservice.model.AccountBalance;
+import com.aminnorouzi.accountservice.repository.AccountRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.util.Optional;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class BalanceCacheServiceTest {
+
+    @Mock
+    private AccountRepository accountRepository;
+
+    private BalanceCacheService balanceCacheService;
+
+    @BeforeEach
+    void setUp() {
+        balanceCacheService = new BalanceCacheService(accountRepository, 100L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void shouldLoadBalanceOnceOnMiss() {
+        // given
+        long id = 10;
+        given(accountRepository.findBalanceById(id))
+                .willReturn(Optional.of(new AccountBalance(id, BigDecimal.TEN, 1L)));
+
+        // when
+        balanceCacheService.getBalance(id);
+        Optional<AccountBalance> found = balanceCacheService.getBalance(id);
+
+        // then
+        assertThat(found.orElseThrow().getBalance()).isEqualTo(BigDecimal.TEN);
+
+        verify(accountRepository, times(1)).findBalanceById(id);
+    }
+
+    @Test
+    void shouldNotReplaceNewerBalanceWithOlderOne() {
+        // given
+        long id = 10;
+        balanceCacheService.put(new AccountBalance(id, BigDecimal.TEN, 2L));
+
+        // when
+        balanceCacheService.put(new AccountBalance(id, BigDecimal.ONE, 1L));
+
+        // then
+        assertThat(balanceCacheService.getBalance(id).orElseThrow().getBalance()).isEqualTo(BigDecimal.TEN);
+    }
+
+    @Test
+    void shouldPublishRefreshedBalanceAfterCommit() {
+        // given
+        long id = 10;
+        balanceCacheService.put(new AccountBalance(id, BigDecimal.TEN, 1L));
+        given(accountRepository.findBalanceById(id))
+                .willReturn(Optional.of(new AccountBalance(id, BigDecimal.ONE, 2L)));
+
+        TransactionSynchronizationManager.initSynchronization();
+
+        // when
+        balanceCacheService.refresh(id);
+        BigDecimal beforeCommit = balanceCacheService.getBalance(id).orElseThrow().getBalance();
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+
+        // then
+        assertThat(beforeCommit).isEqualTo(BigDecimal.TEN);
+        assertThat(balanceCacheService.getBalance(id).orElseThrow().getBalance()).isEqualTo(BigDecimal.ONE);
+    }
+}
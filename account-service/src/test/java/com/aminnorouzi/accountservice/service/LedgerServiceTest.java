@@ -0,0 +1,71 @@
+package com.aminnorouzi.accountservice.service;
+
+import com.aminnorouzi.accountservice.exception.NotValidAmountException;
+import com.aminnorouzi.accountservice.model.Status;
+import com.aminnorouzi.accountservice.repository.LedgerCheckpointRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+@ExtendWith(MockitoExtension.class)
+class LedgerServiceTest {
+
+    private static final List<Status> DEPOSIT_STATUSES = List.of(Status.OPEN, Status.WITHDRAWAL_BLOCKED);
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+    @Mock
+    private LedgerCheckpointRepository ledgerCheckpointRepository;
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @TempDir
+    Path directory;
+
+    private LedgerService ledgerService;
+
+    @BeforeEach
+    void setUp() {
+        ledgerService = new LedgerService(jdbcTemplate, ledgerCheckpointRepository, transactionTemplate, directory,
+                DataSize.ofKilobytes(4), 16);
+    }
+
+    @Test
+    void shouldRejectAmountFinerThanMinorUnit() {
+        // given
+        BigDecimal amount = new BigDecimal("10.005");
+
+        // when
+        // then
+        assertThatThrownBy(() -> ledgerService.deposit(1L, amount, DEPOSIT_STATUSES))
+                .isInstanceOf(NotValidAmountException.class)
+                .hasMessageContaining("Amount: 10.005 is not valid!");
+
+        verifyNoInteractions(jdbcTemplate);
+    }
+
+    @Test
+    void shouldRejectAmountBeyondMinorUnitRange() {
+        // given
+        BigDecimal amount = BigDecimal.valueOf(Long.MAX_VALUE);
+
+        // when
+        // then
+        assertThatThrownBy(() -> ledgerService.deposit(1L, amount, DEPOSIT_STATUSES))
+                .isInstanceOf(NotValidAmountException.class)
+                .hasMessageContaining(String.format("Amount: %s is not valid!", amount));
+    }
+}
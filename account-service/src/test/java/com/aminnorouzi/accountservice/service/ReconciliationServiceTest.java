@@ -0,0 +1,233 @@
+package com.aminnorouzi.accountservice.service;
+
+import com.aminnorouzi.accountservice.client.TransactionClient;
+import com.aminnorouzi.accountservice.exception.ReconciliationRunningException;
+import com.aminnorouzi.accountservice.model.AccountOpeningBalance;
+import com.aminnorouzi.accountservice.model.ReconciliationMismatch;
+import com.aminnorouzi.accountservice.model.ReconciliationRun;
+import com.aminnorouzi.accountservice.model.ReconciliationStatus;
+import com.aminnorouzi.accountservice.model.TransactionOutbox;
+import com.aminnorouzi.accountservice.model.transaction.AccountNet;
+import com.aminnorouzi.accountservice.repository.AccountRepository;
+import com.aminnorouzi.accountservice.repository.ReconciliationMismatchRepository;
+import com.aminnorouzi.accountservice.repository.ReconciliationRunRepository;
+import com.aminnorouzi.accountservice.repository.TransactionOutboxRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ReconciliationServiceTest {
+
+    @Mock
+    private AccountRepository accountRepository;
+    @Mock
+    private TransactionOutboxRepository transactionOutboxRepository;
+    @Mock
+    private ReconciliationRunRepository reconciliationRunRepository;
+    @Mock
+    private ReconciliationMismatchRepository reconciliationMismatchRepository;
+    @Mock
+    private TransactionClient transactionClient;
+    @Mock
+    private TransactionTemplate transactionTemplate;
+    @Mock
+    private BalanceCacheService balanceCacheService;
+
+    private ReconciliationService reconciliationService;
+
+    @BeforeEach
+    void setUp() {
+        reconciliationService = new ReconciliationService(accountRepository, transactionOutboxRepository,
+                reconciliationRunRepository, reconciliationMismatchRepository, transactionClient, transactionTemplate,
+                new AccountTableBalanceStore(accountRepository, balanceCacheService), 2, 2, Duration.ofMinutes(5));
+    }
+
+    @AfterEach
+    void tearDown() {
+        reconciliationService.close();
+    }
+
+    @Test
+    void shouldReportMismatchesOfRange() {
+        // given
+        given(transactionClient.getNets(1L, 4L))
+                .willReturn(List.of(new AccountNet(1L, BigDecimal.valueOf(50)), new AccountNet(2L, BigDecimal.TEN),
+                        new AccountNet(3L, BigDecimal.ONE)));
+        given(transactionOutboxRepository.findBySenderIdBetweenOrReceiverIdBetween(1L, 4L, 1L, 4L))
+                .willReturn(List.of(TransactionOutbox.builder().senderId(3L).receiverId(3L).build()));
+        given(accountRepository.findOpeningBalances(1L, 4L))
+                .willReturn(List.of(buildBalance(1L, 100, 150), buildBalance(2L, 100, 120),
+                        buildBalance(3L, 100, 0), buildBalance(4L, 100, 130)));
+
+        // account 2 was caught in the middle of a relay, account 4 is still off when read again
+        given(transactionOutboxRepository.findBySenderIdBetweenOrReceiverIdBetween(2L, 2L, 2L, 2L))
+                .willReturn(List.of());
+        given(transactionOutboxRepository.findBySenderIdBetweenOrReceiverIdBetween(4L, 4L, 4L, 4L))
+                .willReturn(List.of());
+        given(transactionClient.getNets(2L, 2L))
+                .willReturn(List.of(new AccountNet(2L, BigDecimal.valueOf(20))));
+        given(transactionClient.getNets(4L, 4L))
+                .willReturn(List.of());
+        given(accountRepository.findOpeningBalances(2L, 2L))
+                .willReturn(List.of(buildBalance(2L, 100, 120)));
+        given(accountRepository.findOpeningBalances(4L, 4L))
+                .willReturn(List.of(buildBalance(4L, 100, 130)));
+
+        // when
+        ReconciliationService.RangeResult result = reconciliationService.reconcileRange(7L, 1L, 4L);
+
+        // then
+        assertThat(result.getAccounts()).isEqualTo(3L);
+        assertThat(result.getSkipped()).isEqualTo(1L);
+        assertThat(result.getMismatches().size()).isEqualTo(1);
+
+        ReconciliationMismatch mismatch = result.getMismatches().get(0);
+
+        assertThat(mismatch.getRunId()).isEqualTo(7L);
+        assertThat(mismatch.getAccountId()).isEqualTo(4L);
+        assertThat(mismatch.getNet()).isEqualTo(BigDecimal.ZERO);
+        assertThat(mismatch.getDifference()).isEqualTo(BigDecimal.valueOf(30));
+    }
+
+    @Test
+    void shouldCountAccountsWithoutOpeningBalanceApart() {
+        // given
+        given(transactionClient.getNets(1L, 2L))
+                .willReturn(List.of(new AccountNet(1L, BigDecimal.valueOf(50)), new AccountNet(2L, BigDecimal.TEN)));
+        given(transactionOutboxRepository.findBySenderIdBetweenOrReceiverIdBetween(1L, 2L, 1L, 2L))
+                .willReturn(List.of());
+
+        // account 1 was opened before opening balances were kept
+        given(accountRepository.findOpeningBalances(1L, 2L))
+                .willReturn(List.of(new AccountOpeningBalance(1L, null, BigDecimal.valueOf(500)),
+                        buildBalance(2L, 100, 110)));
+
+        // when
+        ReconciliationService.RangeResult result = reconciliationService.reconcileRange(7L, 1L, 2L);
+
+        // then
+        verify(accountRepository, never()).findOpeningBalances(1L, 1L);
+
+        assertThat(result.getAccounts()).isEqualTo(1L);
+        assertThat(result.getWithoutOpeningBalance()).isEqualTo(1L);
+        assertThat(result.getMismatches().size()).isEqualTo(0);
+    }
+
+    @Test
+    void shouldCompareLedgerBalancesInLedgerMode() {
+        // given
+        LedgerService ledgerService = mock(LedgerService.class);
+        reconciliationService.close();
+        reconciliationService = new ReconciliationService(accountRepository, transactionOutboxRepository,
+                reconciliationRunRepository, reconciliationMismatchRepository, transactionClient, transactionTemplate,
+                new LedgerBalanceStore(ledgerService), 2, 2, Duration.ofMinutes(5));
+
+        given(transactionClient.getNets(1L, 1L))
+                .willReturn(List.of(new AccountNet(1L, BigDecimal.valueOf(50))));
+        given(transactionOutboxRepository.findBySenderIdBetweenOrReceiverIdBetween(1L, 1L, 1L, 1L))
+                .willReturn(List.of());
+        given(accountRepository.findOpeningBalances(1L, 1L))
+                .willReturn(List.of(buildBalance(1L, 100, 100))); // the last snapshot
+        given(ledgerService.getBalance(1L))
+                .willReturn(BigDecimal.valueOf(150));
+
+        // when
+        ReconciliationService.RangeResult result = reconciliationService.reconcileRange(7L, 1L, 1L);
+
+        // then
+        assertThat(result.getAccounts()).isEqualTo(1L);
+        assertThat(result.getMismatches().size()).isEqualTo(0);
+    }
+
+    @Test
+    void shouldResumeReconciliationFromCheckpoint() {
+        // given
+        ReconciliationRun run = buildRun(ReconciliationStatus.RUNNING, 5L, 8L, LocalDateTime.now());
+        given(reconciliationRunRepository.findById(run.getId()))
+                .willReturn(Optional.of(run));
+        given(transactionClient.getNets(anyLong(), anyLong()))
+                .willReturn(List.of());
+        given(accountRepository.findOpeningBalances(anyLong(), anyLong()))
+                .willReturn(List.of(buildBalance(5L, 10, 10), buildBalance(6L, 10, 10)));
+
+        doAnswer(invocation -> {
+            invocation.<Consumer<TransactionStatus>>getArgument(0).accept(mock(TransactionStatus.class));
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+
+        // when
+        reconciliationService.execute(run.getId());
+
+        // then
+        verify(reconciliationMismatchRepository, times(1)).deleteFromCheckpoint(run.getId(), 5L);
+        verify(accountRepository, never()).findOpeningBalances(1L, 2L);
+        verify(accountRepository, times(1)).findOpeningBalances(5L, 6L);
+        verify(accountRepository, times(1)).findOpeningBalances(7L, 8L);
+        verify(reconciliationRunRepository, times(2)).heartbeat(eq(run.getId()), any(LocalDateTime.class));
+
+        assertThat(run.getStatus()).isEqualTo(ReconciliationStatus.COMPLETED);
+        assertThat(run.getCheckpoint()).isEqualTo(9L);
+        assertThat(run.getAccounts()).isEqualTo(4L);
+        assertThat(run.getWithoutOpeningBalance()).isEqualTo(0L);
+        assertThat(run.getMismatches()).isEqualTo(0L);
+    }
+
+    @Test
+    void shouldNotStartReconciliationWhenOneIsRunning() {
+        // given
+        ReconciliationRun run = buildRun(ReconciliationStatus.RUNNING, 5L, 8L, LocalDateTime.now().minusMinutes(1));
+        given(reconciliationRunRepository.findFirstByStatusOrderByIdDesc(ReconciliationStatus.RUNNING))
+                .willReturn(Optional.of(run));
+
+        // when
+        // then
+        assertThatThrownBy(() -> reconciliationService.startReconciliation())
+                .isInstanceOf(ReconciliationRunningException.class)
+                .hasMessageContaining(String.format("Reconciliation: %s is running!", run.getId()));
+
+        verify(reconciliationRunRepository, times(1)).claim(eq(run.getId()), any(LocalDateTime.class),
+                any(LocalDateTime.class));
+        verify(reconciliationRunRepository, never()).save(any(ReconciliationRun.class));
+    }
+
+    private AccountOpeningBalance buildBalance(Long id, long openingBalance, long balance) {
+        return new AccountOpeningBalance(id, BigDecimal.valueOf(openingBalance), BigDecimal.valueOf(balance));
+    }
+
+    private ReconciliationRun buildRun(ReconciliationStatus status, Long checkpoint, Long lastAccountId,
+                                       LocalDateTime updatedAt) {
+        return ReconciliationRun.builder()
+                .id(7L)
+                .status(status)
+                .rangeSize(2)
+                .lastAccountId(lastAccountId)
+                .checkpoint(checkpoint)
+                .accounts(0L)
+                .skipped(0L)
+                .mismatches(0L)
+                .startedAt(updatedAt)
+                .updatedAt(updatedAt)
+                .build();
+    }
+}
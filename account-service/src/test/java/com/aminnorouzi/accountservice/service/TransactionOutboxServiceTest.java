@@ -0,0 +1,299 @@
+package com.aminnorouzi.accountservice.service;
+
+import com.aminnorouzi.accountservice.client.TransactionClient;
+import com.aminnorouzi.accountservice.model.TransactionOutbox;
+import com.aminnorouzi.accountservice.model.TransactionOutboxDeadLetter;
+import com.aminnorouzi.accountservice.model.transaction.Status;
+import com.aminnorouzi.accountservice.model.transaction.Transaction;
+import com.aminnorouzi.accountservice.model.transaction.TransactionRequest;
+import com.aminnorouzi.accountservice.model.transaction.Type;
+import com.aminnorouzi.accountservice.repository.TransactionOutboxDeadLetterRepository;
+import com.aminnorouzi.accountservice.repository.TransactionOutboxRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TransactionOutboxServiceTest {
+
+    @Mock
+    private TransactionOutboxRepository transactionOutboxRepository;
+    @Mock
+    private TransactionOutboxDeadLetterRepository transactionOutboxDeadLetterRepository;
+    @Mock
+    private TransactionClient transactionClient;
+    @Mock
+    private TransactionTemplate transactionTemplate;
+    @InjectMocks
+    private TransactionOutboxService transactionOutboxService;
+    @Captor
+    private ArgumentCaptor<List<TransactionRequest>> requestsArgumentCaptor;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(transactionOutboxService, "batchSize", 100);
+        ReflectionTestUtils.setField(transactionOutboxService, "maxAttempts", 3);
+        ReflectionTestUtils.setField(transactionOutboxService, "maxPages", 10);
+        ReflectionTestUtils.setField(transactionOutboxService, "lease", Duration.ofMinutes(5));
+    }
+
+    @Test
+    void shouldAppendTransaction() {
+        // given
+        TransactionRequest request = new TransactionRequest(10L, 11L, BigDecimal.valueOf(10000), "test",
+                Type.TRANSFER, Status.SUCCEED);
+
+        given(transactionOutboxRepository.save(any(TransactionOutbox.class)))
+                .willAnswer(invocation -> {
+                    TransactionOutbox outbox = invocation.getArgument(0);
+                    outbox.setId(1L);
+                    return outbox;
+                });
+
+        // when
+        Transaction transaction = transactionOutboxService.append(request);
+
+        // then
+        ArgumentCaptor<TransactionOutbox> outboxArgumentCaptor = ArgumentCaptor.forClass(TransactionOutbox.class);
+
+        verify(transactionOutboxRepository, times(1)).save(outboxArgumentCaptor.capture());
+        verify(transactionClient, never()).createTransaction(any(TransactionRequest.class));
+
+        TransactionOutbox capturedOutbox = outboxArgumentCaptor.getValue();
+
+        assertThat(capturedOutbox.getAttempts()).isEqualTo(0);
+        assertThat(capturedOutbox.getAmount()).isEqualTo(request.getAmount());
+        assertThat(transaction.getStatus()).isEqualTo(Status.SUCCEED);
+        assertThat(capturedOutbox.getIdempotencyKey()).startsWith("account-outbox-");
+        assertThat(capturedOutbox.getIdempotencyKey().length()).isEqualTo("account-outbox-".length() + 36);
+        assertThat(transaction.getId()).isNull();
+        assertThat(transaction.getIdempotencyKey()).isEqualTo(capturedOutbox.getIdempotencyKey());
+    }
+
+    @Test
+    void shouldRelayPendingTransactionsInBulk() {
+        // given
+        TransactionOutbox first = buildOutbox(1L, 10L, 0);
+        TransactionOutbox second = buildOutbox(2L, 11L, 0);
+        second.setIdempotencyKey(null); // appended before the key column existed
+        given(transactionOutboxRepository.findByAttemptsLessThanAndIdGreaterThanOrderByIdAsc(eq(3), anyLong(),
+                any(Pageable.class)))
+                .willReturn(List.of(first, second));
+        givenClaimable(first, second);
+
+        given(transactionClient.createTransactions(anyList()))
+                .willReturn(List.of(100L, 101L));
+
+        // when
+        transactionOutboxService.relay();
+
+        // then
+        verify(transactionClient, times(1)).createTransactions(requestsArgumentCaptor.capture());
+        verify(transactionClient, never()).createTransaction(any(TransactionRequest.class));
+        verify(transactionOutboxRepository, times(1)).deleteAllInBatch(List.of(first, second));
+
+        assertThat(requestsArgumentCaptor.getValue().size()).isEqualTo(2);
+        assertThat(requestsArgumentCaptor.getValue().get(0).getIdempotencyKey()).isEqualTo(first.getIdempotencyKey());
+        assertThat(requestsArgumentCaptor.getValue().get(1).getIdempotencyKey()).isEqualTo("account-outbox-2");
+    }
+
+    @Test
+    void shouldHoldBackAccountTransactionsWhenRelayFails() {
+        // given
+        TransactionOutbox failing = buildOutbox(1L, 10L, 0);
+        TransactionOutbox sameAccount = buildOutbox(2L, 10L, 0);
+        TransactionOutbox otherAccount = buildOutbox(3L, 11L, 0);
+        given(transactionOutboxRepository.findByAttemptsLessThanAndIdGreaterThanOrderByIdAsc(eq(3), anyLong(),
+                any(Pageable.class)))
+                .willReturn(List.of(failing, sameAccount, otherAccount));
+        givenClaimable(failing, sameAccount, otherAccount);
+
+        given(transactionClient.createTransactions(anyList()))
+                .willThrow(new RuntimeException("unavailable"));
+        given(transactionClient.createTransaction(any(TransactionRequest.class)))
+                .willThrow(new RuntimeException("unavailable"))
+                .willReturn(new Transaction());
+
+        // when
+        transactionOutboxService.relay();
+
+        // then
+        verify(transactionClient, times(2)).createTransaction(any(TransactionRequest.class));
+        verify(transactionOutboxRepository, never()).deleteAllInBatch(anyList());
+        verify(transactionOutboxRepository, times(1)).save(failing);
+        verify(transactionOutboxRepository, never()).delete(failing);
+        verify(transactionOutboxRepository, never()).delete(sameAccount);
+        verify(transactionOutboxRepository, times(1)).delete(otherAccount);
+
+        assertThat(failing.getAttempts()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldRetryFailedTransactionOnItsOwnAndRelayOthersInBulk() {
+        // given
+        TransactionOutbox failing = buildOutbox(1L, 10L, 1);
+        TransactionOutbox sameAccount = buildOutbox(2L, 10L, 0);
+        TransactionOutbox otherAccount = buildOutbox(3L, 11L, 0);
+        given(transactionOutboxRepository.findByAttemptsLessThanAndIdGreaterThanOrderByIdAsc(eq(3), anyLong(),
+                any(Pageable.class)))
+                .willReturn(List.of(failing, sameAccount, otherAccount));
+        givenClaimable(failing, sameAccount, otherAccount);
+
+        given(transactionClient.createTransaction(any(TransactionRequest.class)))
+                .willThrow(new RuntimeException("unavailable"));
+        given(transactionClient.createTransactions(anyList()))
+                .willReturn(List.of(100L));
+
+        // when
+        transactionOutboxService.relay();
+
+        // then
+        verify(transactionClient, times(1)).createTransaction(any(TransactionRequest.class));
+        verify(transactionOutboxRepository, times(1)).save(failing);
+        verify(transactionOutboxRepository, times(1)).deleteAllInBatch(List.of(otherAccount));
+
+        assertThat(failing.getAttempts()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldPagePastHeldBackAccounts() {
+        // given
+        ReflectionTestUtils.setField(transactionOutboxService, "batchSize", 2);
+
+        TransactionOutbox failing = buildOutbox(1L, 10L, 1);
+        TransactionOutbox sameAccount = buildOutbox(2L, 10L, 0);
+        TransactionOutbox first = buildOutbox(3L, 11L, 0);
+        TransactionOutbox second = buildOutbox(4L, 12L, 0);
+        given(transactionOutboxRepository.findByAttemptsLessThanAndIdGreaterThanOrderByIdAsc(3, 0L,
+                PageRequest.of(0, 2)))
+                .willReturn(List.of(failing, sameAccount));
+        given(transactionOutboxRepository.findByAttemptsLessThanAndIdGreaterThanOrderByIdAsc(3, 2L,
+                PageRequest.of(0, 2)))
+                .willReturn(List.of(first, second));
+        givenClaimable(failing, sameAccount, first, second);
+
+        given(transactionClient.createTransaction(any(TransactionRequest.class)))
+                .willThrow(new RuntimeException("unavailable"));
+        given(transactionClient.createTransactions(anyList()))
+                .willReturn(List.of(100L, 101L));
+
+        // when
+        transactionOutboxService.relay();
+
+        // then
+        verify(transactionOutboxRepository, times(1)).deleteAllInBatch(List.of(first, second));
+        verify(transactionOutboxRepository, never()).delete(sameAccount);
+    }
+
+    @Test
+    void shouldDeadLetterTransactionAtMaxAttempts() {
+        // given
+        TransactionOutbox failing = buildOutbox(1L, 10L, 2);
+        given(transactionOutboxRepository.findByAttemptsLessThanAndIdGreaterThanOrderByIdAsc(eq(3), anyLong(),
+                any(Pageable.class)))
+                .willReturn(List.of(failing));
+        givenClaimable(failing);
+
+        given(transactionClient.createTransaction(any(TransactionRequest.class)))
+                .willThrow(new RuntimeException("rejected"));
+        doAnswer(invocation -> {
+            invocation.<Consumer<TransactionStatus>>getArgument(0).accept(mock(TransactionStatus.class));
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+
+        // when
+        transactionOutboxService.relay();
+
+        // then
+        ArgumentCaptor<TransactionOutboxDeadLetter> deadLetterArgumentCaptor =
+                ArgumentCaptor.forClass(TransactionOutboxDeadLetter.class);
+
+        verify(transactionOutboxDeadLetterRepository, times(1)).save(deadLetterArgumentCaptor.capture());
+        verify(transactionOutboxRepository, times(1)).delete(failing);
+        verify(transactionOutboxRepository, never()).save(failing);
+
+        assertThat(deadLetterArgumentCaptor.getValue().getId()).isEqualTo(1L);
+        assertThat(deadLetterArgumentCaptor.getValue().getIdempotencyKey()).isEqualTo(failing.getIdempotencyKey());
+        assertThat(deadLetterArgumentCaptor.getValue().getAttempts()).isEqualTo(3);
+        assertThat(deadLetterArgumentCaptor.getValue().getError()).isEqualTo("rejected");
+    }
+
+    @Test
+    void shouldHoldBackAccountsOfTransactionsClaimedByAnotherRelay() {
+        // given
+        TransactionOutbox claimedElsewhere = buildOutbox(1L, 10L, 0);
+        TransactionOutbox sameAccount = buildOutbox(2L, 10L, 0);
+        TransactionOutbox otherAccount = buildOutbox(3L, 11L, 0);
+        given(transactionOutboxRepository.findByAttemptsLessThanAndIdGreaterThanOrderByIdAsc(eq(3), anyLong(),
+                any(Pageable.class)))
+                .willReturn(List.of(claimedElsewhere, sameAccount, otherAccount));
+        givenClaimable(sameAccount, otherAccount);
+
+        given(transactionClient.createTransactions(anyList()))
+                .willReturn(List.of(100L));
+
+        // when
+        transactionOutboxService.relay();
+
+        // then
+        ArgumentCaptor<String> leaseOwnerArgumentCaptor = ArgumentCaptor.forClass(String.class);
+
+        verify(transactionOutboxRepository, times(1)).claim(eq(List.of(1L, 2L, 3L)), leaseOwnerArgumentCaptor.capture(),
+                any(LocalDateTime.class), any(LocalDateTime.class));
+        verify(transactionOutboxRepository, times(1)).deleteAllInBatch(List.of(otherAccount));
+        verify(transactionOutboxRepository, times(1)).release(leaseOwnerArgumentCaptor.getValue());
+    }
+
+    // the claim leaves only these rows to the run, the others are held by another run
+    private void givenClaimable(TransactionOutbox... claimable) {
+        given(transactionOutboxRepository.findByLeaseOwnerAndIdIn(anyString(), anyCollection()))
+                .willAnswer(invocation -> {
+                    Collection<Long> ids = invocation.getArgument(1);
+                    return Stream.of(claimable)
+                            .filter(outbox -> ids.contains(outbox.getId()))
+                            .collect(Collectors.toList());
+                });
+    }
+
+    private TransactionOutbox buildOutbox(Long id, Long accountId, Integer attempts) {
+        return TransactionOutbox.builder()
+                .id(id)
+                .idempotencyKey("account-outbox-" + UUID.randomUUID())
+                .senderId(accountId)
+                .receiverId(accountId)
+                .amount(BigDecimal.valueOf(10000))
+                .type(Type.DEPOSIT)
+                .status(Status.SUCCEED)
+                .attempts(attempts)
+                .build();
+    }
+}
@@ -0,0 +1,11 @@
+package com.aminnorouzi.accountverifier;
+
+/**
+ * The remote existence check behind an {@link AccountVerifier}, usually the {@code verifyAccount} call of the
+ * service's own account-service client.
+ */
+@FunctionalInterface
+public interface AccountLookup {
+
+    boolean exists(Long id);
+}
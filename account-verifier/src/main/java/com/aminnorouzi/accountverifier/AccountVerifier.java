@@ -0,0 +1,72 @@
+package com.aminnorouzi.accountverifier;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.Ticker;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+
+/**
+ * Caches the answers of an {@link AccountLookup}: an existing account is remembered for {@code ttl}, a missing one
+ * only for {@code negativeTtl}, so a freshly opened account is usable soon after.
+ * <p>
+ * Concurrent checks of the same uncached id wait for a single lookup. A failed lookup is not cached.
+ */
+@Slf4j
+public class AccountVerifier {
+
+    private final AccountLookup accountLookup;
+    private final Cache<Long, Boolean> accounts;
+
+    public AccountVerifier(AccountLookup accountLookup, Duration ttl, Duration negativeTtl, Long maximumSize) {
+        this(accountLookup, ttl, negativeTtl, maximumSize, Ticker.systemTicker());
+    }
+
+    AccountVerifier(AccountLookup accountLookup, Duration ttl, Duration negativeTtl, Long maximumSize, Ticker ticker) {
+        this.accountLookup = accountLookup;
+        this.accounts = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new AnswerExpiry(ttl.toNanos(), negativeTtl.toNanos()))
+                .ticker(ticker)
+                .recordStats()
+                .build();
+    }
+
+    public boolean exists(Long id) {
+        return accounts.get(id, accountLookup::exists);
+    }
+
+    public void evict(Long id) {
+        accounts.invalidate(id);
+
+        log.info("Evicted a cached account: id={}", id);
+    }
+
+    private static class AnswerExpiry implements Expiry<Long, Boolean> {
+
+        private final long ttl;
+        private final long negativeTtl;
+
+        private AnswerExpiry(long ttl, long negativeTtl) {
+            this.ttl = ttl;
+            this.negativeTtl = negativeTtl;
+        }
+
+        @Override
+        public long expireAfterCreate(Long id, Boolean exists, long currentTime) {
+            return exists ? ttl : negativeTtl;
+        }
+
+        @Override
+        public long expireAfterUpdate(Long id, Boolean exists, long currentTime, long currentDuration) {
+            return exists ? ttl : negativeTtl;
+        }
+
+        @Override
+        public long expireAfterRead(Long id, Boolean exists, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
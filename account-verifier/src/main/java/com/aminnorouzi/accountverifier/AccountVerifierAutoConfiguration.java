@@ -0,0 +1,24 @@
+package com.aminnorouzi.accountverifier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+// a service opts in by exposing an AccountLookup bean
+@Configuration(proxyBeanMethods = false)
+public class AccountVerifierAutoConfiguration {
+
+    @Bean
+    @ConditionalOnBean(AccountLookup.class)
+    @ConditionalOnMissingBean
+    public AccountVerifier accountVerifier(AccountLookup accountLookup,
+                                           @Value("${account.verifier.ttl:5m}") Duration ttl,
+                                           @Value("${account.verifier.negative-ttl:10s}") Duration negativeTtl,
+                                           @Value("${account.verifier.maximum-size:100000}") Long maximumSize) {
+        return new AccountVerifier(accountLookup, ttl, negativeTtl, maximumSize);
+    }
+}
@@ -0,0 +1,123 @@
+package com.aminnorouzi.accountverifier;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+
+class AccountVerifierTest {
+
+    private final AtomicLong time = new AtomicLong();
+    private final AtomicInteger lookups = new AtomicInteger();
+
+    @Test
+    void shouldCacheExistingAccountForTtl() {
+        // given
+        AccountVerifier accountVerifier = buildVerifier(id -> {
+            lookups.incrementAndGet();
+            return true;
+        });
+
+        // when
+        boolean first = accountVerifier.exists(10L);
+        time.addAndGet(Duration.ofMinutes(4).toNanos());
+        boolean second = accountVerifier.exists(10L);
+        time.addAndGet(Duration.ofMinutes(2).toNanos());
+        boolean third = accountVerifier.exists(10L);
+
+        // then
+        assertThat(first).isTrue();
+        assertThat(second).isTrue();
+        assertThat(third).isTrue();
+        assertThat(lookups.get()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldCacheMissingAccountForNegativeTtl() {
+        // given
+        AccountVerifier accountVerifier = buildVerifier(id -> lookups.incrementAndGet() > 2);
+
+        // when
+        boolean first = accountVerifier.exists(10L);
+        time.addAndGet(Duration.ofSeconds(5).toNanos());
+        boolean second = accountVerifier.exists(10L);
+        time.addAndGet(Duration.ofSeconds(6).toNanos());
+        boolean third = accountVerifier.exists(10L);
+        accountVerifier.evict(10L);
+        boolean fourth = accountVerifier.exists(10L);
+
+        // then
+        assertThat(first).isFalse();
+        assertThat(second).isFalse();
+        assertThat(third).isFalse();
+        assertThat(fourth).isTrue();
+        assertThat(lookups.get()).isEqualTo(3);
+    }
+
+    @Test
+    void shouldCoalesceConcurrentLookupsOfSameAccount() throws Exception {
+        // given
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AccountVerifier accountVerifier = buildVerifier(id -> {
+            lookups.incrementAndGet();
+            started.countDown();
+            await(release);
+            return true;
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            // when
+            Future<Boolean> first = executor.submit(() -> accountVerifier.exists(10L));
+            started.await(5, TimeUnit.SECONDS);
+            Future<Boolean> second = executor.submit(() -> accountVerifier.exists(10L));
+            Future<Boolean> third = executor.submit(() -> accountVerifier.exists(10L));
+            Thread.sleep(100);
+            release.countDown();
+
+            // then
+            assertThat(first.get(5, TimeUnit.SECONDS)).isTrue();
+            assertThat(second.get(5, TimeUnit.SECONDS)).isTrue();
+            assertThat(third.get(5, TimeUnit.SECONDS)).isTrue();
+            assertThat(lookups.get()).isEqualTo(1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void shouldNotCacheFailedLookup() {
+        // given
+        AccountVerifier accountVerifier = buildVerifier(id -> {
+            if (lookups.incrementAndGet() == 1) {
+                throw new IllegalStateException("account-service unavailable");
+            }
+            return true;
+        });
+
+        // when
+        // then
+        assertThatThrownBy(() -> accountVerifier.exists(10L))
+                .isInstanceOf(IllegalStateException.class);
+        assertThat(accountVerifier.exists(10L)).isTrue();
+        assertThat(lookups.get()).isEqualTo(2);
+    }
+
+    private AccountVerifier buildVerifier(AccountLookup accountLookup) {
+        return new AccountVerifier(accountLookup, Duration.ofMinutes(5), Duration.ofSeconds(10), 100L, time::get);
+    }
+
+    private void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
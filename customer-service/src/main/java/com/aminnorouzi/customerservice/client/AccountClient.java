@@ -2,8 +2,11 @@ package com.aminnorouzi.customerservice.client;
 
 import com.aminnorouzi.customerservice.model.account.Account;
 import org.springframework.cloud.openfeign.FeignClient;
+import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 
 import java.util.List;
 
@@ -12,4 +15,11 @@ public interface AccountClient {
 
     @GetMapping("/api/v1/accounts/{customerId}")
     List<Account> getAccountsByCustomer(@PathVariable("customerId") Long customerId);
+
+    @PutMapping("/api/v1/accounts/title/{customerId}")
+    List<Account> changeCustomerTitle(@PathVariable("customerId") Long customerId,
+                                      @RequestParam("fullName") String fullName);
+
+    @DeleteMapping("/api/v1/accounts/cache/customers/{id}")
+    void evictCustomer(@PathVariable("id") Long id);
 }
@@ -42,6 +42,17 @@ public class CustomerController {
         return customerService.changeCustomerStatus(id, status);
     }
 
+    @PutMapping("/name/{id}")
+    public Customer changeCustomerName(@PathVariable Long id,
+                                       @RequestParam("fullName") String fullName) {
+        return customerService.changeCustomerName(id, fullName);
+    }
+
+    @GetMapping("/batch")
+    public List<Customer> getCustomersByIds(@RequestParam("ids") List<Long> ids) {
+        return customerService.getCustomersByIds(ids);
+    }
+
     @GetMapping("/{id}")
     public Customer getCustomerById(@PathVariable("id") Long id) {
         return customerService.getCustomerById(id);
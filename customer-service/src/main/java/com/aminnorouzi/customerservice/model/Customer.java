@@ -35,4 +35,6 @@ public class Customer {
 
     private LocalDate birthDate;
     private LocalDate createdAt;
+
+    private Boolean accountTitlePending; // a rename not yet applied to the account titles in account-service
 }
\ No newline at end of file
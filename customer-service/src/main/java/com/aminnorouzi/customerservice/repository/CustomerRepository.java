@@ -1,9 +1,16 @@
 package com.aminnorouzi.customerservice.repository;
 
 import com.aminnorouzi.customerservice.model.Customer;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.rest.core.annotation.RepositoryRestResource;
+import org.springframework.data.rest.core.annotation.RestResource;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
 
 @RepositoryRestResource
 public interface CustomerRepository extends JpaRepository<Customer, Long>,
@@ -12,4 +19,15 @@ public interface CustomerRepository extends JpaRepository<Customer, Long>,
     boolean existsByIdEquals(Long id);
 
     boolean existsByNationalCodeEquals(String nationalCode);
-}
\ No newline at end of file
+
+    // keyset page by id
+    @RestResource(exported = false)
+    List<Customer> findByAccountTitlePendingTrueAndIdGreaterThanOrderByIdAsc(Long id, Pageable pageable);
+
+    // only the name that was sent is marked synced, a newer rename stays pending
+    @RestResource(exported = false)
+    @Transactional
+    @Modifying
+    @Query("UPDATE Customer AS c SET c.accountTitlePending = false WHERE c.id = ?1 AND c.fullName = ?2")
+    int markAccountTitleSynced(Long id, String fullName);
+}
@@ -12,8 +12,13 @@ import com.aminnorouzi.customerservice.model.account.Account;
 import com.aminnorouzi.customerservice.repository.CustomerRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.jpa.domain.Specification;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.time.LocalDate;
 import java.util.List;
@@ -23,6 +28,8 @@ import java.util.List;
 @Service
 public class CustomerService {
 
+    private static final int PENDING_PAGE_SIZE = 100;
+
     private final CustomerRepository customerRepository;
     private final AccountClient accountClient;
 
@@ -52,6 +59,7 @@ public class CustomerService {
         }
 
         customerRepository.deleteById(id);
+        evictCustomerFromAccounts(id);
 
         log.info("Deleted a customer: id={}", id);
     }
@@ -68,11 +76,47 @@ public class CustomerService {
         customer.setStatus(Status.valueOf(status.toUpperCase()));
 
         Customer updated = customerRepository.save(customer);
+        evictCustomerFromAccounts(id);
 
         log.info("Changed a customer status: id={}, {}", id, updated);
         return updated;
     }
 
+    /**
+     * Account titles are persisted in account-service. The rename commits first with the titles marked pending, so no
+     * remote call holds the local transaction; the titles are changed once it commits and a failed change is retried
+     * by {@link #syncPendingAccountTitles}.
+     */
+    @Transactional
+    public Customer changeCustomerName(Long id, String fullName) {
+        Customer customer = getCustomerById(id);
+        customer.setFullName(fullName);
+        customer.setAccountTitlePending(true);
+
+        Customer updated = customerRepository.save(customer);
+        afterCommit(() -> {
+            syncAccountTitle(id, fullName);
+            evictCustomerFromAccounts(id);
+        });
+
+        log.info("Changed a customer name: id={}, {}", id, updated);
+        return updated;
+    }
+
+    @Scheduled(fixedDelayString = "${customer.account-title.retry-delay:60000}")
+    public void syncPendingAccountTitles() {
+        long lastId = 0;
+        List<Customer> pending;
+        do {
+            pending = customerRepository.findByAccountTitlePendingTrueAndIdGreaterThanOrderByIdAsc(lastId,
+                    PageRequest.of(0, PENDING_PAGE_SIZE));
+            for (Customer customer : pending) {
+                syncAccountTitle(customer.getId(), customer.getFullName());
+                lastId = customer.getId();
+            }
+        } while (pending.size() == PENDING_PAGE_SIZE);
+    }
+
     public Customer getCustomerById(Long id) {
         Customer found = customerRepository.findById(id)
                 .orElseThrow(() -> new CustomerNotFoundException(String.format("Customer: %s not found!", id)));
@@ -81,6 +125,13 @@ public class CustomerService {
         return found;
     }
 
+    public List<Customer> getCustomersByIds(List<Long> ids) {
+        List<Customer> found = customerRepository.findAllById(ids);
+
+        log.info("Found customers: ids={}, count={}", ids, found.size());
+        return found;
+    }
+
     public List<Customer> getCustomersByFilter(Specification<Customer> specs) {
         List<Customer> found = customerRepository.findAll(Specification.where(specs));
 
@@ -101,6 +152,41 @@ public class CustomerService {
         return found;
     }
 
+    private void syncAccountTitle(Long id, String fullName) {
+        try {
+            accountClient.changeCustomerTitle(id, fullName);
+            customerRepository.markAccountTitleSynced(id, fullName);
+
+            log.info("Changed a customer account titles: id={}, fullName={}", id, fullName);
+        } catch (RuntimeException exception) {
+            log.warn("Could not change a customer account titles, retrying later: id={}, {}",
+                    id, exception.getMessage());
+        }
+    }
+
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    // best effort, account-service drops its cached copy after a short ttl anyway
+    private void evictCustomerFromAccounts(Long id) {
+        try {
+            accountClient.evictCustomer(id);
+        } catch (RuntimeException exception) {
+            log.warn("Could not evict a customer from account-service cache: id={}, {}", id, exception.getMessage());
+        }
+    }
+
     private void validateNationalCode(String nationalCode) {
         boolean exists = customerRepository.existsByNationalCodeEquals(nationalCode);
         if (exists) {
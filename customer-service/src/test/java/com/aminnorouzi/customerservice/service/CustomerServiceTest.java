@@ -17,6 +17,7 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.jpa.domain.Specification;
 
 import java.time.LocalDate;
@@ -255,6 +256,82 @@ class CustomerServiceTest {
         verify(customerRepository, times(1)).save(any(Customer.class));
     }
 
+    @Test
+    void shouldChangeCustomerName() {
+        // given
+        long id = 10;
+        String fullName = "test";
+        given(customerRepository.findById(id))
+                .willReturn(Optional.of(new Customer()));
+
+        // when
+        // then
+        customerService.changeCustomerName(id, fullName);
+
+        verify(customerRepository, times(1)).save(argThat(customer -> customer.getAccountTitlePending()));
+        verify(accountClient, times(1)).changeCustomerTitle(id, fullName);
+        verify(customerRepository, times(1)).markAccountTitleSynced(id, fullName);
+    }
+
+    @Test
+    void shouldKeepCustomerNameWhenAccountTitlesFail() {
+        // given
+        long id = 10;
+        String fullName = "test";
+        Customer customer = new Customer();
+        given(customerRepository.findById(id))
+                .willReturn(Optional.of(customer));
+        given(customerRepository.save(customer))
+                .willReturn(customer);
+        given(accountClient.changeCustomerTitle(id, fullName))
+                .willThrow(new IllegalStateException("account-service is not reachable"));
+
+        // when
+        Customer updated = customerService.changeCustomerName(id, fullName);
+
+        // then
+        verify(customerRepository, never()).markAccountTitleSynced(any(Long.class), any(String.class));
+        verify(accountClient, times(1)).evictCustomer(id);
+
+        assertThat(updated.getFullName()).isEqualTo(fullName);
+        assertThat(updated.getAccountTitlePending()).isTrue();
+    }
+
+    @Test
+    void shouldRetryPendingAccountTitles() {
+        // given
+        Customer failing = Customer.builder().id(1L).fullName("first").accountTitlePending(true).build();
+        Customer pending = Customer.builder().id(2L).fullName("second").accountTitlePending(true).build();
+        given(customerRepository.findByAccountTitlePendingTrueAndIdGreaterThanOrderByIdAsc(0L, PageRequest.of(0, 100)))
+                .willReturn(List.of(failing, pending));
+        given(accountClient.changeCustomerTitle(1L, "first"))
+                .willThrow(new IllegalStateException("account-service is not reachable"));
+
+        // when
+        customerService.syncPendingAccountTitles();
+
+        // then
+        verify(accountClient, times(1)).changeCustomerTitle(2L, "second");
+        verify(customerRepository, times(1)).markAccountTitleSynced(2L, "second");
+        verify(customerRepository, never()).markAccountTitleSynced(1L, "first");
+    }
+
+    @Test
+    void shouldNotChangeCustomerNameWhenCustomerNotFound() {
+        // given
+        long id = 10;
+        given(customerRepository.findById(id))
+                .willReturn(Optional.empty());
+
+        // when
+        // then
+        assertThatThrownBy(() -> customerService.changeCustomerName(id, "test"))
+                .isInstanceOf(CustomerNotFoundException.class)
+                .hasMessageContaining(String.format("Customer: %s not found!", id));
+
+        verify(accountClient, never()).changeCustomerTitle(any(Long.class), any(String.class));
+    }
+
     @Test
     void shouldNotChangeCustomerStatusWhenCustomerNotFound() {
         // given
@@ -319,6 +396,21 @@ class CustomerServiceTest {
         verify(customerRepository, times(1)).findById(id);
     }
 
+    @Test
+    void shouldGetCustomersByIds() {
+        // given
+        List<Long> ids = List.of(10L, 11L);
+        given(customerRepository.findAllById(ids))
+                .willReturn(List.of(new Customer(), new Customer()));
+
+        // when
+        // then
+        assertThat(customerService.getCustomersByIds(ids).size()).isEqualTo(2);
+
+        verify(customerRepository, times(1)).findAllById(ids);
+        verify(customerRepository, never()).findById(any(Long.class));
+    }
+
     @Test
     void shouldGetCustomersByFilter() {
         // when
@@ -1,21 +1,20 @@
 package com.aminnorouzi.loanservice.client;
 
 import com.aminnorouzi.loanservice.model.transaction.Transaction;
+import com.aminnorouzi.loanservice.model.transaction.WithdrawalRequest;
 import org.springframework.cloud.openfeign.FeignClient;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PutMapping;
-import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RequestBody;
 
-import java.math.BigDecimal;
+import java.util.List;
 
 @FeignClient(name = "account-service")
 public interface AccountClient {
 
-    @PutMapping("/api/v1/accounts/withdraw")
-    Transaction withdraw(@RequestParam("id") Long id,
-                         @RequestParam("amount") BigDecimal amount,
-                         @RequestParam(value = "note", required = false, defaultValue = "withdraw") String note);
+    @PutMapping("/api/v1/accounts/withdraw/batch")
+    List<Transaction> withdrawAll(@RequestBody List<WithdrawalRequest> requests);
 
     @GetMapping("/api/v1/accounts/verify/{id}")
     boolean verifyAccount(@PathVariable("id") Long id);
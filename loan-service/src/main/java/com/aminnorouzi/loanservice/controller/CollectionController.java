@@ -0,0 +1,32 @@
+package com.aminnorouzi.loanservice.controller;
+
+import com.aminnorouzi.loanservice.model.CollectionRun;
+import com.aminnorouzi.loanservice.service.CollectionService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+
+@RequiredArgsConstructor
+@RestController
+@RequestMapping("api/v1/loans/collections")
+public class CollectionController {
+
+    private final CollectionService collectionService;
+
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    @PostMapping
+    public CollectionRun startCollection() {
+        return collectionService.startCollection();
+    }
+
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    @PostMapping("/{id}/resume")
+    public CollectionRun resumeCollection(@PathVariable("id") Long id) {
+        return collectionService.resumeCollection(id);
+    }
+
+    @GetMapping("/{id}")
+    public CollectionRun getCollectionById(@PathVariable("id") Long id) {
+        return collectionService.getCollectionById(id);
+    }
+}
@@ -1,11 +1,17 @@
 package com.aminnorouzi.loanservice.controller;
 
+import com.aminnorouzi.loanservice.model.CalculationGrid;
+import com.aminnorouzi.loanservice.model.Installment;
 import com.aminnorouzi.loanservice.model.Loan;
 import com.aminnorouzi.loanservice.model.LoanRequest;
+import com.aminnorouzi.loanservice.service.LoanCalculationService;
 import com.aminnorouzi.loanservice.service.LoanService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.math.BigDecimal;
 import java.util.List;
@@ -16,6 +22,7 @@ import java.util.List;
 public class LoanController {
 
     private final LoanService loanService;
+    private final LoanCalculationService loanCalculationService;
 
     @ResponseStatus(HttpStatus.CREATED)
     @PostMapping
@@ -44,4 +51,20 @@ public class LoanController {
                                 @RequestParam("rate") String rate) {
         return loanService.calculate(amount, count, rate);
     }
+
+    @GetMapping("/calculate/schedule")
+    public List<Installment> getSchedule(@RequestParam("amount") BigDecimal amount,
+                                         @RequestParam("count") Integer count,
+                                         @RequestParam("rate") String rate) {
+        return loanCalculationService.getSchedule(amount, count, rate);
+    }
+
+    @PostMapping("/calculate/batch")
+    public ResponseEntity<StreamingResponseBody> calculateGrid(@RequestBody CalculationGrid grid) {
+        loanCalculationService.validateGrid(grid);
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(outputStream -> loanCalculationService.calculateGrid(grid, outputStream));
+    }
 }
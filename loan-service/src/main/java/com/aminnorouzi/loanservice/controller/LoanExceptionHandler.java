@@ -1,9 +1,13 @@
 package com.aminnorouzi.loanservice.controller;
 
+import com.aminnorouzi.loanservice.exception.CollectionRunNotFoundException;
+import com.aminnorouzi.loanservice.exception.CollectionRunningException;
 import com.aminnorouzi.loanservice.exception.IllegalLoanStatusException;
 import com.aminnorouzi.loanservice.exception.LoanNotFoundException;
+import com.aminnorouzi.loanservice.exception.LoanPaymentConflictException;
 import com.aminnorouzi.loanservice.exception.LoanPaymentNotAvailableException;
 import com.aminnorouzi.loanservice.exception.NotValidLoanAccountException;
+import com.aminnorouzi.loanservice.exception.NotValidLoanCalculationException;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -55,6 +59,42 @@ public class LoanExceptionHandler {
         return response;
     }
 
+    @ResponseStatus(HttpStatus.CONFLICT)
+    @ExceptionHandler(LoanPaymentConflictException.class)
+    public Map<String, String> handleLoanPaymentConflictException(LoanPaymentConflictException exception) {
+        Map<String, String> response = generateResponse("Conflict", exception.getMessage());
+
+        log.error(ERROR_MESSAGE, response.get("code"), exception.getMessage());
+        return response;
+    }
+
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    @ExceptionHandler(NotValidLoanCalculationException.class)
+    public Map<String, String> handleNotValidLoanCalculationException(NotValidLoanCalculationException exception) {
+        Map<String, String> response = generateResponse("Bad Request", exception.getMessage());
+
+        log.error(ERROR_MESSAGE, response.get("code"), exception.getMessage());
+        return response;
+    }
+
+    @ResponseStatus(HttpStatus.NOT_FOUND)
+    @ExceptionHandler(CollectionRunNotFoundException.class)
+    public Map<String, String> handleCollectionRunNotFoundException(CollectionRunNotFoundException exception) {
+        Map<String, String> response = generateResponse("Not Found", exception.getMessage());
+
+        log.error(ERROR_MESSAGE, response.get("code"), exception.getMessage());
+        return response;
+    }
+
+    @ResponseStatus(HttpStatus.CONFLICT)
+    @ExceptionHandler(CollectionRunningException.class)
+    public Map<String, String> handleCollectionRunningException(CollectionRunningException exception) {
+        Map<String, String> response = generateResponse("Conflict", exception.getMessage());
+
+        log.error(ERROR_MESSAGE, response.get("code"), exception.getMessage());
+        return response;
+    }
+
     @ResponseStatus(HttpStatus.INTERNAL_SERVER_ERROR)
     @ExceptionHandler(Exception.class)
     public Map<String, String> handleAllExceptions(Exception exception) {
@@ -0,0 +1,12 @@
+package com.aminnorouzi.loanservice.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.CONFLICT)
+public class LoanPaymentConflictException extends RuntimeException {
+
+    public LoanPaymentConflictException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,12 @@
+package com.aminnorouzi.loanservice.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class NotValidLoanCalculationException extends RuntimeException {
+
+    public NotValidLoanCalculationException(String message) {
+        super(message);
+    }
+}
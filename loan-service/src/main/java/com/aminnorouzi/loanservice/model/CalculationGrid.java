@@ -0,0 +1,21 @@
+package com.aminnorouzi.loanservice.model;
+
+import lombok.*;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+// every combination of the values is calculated, amounts outermost and rates innermost
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@ToString
+public class CalculationGrid {
+
+    private List<BigDecimal> amounts;
+    private List<Integer> counts;
+    private List<Rate> rates;
+    private Boolean schedule; // adds the full schedule to every result
+}
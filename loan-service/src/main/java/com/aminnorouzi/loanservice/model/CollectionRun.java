@@ -0,0 +1,48 @@
+package com.aminnorouzi.loanservice.model;
+
+import lombok.*;
+
+import javax.persistence.*;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+@Builder
+@Getter
+@Setter
+@ToString
+@EqualsAndHashCode
+@AllArgsConstructor
+@NoArgsConstructor
+@Entity
+@Table(name = "collection_run")
+public class CollectionRun {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "id", nullable = false)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    private CollectionStatus status;
+
+    private LocalDate dueDate; // loans due on or before it are collected
+    private Long lastLoanId; // highest loan id when the run started
+    private Long checkpoint; // every loan below it is processed, a resumed run starts from it
+
+    private Long loans;
+    private Long collected;
+    private Long failed; // rejected by account-service or not sent because it was not reachable
+    private Long skipped; // paid by the account owner while the run was collecting it, charged once
+    private BigDecimal collectedAmount;
+    private Long elapsedMillis; // spent on chunks, a resumed run adds to it
+
+    private LocalDateTime startedAt;
+    private LocalDateTime updatedAt;
+    private LocalDateTime finishedAt;
+
+    // processed loans per second
+    public Double getThroughput() {
+        return elapsedMillis != null && elapsedMillis > 0 ? loans * 1000.0 / elapsedMillis : null;
+    }
+}
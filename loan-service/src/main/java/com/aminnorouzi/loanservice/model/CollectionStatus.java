@@ -0,0 +1,8 @@
+package com.aminnorouzi.loanservice.model;
+
+public enum CollectionStatus {
+
+    RUNNING,
+    COMPLETED,
+    FAILED
+}
@@ -0,0 +1,21 @@
+package com.aminnorouzi.loanservice.model;
+
+import lombok.*;
+
+import java.math.BigDecimal;
+
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@ToString
+@EqualsAndHashCode
+public class Installment {
+
+    private Integer number;
+    private BigDecimal payment;
+    private BigDecimal principal;
+    private BigDecimal interest;
+    private BigDecimal remaining; // principal left after this payment
+}
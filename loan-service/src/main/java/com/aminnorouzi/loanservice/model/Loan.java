@@ -37,5 +37,9 @@ public class Loan {
     private Status status;
 
     private LocalDate createdAt;
+    private LocalDate nextDueDate; // the collection run withdraws the installment on this day
     private Long accountId;
+
+    @Version
+    private Long version; // a manual payment and the collection run never both apply the same installment
 }
\ No newline at end of file
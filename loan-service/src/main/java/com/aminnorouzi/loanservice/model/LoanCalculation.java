@@ -0,0 +1,26 @@
+package com.aminnorouzi.loanservice.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.*;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@ToString
+@EqualsAndHashCode
+public class LoanCalculation {
+
+    private BigDecimal amount;
+    private Integer count;
+    private Rate rate;
+    private BigDecimal installment;
+    private BigDecimal totalInterest;
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private List<Installment> schedule;
+}
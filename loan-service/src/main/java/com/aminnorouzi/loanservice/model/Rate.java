@@ -6,6 +6,8 @@ public enum Rate {
     EIGHTEEN(18),
     TWENTY_FOUR(24);
 
+    private static final Rate[] VALUES = values(); // values() copies the array on every call
+
     private final Integer percentage;
 
     Rate(Integer percentage) {
@@ -15,4 +17,15 @@ public enum Rate {
     public Integer getPercentage() {
         return percentage;
     }
+
+    // case insensitive valueOf, without building an upper case copy of the name
+    public static Rate parse(String name) {
+        for (Rate rate : VALUES) {
+            if (rate.name().equalsIgnoreCase(name)) {
+                return rate;
+            }
+        }
+        throw new IllegalArgumentException(String.format("No enum constant %s.%s", Rate.class.getCanonicalName(),
+                name != null ? name.toUpperCase() : null));
+    }
 }
@@ -0,0 +1,19 @@
+package com.aminnorouzi.loanservice.model.transaction;
+
+import lombok.*;
+
+import java.math.BigDecimal;
+
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@ToString
+public class WithdrawalRequest {
+
+    private Long id;
+    private BigDecimal amount;
+    private String note;
+    private String idempotencyKey;
+}
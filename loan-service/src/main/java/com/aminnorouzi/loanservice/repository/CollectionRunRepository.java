@@ -0,0 +1,34 @@
+package com.aminnorouzi.loanservice.repository;
+
+import com.aminnorouzi.loanservice.model.CollectionRun;
+import com.aminnorouzi.loanservice.model.CollectionStatus;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+@Repository
+public interface CollectionRunRepository extends JpaRepository<CollectionRun, Long> {
+
+    Optional<CollectionRun> findFirstByStatusOrderByIdDesc(CollectionStatus status);
+
+    // takes over a failed run or a running one without a heartbeat since ?3, only one instance gets a row back
+    @Transactional
+    @Modifying
+    @Query("UPDATE CollectionRun AS r " +
+            "SET r.status = com.aminnorouzi.loanservice.model.CollectionStatus.RUNNING, " +
+            "r.updatedAt = ?2, r.finishedAt = NULL " +
+            "WHERE r.id = ?1 AND (r.status = com.aminnorouzi.loanservice.model.CollectionStatus.FAILED " +
+            "OR r.status = com.aminnorouzi.loanservice.model.CollectionStatus.RUNNING " +
+            "AND (r.updatedAt IS NULL OR r.updatedAt < ?3))")
+    int claim(Long id, LocalDateTime now, LocalDateTime staleBefore);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE CollectionRun AS r SET r.updatedAt = ?2 WHERE r.id = ?1")
+    int heartbeat(Long id, LocalDateTime now);
+}
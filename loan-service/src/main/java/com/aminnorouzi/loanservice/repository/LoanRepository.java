@@ -1,13 +1,38 @@
 package com.aminnorouzi.loanservice.repository;
 
 import com.aminnorouzi.loanservice.model.Loan;
+import com.aminnorouzi.loanservice.model.Status;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 public interface LoanRepository extends JpaRepository<Loan, Long> {
 
     List<Loan> findByAccountIdEquals(Long accountId);
+
+    // a primary key range scan, the collection run walks the loans range by range
+    List<Loan> findByIdBetweenAndStatusInAndNextDueDateLessThanEqualOrderByIdAsc(Long fromId, Long toId,
+                                                                                Collection<Status> statuses,
+                                                                                LocalDate dueDate);
+
+    @Query("SELECT MAX(l.id) FROM Loan AS l")
+    Long findMaxId();
+
+    // loans created before they had a due date, the backfill works through them page by page
+    List<Loan> findByNextDueDateIsNullAndCreatedAtIsNotNullAndStatusInOrderByIdAsc(Collection<Status> statuses,
+                                                                                   Pageable pageable);
+
+    // rows written before the version column existed, a null version would make them look new to save
+    @Transactional
+    @Modifying
+    @Query("UPDATE Loan AS l SET l.version = 0 WHERE l.version IS NULL")
+    int initializeVersions();
 }
\ No newline at end of file
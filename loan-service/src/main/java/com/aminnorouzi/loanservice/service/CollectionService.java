@@ -0,0 +1,361 @@
+package com.aminnorouzi.loanservice.service;
+
+import com.aminnorouzi.loanservice.client.AccountClient;
+import com.aminnorouzi.loanservice.exception.CollectionRunNotFoundException;
+import com.aminnorouzi.loanservice.exception.CollectionRunningException;
+import com.aminnorouzi.loanservice.model.CollectionRun;
+import com.aminnorouzi.loanservice.model.CollectionStatus;
+import com.aminnorouzi.loanservice.model.Loan;
+import com.aminnorouzi.loanservice.model.Status;
+import com.aminnorouzi.loanservice.model.transaction.Transaction;
+import com.aminnorouzi.loanservice.repository.CollectionRunRepository;
+import com.aminnorouzi.loanservice.repository.LoanRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+/**
+ * Collects the installments of every OPEN and PAYING loan due on the day of the run. Loans are read in id ranges of
+ * {@code chunk-size}, the due loans of a range are sent to account-service in batch withdrawals on a fixed number of
+ * threads, and the range is checkpointed with the run counters once every batch of it is done. Every batch also bumps
+ * the run's {@code updatedAt}, a run without a heartbeat for {@code stale-after} is taken as abandoned.
+ * <p>
+ * Every withdrawal carries a key of its loan and installment, which account-service withdraws only once. A run resumed
+ * after a crash sends the unfinished range again: installments withdrawn before the crash are answered as withdrawn
+ * and only counted on the loan, nothing is charged twice.
+ */
+@Slf4j
+@Service
+public class CollectionService {
+
+    private static final List<Status> COLLECTABLE_STATUSES = List.of(Status.OPEN, Status.PAYING);
+
+    private final LoanRepository loanRepository;
+    private final CollectionRunRepository collectionRunRepository;
+    private final AccountClient accountClient;
+    private final LoanService loanService;
+    private final TransactionTemplate transactionTemplate;
+    private final Integer chunkSize;
+    private final Integer batchSize;
+    private final Duration staleAfter;
+    private final ExecutorService executor;
+    private final ExecutorService runner;
+
+    private volatile Long activeRunId;
+
+    public CollectionService(LoanRepository loanRepository,
+                             CollectionRunRepository collectionRunRepository,
+                             AccountClient accountClient,
+                             LoanService loanService,
+                             TransactionTemplate transactionTemplate,
+                             @Value("${loan.collection.chunk-size:10000}") Integer chunkSize,
+                             @Value("${loan.collection.batch-size:100}") Integer batchSize,
+                             @Value("${loan.collection.parallelism:4}") Integer parallelism,
+                             @Value("${loan.collection.stale-after:5m}") Duration staleAfter) {
+        this.loanRepository = loanRepository;
+        this.collectionRunRepository = collectionRunRepository;
+        this.accountClient = accountClient;
+        this.loanService = loanService;
+        this.transactionTemplate = transactionTemplate;
+        this.chunkSize = chunkSize;
+        this.batchSize = batchSize;
+        this.staleAfter = staleAfter;
+        this.executor = Executors.newFixedThreadPool(parallelism);
+        this.runner = Executors.newSingleThreadExecutor();
+    }
+
+    @PreDestroy
+    public void close() {
+        runner.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    // a running run is resumed only when its heartbeat has stopped for a while, e.g. after a restart
+    public synchronized CollectionRun startCollection() {
+        Optional<CollectionRun> running = collectionRunRepository.findFirstByStatusOrderByIdDesc(CollectionStatus.RUNNING);
+        if (running.isPresent()) {
+            return resume(running.get());
+        }
+
+        Long lastLoanId = loanRepository.findMaxId();
+        LocalDateTime now = LocalDateTime.now();
+        CollectionRun run = collectionRunRepository.save(CollectionRun.builder()
+                .status(CollectionStatus.RUNNING)
+                .dueDate(now.toLocalDate())
+                .lastLoanId(lastLoanId != null ? lastLoanId : 0L)
+                .checkpoint(1L)
+                .loans(0L)
+                .collected(0L)
+                .failed(0L)
+                .skipped(0L)
+                .collectedAmount(BigDecimal.ZERO)
+                .elapsedMillis(0L)
+                .startedAt(now)
+                .updatedAt(now)
+                .build());
+
+        log.info("Started a collection: {}", run);
+        return submit(run);
+    }
+
+    public synchronized CollectionRun resumeCollection(Long id) {
+        CollectionRun run = getCollectionById(id);
+        if (run.getStatus() == CollectionStatus.COMPLETED) {
+            return run;
+        }
+        return resume(run);
+    }
+
+    @Scheduled(cron = "${loan.collection.cron:-}")
+    public void scheduleCollection() {
+        try {
+            startCollection();
+        } catch (CollectionRunningException exception) {
+            log.info("Skipped a scheduled collection: {}", exception.getMessage());
+        }
+    }
+
+    public CollectionRun getCollectionById(Long id) {
+        CollectionRun found = collectionRunRepository.findById(id)
+                .orElseThrow(() -> new CollectionRunNotFoundException(String.format("Collection: %s not found!", id)));
+
+        log.info("Found a collection: id={}, {}", id, found);
+        return found;
+    }
+
+    void execute(Long id) {
+        CollectionRun run = collectionRunRepository.findById(id)
+                .orElseThrow(() -> new CollectionRunNotFoundException(String.format("Collection: %s not found!", id)));
+        try {
+            while (run.getCheckpoint() <= run.getLastLoanId()) {
+                long started = System.nanoTime();
+                long from = run.getCheckpoint();
+                long to = Math.min(from + chunkSize - 1, run.getLastLoanId());
+
+                BatchResult result = collectRange(id, run.getDueDate(), from, to);
+                checkpoint(run, to + 1, result, Duration.ofNanos(System.nanoTime() - started).toMillis());
+            }
+
+            finish(run, CollectionStatus.COMPLETED);
+            log.info("Completed a collection: id={}, loans={}, collected={}, failed={}, skipped={}, amount={}, "
+                            + "throughput={}", id, run.getLoans(), run.getCollected(), run.getFailed(), run.getSkipped(),
+                    run.getCollectedAmount(), run.getThroughput());
+        } catch (RuntimeException exception) {
+            finish(run, CollectionStatus.FAILED);
+            log.error("Failed a collection, it can be resumed from its checkpoint: {}, {}", run, exception.getMessage());
+        } finally {
+            activeRunId = null;
+        }
+    }
+
+    BatchResult collectRange(Long runId, LocalDate dueDate, Long from, Long to) {
+        List<Loan> due = loanRepository.findByIdBetweenAndStatusInAndNextDueDateLessThanEqualOrderByIdAsc(from, to,
+                COLLECTABLE_STATUSES, dueDate);
+
+        List<Future<BatchResult>> futures = new ArrayList<>();
+        for (int start = 0; start < due.size(); start += batchSize) {
+            List<Loan> batch = due.subList(start, Math.min(start + batchSize, due.size()));
+            futures.add(executor.submit(() -> collectBatch(batch)));
+        }
+
+        BatchResult result = new BatchResult();
+        for (Future<BatchResult> future : futures) {
+            try {
+                result.merge(future.get());
+                collectionRunRepository.heartbeat(runId, LocalDateTime.now());
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while collecting loans", exception);
+            } catch (ExecutionException exception) {
+                throw new IllegalStateException(exception.getCause().getMessage(), exception.getCause());
+            }
+        }
+        return result;
+    }
+
+    // a batch account-service could not answer counts as failed, its loans stay due for the next run
+    private BatchResult collectBatch(List<Loan> loans) {
+        BatchResult result = new BatchResult();
+        result.loans = loans.size();
+
+        List<Transaction> transactions;
+        try {
+            transactions = accountClient.withdrawAll(loans.stream()
+                    .map(LoanService::toInstallmentWithdrawal)
+                    .collect(Collectors.toList()));
+        } catch (RuntimeException exception) {
+            log.warn("Could not collect a loan batch: count={}, {}", loans.size(), exception.getMessage());
+
+            result.failed = loans.size();
+            return result;
+        }
+
+        List<Loan> paid = new ArrayList<>();
+        BigDecimal paidAmount = BigDecimal.ZERO;
+        for (int index = 0; index < loans.size(); index++) {
+            Loan loan = loans.get(index);
+            if (transactions.get(index).getStatus() == com.aminnorouzi.loanservice.model.transaction.Status.SUCCEED) {
+                paidAmount = paidAmount.add(loan.getInstallment());
+                paid.add(loanService.applyInstallment(loan));
+            } else {
+                log.warn("Could not collect a loan: id={}, accountId={}", loan.getId(), loan.getAccountId());
+            }
+        }
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> loanRepository.saveAll(paid));
+
+            result.collected = paid.size();
+            result.collectedAmount = paidAmount;
+        } catch (ObjectOptimisticLockingFailureException exception) {
+            savePaidOneByOne(paid, result);
+        }
+        result.failed = loans.size() - result.collected - result.skipped;
+        return result;
+    }
+
+    // a loan paid by its owner meanwhile carried the same installment key, account-service charged it once
+    private void savePaidOneByOne(List<Loan> paid, BatchResult result) {
+        for (Loan loan : paid) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> loanRepository.save(loan));
+
+                result.collected++;
+                result.collectedAmount = result.collectedAmount.add(loan.getInstallment());
+            } catch (ObjectOptimisticLockingFailureException exception) {
+                log.info("Skipped a loan paid during the collection: id={}", loan.getId());
+
+                result.skipped++;
+            }
+        }
+    }
+
+    /**
+     * Gives the loans created before due dates existed the due date of their next installment, one month per paid
+     * installment after their creation, and a version to the rows created before the version column. A loan behind
+     * on its installments is due at once and is collected one installment per run.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillDueDates() {
+        int versioned = loanRepository.initializeVersions();
+
+        long backfilled = 0;
+        try {
+            List<Loan> loans;
+            do {
+                loans = loanRepository.findByNextDueDateIsNullAndCreatedAtIsNotNullAndStatusInOrderByIdAsc(
+                        COLLECTABLE_STATUSES, PageRequest.of(0, batchSize));
+                loans.forEach(loan -> loan.setNextDueDate(loan.getCreatedAt()
+                        .plusMonths(loan.getTotalCount() - loan.getRemainingCount() + 1L)));
+
+                List<Loan> page = loans;
+                transactionTemplate.executeWithoutResult(status -> loanRepository.saveAll(page));
+                backfilled += loans.size();
+            } while (loans.size() == batchSize);
+        } catch (RuntimeException exception) {
+            log.error("Could not backfill loan due dates, the rest is backfilled on the next start: {}",
+                    exception.getMessage());
+        }
+
+        log.info("Backfilled loan due dates: versioned={}, backfilled={}", versioned, backfilled);
+    }
+
+    private void checkpoint(CollectionRun run, long checkpoint, BatchResult result, long elapsedMillis) {
+        run.setCheckpoint(checkpoint);
+        run.setLoans(run.getLoans() + result.loans);
+        run.setCollected(run.getCollected() + result.collected);
+        run.setFailed(run.getFailed() + result.failed);
+        run.setSkipped((run.getSkipped() != null ? run.getSkipped() : 0L) + result.skipped);
+        run.setCollectedAmount(run.getCollectedAmount().add(result.collectedAmount));
+        run.setElapsedMillis(run.getElapsedMillis() + elapsedMillis);
+        run.setUpdatedAt(LocalDateTime.now());
+        collectionRunRepository.save(run);
+    }
+
+    private void finish(CollectionRun run, CollectionStatus status) {
+        LocalDateTime now = LocalDateTime.now();
+        run.setStatus(status);
+        run.setUpdatedAt(now);
+        run.setFinishedAt(now);
+        collectionRunRepository.save(run);
+    }
+
+    // claimed with a conditional update, so two instances finding the same stale run do not both resume it
+    private CollectionRun resume(CollectionRun run) {
+        LocalDateTime now = LocalDateTime.now();
+        if (run.getId().equals(activeRunId)
+                || collectionRunRepository.claim(run.getId(), now, now.minus(staleAfter)) == 0) {
+            throw new CollectionRunningException(String.format("Collection: %s is running!", run.getId()));
+        }
+
+        run.setStatus(CollectionStatus.RUNNING);
+        run.setUpdatedAt(now);
+        run.setFinishedAt(null);
+
+        log.info("Resumed a collection: {}", run);
+        return submit(run);
+    }
+
+    private CollectionRun submit(CollectionRun run) {
+        activeRunId = run.getId();
+        runner.execute(() -> execute(run.getId()));
+        return run;
+    }
+
+    static class BatchResult {
+
+        private long loans;
+        private long collected;
+        private long failed;
+        private long skipped;
+        private BigDecimal collectedAmount = BigDecimal.ZERO;
+
+        long getLoans() {
+            return loans;
+        }
+
+        long getCollected() {
+            return collected;
+        }
+
+        long getFailed() {
+            return failed;
+        }
+
+        long getSkipped() {
+            return skipped;
+        }
+
+        BigDecimal getCollectedAmount() {
+            return collectedAmount;
+        }
+
+        private void merge(BatchResult other) {
+            loans += other.loans;
+            collected += other.collected;
+            failed += other.failed;
+            skipped += other.skipped;
+            collectedAmount = collectedAmount.add(other.collectedAmount);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.aminnorouzi.loanservice.service;
+
+import com.aminnorouzi.loanservice.exception.NotValidLoanCalculationException;
+import com.aminnorouzi.loanservice.model.CalculationGrid;
+import com.aminnorouzi.loanservice.model.Installment;
+import com.aminnorouzi.loanservice.model.LoanCalculation;
+import com.aminnorouzi.loanservice.model.Rate;
+import com.aminnorouzi.loanservice.util.LoanCalculator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.EqualsAndHashCode;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Loan calculations for the officers' UI. A grid of scenarios is calculated in one request: chunks of scenarios are
+ * calculated in parallel on a pool of this service, not the common one, and every chunk is written out in grid order
+ * before the next is started, so a large grid is streamed with at most one chunk of results in memory.
+ */
+@Slf4j
+@Service
+public class LoanCalculationService {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int CHUNK_SIZE = 256;
+
+    private final ObjectMapper objectMapper;
+    private final Integer maxScenarios;
+    private final Integer maxCount;
+    private final ForkJoinPool pool;
+    private final Cache<InstallmentKey, BigDecimal> installments;
+
+    public LoanCalculationService(ObjectMapper objectMapper,
+                                  @Value("${loan.calculate.batch.max-scenarios:10000}") Integer maxScenarios,
+                                  @Value("${loan.calculate.max-count:600}") Integer maxCount,
+                                  @Value("${loan.calculate.batch.parallelism:4}") Integer parallelism,
+                                  @Value("${loan.calculate.cache.maximum-size:10000}") Long cacheSize) {
+        this.objectMapper = objectMapper;
+        this.maxScenarios = maxScenarios;
+        this.maxCount = maxCount;
+        this.pool = new ForkJoinPool(parallelism);
+        this.installments = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .build();
+    }
+
+    @PreDestroy
+    public void close() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Installments of the scenarios asked for lately, e.g. while a slider is dragged back and forth. Amounts are keyed
+     * with their scale, which is the scale of the installment.
+     */
+    public BigDecimal getInstallment(BigDecimal amount, Integer count, Rate rate) {
+        return installments.get(new InstallmentKey(amount, count, rate),
+                key -> LoanCalculator.getInstallment(amount, count, rate.getPercentage()));
+    }
+
+    public List<Installment> getSchedule(BigDecimal amount, Integer count, String rate) {
+        Rate parsed = parseRate(rate);
+        validateScenario(amount, count);
+
+        List<Installment> schedule = LoanCalculator.getSchedule(amount, count, parsed.getPercentage());
+
+        log.info("Calculated a loan schedule: amount={}, count={}, rate={}", amount, count, parsed);
+        return schedule;
+    }
+
+    // checked before the response is committed, a bad grid can still be answered with an error status
+    public void validateGrid(CalculationGrid grid) {
+        if (isEmpty(grid.getAmounts()) || isEmpty(grid.getCounts()) || isEmpty(grid.getRates())) {
+            throw new NotValidLoanCalculationException("Amounts, counts and rates of a grid must not be empty!");
+        }
+
+        long scenarios = (long) grid.getAmounts().size() * grid.getCounts().size() * grid.getRates().size();
+        if (scenarios > maxScenarios) {
+            throw new NotValidLoanCalculationException(
+                    String.format("Grid: %s scenarios is more than the maximum of %s!", scenarios, maxScenarios));
+        }
+
+        grid.getAmounts().forEach(amount -> validateScenario(amount, 1));
+        grid.getCounts().forEach(count -> validateScenario(BigDecimal.ONE, count));
+        if (grid.getRates().stream().anyMatch(Objects::isNull)) {
+            throw new NotValidLoanCalculationException("Rates of a grid must not be null!");
+        }
+    }
+
+    public void calculateGrid(CalculationGrid grid, OutputStream outputStream) throws IOException {
+        int counts = grid.getCounts().size();
+        int rates = grid.getRates().size();
+        int scenarios = grid.getAmounts().size() * counts * rates;
+        boolean schedule = Boolean.TRUE.equals(grid.getSchedule());
+
+        Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8), BUFFER_SIZE);
+        for (int start = 0; start < scenarios; start += CHUNK_SIZE) {
+            int end = Math.min(start + CHUNK_SIZE, scenarios);
+
+            // a parallel stream started in a pool task runs on that pool
+            int from = start;
+            List<LoanCalculation> calculations = pool.submit(() -> IntStream.range(from, end)
+                    .parallel()
+                    .mapToObj(index -> calculate(grid.getAmounts().get(index / (counts * rates)),
+                            grid.getCounts().get(index / rates % counts), grid.getRates().get(index % rates), schedule))
+                    .collect(Collectors.toList()))
+                    .join();
+
+            for (LoanCalculation calculation : calculations) {
+                writer.write(objectMapper.writeValueAsString(calculation));
+                writer.write('\n');
+            }
+            writer.flush();
+        }
+
+        log.info("Calculated a loan grid: scenarios={}, schedule={}", scenarios, schedule);
+    }
+
+    private LoanCalculation calculate(BigDecimal amount, Integer count, Rate rate, boolean schedule) {
+        return LoanCalculation.builder()
+                .amount(amount)
+                .count(count)
+                .rate(rate)
+                .installment(LoanCalculator.getInstallment(amount, count, rate.getPercentage()))
+                .totalInterest(LoanCalculator.getInterest(amount, count, rate.getPercentage()))
+                .schedule(schedule ? LoanCalculator.getSchedule(amount, count, rate.getPercentage()) : null)
+                .build();
+    }
+
+    private void validateScenario(BigDecimal amount, Integer count) {
+        if (amount == null || amount.signum() <= 0) {
+            throw new NotValidLoanCalculationException(String.format("Amount: %s is not valid!", amount));
+        }
+        if (count == null || count <= 0 || count > maxCount) {
+            throw new NotValidLoanCalculationException(String.format("Count: %s is not valid!", count));
+        }
+    }
+
+    private Rate parseRate(String rate) {
+        try {
+            return Rate.parse(rate);
+        } catch (IllegalArgumentException exception) {
+            throw new NotValidLoanCalculationException(String.format("Rate: %s is not valid!", rate));
+        }
+    }
+
+    private boolean isEmpty(List<?> values) {
+        return values == null || values.isEmpty();
+    }
+
+    @EqualsAndHashCode
+    @RequiredArgsConstructor
+    private static final class InstallmentKey {
+
+        private final BigDecimal amount;
+        private final Integer count;
+        private final Rate rate;
+    }
+}
@@ -1,18 +1,23 @@
 package com.aminnorouzi.loanservice.service;
 
+import com.aminnorouzi.accountverifier.AccountVerifier;
 import com.aminnorouzi.loanservice.client.AccountClient;
 import com.aminnorouzi.loanservice.exception.IllegalLoanStatusException;
 import com.aminnorouzi.loanservice.exception.LoanNotFoundException;
+import com.aminnorouzi.loanservice.exception.LoanPaymentConflictException;
 import com.aminnorouzi.loanservice.exception.LoanPaymentNotAvailableException;
 import com.aminnorouzi.loanservice.exception.NotValidLoanAccountException;
 import com.aminnorouzi.loanservice.model.Loan;
 import com.aminnorouzi.loanservice.model.LoanRequest;
 import com.aminnorouzi.loanservice.model.Rate;
 import com.aminnorouzi.loanservice.model.Status;
+import com.aminnorouzi.loanservice.model.transaction.Transaction;
+import com.aminnorouzi.loanservice.model.transaction.WithdrawalRequest;
 import com.aminnorouzi.loanservice.repository.LoanRepository;
 import com.aminnorouzi.loanservice.util.LoanCalculator;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -25,12 +30,18 @@ import java.util.List;
 @Service
 public class LoanService {
 
+    private static final String PAYMENT_NOTE = "Loan payment";
+    private static final String IDEMPOTENCY_KEY_FORMAT = "loan-%s-installment-%s";
+
     private final LoanRepository loanRepository;
     private final AccountClient accountClient;
+    private final AccountVerifier accountVerifier;
+    private final LoanCalculationService loanCalculationService;
 
     public Loan createLoan(LoanRequest request) {
         verifyAccount(request.getAccountId());
 
+        LocalDate today = LocalDate.now();
         Loan loan = Loan.builder()
                 .amount(request.getAmount())
                 .installment(calculate(request))
@@ -40,7 +51,8 @@ public class LoanService {
                 .type(request.getType())
                 .status(Status.OPEN)
                 .accountId(request.getAccountId())
-                .createdAt(LocalDate.now())
+                .createdAt(today)
+                .nextDueDate(today.plusMonths(1))
                 .build();
 
         Loan saved = loanRepository.save(loan);
@@ -74,7 +86,7 @@ public class LoanService {
     }
 
     public BigDecimal calculate(BigDecimal amount, Integer count, String rate) {
-        BigDecimal loan = LoanCalculator.getInstallment(amount, count, Rate.valueOf(rate.toUpperCase()).getPercentage());
+        BigDecimal loan = loanCalculationService.getInstallment(amount, count, Rate.parse(rate));
 
         log.info("Calculated a loan: {}", loan);
         return loan;
@@ -87,10 +99,15 @@ public class LoanService {
         validateAccount(accountId, loan);
         validateLoan(loan);
 
-        withdraw(accountId, loan.getInstallment());
-        updateLoanRemainingCount(loan);
+        withdraw(loan);
 
-        Loan updated = updateAndSaveLoan(loan);
+        Loan updated;
+        try {
+            updated = loanRepository.saveAndFlush(applyInstallment(loan));
+        } catch (ObjectOptimisticLockingFailureException exception) {
+            throw new LoanPaymentConflictException(String.format(
+                    "Loan: %s was paid at the same time, its installment is charged once!", loanId));
+        }
 
         log.info("Paid a loan: accountId={}, {}", accountId, updated);
         return updated;
@@ -110,30 +127,48 @@ public class LoanService {
     }
 
     private BigDecimal calculate(LoanRequest request) {
-        return calculate(request.getAmount(),
+        return LoanCalculator.getInstallment(request.getAmount(),
                 request.getTotalCount(),
-                request.getRate().toString());
+                request.getRate().getPercentage());
     }
 
-    private void withdraw(Long id, BigDecimal amount) {
+    // keyed by the installment like the collection run, an installment both try to withdraw is charged once
+    private void withdraw(Loan loan) {
+        Long id = loan.getAccountId();
         try {
-            accountClient.withdraw(id, amount, "Loan payment");
+            Transaction transaction = accountClient.withdrawAll(List.of(toInstallmentWithdrawal(loan))).get(0);
+            if (transaction.getStatus() == com.aminnorouzi.loanservice.model.transaction.Status.SUCCEED) {
+                return;
+            }
         } catch (RuntimeException exception) {
-            throw new LoanPaymentNotAvailableException(String.format("Account: %s is not available for withdrawal!", id));
+            log.warn("Could not withdraw a loan installment: id={}, {}", loan.getId(), exception.getMessage());
         }
+
+        throw new LoanPaymentNotAvailableException(String.format("Account: %s is not available for withdrawal!", id));
     }
 
-    private Loan updateAndSaveLoan(Loan loan) {
+    static WithdrawalRequest toInstallmentWithdrawal(Loan loan) {
+        int installment = loan.getTotalCount() - loan.getRemainingCount() + 1;
+        return WithdrawalRequest.builder()
+                .id(loan.getAccountId())
+                .amount(loan.getInstallment())
+                .note(PAYMENT_NOTE)
+                .idempotencyKey(String.format(IDEMPOTENCY_KEY_FORMAT, loan.getId(), installment))
+                .build();
+    }
+
+    // counts one paid installment, whether paid by the account owner or by the collection run
+    public Loan applyInstallment(Loan loan) {
+        loan.setRemainingCount(loan.getRemainingCount() - 1);
+        if (loan.getNextDueDate() != null) {
+            loan.setNextDueDate(loan.getNextDueDate().plusMonths(1));
+        }
+
         Status status = checkLoanStatus(loan);
         if (status != null) {
             loan.setStatus(status);
         }
-
-        return loanRepository.save(loan);
-    }
-
-    private void updateLoanRemainingCount(Loan loan) {
-        loan.setRemainingCount(loan.getRemainingCount() - 1);
+        return loan;
     }
 
     private Status checkLoanStatus(Loan loan) {
@@ -149,7 +184,7 @@ public class LoanService {
     }
 
     private void verifyAccount(Long id) {
-        boolean exists = accountClient.verifyAccount(id);
+        boolean exists = accountVerifier.exists(id);
         if (!exists) {
             throw new NotValidLoanAccountException(String.format("Account: %s not found!", id));
         }
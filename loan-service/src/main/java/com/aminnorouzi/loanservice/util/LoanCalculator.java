@@ -1,24 +1,118 @@
 package com.aminnorouzi.loanservice.util;
 
+import com.aminnorouzi.loanservice.model.Installment;
+
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.List;
 
 public class LoanCalculator {
 
     private static final Integer ONE = 1;
     private static final Integer DIVIDE_VALUE = 2400;
+    private static final Integer PERIOD_DIVIDE_VALUE = 1200; // yearly percentage to a monthly fraction
     private static final RoundingMode ROUNDING_MODE = RoundingMode.HALF_UP;
+    private static final int LONG_DIGITS = 18; // any unscaled value of up to 18 digits fits a long
 
+    /**
+     * Results keep the scale of the amount, so both formulas are integer divisions of its unscaled value. They are done
+     * on longs when the unscaled value has up to 18 digits, which gives exactly the HALF_UP results of
+     * {@link BigDecimal} without its intermediate objects, and on {@link BigDecimal} when a product would overflow.
+     */
     public static BigDecimal getInstallment(BigDecimal amount, Integer count, Integer rate) {
-        BigDecimal interest = getInterest(amount, count, rate);
+        if (count > 0 && amount.precision() <= LONG_DIGITS) {
+            try {
+                long unscaled = unscaledOf(amount);
+                long installment = divideHalfUp(Math.addExact(unscaled, getInterest(unscaled, count, rate)), count);
+                return BigDecimal.valueOf(installment, amount.scale());
+            } catch (ArithmeticException exception) {
+                // overflow, falls back to BigDecimal
+            }
+        }
+        return getExactInstallment(amount, count, rate);
+    }
+
+    public static BigDecimal getExactInstallment(BigDecimal amount, Integer count, Integer rate) {
+        BigDecimal interest = getExactInterest(amount, count, rate);
         return (amount.add(interest))
                 .divide(BigDecimal.valueOf(count), ROUNDING_MODE);
     }
 
-    private static BigDecimal getInterest(BigDecimal amount, Integer count, Integer rate) {
+    /**
+     * Splits the installments into principal and interest. The /2400 interest is the sum of a monthly interest on a
+     * balance declining by equal parts, so period k is charged the interest of amount * (count - k + 1) / count and
+     * the rest of its installment goes to the principal. The last period takes the rounding residue, so the principal
+     * adds up to the amount and the interest to {@link #getInterest}.
+     * <p>
+     * Past count = 1 + 2400 / rate the first periods would be charged more interest than their installment. A period
+     * is charged at most its installment and the rest is carried to the next periods, which have room for it, so the
+     * principal is never negative and the remaining balance never grows.
+     */
+    public static List<Installment> getSchedule(BigDecimal amount, Integer count, Integer rate) {
+        BigDecimal installment = getInstallment(amount, count, rate);
+        BigDecimal totalInterest = getInterest(amount, count, rate);
+        BigDecimal periodDivisor = BigDecimal.valueOf((long) PERIOD_DIVIDE_VALUE * count);
+
+        List<Installment> schedule = new ArrayList<>(count);
+        BigDecimal remaining = amount;
+        BigDecimal paidInterest = BigDecimal.ZERO;
+        BigDecimal carriedInterest = BigDecimal.ZERO;
+        for (int number = 1; number < count; number++) {
+            BigDecimal interest = amount.multiply(BigDecimal.valueOf((long) rate * (count - number + 1)))
+                    .divide(periodDivisor, installment.scale(), ROUNDING_MODE)
+                    .add(carriedInterest);
+            carriedInterest = interest.subtract(installment).max(BigDecimal.ZERO);
+            interest = interest.subtract(carriedInterest);
+
+            BigDecimal principal = installment.subtract(interest);
+            remaining = remaining.subtract(principal);
+            paidInterest = paidInterest.add(interest);
+
+            schedule.add(new Installment(number, installment, principal, interest, remaining));
+        }
+
+        BigDecimal interest = totalInterest.subtract(paidInterest);
+        schedule.add(new Installment(count, remaining.add(interest), remaining, interest,
+                BigDecimal.ZERO.setScale(remaining.scale(), ROUNDING_MODE)));
+        return schedule;
+    }
+
+    public static BigDecimal getInterest(BigDecimal amount, Integer count, Integer rate) {
+        if (amount.precision() <= LONG_DIGITS) {
+            try {
+                return BigDecimal.valueOf(getInterest(unscaledOf(amount), count, rate), amount.scale());
+            } catch (ArithmeticException exception) {
+                // overflow, falls back to BigDecimal
+            }
+        }
+        return getExactInterest(amount, count, rate);
+    }
+
+    public static BigDecimal getExactInterest(BigDecimal amount, Integer count, Integer rate) {
         BigDecimal interest = amount.multiply(BigDecimal.valueOf(rate));
         interest = interest.multiply(BigDecimal.valueOf(count + ONE));
 
         return interest.divide(BigDecimal.valueOf(DIVIDE_VALUE), ROUNDING_MODE);
     }
+
+    // unlike unscaledValue() this does not build a BigInteger, an amount with a scale of 0 is read as it is
+    private static long unscaledOf(BigDecimal amount) {
+        return amount.scale() == 0 ? amount.longValue() : amount.scaleByPowerOfTen(amount.scale()).longValue();
+    }
+
+    private static long getInterest(long unscaled, int count, int rate) {
+        long interest = Math.multiplyExact(Math.multiplyExact(unscaled, rate), Math.addExact(count, 1L));
+        return divideHalfUp(interest, DIVIDE_VALUE);
+    }
+
+    // rounds a tie away from zero like HALF_UP, the divisor is positive and far below the long range
+    private static long divideHalfUp(long dividend, long divisor) {
+        long quotient = dividend / divisor;
+        long remainder = Math.abs(dividend % divisor);
+        if (remainder >= divisor - remainder) {
+            quotient += Long.signum(dividend);
+        }
+        return quotient;
+    }
 }
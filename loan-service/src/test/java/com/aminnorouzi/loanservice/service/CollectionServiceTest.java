@@ -0,0 +1,251 @@
+package com.aminnorouzi.loanservice.service;
+
+import com.aminnorouzi.loanservice.client.AccountClient;
+import com.aminnorouzi.loanservice.exception.CollectionRunningException;
+import com.aminnorouzi.loanservice.model.CollectionRun;
+import com.aminnorouzi.loanservice.model.CollectionStatus;
+import com.aminnorouzi.loanservice.model.Loan;
+import com.aminnorouzi.loanservice.model.Status;
+import com.aminnorouzi.loanservice.model.transaction.Transaction;
+import com.aminnorouzi.loanservice.model.transaction.WithdrawalRequest;
+import com.aminnorouzi.loanservice.repository.CollectionRunRepository;
+import com.aminnorouzi.loanservice.repository.LoanRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CollectionServiceTest {
+
+    private static final LocalDate TODAY = LocalDate.now();
+
+    @Mock
+    private LoanRepository loanRepository;
+    @Mock
+    private CollectionRunRepository collectionRunRepository;
+    @Mock
+    private AccountClient accountClient;
+    @Mock
+    private LoanService loanService;
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    private CollectionService collectionService;
+
+    @BeforeEach
+    void setUp() {
+        collectionService = new CollectionService(loanRepository, collectionRunRepository, accountClient, loanService,
+                transactionTemplate, 10, 2, 2, Duration.ofMinutes(5));
+    }
+
+    @AfterEach
+    void tearDown() {
+        collectionService.close();
+    }
+
+    @Test
+    void shouldCollectDueLoansAndCheckpoint() {
+        // given
+        CollectionRun run = buildRun(LocalDateTime.now());
+        given(collectionRunRepository.findById(1L))
+                .willReturn(Optional.of(run));
+        given(loanRepository.findByIdBetweenAndStatusInAndNextDueDateLessThanEqualOrderByIdAsc(1L, 3L,
+                List.of(Status.OPEN, Status.PAYING), TODAY))
+                .willReturn(List.of(buildLoan(1L, 10L, 12), buildLoan(2L, 20L, 12), buildLoan(3L, 30L, 5)));
+
+        // account 20 has not enough balance
+        given(accountClient.withdrawAll(anyList()))
+                .willAnswer(invocation -> invocation.<List<WithdrawalRequest>>getArgument(0).stream()
+                        .map(request -> Transaction.builder()
+                                .senderId(request.getId())
+                                .receiverId(request.getId())
+                                .amount(request.getAmount())
+                                .note(request.getIdempotencyKey())
+                                .status(request.getId() == 20L
+                                        ? com.aminnorouzi.loanservice.model.transaction.Status.FAILED
+                                        : com.aminnorouzi.loanservice.model.transaction.Status.SUCCEED)
+                                .build())
+                        .collect(Collectors.toList()));
+        given(loanService.applyInstallment(any(Loan.class)))
+                .willAnswer(invocation -> invocation.getArgument(0));
+        givenTransactionTemplateRunsCallbacks();
+
+        // when
+        collectionService.execute(1L);
+
+        // then
+        verify(accountClient, times(2)).withdrawAll(anyList());
+        verify(loanService, times(2)).applyInstallment(any(Loan.class));
+        verify(loanService, never()).applyInstallment(argThat(loan -> loan.getId() == 2L));
+        verify(collectionRunRepository, times(2)).heartbeat(eq(1L), any(LocalDateTime.class));
+
+        assertThat(run.getStatus()).isEqualTo(CollectionStatus.COMPLETED);
+        assertThat(run.getCheckpoint()).isEqualTo(4L);
+        assertThat(run.getLoans()).isEqualTo(3L);
+        assertThat(run.getCollected()).isEqualTo(2L);
+        assertThat(run.getFailed()).isEqualTo(1L);
+        assertThat(run.getCollectedAmount()).isEqualTo(BigDecimal.valueOf(200));
+    }
+
+    @Test
+    void shouldKeyWithdrawalsByLoanAndInstallment() {
+        // given
+        given(loanRepository.findByIdBetweenAndStatusInAndNextDueDateLessThanEqualOrderByIdAsc(1L, 10L,
+                List.of(Status.OPEN, Status.PAYING), TODAY))
+                .willReturn(List.of(buildLoan(7L, 70L, 5)));
+        given(accountClient.withdrawAll(anyList()))
+                .willThrow(new IllegalStateException("account-service is not reachable"));
+
+        // when
+        CollectionService.BatchResult result = collectionService.collectRange(1L, TODAY, 1L, 10L);
+
+        // then
+        verify(accountClient, times(1)).withdrawAll(argThat(requests -> requests.size() == 1
+                && "loan-7-installment-8".equals(requests.get(0).getIdempotencyKey())));
+        verify(loanService, never()).applyInstallment(any(Loan.class));
+        verify(loanRepository, never()).saveAll(anyList());
+
+        assertThat(result.getLoans()).isEqualTo(1L);
+        assertThat(result.getFailed()).isEqualTo(1L);
+        assertThat(result.getCollected()).isEqualTo(0L);
+    }
+
+    @Test
+    void shouldSkipLoansPaidDuringCollection() {
+        // given
+        Loan paidMeanwhile = buildLoan(1L, 10L, 12);
+        Loan collected = buildLoan(2L, 20L, 12);
+        given(loanRepository.findByIdBetweenAndStatusInAndNextDueDateLessThanEqualOrderByIdAsc(1L, 10L,
+                List.of(Status.OPEN, Status.PAYING), TODAY))
+                .willReturn(List.of(paidMeanwhile, collected));
+        given(accountClient.withdrawAll(anyList()))
+                .willReturn(List.of(
+                        Transaction.builder().status(com.aminnorouzi.loanservice.model.transaction.Status.SUCCEED).build(),
+                        Transaction.builder().status(com.aminnorouzi.loanservice.model.transaction.Status.SUCCEED).build()));
+        given(loanService.applyInstallment(any(Loan.class)))
+                .willAnswer(invocation -> invocation.getArgument(0));
+        givenTransactionTemplateRunsCallbacks();
+
+        // the owner paid loan 1 with the same installment key while it was collected
+        given(loanRepository.saveAll(anyList()))
+                .willThrow(new ObjectOptimisticLockingFailureException(Loan.class, 1L));
+        given(loanRepository.save(paidMeanwhile))
+                .willThrow(new ObjectOptimisticLockingFailureException(Loan.class, 1L));
+
+        // when
+        CollectionService.BatchResult result = collectionService.collectRange(1L, TODAY, 1L, 10L);
+
+        // then
+        verify(loanRepository, times(1)).save(collected);
+
+        assertThat(result.getLoans()).isEqualTo(2L);
+        assertThat(result.getCollected()).isEqualTo(1L);
+        assertThat(result.getSkipped()).isEqualTo(1L);
+        assertThat(result.getFailed()).isEqualTo(0L);
+        assertThat(result.getCollectedAmount()).isEqualTo(BigDecimal.valueOf(100));
+    }
+
+    @Test
+    void shouldBackfillDueDatesOfLegacyLoans() {
+        // given
+        Loan unpaid = buildLoan(1L, 10L, 12);
+        Loan paying = buildLoan(2L, 20L, 9);
+        unpaid.setNextDueDate(null);
+        unpaid.setCreatedAt(LocalDate.of(2022, 1, 31));
+        paying.setNextDueDate(null);
+        paying.setCreatedAt(LocalDate.of(2022, 1, 15));
+
+        given(loanRepository.findByNextDueDateIsNullAndCreatedAtIsNotNullAndStatusInOrderByIdAsc(
+                List.of(Status.OPEN, Status.PAYING), PageRequest.of(0, 2)))
+                .willReturn(List.of(unpaid, paying))
+                .willReturn(List.of());
+        givenTransactionTemplateRunsCallbacks();
+
+        // when
+        collectionService.backfillDueDates();
+
+        // then
+        verify(loanRepository, times(1)).initializeVersions();
+        verify(loanRepository, times(2)).saveAll(anyList());
+
+        assertThat(unpaid.getNextDueDate()).isEqualTo(LocalDate.of(2022, 2, 28));
+        assertThat(paying.getNextDueDate()).isEqualTo(LocalDate.of(2022, 5, 15)); // three installments paid
+    }
+
+    @Test
+    void shouldNotStartCollectionWhenRunning() {
+        // given
+        given(collectionRunRepository.findFirstByStatusOrderByIdDesc(CollectionStatus.RUNNING))
+                .willReturn(Optional.of(buildRun(LocalDateTime.now())));
+
+        // when
+        // then
+        assertThatThrownBy(() -> collectionService.startCollection())
+                .isInstanceOf(CollectionRunningException.class)
+                .hasMessageContaining("Collection: 1 is running!");
+
+        verify(collectionRunRepository, times(1)).claim(eq(1L), any(LocalDateTime.class), any(LocalDateTime.class));
+        verify(collectionRunRepository, never()).save(any());
+    }
+
+    private void givenTransactionTemplateRunsCallbacks() {
+        doAnswer(invocation -> {
+            invocation.<Consumer<TransactionStatus>>getArgument(0).accept(mock(TransactionStatus.class));
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+    }
+
+    private CollectionRun buildRun(LocalDateTime updatedAt) {
+        return CollectionRun.builder()
+                .id(1L)
+                .status(CollectionStatus.RUNNING)
+                .dueDate(TODAY)
+                .lastLoanId(3L)
+                .checkpoint(1L)
+                .loans(0L)
+                .collected(0L)
+                .failed(0L)
+                .skipped(0L)
+                .collectedAmount(BigDecimal.ZERO)
+                .elapsedMillis(0L)
+                .startedAt(updatedAt)
+                .updatedAt(updatedAt)
+                .build();
+    }
+
+    private Loan buildLoan(Long id, Long accountId, Integer remainingCount) {
+        return Loan.builder()
+                .id(id)
+                .amount(BigDecimal.valueOf(1_200))
+                .installment(BigDecimal.valueOf(100))
+                .totalCount(12)
+                .remainingCount(remainingCount)
+                .status(remainingCount == 12 ? Status.OPEN : Status.PAYING)
+                .nextDueDate(TODAY)
+                .accountId(accountId)
+                .build();
+    }
+}
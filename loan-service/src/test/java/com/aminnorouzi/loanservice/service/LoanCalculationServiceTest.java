@@ -0,0 +1,126 @@
+package com.aminnorouzi.loanservice.service;
+
+import com.aminnorouzi.loanservice.exception.NotValidLoanCalculationException;
+import com.aminnorouzi.loanservice.model.CalculationGrid;
+import com.aminnorouzi.loanservice.model.Installment;
+import com.aminnorouzi.loanservice.model.LoanCalculation;
+import com.aminnorouzi.loanservice.model.Rate;
+import com.aminnorouzi.loanservice.util.LoanCalculator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+
+class LoanCalculationServiceTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private LoanCalculationService loanCalculationService;
+
+    @BeforeEach
+    void setUp() {
+        loanCalculationService = new LoanCalculationService(objectMapper, 1000, 600, 2, 100L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        loanCalculationService.close();
+    }
+
+    @Test
+    void shouldCalculateScheduleAddingUpToInstallmentFormula() {
+        // given
+        BigDecimal amount = BigDecimal.valueOf(20_000_000);
+        int count = 12;
+        BigDecimal installment = LoanCalculator.getInstallment(amount, count, Rate.EIGHTEEN.getPercentage());
+
+        // when
+        List<Installment> schedule = loanCalculationService.getSchedule(amount, count, "eighteen");
+
+        // then
+        BigDecimal principal = schedule.stream().map(Installment::getPrincipal).reduce(BigDecimal.ZERO, BigDecimal::add);
+        BigDecimal interest = schedule.stream().map(Installment::getInterest).reduce(BigDecimal.ZERO, BigDecimal::add);
+
+        assertThat(schedule.size()).isEqualTo(count);
+        assertThat(schedule.get(0).getPayment()).isEqualTo(installment);
+        assertThat(schedule.get(0).getInterest()).isEqualTo(BigDecimal.valueOf(300_000)); // 1.5% of the whole amount
+        assertThat(schedule.get(count - 1).getInterest()).isEqualTo(BigDecimal.valueOf(25_000));
+        assertThat(schedule.get(count - 1).getRemaining().signum()).isEqualTo(0);
+        assertThat(principal).isEqualTo(amount);
+        assertThat(interest).isEqualTo(LoanCalculator.getInterest(amount, count, Rate.EIGHTEEN.getPercentage()));
+    }
+
+    @Test
+    void shouldMemoizeInstallmentByAmountWithScale() {
+        // given
+        BigDecimal amount = BigDecimal.valueOf(20_000_000);
+        BigDecimal scaledAmount = new BigDecimal("20000000.00");
+
+        // when
+        BigDecimal installment = loanCalculationService.getInstallment(amount, 12, Rate.FOUR);
+        BigDecimal scaledInstallment = loanCalculationService.getInstallment(scaledAmount, 12, Rate.FOUR);
+
+        // then
+        assertThat(loanCalculationService.getInstallment(BigDecimal.valueOf(20_000_000), 12, Rate.FOUR))
+                .isSameAs(installment);
+        assertThat(installment.scale()).isEqualTo(0);
+        assertThat(scaledInstallment.scale()).isEqualTo(2);
+        assertThat(scaledInstallment.compareTo(installment)).isNotEqualTo(0); // 1,695,666.67 against 1,695,667
+    }
+
+    @Test
+    void shouldStreamGridInOrder() throws IOException {
+        // given
+        CalculationGrid grid = CalculationGrid.builder()
+                .amounts(List.of(BigDecimal.valueOf(1_000_000), BigDecimal.valueOf(2_000_000)))
+                .counts(List.of(6, 12, 24))
+                .rates(List.of(Rate.FOUR, Rate.TWENTY_FOUR))
+                .schedule(true)
+                .build();
+        loanCalculationService.validateGrid(grid);
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        // when
+        loanCalculationService.calculateGrid(grid, outputStream);
+
+        // then
+        String[] lines = outputStream.toString(StandardCharsets.UTF_8).split("\n");
+        LoanCalculation last = objectMapper.readValue(lines[lines.length - 1], LoanCalculation.class);
+
+        assertThat(lines.length).isEqualTo(12);
+        assertThat(objectMapper.readValue(lines[1], LoanCalculation.class).getRate()).isEqualTo(Rate.TWENTY_FOUR);
+        assertThat(objectMapper.readValue(lines[2], LoanCalculation.class).getCount()).isEqualTo(12);
+        assertThat(last.getAmount()).isEqualTo(BigDecimal.valueOf(2_000_000));
+        assertThat(last.getInstallment()).isEqualTo(LoanCalculator.getInstallment(BigDecimal.valueOf(2_000_000), 24,
+                Rate.TWENTY_FOUR.getPercentage()));
+        assertThat(last.getSchedule().size()).isEqualTo(24);
+    }
+
+    @Test
+    void shouldNotCalculateGridWhenTooLarge() {
+        // given
+        CalculationGrid grid = CalculationGrid.builder()
+                .amounts(List.of(BigDecimal.ONE, BigDecimal.TEN))
+                .counts(IntStream.rangeClosed(1, 200).boxed().collect(Collectors.toList()))
+                .rates(List.of(Rate.values()))
+                .build();
+
+        // when
+        // then
+        assertThatThrownBy(() -> loanCalculationService.validateGrid(grid))
+                .isInstanceOf(NotValidLoanCalculationException.class)
+                .hasMessageContaining("Grid: 1200 scenarios is more than the maximum of 1000!");
+    }
+}
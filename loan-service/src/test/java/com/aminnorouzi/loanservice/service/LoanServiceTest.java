@@ -1,8 +1,10 @@
 package com.aminnorouzi.loanservice.service;
 
+import com.aminnorouzi.accountverifier.AccountVerifier;
 import com.aminnorouzi.loanservice.client.AccountClient;
 import com.aminnorouzi.loanservice.exception.IllegalLoanStatusException;
 import com.aminnorouzi.loanservice.exception.LoanNotFoundException;
+import com.aminnorouzi.loanservice.exception.LoanPaymentConflictException;
 import com.aminnorouzi.loanservice.exception.LoanPaymentNotAvailableException;
 import com.aminnorouzi.loanservice.exception.NotValidLoanAccountException;
 import com.aminnorouzi.loanservice.model.*;
@@ -15,15 +17,18 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.util.List;
 import java.util.Optional;
 
+import static com.aminnorouzi.loanservice.model.transaction.Status.SUCCEED;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.*;
 
@@ -34,6 +39,10 @@ class LoanServiceTest {
     private LoanRepository loanRepository;
     @Mock
     private AccountClient accountClient;
+    @Mock
+    private AccountVerifier accountVerifier;
+    @Mock
+    private LoanCalculationService loanCalculationService;
     @InjectMocks
     private LoanService loanService;
 
@@ -49,7 +58,7 @@ class LoanServiceTest {
                 .accountId(accountId)
                 .build();
 
-        given(accountClient.verifyAccount(accountId))
+        given(accountVerifier.exists(accountId))
                 .willReturn(true);
 
         BigDecimal calculatedInstallment = LoanCalculator.getInstallment(
@@ -67,6 +76,7 @@ class LoanServiceTest {
                 .status(Status.OPEN)
                 .accountId(request.getAccountId())
                 .createdAt(LocalDate.now())
+                .nextDueDate(LocalDate.now().plusMonths(1))
                 .build();
 
         // when
@@ -94,7 +104,7 @@ class LoanServiceTest {
                 .accountId(accountId)
                 .build();
 
-        given(accountClient.verifyAccount(accountId))
+        given(accountVerifier.exists(accountId))
                 .willReturn(false);
 
         // when
@@ -149,7 +159,7 @@ class LoanServiceTest {
     void shouldGetLoansByAccountId() {
         // given
         long accountId = 10;
-        given(accountClient.verifyAccount(accountId))
+        given(accountVerifier.exists(accountId))
                 .willReturn(true);
 
         given(loanRepository.findByAccountIdEquals(accountId))
@@ -160,14 +170,14 @@ class LoanServiceTest {
 
         // then
         verify(loanRepository, times(1)).findByAccountIdEquals(accountId);
-        verify(accountClient, times(1)).verifyAccount(accountId);
+        verify(accountVerifier, times(1)).exists(accountId);
     }
 
     @Test
     void shouldNotGetLoansByAccountIdWhenAccountNotFound() {
         // given
         long accountId = 10;
-        given(accountClient.verifyAccount(accountId))
+        given(accountVerifier.exists(accountId))
                 .willReturn(false);
 
         // when
@@ -177,7 +187,7 @@ class LoanServiceTest {
 
         // then
         verify(loanRepository, never()).findByAccountIdEquals(accountId);
-        verify(accountClient, times(1)).verifyAccount(accountId);
+        verify(accountVerifier, times(1)).exists(accountId);
     }
 
     @Test
@@ -190,6 +200,8 @@ class LoanServiceTest {
                 amount,
                 count,
                 Rate.valueOf(rate.toUpperCase()).getPercentage());
+        given(loanCalculationService.getInstallment(amount, count, Rate.FOUR))
+                .willReturn(calculated);
 
         // when
         // then
@@ -218,6 +230,7 @@ class LoanServiceTest {
         BigDecimal amount = BigDecimal.valueOf(100000);
         given(loanRepository.findById(any(Long.class)))
                 .willReturn(Optional.of(Loan.builder()
+                        .id(5L)
                         .accountId(accountId)
                         .status(Status.OPEN)
                         .totalCount(12)
@@ -225,20 +238,53 @@ class LoanServiceTest {
                         .installment(BigDecimal.valueOf(100000))
                         .build()));
 
-        given(accountClient.verifyAccount(accountId))
+        given(accountVerifier.exists(accountId))
                 .willReturn(true);
 
-        given(accountClient.withdraw(accountId, amount, note))
-                .willReturn(new Transaction());
+        given(accountClient.withdrawAll(anyList()))
+                .willReturn(List.of(Transaction.builder().status(SUCCEED).build()));
 
         // when
         // then
-        loanService.pay(accountId, any(Long.class));
+        loanService.pay(accountId, 5L);
 
         verify(loanRepository, times(1)).findById(any(Long.class));
-        verify(loanRepository, times(1)).save(any(Loan.class));
-        verify(accountClient, times(1)).verifyAccount(accountId);
-        verify(accountClient, times(1)).withdraw(accountId, amount, note);
+        verify(loanRepository, times(1)).saveAndFlush(any(Loan.class));
+        verify(accountVerifier, times(1)).exists(accountId);
+        verify(accountClient, times(1)).withdrawAll(argThat(requests -> requests.size() == 1
+                && requests.get(0).getId() == accountId
+                && amount.equals(requests.get(0).getAmount())
+                && note.equals(requests.get(0).getNote())
+                && "loan-5-installment-3".equals(requests.get(0).getIdempotencyKey())));
+    }
+
+    @Test
+    void shouldNotPayWhenCollectedAtTheSameTime() {
+        // given
+        long accountId = 10;
+        given(loanRepository.findById(5L))
+                .willReturn(Optional.of(Loan.builder()
+                        .id(5L)
+                        .accountId(accountId)
+                        .status(Status.PAYING)
+                        .totalCount(12)
+                        .remainingCount(10)
+                        .installment(BigDecimal.valueOf(100000))
+                        .build()));
+
+        given(accountVerifier.exists(accountId))
+                .willReturn(true);
+
+        given(accountClient.withdrawAll(anyList()))
+                .willReturn(List.of(Transaction.builder().status(SUCCEED).build()));
+        given(loanRepository.saveAndFlush(any(Loan.class)))
+                .willThrow(new ObjectOptimisticLockingFailureException(Loan.class, 5L));
+
+        // when
+        // then
+        assertThatThrownBy(() -> loanService.pay(accountId, 5L))
+                .isInstanceOf(LoanPaymentConflictException.class)
+                .hasMessageContaining("Loan: 5 was paid at the same time, its installment is charged once!");
     }
 
     @Test
@@ -255,9 +301,9 @@ class LoanServiceTest {
                 .hasMessageContaining(String.format("Loan: %s not found!", id));
 
         verify(loanRepository, times(1)).findById(id);
-        verify(loanRepository, never()).save(any(Loan.class));
-        verify(accountClient, never()).verifyAccount(any(Long.class));
-        verify(accountClient, never()).withdraw(any(Long.class), any(BigDecimal.class), any(String.class));
+        verify(loanRepository, never()).saveAndFlush(any(Loan.class));
+        verify(accountVerifier, never()).exists(any(Long.class));
+        verify(accountClient, never()).withdrawAll(anyList());
     }
 
     @Test
@@ -269,7 +315,7 @@ class LoanServiceTest {
                         .status(Status.OPEN)
                         .build()));
 
-        given(accountClient.verifyAccount(accountId))
+        given(accountVerifier.exists(accountId))
                 .willReturn(false);
 
         // when
@@ -279,9 +325,9 @@ class LoanServiceTest {
                 .hasMessageContaining(String.format("Account: %s not found!", accountId));
 
         verify(loanRepository, times(1)).findById(any(Long.class));
-        verify(loanRepository, never()).save(any(Loan.class));
-        verify(accountClient, times(1)).verifyAccount(accountId);
-        verify(accountClient, never()).withdraw(any(Long.class), any(BigDecimal.class), any(String.class));
+        verify(loanRepository, never()).saveAndFlush(any(Loan.class));
+        verify(accountVerifier, times(1)).exists(accountId);
+        verify(accountClient, never()).withdrawAll(anyList());
     }
 
     @Test
@@ -295,7 +341,7 @@ class LoanServiceTest {
                         .status(Status.CLOSED)
                         .build()));
 
-        given(accountClient.verifyAccount(accountId))
+        given(accountVerifier.exists(accountId))
                 .willReturn(true);
 
         // when
@@ -305,9 +351,9 @@ class LoanServiceTest {
                 .hasMessageContaining(String.format("Loan: %s is closed!", loanId));
 
         verify(loanRepository, times(1)).findById(loanId);
-        verify(loanRepository, never()).save(any(Loan.class));
-        verify(accountClient, times(1)).verifyAccount(accountId);
-        verify(accountClient, never()).withdraw(any(Long.class), any(BigDecimal.class), any(String.class));
+        verify(loanRepository, never()).saveAndFlush(any(Loan.class));
+        verify(accountVerifier, times(1)).exists(accountId);
+        verify(accountClient, never()).withdrawAll(anyList());
     }
 
     @Test
@@ -320,13 +366,15 @@ class LoanServiceTest {
                 .willReturn(Optional.of(Loan.builder()
                         .accountId(accountId)
                         .status(Status.OPEN)
+                        .totalCount(12)
+                        .remainingCount(12)
                         .installment(BigDecimal.valueOf(100000))
                         .build()));
 
-        given(accountClient.verifyAccount(accountId))
+        given(accountVerifier.exists(accountId))
                 .willReturn(true);
 
-        given(accountClient.withdraw(accountId, amount, note))
+        given(accountClient.withdrawAll(anyList()))
                 .willThrow(RuntimeException.class);
 
         // when
@@ -336,9 +384,9 @@ class LoanServiceTest {
                 .hasMessageContaining(String.format("Account: %s is not available for withdrawal!", accountId));
 
         verify(loanRepository, times(1)).findById(any(Long.class));
-        verify(loanRepository, never()).save(any(Loan.class));
-        verify(accountClient, times(1)).verifyAccount(accountId);
-        verify(accountClient, times(1)).withdraw(accountId, amount, note);
+        verify(loanRepository, never()).saveAndFlush(any(Loan.class));
+        verify(accountVerifier, times(1)).exists(accountId);
+        verify(accountClient, times(1)).withdrawAll(anyList());
     }
 
     @Test
@@ -354,7 +402,7 @@ class LoanServiceTest {
                         .installment(BigDecimal.valueOf(100000))
                         .build()));
 
-        given(accountClient.verifyAccount(accountId))
+        given(accountVerifier.exists(accountId))
                 .willReturn(true);
 
         // when
@@ -364,8 +412,8 @@ class LoanServiceTest {
                 .hasMessageContaining(String.format("Account: %s dose not belong to this loan!", accountId));
 
         verify(loanRepository, times(1)).findById(any(Long.class));
-        verify(loanRepository, never()).save(any(Loan.class));
-        verify(accountClient, times(1)).verifyAccount(accountId);
-        verify(accountClient, never()).withdraw(accountId, amount, note);
+        verify(loanRepository, never()).saveAndFlush(any(Loan.class));
+        verify(accountVerifier, times(1)).exists(accountId);
+        verify(accountClient, never()).withdrawAll(anyList());
     }
 }
\ No newline at end of file
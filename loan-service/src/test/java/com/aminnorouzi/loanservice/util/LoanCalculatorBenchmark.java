@@ -0,0 +1,80 @@
+package com.aminnorouzi.loanservice.util;
+
+import com.aminnorouzi.loanservice.model.Rate;
+import com.aminnorouzi.loanservice.service.LoanCalculationService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Installment calculation with BigDecimal, on longs and from the memo, and rate parsing with valueOf against parse.
+ * The gc profiler reports the allocation per call as gc.alloc.rate.norm.
+ * Run with {@code mvn test-compile} and then the main method from the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoanCalculatorBenchmark {
+
+    @Param({"20000000", "20000000.00"})
+    private String amount;
+
+    private BigDecimal value;
+    private LoanCalculationService loanCalculationService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        value = new BigDecimal(amount);
+        loanCalculationService = new LoanCalculationService(new ObjectMapper(), 10000, 600, 1, 10000L);
+        loanCalculationService.getInstallment(value, 12, Rate.EIGHTEEN);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        loanCalculationService.close();
+    }
+
+    @Benchmark
+    public BigDecimal exactInstallment() {
+        return LoanCalculator.getExactInstallment(value, 12, Rate.EIGHTEEN.getPercentage());
+    }
+
+    @Benchmark
+    public BigDecimal installment() {
+        return LoanCalculator.getInstallment(value, 12, Rate.EIGHTEEN.getPercentage());
+    }
+
+    @Benchmark
+    public BigDecimal memoizedInstallment() {
+        return loanCalculationService.getInstallment(value, 12, Rate.EIGHTEEN);
+    }
+
+    @Benchmark
+    public Rate valueOfRate() {
+        return Rate.valueOf("eighteen".toUpperCase());
+    }
+
+    @Benchmark
+    public Rate parseRate() {
+        return Rate.parse("eighteen");
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(LoanCalculatorBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,119 @@
+package com.aminnorouzi.loanservice.util;
+
+import com.aminnorouzi.loanservice.model.Installment;
+import com.aminnorouzi.loanservice.model.Rate;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+
+class LoanCalculatorTest {
+
+    private static final int SAMPLES = 200_000;
+
+    @Test
+    void shouldMatchExactInstallmentForRandomScenarios() {
+        // given
+        Random random = new Random(20220501L);
+
+        for (int i = 0; i < SAMPLES; i++) {
+            BigDecimal amount = randomAmount(random);
+            int count = 1 + random.nextInt(600);
+            int rate = random.nextBoolean()
+                    ? Rate.values()[random.nextInt(Rate.values().length)].getPercentage()
+                    : random.nextInt(101);
+
+            // when
+            // then
+            assertMatches(amount, count, rate);
+        }
+    }
+
+    @Test
+    void shouldMatchExactInstallmentOnTiesAndEdges() {
+        // given
+        // when
+        // then
+        assertMatches(BigDecimal.valueOf(25), 1, 24); // interest of exactly 0.5
+        assertMatches(BigDecimal.valueOf(-25), 1, 24); // a tie rounds away from zero
+        assertMatches(BigDecimal.valueOf(3), 2, 0); // installment of exactly 1.5
+        assertMatches(BigDecimal.valueOf(-3), 2, 0);
+        assertMatches(new BigDecimal("1E+3"), 7, 18); // negative scale
+        assertMatches(new BigDecimal("0.00"), 12, 24);
+        assertMatches(BigDecimal.valueOf(Long.MAX_VALUE / 10, 2), 600, 24); // overflows the long path
+        assertMatches(new BigDecimal("123456789012345678901234.5"), 12, 18); // more than 18 digits
+    }
+
+    @Test
+    void shouldNeverScheduleNegativePrincipal() {
+        // given
+        BigDecimal amount = new BigDecimal("20000000.00");
+
+        for (Rate rate : Rate.values()) {
+            for (int count = 1; count <= 600; count++) {
+                // when
+                List<Installment> schedule = LoanCalculator.getSchedule(amount, count, rate.getPercentage());
+
+                // then
+                assertSchedule(amount, count, rate.getPercentage(), schedule);
+            }
+        }
+    }
+
+    @Test
+    void shouldCarryInterestPastInstallmentToLaterPeriods() {
+        // given
+        BigDecimal amount = BigDecimal.valueOf(20_000_000);
+
+        // when
+        // 1 + 2400 / 24 = 101 is the last count the first period pays its interest only
+        List<Installment> boundary = LoanCalculator.getSchedule(amount, 101, 24);
+        List<Installment> past = LoanCalculator.getSchedule(amount, 102, 24);
+
+        // then
+        assertThat(boundary.get(0).getPrincipal().signum()).isEqualTo(0);
+        assertThat(boundary.get(1).getPrincipal().signum()).isEqualTo(1);
+        assertThat(past.get(0).getPrincipal().signum()).isEqualTo(0);
+        assertThat(past.get(0).getInterest()).isEqualTo(past.get(0).getPayment());
+        assertSchedule(amount, 101, 24, boundary);
+        assertSchedule(amount, 102, 24, past);
+    }
+
+    private void assertSchedule(BigDecimal amount, int count, int rate, List<Installment> schedule) {
+        BigDecimal principal = BigDecimal.ZERO;
+        BigDecimal interest = BigDecimal.ZERO;
+        BigDecimal remaining = amount;
+        for (Installment installment : schedule) {
+            assertThat(installment.getPrincipal().signum()).isNotEqualTo(-1);
+            assertThat(installment.getRemaining().compareTo(remaining)).isNotEqualTo(1);
+
+            principal = principal.add(installment.getPrincipal());
+            interest = interest.add(installment.getInterest());
+            remaining = installment.getRemaining();
+        }
+
+        assertThat(schedule.size()).isEqualTo(count);
+        assertThat(principal.compareTo(amount)).isEqualTo(0);
+        assertThat(interest).isEqualTo(LoanCalculator.getInterest(amount, count, rate));
+        assertThat(remaining.signum()).isEqualTo(0);
+    }
+
+    private void assertMatches(BigDecimal amount, int count, int rate) {
+        BigDecimal installment = LoanCalculator.getInstallment(amount, count, rate);
+        BigDecimal interest = LoanCalculator.getInterest(amount, count, rate);
+
+        // equals compares the scale too
+        assertThat(installment).isEqualTo(LoanCalculator.getExactInstallment(amount, count, rate));
+        assertThat(interest).isEqualTo(LoanCalculator.getExactInterest(amount, count, rate));
+    }
+
+    // unscaled values from 1 to 18 digits and both signs, scales from -2 to 6
+    private BigDecimal randomAmount(Random random) {
+        long bound = (long) Math.pow(10, 1 + random.nextInt(18));
+        long unscaled = Math.floorMod(random.nextLong(), bound);
+        return BigDecimal.valueOf(random.nextInt(10) == 0 ? -unscaled : unscaled, random.nextInt(9) - 2);
+    }
+}
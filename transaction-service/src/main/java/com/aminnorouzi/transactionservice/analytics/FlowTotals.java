@@ -0,0 +1,37 @@
+package com.aminnorouzi.transactionservice.analytics;
+
+import lombok.Getter;
+import lombok.ToString;
+
+// money in and out of one account in minor units, summed per scanned chunk and merged
+@Getter
+@ToString
+public class FlowTotals {
+
+    private long inflow;
+    private long outflow;
+    private long inflowCount;
+    private long outflowCount;
+
+    void addInflow(long amount) {
+        inflow += amount;
+        inflowCount++;
+    }
+
+    void addOutflow(long amount) {
+        outflow += amount;
+        outflowCount++;
+    }
+
+    FlowTotals add(FlowTotals other) {
+        inflow += other.inflow;
+        outflow += other.outflow;
+        inflowCount += other.inflowCount;
+        outflowCount += other.outflowCount;
+        return this;
+    }
+
+    public long getVolume() {
+        return inflow + outflow;
+    }
+}
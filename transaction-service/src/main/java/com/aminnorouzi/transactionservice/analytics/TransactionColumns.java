@@ -0,0 +1,172 @@
+package com.aminnorouzi.transactionservice.analytics;
+
+import com.aminnorouzi.transactionservice.model.Status;
+import com.aminnorouzi.transactionservice.model.Type;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Append only columnar copy of the transaction table: one primitive array per column, amounts in minor units, days as
+ * epoch days and type and status as enum ordinals. Missing account ids are stored as 0, account ids start at 1.
+ * <p>
+ * Appends are serialized. Scans take no lock: rows are never changed once written, a row is published by the volatile
+ * size and a grown set of arrays holds a copy of every published row, so a scan reads the rows published when it
+ * started. Scans split the rows into chunks and run them on the common fork join pool.
+ */
+public class TransactionColumns {
+
+    public static final int BYTES_PER_TRANSACTION = 4 * Long.BYTES + Integer.BYTES + 2 * Byte.BYTES;
+
+    private static final int CHUNK_SIZE = 1 << 16;
+    private static final byte DEPOSIT = (byte) Type.DEPOSIT.ordinal();
+    private static final byte WITHDRAWAL = (byte) Type.WITHDRAWAL.ordinal();
+    private static final byte SUCCEED = (byte) Status.SUCCEED.ordinal();
+
+    private volatile Columns columns;
+    private volatile int size;
+
+    public TransactionColumns(int initialCapacity) {
+        this.columns = new Columns(Math.max(initialCapacity, 16));
+    }
+
+    public synchronized void append(long id, long senderId, long receiverId, long amount, int day, Type type,
+                                    Status status) {
+        Columns current = columns;
+        int index = size;
+        if (index == current.ids.length) {
+            current = current.copyOf(index + (index >> 1));
+            columns = current;
+        }
+
+        current.ids[index] = id;
+        current.senderIds[index] = senderId;
+        current.receiverIds[index] = receiverId;
+        current.amounts[index] = amount;
+        current.days[index] = day;
+        current.types[index] = (byte) type.ordinal();
+        current.statuses[index] = (byte) status.ordinal();
+        size = index + 1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return columns.ids.length;
+    }
+
+    // successful money movements of one account between two epoch days, both inclusive
+    public FlowTotals flowOf(long accountId, int fromDay, int toDay) {
+        int count = size;
+        Columns snapshot = columns;
+        return IntStream.range(0, chunksOf(count))
+                .parallel()
+                .mapToObj(chunk -> scanAccount(snapshot, accountId, fromDay, toDay,
+                        chunk * CHUNK_SIZE, Math.min(count, (chunk + 1) * CHUNK_SIZE)))
+                .reduce(FlowTotals::add)
+                .orElseGet(FlowTotals::new);
+    }
+
+    public Map<Long, FlowTotals> flows(int fromDay, int toDay) {
+        int count = size;
+        Columns snapshot = columns;
+        return IntStream.range(0, chunksOf(count))
+                .parallel()
+                .mapToObj(chunk -> scanAll(snapshot, fromDay, toDay,
+                        chunk * CHUNK_SIZE, Math.min(count, (chunk + 1) * CHUNK_SIZE)))
+                .reduce(TransactionColumns::merge)
+                .orElseGet(HashMap::new);
+    }
+
+    private FlowTotals scanAccount(Columns columns, long accountId, int fromDay, int toDay, int start, int end) {
+        FlowTotals totals = new FlowTotals();
+        for (int i = start; i < end; i++) {
+            long senderId = columns.senderIds[i];
+            long receiverId = columns.receiverIds[i];
+            if (senderId != accountId && receiverId != accountId) {
+                continue;
+            }
+            if (columns.statuses[i] != SUCCEED || columns.days[i] < fromDay || columns.days[i] > toDay) {
+                continue;
+            }
+
+            // a deposit is only money in and a withdrawal only money out, both carry the account on both ends
+            boolean sameAccount = senderId == receiverId;
+            if (receiverId == accountId && !(sameAccount && columns.types[i] == WITHDRAWAL)) {
+                totals.addInflow(columns.amounts[i]);
+            }
+            if (senderId == accountId && !(sameAccount && columns.types[i] == DEPOSIT)) {
+                totals.addOutflow(columns.amounts[i]);
+            }
+        }
+        return totals;
+    }
+
+    private Map<Long, FlowTotals> scanAll(Columns columns, int fromDay, int toDay, int start, int end) {
+        Map<Long, FlowTotals> flows = new HashMap<>();
+        for (int i = start; i < end; i++) {
+            if (columns.statuses[i] != SUCCEED || columns.days[i] < fromDay || columns.days[i] > toDay) {
+                continue;
+            }
+
+            long senderId = columns.senderIds[i];
+            long receiverId = columns.receiverIds[i];
+            boolean sameAccount = senderId == receiverId;
+            if (receiverId != 0 && !(sameAccount && columns.types[i] == WITHDRAWAL)) {
+                flows.computeIfAbsent(receiverId, id -> new FlowTotals()).addInflow(columns.amounts[i]);
+            }
+            if (senderId != 0 && !(sameAccount && columns.types[i] == DEPOSIT)) {
+                flows.computeIfAbsent(senderId, id -> new FlowTotals()).addOutflow(columns.amounts[i]);
+            }
+        }
+        return flows;
+    }
+
+    private static Map<Long, FlowTotals> merge(Map<Long, FlowTotals> first, Map<Long, FlowTotals> second) {
+        Map<Long, FlowTotals> larger = first.size() >= second.size() ? first : second;
+        Map<Long, FlowTotals> smaller = larger == first ? second : first;
+        smaller.forEach((accountId, totals) -> larger.merge(accountId, totals, FlowTotals::add));
+        return larger;
+    }
+
+    private int chunksOf(int count) {
+        return (count + CHUNK_SIZE - 1) / CHUNK_SIZE;
+    }
+
+    private static class Columns {
+
+        private final long[] ids;
+        private final long[] senderIds;
+        private final long[] receiverIds;
+        private final long[] amounts;
+        private final int[] days;
+        private final byte[] types;
+        private final byte[] statuses;
+
+        private Columns(int capacity) {
+            this(new long[capacity], new long[capacity], new long[capacity], new long[capacity], new int[capacity],
+                    new byte[capacity], new byte[capacity]);
+        }
+
+        private Columns(long[] ids, long[] senderIds, long[] receiverIds, long[] amounts, int[] days, byte[] types,
+                        byte[] statuses) {
+            this.ids = ids;
+            this.senderIds = senderIds;
+            this.receiverIds = receiverIds;
+            this.amounts = amounts;
+            this.days = days;
+            this.types = types;
+            this.statuses = statuses;
+        }
+
+        private Columns copyOf(int capacity) {
+            return new Columns(Arrays.copyOf(ids, capacity), Arrays.copyOf(senderIds, capacity),
+                    Arrays.copyOf(receiverIds, capacity), Arrays.copyOf(amounts, capacity),
+                    Arrays.copyOf(days, capacity), Arrays.copyOf(types, capacity), Arrays.copyOf(statuses, capacity));
+        }
+    }
+}
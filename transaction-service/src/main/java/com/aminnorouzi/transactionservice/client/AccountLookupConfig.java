@@ -0,0 +1,15 @@
+package com.aminnorouzi.transactionservice.client;
+
+import com.aminnorouzi.accountverifier.AccountLookup;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+// backs the cached AccountVerifier of the account-verifier module
+@Configuration(proxyBeanMethods = false)
+public class AccountLookupConfig {
+
+    @Bean
+    public AccountLookup accountLookup(AccountClient accountClient) {
+        return accountClient::verifyAccount;
+    }
+}
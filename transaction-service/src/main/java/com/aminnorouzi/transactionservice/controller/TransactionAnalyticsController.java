@@ -0,0 +1,40 @@
+package com.aminnorouzi.transactionservice.controller;
+
+import com.aminnorouzi.transactionservice.model.AccountFlow;
+import com.aminnorouzi.transactionservice.model.AnalyticsFootprint;
+import com.aminnorouzi.transactionservice.service.TransactionAnalyticsService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RequiredArgsConstructor
+@RestController
+@RequestMapping("api/v1/transactions/analytics")
+@ConditionalOnProperty(name = "transaction.analytics.enabled", havingValue = "true")
+public class TransactionAnalyticsController {
+
+    private final TransactionAnalyticsService transactionAnalyticsService;
+
+    @GetMapping("/flows")
+    public AccountFlow getFlow(@RequestParam("accountId") Long accountId,
+                               @RequestParam(value = "days", required = false, defaultValue = "7") Integer days) {
+        return transactionAnalyticsService.getFlow(accountId, days);
+    }
+
+    @GetMapping("/flows/top")
+    public List<AccountFlow> getTopFlows(
+            @RequestParam(value = "days", required = false, defaultValue = "7") Integer days,
+            @RequestParam(value = "limit", required = false, defaultValue = "100") Integer limit) {
+        return transactionAnalyticsService.getTopFlows(days, limit);
+    }
+
+    @GetMapping("/footprint")
+    public AnalyticsFootprint getFootprint() {
+        return transactionAnalyticsService.getFootprint();
+    }
+}
@@ -1,13 +1,24 @@
 package com.aminnorouzi.transactionservice.controller;
 
-import com.aminnorouzi.transactionservice.model.Transaction;
-import com.aminnorouzi.transactionservice.model.TransactionRequest;
+import com.aminnorouzi.transactionservice.model.*;
+import com.aminnorouzi.transactionservice.service.StatementService;
+import com.aminnorouzi.transactionservice.service.TransactionRollupService;
+import com.aminnorouzi.transactionservice.service.TransactionSearchService;
 import com.aminnorouzi.transactionservice.service.TransactionService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.util.List;
+import java.util.stream.Collectors;
 
 @RequiredArgsConstructor
 @RestController
@@ -15,6 +26,9 @@ import java.util.List;
 public class TransactionController {
 
     private final TransactionService transactionService;
+    private final StatementService statementService;
+    private final TransactionRollupService transactionRollupService;
+    private final TransactionSearchService transactionSearchService;
 
     @ResponseStatus(HttpStatus.CREATED)
     @PostMapping
@@ -22,13 +36,94 @@ public class TransactionController {
         return transactionService.createTransaction(request);
     }
 
+    // the raw body is handed over so large imports are parsed while they are read, codes are sent as strings like ids
+    @ResponseStatus(HttpStatus.CREATED)
+    @PostMapping(value = "/batch", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public List<String> createTransactions(InputStream body) {
+        return transactionService.createTransactions(body).stream()
+                .map(String::valueOf)
+                .collect(Collectors.toList());
+    }
+
+    @GetMapping("/statement")
+    public ResponseEntity<StreamingResponseBody> exportStatement(
+            @RequestParam("accountId") Long accountId,
+            @RequestParam(value = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(value = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(value = "format", required = false, defaultValue = "CSV") StatementFormat format,
+            @RequestParam(value = "gzip", required = false, defaultValue = "false") Boolean gzip) {
+        statementService.verifyAccount(accountId);
+        statementService.verifyRange(from);
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(format == StatementFormat.CSV
+                        ? MediaType.parseMediaType("text/csv")
+                        : MediaType.APPLICATION_NDJSON);
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+
+        return response.body(outputStream ->
+                statementService.exportStatement(accountId, from, to, format, gzip, outputStream));
+    }
+
+    @GetMapping("/summary")
+    public List<TransactionSummary> getSummary(
+            @RequestParam("accountId") Long accountId,
+            @RequestParam(value = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(value = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        return transactionRollupService.getSummary(accountId, from, to);
+    }
+
+    @GetMapping("/nets")
+    public List<AccountNet> getNets(@RequestParam("fromAccountId") Long fromAccountId,
+                                    @RequestParam("toAccountId") Long toAccountId) {
+        return transactionRollupService.getNets(fromAccountId, toAccountId);
+    }
+
+    @PostMapping("/summary/rebuild")
+    public Integer rebuildSummaries(
+            @RequestParam("from") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam("to") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        return transactionRollupService.rebuild(from, to);
+    }
+
+    @GetMapping("/search")
+    public List<Transaction> searchTransactions(
+            @RequestParam(value = "type", required = false) Type type,
+            @RequestParam(value = "status", required = false) Status status,
+            @RequestParam(value = "minAmount", required = false) BigDecimal minAmount,
+            @RequestParam(value = "maxAmount", required = false) BigDecimal maxAmount,
+            @RequestParam("from") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam("to") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(value = "order", required = false, defaultValue = "NEWEST") SearchOrder order,
+            @RequestParam(value = "cursorDate", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate cursorDate,
+            @RequestParam(value = "cursorId", required = false) Long cursorId,
+            @RequestParam(value = "size", required = false, defaultValue = "100") Integer size) {
+        return transactionSearchService.searchTransactions(type, status, minAmount, maxAmount, from, to, order,
+                cursorDate, cursorId, size);
+    }
+
+    // account-service answers balance changes with this key before their tracking code exists
+    @GetMapping("/idempotency-keys/{key}")
+    public Transaction getTransactionByIdempotencyKey(@PathVariable("key") String key) {
+        return transactionService.getTransactionByIdempotencyKey(key);
+    }
+
     @GetMapping("/{id}")
     public Transaction getTransactionById(@PathVariable("id") Long id) {
         return transactionService.getTransactionById(id);
     }
 
     @GetMapping()
-    public List<Transaction> getTransactionByAccount(@RequestParam("accountId") Long accountId) {
-        return transactionService.getTransactionsByAccountId(accountId);
+    public List<Transaction> getTransactionByAccount(
+            @RequestParam("accountId") Long accountId,
+            @RequestParam(value = "direction", required = false, defaultValue = "ALL") Direction direction,
+            @RequestParam(value = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(value = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(value = "beforeDate", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate beforeDate,
+            @RequestParam(value = "beforeId", required = false) Long beforeId,
+            @RequestParam(value = "size", required = false, defaultValue = "100") Integer size) {
+        return transactionService.getTransactionsByAccountId(accountId, direction, from, to, beforeDate, beforeId, size);
     }
 }
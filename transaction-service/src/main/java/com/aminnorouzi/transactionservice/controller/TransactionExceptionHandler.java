@@ -1,7 +1,13 @@
 package com.aminnorouzi.transactionservice.controller;
 
+import com.aminnorouzi.transactionservice.exception.ArchivedTransactionRangeException;
+import com.aminnorouzi.transactionservice.exception.NotValidIdempotencyKeyException;
+import com.aminnorouzi.transactionservice.exception.NotValidPageSizeException;
 import com.aminnorouzi.transactionservice.exception.NotValidTransactionAccountException;
+import com.aminnorouzi.transactionservice.exception.NotValidTransactionBatchException;
+import com.aminnorouzi.transactionservice.exception.NotValidTransactionSearchException;
 import com.aminnorouzi.transactionservice.exception.TransactionNotFoundException;
+import com.aminnorouzi.transactionservice.exception.TransactionQueueFullException;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -35,6 +41,60 @@ public class TransactionExceptionHandler {
         return response;
     }
 
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    @ExceptionHandler(NotValidTransactionBatchException.class)
+    public Map<String, String> handleNotValidTransactionBatchException(NotValidTransactionBatchException exception) {
+        Map<String, String> response = generateResponse("Bad Request", exception.getMessage());
+
+        log.error(ERROR_MESSAGE, response.get("code"), exception.getMessage());
+        return response;
+    }
+
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    @ExceptionHandler(NotValidIdempotencyKeyException.class)
+    public Map<String, String> handleNotValidIdempotencyKeyException(NotValidIdempotencyKeyException exception) {
+        Map<String, String> response = generateResponse("Bad Request", exception.getMessage());
+
+        log.error(ERROR_MESSAGE, response.get("code"), exception.getMessage());
+        return response;
+    }
+
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    @ExceptionHandler(NotValidPageSizeException.class)
+    public Map<String, String> handleNotValidPageSizeException(NotValidPageSizeException exception) {
+        Map<String, String> response = generateResponse("Bad Request", exception.getMessage());
+
+        log.error(ERROR_MESSAGE, response.get("code"), exception.getMessage());
+        return response;
+    }
+
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    @ExceptionHandler(NotValidTransactionSearchException.class)
+    public Map<String, String> handleNotValidTransactionSearchException(NotValidTransactionSearchException exception) {
+        Map<String, String> response = generateResponse("Bad Request", exception.getMessage());
+
+        log.error(ERROR_MESSAGE, response.get("code"), exception.getMessage());
+        return response;
+    }
+
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    @ExceptionHandler(ArchivedTransactionRangeException.class)
+    public Map<String, String> handleArchivedTransactionRangeException(ArchivedTransactionRangeException exception) {
+        Map<String, String> response = generateResponse("Bad Request", exception.getMessage());
+
+        log.error(ERROR_MESSAGE, response.get("code"), exception.getMessage());
+        return response;
+    }
+
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    @ExceptionHandler(TransactionQueueFullException.class)
+    public Map<String, String> handleTransactionQueueFullException(TransactionQueueFullException exception) {
+        Map<String, String> response = generateResponse("Service Unavailable", exception.getMessage());
+
+        log.error(ERROR_MESSAGE, response.get("code"), exception.getMessage());
+        return response;
+    }
+
     @ResponseStatus(HttpStatus.INTERNAL_SERVER_ERROR)
     @ExceptionHandler(Exception.class)
     public Map<String, String> handleAllExceptions(Exception exception) {
@@ -0,0 +1,12 @@
+package com.aminnorouzi.transactionservice.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class NotValidPageSizeException extends RuntimeException {
+
+    public NotValidPageSizeException(String message) {
+        super(message);
+    }
+}
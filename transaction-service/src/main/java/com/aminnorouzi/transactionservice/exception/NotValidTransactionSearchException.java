@@ -0,0 +1,12 @@
+package com.aminnorouzi.transactionservice.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class NotValidTransactionSearchException extends RuntimeException {
+
+    public NotValidTransactionSearchException(String message) {
+        super(message);
+    }
+}
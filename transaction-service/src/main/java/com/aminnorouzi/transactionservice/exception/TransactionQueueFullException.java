@@ -0,0 +1,12 @@
+package com.aminnorouzi.transactionservice.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class TransactionQueueFullException extends RuntimeException {
+
+    public TransactionQueueFullException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,23 @@
+package com.aminnorouzi.transactionservice.model;
+
+import lombok.*;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@ToString
+public class AccountFlow {
+
+    private Long accountId;
+    private LocalDate from;
+    private LocalDate to;
+    private BigDecimal inflow;
+    private BigDecimal outflow;
+    private Long inflowCount;
+    private Long outflowCount;
+}
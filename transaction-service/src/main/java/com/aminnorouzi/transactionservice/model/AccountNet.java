@@ -0,0 +1,18 @@
+package com.aminnorouzi.transactionservice.model;
+
+import lombok.*;
+
+import java.math.BigDecimal;
+
+// money in minus money out of an account over its successful transactions
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@ToString
+public class AccountNet {
+
+    private Long accountId;
+    private BigDecimal net;
+}
@@ -0,0 +1,19 @@
+package com.aminnorouzi.transactionservice.model;
+
+import lombok.*;
+
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@ToString
+public class AnalyticsFootprint {
+
+    private Integer transactions;
+    private Integer capacity;
+    private Long allocatedBytes;
+    private Double bytesPerTransaction;
+    private Integer entityBytesPerTransaction; // estimated, see TransactionAnalyticsService
+    private Long entityBytes;
+}
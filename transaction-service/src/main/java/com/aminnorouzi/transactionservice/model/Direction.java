@@ -0,0 +1,8 @@
+package com.aminnorouzi.transactionservice.model;
+
+public enum Direction {
+
+    ALL,
+    IN,
+    OUT
+}
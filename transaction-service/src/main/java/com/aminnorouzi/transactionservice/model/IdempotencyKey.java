@@ -0,0 +1,33 @@
+package com.aminnorouzi.transactionservice.model;
+
+import lombok.*;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import java.time.LocalDate;
+
+/*
+ * the unique key lives in its own table: a partitioned transaction table can only hold unique keys that contain the
+ * id, and a key row is written in the same commit as its transaction
+ */
+@Builder
+@Getter
+@Setter
+@ToString
+@EqualsAndHashCode
+@AllArgsConstructor
+@NoArgsConstructor
+@Entity
+@Table(name = "idempotency_key", indexes = @Index(name = "idx_idempotency_key_created_at", columnList = "createdAt"))
+public class IdempotencyKey {
+
+    @Id
+    @Column(name = "idempotency_key", nullable = false, length = 64)
+    private String idempotencyKey;
+
+    private Long transactionId;
+    private LocalDate createdAt;
+}
@@ -0,0 +1,7 @@
+package com.aminnorouzi.transactionservice.model;
+
+public enum SearchOrder {
+
+    NEWEST,
+    OLDEST
+}
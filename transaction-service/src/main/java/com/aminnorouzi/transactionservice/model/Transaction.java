@@ -1,5 +1,6 @@
 package com.aminnorouzi.transactionservice.model;
 
+import com.fasterxml.jackson.annotation.JsonFormat;
 import lombok.*;
 
 import javax.persistence.*;
@@ -14,11 +15,17 @@ import java.time.LocalDate;
 @AllArgsConstructor
 @NoArgsConstructor
 @Entity
-@Table(name = "transaction")
+@Table(name = "transaction", indexes = {
+        @Index(name = "idx_transaction_sender_created_at_id", columnList = "senderId, createdAt, id"),
+        @Index(name = "idx_transaction_receiver_created_at_id", columnList = "receiverId, createdAt, id"),
+        @Index(name = "idx_transaction_created_at_id", columnList = "createdAt, id"),
+        @Index(name = "idx_transaction_type_status_created_at_id", columnList = "type, status, createdAt, id")})
 public class Transaction {
 
+    // tracking codes exceed 2^53, a javascript number would round them
     @Id
     @Column(name = "id", nullable = false)
+    @JsonFormat(shape = JsonFormat.Shape.STRING)
     private Long id; // tracking code
 
     private Long senderId;
@@ -33,4 +40,7 @@ public class Transaction {
     private Status status;
 
     private LocalDate createdAt;
+
+    @Transient
+    private String idempotencyKey; // stored in the idempotency_key table by the writer
 }
\ No newline at end of file
@@ -18,4 +18,5 @@ public class TransactionRequest {
     private String note;
     private Type type;
     private Status status;
+    private String idempotencyKey; // a retry with the same key returns the first transaction
 }
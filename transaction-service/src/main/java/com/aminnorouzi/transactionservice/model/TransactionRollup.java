@@ -0,0 +1,27 @@
+package com.aminnorouzi.transactionservice.model;
+
+import lombok.*;
+
+import javax.persistence.EmbeddedId;
+import javax.persistence.Entity;
+import javax.persistence.Table;
+import java.math.BigDecimal;
+
+// daily totals of an account, the primary key starts with (account_id, day) so a date range is a single range scan
+@Builder
+@Getter
+@Setter
+@ToString
+@EqualsAndHashCode
+@AllArgsConstructor
+@NoArgsConstructor
+@Entity
+@Table(name = "transaction_rollup")
+public class TransactionRollup {
+
+    @EmbeddedId
+    private TransactionRollupId id;
+
+    private Long transactionCount;
+    private BigDecimal amount;
+}
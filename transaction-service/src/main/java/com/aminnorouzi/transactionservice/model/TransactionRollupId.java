@@ -0,0 +1,32 @@
+package com.aminnorouzi.transactionservice.model;
+
+import lombok.*;
+
+import javax.persistence.Embeddable;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import java.io.Serializable;
+import java.time.LocalDate;
+
+@Builder
+@Getter
+@Setter
+@ToString
+@EqualsAndHashCode
+@AllArgsConstructor
+@NoArgsConstructor
+@Embeddable
+public class TransactionRollupId implements Serializable {
+
+    private Long accountId;
+    private LocalDate day;
+
+    @Enumerated(EnumType.STRING)
+    private Direction direction; // IN or OUT
+
+    @Enumerated(EnumType.STRING)
+    private Type type;
+
+    @Enumerated(EnumType.STRING)
+    private Status status;
+}
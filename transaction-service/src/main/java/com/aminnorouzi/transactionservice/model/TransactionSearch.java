@@ -0,0 +1,28 @@
+package com.aminnorouzi.transactionservice.model;
+
+import lombok.*;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+// a validated search, the date range is always bounded and a page continues after (cursorDate, cursorId)
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@ToString
+public class TransactionSearch {
+
+    private Type type;
+    private Status status;
+    private BigDecimal minAmount;
+    private BigDecimal maxAmount;
+    private LocalDate from;
+    private LocalDate to;
+    private Long minId;
+    private Long maxId;
+    private SearchOrder order;
+    private LocalDate cursorDate;
+    private Long cursorId;
+}
@@ -0,0 +1,20 @@
+package com.aminnorouzi.transactionservice.model;
+
+import lombok.*;
+
+import java.math.BigDecimal;
+
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@ToString
+public class TransactionSummary {
+
+    private Direction direction;
+    private Type type;
+    private Status status;
+    private Long count;
+    private BigDecimal amount;
+}
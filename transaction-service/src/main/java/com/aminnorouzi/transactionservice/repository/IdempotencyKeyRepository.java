@@ -0,0 +1,21 @@
+package com.aminnorouzi.transactionservice.repository;
+
+import com.aminnorouzi.transactionservice.model.IdempotencyKey;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+
+@Repository
+public interface IdempotencyKeyRepository extends JpaRepository<IdempotencyKey, String> {
+
+    // limited, so a purge holds its locks for one short delete at a time
+    @Transactional
+    @Modifying
+    @Query(value = "DELETE FROM idempotency_key WHERE created_at < :before LIMIT :limit", nativeQuery = true)
+    int deleteCreatedBefore(@Param("before") LocalDate before, @Param("limit") Integer limit);
+}
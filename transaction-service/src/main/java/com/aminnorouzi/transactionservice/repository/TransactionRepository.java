@@ -1,13 +1,79 @@
 package com.aminnorouzi.transactionservice.repository;
 
 import com.aminnorouzi.transactionservice.model.Transaction;
+import com.aminnorouzi.transactionservice.util.IdGenerator;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.QueryHint;
+import java.time.LocalDate;
 import java.util.List;
+import java.util.stream.Stream;
 
+/**
+ * History pages are keyset pages ordered by {@code (created_at, id)} descending, starting right before the given
+ * {@code (beforeDate, beforeId)}. Each side of an account is a range scan on its own index, which replaces the
+ * {@code sender_id = ? OR receiver_id = ?} lookup MySQL could only serve by merging or scanning.
+ */
 @Repository
-public interface TransactionRepository extends JpaRepository<Transaction, Long> {
+public interface TransactionRepository extends JpaRepository<Transaction, Long>, TransactionSearchRepository {
 
-    List<Transaction> findBySenderIdEqualsOrReceiverIdEquals(Long senderId, Long receiverId);
+    // ids start with their creation time, bounding them lets mysql prune the partitions outside a date range
+    String ID_RANGE = "AND (id < " + IdGenerator.LEGACY_LIMIT + " OR id BETWEEN :minId AND :maxId) ";
+
+    @Query(value = "SELECT * FROM transaction " +
+            "WHERE sender_id = :accountId AND created_at >= :from " +
+            "AND (created_at < :beforeDate OR (created_at = :beforeDate AND id < :beforeId)) " + ID_RANGE +
+            "ORDER BY created_at DESC, id DESC LIMIT :limit", nativeQuery = true)
+    List<Transaction> findOutgoingHistory(@Param("accountId") Long accountId, @Param("from") LocalDate from,
+                                          @Param("beforeDate") LocalDate beforeDate, @Param("beforeId") Long beforeId,
+                                          @Param("minId") Long minId, @Param("maxId") Long maxId,
+                                          @Param("limit") Integer limit);
+
+    @Query(value = "SELECT * FROM transaction " +
+            "WHERE receiver_id = :accountId AND created_at >= :from " +
+            "AND (created_at < :beforeDate OR (created_at = :beforeDate AND id < :beforeId)) " + ID_RANGE +
+            "ORDER BY created_at DESC, id DESC LIMIT :limit", nativeQuery = true)
+    List<Transaction> findIncomingHistory(@Param("accountId") Long accountId, @Param("from") LocalDate from,
+                                          @Param("beforeDate") LocalDate beforeDate, @Param("beforeId") Long beforeId,
+                                          @Param("minId") Long minId, @Param("maxId") Long maxId,
+                                          @Param("limit") Integer limit);
+
+    // both sides read at most one page each, transfers of an account to itself only come from the sender side
+    @Query(value = "(SELECT * FROM transaction " +
+            "WHERE sender_id = :accountId AND created_at >= :from " +
+            "AND (created_at < :beforeDate OR (created_at = :beforeDate AND id < :beforeId)) " + ID_RANGE +
+            "ORDER BY created_at DESC, id DESC LIMIT :limit) " +
+            "UNION ALL " +
+            "(SELECT * FROM transaction " +
+            "WHERE receiver_id = :accountId AND created_at >= :from " +
+            "AND (created_at < :beforeDate OR (created_at = :beforeDate AND id < :beforeId)) " + ID_RANGE +
+            "AND NOT (sender_id <=> :accountId) " +
+            "ORDER BY created_at DESC, id DESC LIMIT :limit) " +
+            "ORDER BY created_at DESC, id DESC LIMIT :limit", nativeQuery = true)
+    List<Transaction> findHistory(@Param("accountId") Long accountId, @Param("from") LocalDate from,
+                                  @Param("beforeDate") LocalDate beforeDate, @Param("beforeId") Long beforeId,
+                                  @Param("minId") Long minId, @Param("maxId") Long maxId,
+                                  @Param("limit") Integer limit);
+
+    // forward-only cursors in index order, needs useCursorFetch=true on the mysql url to honor the fetch size
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "500"))
+    @Query(value = "SELECT * FROM transaction " +
+            "WHERE sender_id = :accountId AND created_at BETWEEN :from AND :to " + ID_RANGE +
+            "ORDER BY created_at, id", nativeQuery = true)
+    Stream<Transaction> streamOutgoing(@Param("accountId") Long accountId, @Param("from") LocalDate from,
+                                       @Param("to") LocalDate to, @Param("minId") Long minId,
+                                       @Param("maxId") Long maxId);
+
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "500"))
+    @Query(value = "SELECT * FROM transaction " +
+            "WHERE receiver_id = :accountId AND created_at BETWEEN :from AND :to " + ID_RANGE +
+            "AND NOT (sender_id <=> :accountId) " +
+            "ORDER BY created_at, id", nativeQuery = true)
+    Stream<Transaction> streamIncoming(@Param("accountId") Long accountId, @Param("from") LocalDate from,
+                                       @Param("to") LocalDate to, @Param("minId") Long minId,
+                                       @Param("maxId") Long maxId);
 }
\ No newline at end of file
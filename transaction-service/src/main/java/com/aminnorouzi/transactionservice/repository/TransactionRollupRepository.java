@@ -0,0 +1,57 @@
+package com.aminnorouzi.transactionservice.repository;
+
+import com.aminnorouzi.transactionservice.model.AccountNet;
+import com.aminnorouzi.transactionservice.model.TransactionRollup;
+import com.aminnorouzi.transactionservice.model.TransactionRollupId;
+import com.aminnorouzi.transactionservice.model.TransactionSummary;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Repository
+public interface TransactionRollupRepository extends JpaRepository<TransactionRollup, TransactionRollupId> {
+
+    @Query("SELECT new com.aminnorouzi.transactionservice.model.TransactionSummary(" +
+            "r.id.direction, r.id.type, r.id.status, SUM(r.transactionCount), SUM(r.amount)) " +
+            "FROM TransactionRollup AS r " +
+            "WHERE r.id.accountId = :accountId AND r.id.day BETWEEN :from AND :to " +
+            "GROUP BY r.id.direction, r.id.type, r.id.status")
+    List<TransactionSummary> summarize(@Param("accountId") Long accountId, @Param("from") LocalDate from,
+                                       @Param("to") LocalDate to);
+
+    // a range of accounts is a range scan of the primary key, archived months keep their rollups
+    @Query("SELECT new com.aminnorouzi.transactionservice.model.AccountNet(r.id.accountId, " +
+            "SUM(CASE WHEN r.id.direction = com.aminnorouzi.transactionservice.model.Direction.IN " +
+            "THEN r.amount ELSE -r.amount END)) " +
+            "FROM TransactionRollup AS r " +
+            "WHERE r.id.accountId BETWEEN :fromAccountId AND :toAccountId " +
+            "AND r.id.status = com.aminnorouzi.transactionservice.model.Status.SUCCEED " +
+            "GROUP BY r.id.accountId ORDER BY r.id.accountId")
+    List<AccountNet> findNets(@Param("fromAccountId") Long fromAccountId, @Param("toAccountId") Long toAccountId);
+
+    @Modifying
+    @Query(value = "DELETE FROM transaction_rollup WHERE day BETWEEN :from AND :to", nativeQuery = true)
+    int deleteByDayBetween(@Param("from") LocalDate from, @Param("to") LocalDate to);
+
+    // same sides as TransactionRollupService.apply: deposits and withdrawals carry the account on both ends
+    @Modifying
+    @Query(value = "INSERT INTO transaction_rollup (account_id, day, direction, type, status, transaction_count, amount) " +
+            "SELECT sender_id, created_at, 'OUT', type, status, COUNT(*), COALESCE(SUM(amount), 0) FROM transaction " +
+            "WHERE created_at BETWEEN :from AND :to " + TransactionRepository.ID_RANGE + "AND sender_id IS NOT NULL " +
+            "AND type IS NOT NULL AND status IS NOT NULL " +
+            "AND NOT (type <=> 'DEPOSIT' AND sender_id <=> receiver_id) " +
+            "GROUP BY sender_id, created_at, type, status " +
+            "UNION ALL " +
+            "SELECT receiver_id, created_at, 'IN', type, status, COUNT(*), COALESCE(SUM(amount), 0) FROM transaction " +
+            "WHERE created_at BETWEEN :from AND :to " + TransactionRepository.ID_RANGE + "AND receiver_id IS NOT NULL " +
+            "AND type IS NOT NULL AND status IS NOT NULL " +
+            "AND NOT (type <=> 'WITHDRAWAL' AND sender_id <=> receiver_id) " +
+            "GROUP BY receiver_id, created_at, type, status", nativeQuery = true)
+    int insertFromTransactions(@Param("from") LocalDate from, @Param("to") LocalDate to,
+                               @Param("minId") Long minId, @Param("maxId") Long maxId);
+}
@@ -0,0 +1,11 @@
+package com.aminnorouzi.transactionservice.repository;
+
+import com.aminnorouzi.transactionservice.model.Transaction;
+import com.aminnorouzi.transactionservice.model.TransactionSearch;
+
+import java.util.List;
+
+public interface TransactionSearchRepository {
+
+    List<Transaction> search(TransactionSearch search, Integer limit);
+}
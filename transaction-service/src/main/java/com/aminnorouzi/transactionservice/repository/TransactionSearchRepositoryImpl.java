@@ -0,0 +1,63 @@
+package com.aminnorouzi.transactionservice.repository;
+
+import com.aminnorouzi.transactionservice.model.SearchOrder;
+import com.aminnorouzi.transactionservice.model.Transaction;
+import com.aminnorouzi.transactionservice.model.TransactionSearch;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.jpa.domain.Specification;
+
+import javax.persistence.EntityManager;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Root;
+import java.util.List;
+
+import static com.aminnorouzi.transactionservice.repository.TransactionSpecifications.*;
+
+/**
+ * Keyset pages of a search ordered by {@code (created_at, id)}. Type and status are served by
+ * {@code idx_transaction_type_status_created_at_id}, anything else by the date range on
+ * {@code idx_transaction_created_at_id}; the amount range is only a filter on top.
+ * <p>
+ * Runs a plain limited query instead of a {@code Page}, which would count the whole match first.
+ */
+@RequiredArgsConstructor
+public class TransactionSearchRepositoryImpl implements TransactionSearchRepository {
+
+    private final EntityManager entityManager;
+
+    @Override
+    public List<Transaction> search(TransactionSearch search, Integer limit) {
+        Specification<Transaction> specification = Specification.where(createdBetween(search.getFrom(), search.getTo()))
+                .and(idBetween(search.getMinId(), search.getMaxId()));
+        if (search.getType() != null) {
+            specification = specification.and(hasType(search.getType()));
+        }
+        if (search.getStatus() != null) {
+            specification = specification.and(hasStatus(search.getStatus()));
+        }
+        if (search.getMinAmount() != null) {
+            specification = specification.and(amountAtLeast(search.getMinAmount()));
+        }
+        if (search.getMaxAmount() != null) {
+            specification = specification.and(amountAtMost(search.getMaxAmount()));
+        }
+        if (search.getCursorDate() != null) {
+            specification = specification.and(after(search.getCursorDate(), search.getCursorId(), search.getOrder()));
+        }
+
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Transaction> query = builder.createQuery(Transaction.class);
+        Root<Transaction> root = query.from(Transaction.class);
+        query.where(specification.toPredicate(root, query, builder));
+        if (search.getOrder() == SearchOrder.NEWEST) {
+            query.orderBy(builder.desc(root.get("createdAt")), builder.desc(root.get("id")));
+        } else {
+            query.orderBy(builder.asc(root.get("createdAt")), builder.asc(root.get("id")));
+        }
+
+        return entityManager.createQuery(query)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+}
@@ -0,0 +1,54 @@
+package com.aminnorouzi.transactionservice.repository;
+
+import com.aminnorouzi.transactionservice.model.SearchOrder;
+import com.aminnorouzi.transactionservice.model.Status;
+import com.aminnorouzi.transactionservice.model.Transaction;
+import com.aminnorouzi.transactionservice.model.Type;
+import com.aminnorouzi.transactionservice.util.IdGenerator;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+public final class TransactionSpecifications {
+
+    private TransactionSpecifications() {
+    }
+
+    public static Specification<Transaction> hasType(Type type) {
+        return (root, query, builder) -> builder.equal(root.get("type"), type);
+    }
+
+    public static Specification<Transaction> hasStatus(Status status) {
+        return (root, query, builder) -> builder.equal(root.get("status"), status);
+    }
+
+    public static Specification<Transaction> amountAtLeast(BigDecimal amount) {
+        return (root, query, builder) -> builder.greaterThanOrEqualTo(root.get("amount"), amount);
+    }
+
+    public static Specification<Transaction> amountAtMost(BigDecimal amount) {
+        return (root, query, builder) -> builder.lessThanOrEqualTo(root.get("amount"), amount);
+    }
+
+    public static Specification<Transaction> createdBetween(LocalDate from, LocalDate to) {
+        return (root, query, builder) -> builder.between(root.get("createdAt"), from, to);
+    }
+
+    // same bounds as TransactionRepository.ID_RANGE, lets mysql prune the partitions outside the date range
+    public static Specification<Transaction> idBetween(Long minId, Long maxId) {
+        return (root, query, builder) -> builder.or(
+                builder.lessThan(root.get("id"), IdGenerator.LEGACY_LIMIT),
+                builder.between(root.get("id"), minId, maxId));
+    }
+
+    public static Specification<Transaction> after(LocalDate cursorDate, Long cursorId, SearchOrder order) {
+        return (root, query, builder) -> order == SearchOrder.NEWEST
+                ? builder.or(builder.lessThan(root.get("createdAt"), cursorDate),
+                builder.and(builder.equal(root.get("createdAt"), cursorDate),
+                        builder.lessThan(root.get("id"), cursorId)))
+                : builder.or(builder.greaterThan(root.get("createdAt"), cursorDate),
+                builder.and(builder.equal(root.get("createdAt"), cursorDate),
+                        builder.greaterThan(root.get("id"), cursorId)));
+    }
+}
@@ -0,0 +1,105 @@
+package com.aminnorouzi.transactionservice.service;
+
+import com.aminnorouzi.transactionservice.exception.NotValidIdempotencyKeyException;
+import com.aminnorouzi.transactionservice.model.IdempotencyKey;
+import com.aminnorouzi.transactionservice.model.Transaction;
+import com.aminnorouzi.transactionservice.repository.IdempotencyKeyRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Recently created transactions by their idempotency key, so a retry is answered from memory. A retry that is no
+ * longer remembered here is looked up in the {@code idempotency_key} table, whose unique key is what actually rejects
+ * a second insert.
+ * <p>
+ * Keys are kept for {@code retention}, the dedupe window: a daily purge deletes older ones, after which a key may be
+ * used again.
+ */
+@Slf4j
+@Service
+public class IdempotencyKeyService {
+
+    private static final int MAX_KEY_LENGTH = 64;
+    private static final int PURGE_BATCH_SIZE = 10_000;
+
+    private final IdempotencyKeyRepository idempotencyKeyRepository;
+    private final Cache<String, Transaction> recentKeys;
+    private final Duration retention;
+
+    public IdempotencyKeyService(IdempotencyKeyRepository idempotencyKeyRepository,
+                                 @Value("${transaction.idempotency.maximum-size:100000}") Long maximumSize,
+                                 @Value("${transaction.idempotency.ttl:1h}") Duration ttl,
+                                 @Value("${transaction.idempotency.retention:7d}") Duration retention) {
+        this.idempotencyKeyRepository = idempotencyKeyRepository;
+        this.retention = retention;
+        this.recentKeys = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .build();
+    }
+
+    public void validate(String key) {
+        if (key.isBlank() || key.length() > MAX_KEY_LENGTH) {
+            throw new NotValidIdempotencyKeyException(String.format("Idempotency key: %s is not valid!", key));
+        }
+    }
+
+    public Optional<Transaction> findRecent(String key) {
+        return Optional.ofNullable(recentKeys.getIfPresent(key));
+    }
+
+    public Optional<Long> findTransactionId(String key) {
+        return idempotencyKeyRepository.findById(key)
+                .map(IdempotencyKey::getTransactionId);
+    }
+
+    // tracking codes of the keys already used, remembered keys first and the rest in a single query
+    public Map<String, Long> findTransactionIds(Collection<String> keys) {
+        Map<String, Long> found = new HashMap<>();
+        List<String> unknown = new ArrayList<>();
+        for (String key : keys) {
+            Transaction recent = recentKeys.getIfPresent(key);
+            if (recent != null) {
+                found.put(key, recent.getId());
+            } else {
+                unknown.add(key);
+            }
+        }
+
+        if (!unknown.isEmpty()) {
+            idempotencyKeyRepository.findAllById(unknown)
+                    .forEach(stored -> found.put(stored.getIdempotencyKey(), stored.getTransactionId()));
+        }
+        return found;
+    }
+
+    // keys carry their creation date only, so the window is kept in whole days and a key lives at least one day
+    @Scheduled(cron = "${transaction.idempotency.purge-cron:0 30 1 * * *}")
+    public void purgeExpired() {
+        LocalDate before = LocalDate.now().minusDays(Math.max(1, retention.toDays()));
+
+        long purged = 0;
+        int deleted;
+        do {
+            deleted = idempotencyKeyRepository.deleteCreatedBefore(before, PURGE_BATCH_SIZE);
+            purged += deleted;
+        } while (deleted == PURGE_BATCH_SIZE);
+
+        log.info("Purged expired idempotency keys: before={}, count={}", before, purged);
+    }
+
+    // only committed transactions are remembered
+    public void remember(Transaction transaction) {
+        if (transaction.getIdempotencyKey() != null) {
+            recentKeys.put(transaction.getIdempotencyKey(), transaction);
+        }
+    }
+}
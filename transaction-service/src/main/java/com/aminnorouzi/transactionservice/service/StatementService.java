@@ -0,0 +1,153 @@
+package com.aminnorouzi.transactionservice.service;
+
+import com.aminnorouzi.accountverifier.AccountVerifier;
+import com.aminnorouzi.transactionservice.exception.NotValidTransactionAccountException;
+import com.aminnorouzi.transactionservice.model.StatementFormat;
+import com.aminnorouzi.transactionservice.model.Transaction;
+import com.aminnorouzi.transactionservice.repository.TransactionRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Account statements of any size: both sides of the account are read through forward-only cursors in index order and
+ * merged while writing, every written transaction is detached, so memory does not grow with the statement.
+ * <p>
+ * Writes go straight to the response stream, which blocks while the client is behind, and the cursors only fetch
+ * their next rows once the previous ones are written.
+ */
+@Slf4j
+@RequiredArgsConstructor
+@Service
+public class StatementService {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String CSV_HEADER = "id,createdAt,senderId,receiverId,amount,type,status,note";
+    private static final Comparator<Transaction> CHRONOLOGICAL = Comparator.comparing(Transaction::getCreatedAt)
+            .thenComparing(Transaction::getId);
+
+    private final TransactionRepository transactionRepository;
+    private final AccountVerifier accountVerifier;
+    private final EntityManager entityManager;
+    private final ObjectMapper objectMapper;
+
+    @Autowired(required = false)
+    private TransactionPartitionService transactionPartitionService;
+
+    // checked before the response is committed, a missing account can still be answered with an error status
+    public void verifyAccount(Long id) {
+        boolean exists = accountVerifier.exists(id);
+        if (!exists) {
+            throw new NotValidTransactionAccountException(String.format("Account: %s not found!", id));
+        }
+    }
+
+    // checked before the response is committed as well, a statement is never cut at the archived months
+    public void verifyRange(LocalDate from) {
+        TransactionService.lowestOf(from, transactionPartitionService);
+    }
+
+    @Transactional(readOnly = true)
+    public void exportStatement(Long accountId, LocalDate from, LocalDate to, StatementFormat format, boolean gzip,
+                                OutputStream outputStream) throws IOException {
+        LocalDate lowest = TransactionService.lowestOf(from, transactionPartitionService);
+        LocalDate highest = to != null ? to : TransactionService.MAX_DATE;
+
+        OutputStream target = gzip ? new GZIPOutputStream(outputStream, BUFFER_SIZE) : outputStream;
+        Writer writer = new BufferedWriter(new OutputStreamWriter(target, StandardCharsets.UTF_8), BUFFER_SIZE);
+        if (format == StatementFormat.CSV) {
+            writer.write(CSV_HEADER);
+            writer.write('\n');
+        }
+
+        long count = 0;
+        long minId = TransactionService.minIdOf(lowest);
+        long maxId = TransactionService.maxIdOf(highest);
+        try (Stream<Transaction> outgoing = transactionRepository.streamOutgoing(accountId, lowest, highest,
+                minId, maxId);
+             Stream<Transaction> incoming = transactionRepository.streamIncoming(accountId, lowest, highest,
+                     minId, maxId)) {
+            Iterator<Transaction> outgoingIterator = outgoing.iterator();
+            Iterator<Transaction> incomingIterator = incoming.iterator();
+            Transaction nextOutgoing = nextOrNull(outgoingIterator);
+            Transaction nextIncoming = nextOrNull(incomingIterator);
+
+            while (nextOutgoing != null || nextIncoming != null) {
+                Transaction transaction;
+                if (nextIncoming == null
+                        || nextOutgoing != null && CHRONOLOGICAL.compare(nextOutgoing, nextIncoming) <= 0) {
+                    transaction = nextOutgoing;
+                    nextOutgoing = nextOrNull(outgoingIterator);
+                } else {
+                    transaction = nextIncoming;
+                    nextIncoming = nextOrNull(incomingIterator);
+                }
+
+                write(writer, transaction, format);
+                entityManager.detach(transaction);
+                count++;
+            }
+        }
+
+        writer.flush();
+        if (target instanceof GZIPOutputStream) {
+            ((GZIPOutputStream) target).finish();
+        }
+
+        log.info("Exported an account statement: accountId={}, format={}, gzip={}, count={}",
+                accountId, format, gzip, count);
+    }
+
+    private void write(Writer writer, Transaction transaction, StatementFormat format) throws IOException {
+        if (format == StatementFormat.NDJSON) {
+            writer.write(objectMapper.writeValueAsString(transaction));
+            writer.write('\n');
+            return;
+        }
+
+        writer.write(String.valueOf(transaction.getId()));
+        writer.write(',');
+        writer.write(String.valueOf(transaction.getCreatedAt()));
+        writer.write(',');
+        writer.write(toCsv(transaction.getSenderId()));
+        writer.write(',');
+        writer.write(toCsv(transaction.getReceiverId()));
+        writer.write(',');
+        writer.write(transaction.getAmount() != null ? transaction.getAmount().toPlainString() : "");
+        writer.write(',');
+        writer.write(toCsv(transaction.getType()));
+        writer.write(',');
+        writer.write(toCsv(transaction.getStatus()));
+        writer.write(',');
+        writer.write(toCsv(transaction.getNote()));
+        writer.write('\n');
+    }
+
+    private String toCsv(Object value) {
+        if (value == null) {
+            return "";
+        }
+
+        String text = value.toString();
+        if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0 && text.indexOf('\r') < 0) {
+            return text;
+        }
+        return '"' + text.replace("\"", "\"\"") + '"';
+    }
+
+    private Transaction nextOrNull(Iterator<Transaction> iterator) {
+        return iterator.hasNext() ? iterator.next() : null;
+    }
+}
@@ -0,0 +1,176 @@
+package com.aminnorouzi.transactionservice.service;
+
+import com.aminnorouzi.transactionservice.analytics.FlowTotals;
+import com.aminnorouzi.transactionservice.analytics.TransactionColumns;
+import com.aminnorouzi.transactionservice.model.*;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Analytics mode: an in memory {@link TransactionColumns} replica of the transaction table answers flow aggregates, so
+ * dashboards never query the table the writes go to. It is loaded on startup and every committed write is appended.
+ * <p>
+ * Archived months are not loaded, windows reaching back past {@code transaction.partition.hot-months} are partial.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "transaction.analytics.enabled", havingValue = "true")
+public class TransactionAnalyticsService {
+
+    private static final int SCALE = 2; // amount column is decimal(19, 2)
+    private static final int FETCH_SIZE = 10_000;
+    private static final String LOAD = "SELECT id, sender_id, receiver_id, amount, type, status, created_at " +
+            "FROM transaction ORDER BY id";
+
+    /*
+     * one transaction as a detached entity on a 64 bit jvm with compressed oops, without its note: the Transaction
+     * object (48), boxed id, sender and receiver (3 x 16), a compact BigDecimal (40), a LocalDate (24) and the
+     * reference to it in a list (4); enum constants are shared
+     */
+    private static final int ENTITY_BYTES_PER_TRANSACTION = 48 + 3 * 16 + 40 + 24 + 4;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionColumns transactionColumns;
+
+    public TransactionAnalyticsService(JdbcTemplate jdbcTemplate,
+                                       @Value("${transaction.analytics.initial-capacity:1000000}") Integer capacity) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionColumns = new TransactionColumns(capacity);
+    }
+
+    @PostConstruct
+    public void load() {
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(LOAD);
+            statement.setFetchSize(FETCH_SIZE);
+            return statement;
+        }, (RowCallbackHandler) this::appendRow);
+
+        log.info("Loaded the transaction analytics: transactions={}, capacity={}",
+                transactionColumns.size(), transactionColumns.capacity());
+    }
+
+    // called by the writer inside its transaction, the rows are appended once it is committed
+    public void appendAfterCommit(List<Transaction> transactions) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            append(transactions);
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                append(transactions);
+            }
+        });
+    }
+
+    // a window of the given days ending today
+    public AccountFlow getFlow(Long accountId, Integer days) {
+        LocalDate to = LocalDate.now();
+        LocalDate from = to.minusDays(days - 1L);
+        AccountFlow found = toFlow(accountId, from, to,
+                transactionColumns.flowOf(accountId, (int) from.toEpochDay(), (int) to.toEpochDay()));
+
+        log.info("Found an account flow: {}", found);
+        return found;
+    }
+
+    public List<AccountFlow> getTopFlows(Integer days, Integer limit) {
+        LocalDate to = LocalDate.now();
+        LocalDate from = to.minusDays(days - 1L);
+        List<AccountFlow> found = transactionColumns.flows((int) from.toEpochDay(), (int) to.toEpochDay())
+                .entrySet().stream()
+                .sorted(Comparator.comparingLong((Map.Entry<Long, FlowTotals> entry) -> entry.getValue().getVolume())
+                        .reversed())
+                .limit(limit)
+                .map(entry -> toFlow(entry.getKey(), from, to, entry.getValue()))
+                .collect(Collectors.toList());
+
+        log.info("Found top account flows: days={}, count={}", days, found.size());
+        return found;
+    }
+
+    public AnalyticsFootprint getFootprint() {
+        int transactions = transactionColumns.size();
+        long allocatedBytes = (long) transactionColumns.capacity() * TransactionColumns.BYTES_PER_TRANSACTION;
+        return AnalyticsFootprint.builder()
+                .transactions(transactions)
+                .capacity(transactionColumns.capacity())
+                .allocatedBytes(allocatedBytes)
+                .bytesPerTransaction(transactions == 0 ? 0 : (double) allocatedBytes / transactions)
+                .entityBytesPerTransaction(ENTITY_BYTES_PER_TRANSACTION)
+                .entityBytes((long) transactions * ENTITY_BYTES_PER_TRANSACTION)
+                .build();
+    }
+
+    // null ids are read as 0, rows without a type, status or date are not money flows and are skipped
+    private void appendRow(ResultSet row) throws SQLException {
+        String type = row.getString("type");
+        String status = row.getString("status");
+        Date createdAt = row.getDate("created_at");
+        if (type == null || status == null || createdAt == null) {
+            return;
+        }
+
+        transactionColumns.append(row.getLong("id"), row.getLong("sender_id"), row.getLong("receiver_id"),
+                toMinorUnits(row.getBigDecimal("amount")), (int) createdAt.toLocalDate().toEpochDay(),
+                Type.valueOf(type), Status.valueOf(status));
+    }
+
+    private void append(List<Transaction> transactions) {
+        for (Transaction transaction : transactions) {
+            if (transaction.getType() == null || transaction.getStatus() == null || transaction.getCreatedAt() == null) {
+                continue;
+            }
+
+            transactionColumns.append(transaction.getId(), orZero(transaction.getSenderId()),
+                    orZero(transaction.getReceiverId()), toMinorUnits(transaction.getAmount()),
+                    (int) transaction.getCreatedAt().toEpochDay(), transaction.getType(), transaction.getStatus());
+        }
+    }
+
+    private AccountFlow toFlow(Long accountId, LocalDate from, LocalDate to, FlowTotals totals) {
+        return AccountFlow.builder()
+                .accountId(accountId)
+                .from(from)
+                .to(to)
+                .inflow(BigDecimal.valueOf(totals.getInflow(), SCALE))
+                .outflow(BigDecimal.valueOf(totals.getOutflow(), SCALE))
+                .inflowCount(totals.getInflowCount())
+                .outflowCount(totals.getOutflowCount())
+                .build();
+    }
+
+    private long orZero(Long id) {
+        return id != null ? id : 0L;
+    }
+
+    // rounded like the decimal(19, 2) column rounds it on insert
+    private long toMinorUnits(BigDecimal amount) {
+        if (amount == null) {
+            return 0L;
+        }
+
+        return amount.setScale(SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+}
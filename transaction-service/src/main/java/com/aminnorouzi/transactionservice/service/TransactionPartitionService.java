@@ -0,0 +1,298 @@
+package com.aminnorouzi.transactionservice.service;
+
+import com.aminnorouzi.transactionservice.model.Transaction;
+import com.aminnorouzi.transactionservice.util.IdGenerator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.BadSqlGrammarException;
+import org.springframework.jdbc.core.BeanPropertyRowMapper;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Monthly partitions of the transaction table. The table is partitioned by range of id: ids start with their creation
+ * time, so every month is an id range, the primary key stays the id alone and a lookup by id touches one partition.
+ * <p>
+ * A daily run keeps partitions for the coming months and moves months older than {@code hot-months} out with
+ * {@code EXCHANGE PARTITION} into their own compressed archive table, which only keeps the primary key. Codes of the
+ * former 10 digit generator stay in the {@code p_legacy} partition.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "transaction.partition.enabled", havingValue = "true")
+public class TransactionPartitionService {
+
+    private static final String LEGACY_PARTITION = "p_legacy";
+    private static final String FUTURE_PARTITION = "p_future";
+    private static final DateTimeFormatter MONTH_FORMAT = DateTimeFormatter.ofPattern("yyyyMM");
+    private static final String PARTITION_PREFIX = "p";
+    private static final String ARCHIVE_PREFIX = "transaction_archive_";
+    private static final String LOCK_NAME = "transaction_partitions";
+    private static final int NO_SUCH_TABLE = 1146; // mysql ER_NO_SUCH_TABLE
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Clock clock;
+    private final Integer monthsAhead;
+    private final Integer hotMonths;
+
+    public TransactionPartitionService(JdbcTemplate jdbcTemplate,
+                                       @Value("${transaction.partition.months-ahead:3}") Integer monthsAhead,
+                                       @Value("${transaction.partition.hot-months:12}") Integer hotMonths) {
+        this(jdbcTemplate, Clock.systemUTC(), monthsAhead, hotMonths);
+    }
+
+    TransactionPartitionService(JdbcTemplate jdbcTemplate, Clock clock, Integer monthsAhead, Integer hotMonths) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.clock = clock;
+        this.monthsAhead = monthsAhead;
+        this.hotMonths = hotMonths;
+    }
+
+    // ids of archived months are gone from the partitioned table, they are read from the archive of their month
+    public Optional<Transaction> findArchived(Long id) {
+        if (id < IdGenerator.LEGACY_LIMIT) {
+            return Optional.empty();
+        }
+
+        String table = ARCHIVE_PREFIX + monthOf(id).format(MONTH_FORMAT);
+        try {
+            return Optional.ofNullable(jdbcTemplate.queryForObject(String.format("SELECT * FROM %s WHERE id = ?", table),
+                    new BeanPropertyRowMapper<>(Transaction.class), id));
+        } catch (EmptyResultDataAccessException exception) {
+            return Optional.empty();
+        } catch (BadSqlGrammarException exception) {
+            if (exception.getSQLException().getErrorCode() == NO_SUCH_TABLE) {
+                return Optional.empty(); // that month was never archived
+            }
+            throw exception;
+        }
+    }
+
+    /**
+     * First date whose transactions are all in the partitioned table. Archives keep no account or date index, so
+     * ranges are only read from the hot months. Months are cut by the utc time of the ids while creation dates are
+     * local, so the first day of the oldest hot month may still be partly archived.
+     */
+    public LocalDate firstHotDate() {
+        return YearMonth.now(clock).minusMonths(hotMonths - 1L).atDay(1).plusDays(1);
+    }
+
+    /**
+     * Runs on one instance at a time, guarded by a mysql named lock. Every step checks the current layout first, so a
+     * run interrupted half way is completed by the next one.
+     */
+    @Scheduled(cron = "${transaction.partition.cron:0 0 1 * * *}", zone = "UTC")
+    public void maintain() {
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            if (!tryLock(connection)) {
+                log.info("Skipped transaction partition maintenance, another instance is running it");
+                return null;
+            }
+
+            try {
+                List<String> partitions = findPartitions(connection, "transaction");
+                if (partitions.isEmpty()) {
+                    log.warn("Transaction table is not partitioned, partition it with: {}",
+                            partitioningStatement(connection));
+                    return null;
+                }
+
+                addMonths(connection, partitions);
+                archiveMonths(connection, partitions);
+            } finally {
+                unlock(connection);
+            }
+            return null;
+        });
+    }
+
+    private void addMonths(Connection connection, List<String> partitions) throws SQLException {
+        YearMonth last = lastMonthOf(partitions);
+        YearMonth until = YearMonth.now(clock).plusMonths(monthsAhead);
+        for (YearMonth month = last.plusMonths(1); !month.isAfter(until); month = month.plusMonths(1)) {
+            // p_future is empty while months are added ahead of time, so reorganizing it moves no rows
+            execute(connection, String.format("ALTER TABLE transaction REORGANIZE PARTITION %s INTO (%s, %s)",
+                    FUTURE_PARTITION, monthPartition(month), futurePartition()));
+            partitions.add(partitions.size() - 1, partitionName(month));
+
+            log.info("Added a transaction partition: {}", partitionName(month));
+        }
+    }
+
+    private void archiveMonths(Connection connection, List<String> partitions) throws SQLException {
+        YearMonth oldestHot = YearMonth.now(clock).minusMonths(hotMonths - 1L);
+        for (String partition : new ArrayList<>(partitions)) {
+            if (!isMonthPartition(partition) || !monthOf(partition).isBefore(oldestHot)) {
+                continue;
+            }
+
+            String archive = ARCHIVE_PREFIX + partition.substring(PARTITION_PREFIX.length());
+            if (!tableExists(connection, archive)) {
+                execute(connection, String.format("CREATE TABLE %s LIKE transaction", archive));
+            }
+            if (!findPartitions(connection, archive).isEmpty()) {
+                execute(connection, String.format("ALTER TABLE %s REMOVE PARTITIONING", archive));
+            }
+
+            boolean partitionEmpty = isEmpty(connection, String.format("transaction PARTITION (%s)", partition));
+            if (!partitionEmpty && !isEmpty(connection, archive)) {
+                log.error("Could not archive a transaction partition, both {} and {} hold rows", partition, archive);
+                continue;
+            }
+
+            // swaps table spaces, no rows are copied and the month is off the hot table at once
+            if (!partitionEmpty) {
+                execute(connection, String.format("ALTER TABLE transaction EXCHANGE PARTITION %s WITH TABLE %s",
+                        partition, archive));
+            }
+            execute(connection, String.format("ALTER TABLE transaction DROP PARTITION %s", partition));
+            if (!isCompressed(connection, archive)) {
+                execute(connection, String.format("ALTER TABLE %s DROP INDEX idx_transaction_sender_created_at_id, " +
+                        "DROP INDEX idx_transaction_receiver_created_at_id, DROP INDEX idx_transaction_created_at_id, " +
+                        "DROP INDEX idx_transaction_type_status_created_at_id, ROW_FORMAT=COMPRESSED", archive));
+            }
+            partitions.remove(partition);
+
+            log.info("Archived a transaction partition: {} to {}", partition, archive);
+        }
+    }
+
+    // months from the oldest transaction on, so converting an existing table puts every row in its month
+    String partitioningStatement(Connection connection) throws SQLException {
+        YearMonth first = YearMonth.now(clock);
+        try (Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery(
+                     "SELECT MIN(id) FROM transaction WHERE id >= " + IdGenerator.LEGACY_LIMIT)) {
+            if (result.next() && result.getObject(1) != null) {
+                first = monthOf(result.getLong(1));
+            }
+        }
+
+        List<String> definitions = new ArrayList<>();
+        definitions.add(String.format("PARTITION %s VALUES LESS THAN (%s)", LEGACY_PARTITION, IdGenerator.LEGACY_LIMIT));
+        YearMonth until = YearMonth.now(clock).plusMonths(monthsAhead);
+        for (YearMonth month = first; !month.isAfter(until); month = month.plusMonths(1)) {
+            definitions.add(monthPartition(month));
+        }
+        definitions.add(futurePartition());
+
+        return String.format("ALTER TABLE transaction PARTITION BY RANGE (id) (%s)", String.join(", ", definitions));
+    }
+
+    private List<String> findPartitions(Connection connection, String table) throws SQLException {
+        List<String> partitions = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement("SELECT PARTITION_NAME " +
+                "FROM information_schema.PARTITIONS WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? " +
+                "AND PARTITION_NAME IS NOT NULL ORDER BY PARTITION_ORDINAL_POSITION")) {
+            statement.setString(1, table);
+            try (ResultSet result = statement.executeQuery()) {
+                while (result.next()) {
+                    partitions.add(result.getString(1));
+                }
+            }
+        }
+        return partitions;
+    }
+
+    private boolean isEmpty(Connection connection, String table) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery(String.format("SELECT 1 FROM %s LIMIT 1", table))) {
+            return !result.next();
+        }
+    }
+
+    private boolean isCompressed(Connection connection, String table) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT ROW_FORMAT " +
+                "FROM information_schema.TABLES WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ?")) {
+            statement.setString(1, table);
+            try (ResultSet result = statement.executeQuery()) {
+                return result.next() && "Compressed".equalsIgnoreCase(result.getString(1));
+            }
+        }
+    }
+
+    private boolean tableExists(Connection connection, String table) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT COUNT(*) " +
+                "FROM information_schema.TABLES WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ?")) {
+            statement.setString(1, table);
+            try (ResultSet result = statement.executeQuery()) {
+                return result.next() && result.getInt(1) > 0;
+            }
+        }
+    }
+
+    private boolean tryLock(Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT GET_LOCK(?, 0)")) {
+            statement.setString(1, LOCK_NAME);
+            try (ResultSet result = statement.executeQuery()) {
+                return result.next() && result.getInt(1) == 1;
+            }
+        }
+    }
+
+    private void unlock(Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+            statement.setString(1, LOCK_NAME);
+            statement.executeQuery().close();
+        }
+    }
+
+    private void execute(Connection connection, String sql) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    private YearMonth lastMonthOf(List<String> partitions) {
+        YearMonth last = YearMonth.now(clock).minusMonths(1);
+        for (String partition : partitions) {
+            if (isMonthPartition(partition) && monthOf(partition).isAfter(last)) {
+                last = monthOf(partition);
+            }
+        }
+        return last;
+    }
+
+    private String monthPartition(YearMonth month) {
+        long limit = IdGenerator.firstIdOf(month.plusMonths(1).atDay(1).atStartOfDay(ZoneOffset.UTC).toInstant());
+        return String.format("PARTITION %s VALUES LESS THAN (%s)", partitionName(month), limit);
+    }
+
+    private String futurePartition() {
+        return String.format("PARTITION %s VALUES LESS THAN MAXVALUE", FUTURE_PARTITION);
+    }
+
+    private String partitionName(YearMonth month) {
+        return PARTITION_PREFIX + month.format(MONTH_FORMAT);
+    }
+
+    private boolean isMonthPartition(String partition) {
+        return !LEGACY_PARTITION.equals(partition) && !FUTURE_PARTITION.equals(partition);
+    }
+
+    private YearMonth monthOf(String partition) {
+        return YearMonth.parse(partition.substring(PARTITION_PREFIX.length()), MONTH_FORMAT);
+    }
+
+    private YearMonth monthOf(long id) {
+        return YearMonth.from(IdGenerator.instantOf(id).atZone(ZoneOffset.UTC));
+    }
+}
@@ -0,0 +1,162 @@
+package com.aminnorouzi.transactionservice.service;
+
+import com.aminnorouzi.accountverifier.AccountVerifier;
+import com.aminnorouzi.transactionservice.exception.NotValidTransactionAccountException;
+import com.aminnorouzi.transactionservice.model.*;
+import com.aminnorouzi.transactionservice.repository.TransactionRollupRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Per account daily totals by direction, type and status. They are folded in by the writer of every transaction batch,
+ * in the same commit, so a summary over a date range reads one row per day and kind instead of every transaction.
+ * <p>
+ * Deposits and withdrawals carry the account on both ends and are counted once, as IN and OUT respectively. A transfer
+ * to the sending account itself is counted on both sides, so it nets to zero like the balance it leaves.
+ */
+@Slf4j
+@RequiredArgsConstructor
+@Service
+public class TransactionRollupService {
+
+    private static final String UPSERT = "INSERT INTO transaction_rollup " +
+            "(account_id, day, direction, type, status, transaction_count, amount) VALUES (?, ?, ?, ?, ?, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE transaction_count = transaction_count + VALUES(transaction_count), " +
+            "amount = amount + VALUES(amount)";
+
+    // rows are upserted in key order, so concurrent batches lock shared rollups in the same order
+    private static final Comparator<TransactionRollupId> KEY_ORDER = Comparator
+            .comparing(TransactionRollupId::getAccountId)
+            .thenComparing(TransactionRollupId::getDay)
+            .thenComparing(TransactionRollupId::getDirection)
+            .thenComparing(TransactionRollupId::getType)
+            .thenComparing(TransactionRollupId::getStatus);
+
+    private final TransactionRollupRepository transactionRollupRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final AccountVerifier accountVerifier;
+
+    @Autowired(required = false)
+    private TransactionPartitionService transactionPartitionService;
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void apply(List<Transaction> transactions) {
+        Map<TransactionRollupId, TransactionRollup> rollups = new TreeMap<>(KEY_ORDER);
+        for (Transaction transaction : transactions) {
+            if (transaction.getType() == null || transaction.getStatus() == null || transaction.getCreatedAt() == null) {
+                continue;
+            }
+
+            boolean sameAccount = Objects.equals(transaction.getSenderId(), transaction.getReceiverId());
+            if (transaction.getSenderId() != null && !(sameAccount && transaction.getType() == Type.DEPOSIT)) {
+                add(rollups, transaction, transaction.getSenderId(), Direction.OUT);
+            }
+            if (transaction.getReceiverId() != null && !(sameAccount && transaction.getType() == Type.WITHDRAWAL)) {
+                add(rollups, transaction, transaction.getReceiverId(), Direction.IN);
+            }
+        }
+
+        if (rollups.isEmpty()) {
+            return;
+        }
+
+        List<TransactionRollup> values = new ArrayList<>(rollups.values());
+        jdbcTemplate.batchUpdate(UPSERT, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement statement, int index) throws SQLException {
+                TransactionRollup rollup = values.get(index);
+                statement.setLong(1, rollup.getId().getAccountId());
+                statement.setDate(2, Date.valueOf(rollup.getId().getDay()));
+                statement.setString(3, rollup.getId().getDirection().name());
+                statement.setString(4, rollup.getId().getType().name());
+                statement.setString(5, rollup.getId().getStatus().name());
+                statement.setLong(6, rollup.getTransactionCount());
+                statement.setBigDecimal(7, rollup.getAmount());
+            }
+
+            @Override
+            public int getBatchSize() {
+                return values.size();
+            }
+        });
+    }
+
+    public List<TransactionSummary> getSummary(Long accountId, LocalDate from, LocalDate to) {
+        verifyAccount(accountId);
+
+        List<TransactionSummary> found = transactionRollupRepository.summarize(accountId,
+                from != null ? from : TransactionService.MIN_DATE, to != null ? to : TransactionService.MAX_DATE);
+
+        log.info("Found an account summary: accountId={}, from={}, to={}, {}", accountId, from, to, found);
+        return found;
+    }
+
+    /**
+     * Nets of the accounts with ids in a range, both inclusive, for reconciling balances. Accounts without successful
+     * transactions are left out. Days written before the rollups existed have to be rebuilt first.
+     */
+    public List<AccountNet> getNets(Long fromAccountId, Long toAccountId) {
+        List<AccountNet> found = transactionRollupRepository.findNets(fromAccountId, toAccountId);
+
+        log.info("Found account nets: fromAccountId={}, toAccountId={}, count={}",
+                fromAccountId, toAccountId, found.size());
+        return found;
+    }
+
+    /**
+     * Recomputes the rollups of a range of days from the transactions, e.g. to backfill days written before them. The
+     * rows of archived months are gone from the transaction table, so a range reaching into them is rejected instead
+     * of wiping their rollups.
+     */
+    @Transactional
+    public int rebuild(LocalDate from, LocalDate to) {
+        TransactionService.lowestOf(from, transactionPartitionService);
+
+        int deleted = transactionRollupRepository.deleteByDayBetween(from, to);
+        int inserted = transactionRollupRepository.insertFromTransactions(from, to,
+                TransactionService.minIdOf(from), TransactionService.maxIdOf(to));
+
+        log.info("Rebuilt transaction rollups: from={}, to={}, deleted={}, inserted={}", from, to, deleted, inserted);
+        return inserted;
+    }
+
+    private void add(Map<TransactionRollupId, TransactionRollup> rollups, Transaction transaction,
+                     Long accountId, Direction direction) {
+        TransactionRollupId id = TransactionRollupId.builder()
+                .accountId(accountId)
+                .day(transaction.getCreatedAt())
+                .direction(direction)
+                .type(transaction.getType())
+                .status(transaction.getStatus())
+                .build();
+        BigDecimal amount = transaction.getAmount() != null ? transaction.getAmount() : BigDecimal.ZERO;
+
+        TransactionRollup rollup = rollups.get(id);
+        if (rollup == null) {
+            rollups.put(id, new TransactionRollup(id, 1L, amount));
+        } else {
+            rollup.setTransactionCount(rollup.getTransactionCount() + 1);
+            rollup.setAmount(rollup.getAmount().add(amount));
+        }
+    }
+
+    private void verifyAccount(Long id) {
+        boolean exists = accountVerifier.exists(id);
+        if (!exists) {
+            throw new NotValidTransactionAccountException(String.format("Account: %s not found!", id));
+        }
+    }
+}
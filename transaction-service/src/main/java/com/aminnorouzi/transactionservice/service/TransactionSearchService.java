@@ -0,0 +1,79 @@
+package com.aminnorouzi.transactionservice.service;
+
+import com.aminnorouzi.transactionservice.exception.NotValidTransactionSearchException;
+import com.aminnorouzi.transactionservice.model.SearchOrder;
+import com.aminnorouzi.transactionservice.model.Status;
+import com.aminnorouzi.transactionservice.model.Transaction;
+import com.aminnorouzi.transactionservice.model.TransactionSearch;
+import com.aminnorouzi.transactionservice.model.Type;
+import com.aminnorouzi.transactionservice.repository.TransactionRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+/**
+ * Searches over all accounts for operations. Every search has to name a date range of at most {@code max-days}, so
+ * any combination of filters is an index range scan over that range and never a scan of the whole table.
+ */
+@Slf4j
+@RequiredArgsConstructor
+@Service
+public class TransactionSearchService {
+
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    private final TransactionRepository transactionRepository;
+
+    @Autowired(required = false)
+    private TransactionPartitionService transactionPartitionService;
+
+    @Value("${transaction.search.max-days:31}")
+    private Integer maxDays;
+
+    public List<Transaction> searchTransactions(Type type, Status status, BigDecimal minAmount, BigDecimal maxAmount,
+                                                LocalDate from, LocalDate to, SearchOrder order,
+                                                LocalDate cursorDate, Long cursorId, Integer size) {
+        if (from == null || to == null || to.isBefore(from)) {
+            throw new NotValidTransactionSearchException("Transaction search needs a date range!");
+        }
+        if (ChronoUnit.DAYS.between(from, to) >= maxDays) {
+            throw new NotValidTransactionSearchException(String.format(
+                    "Transaction search range must be at most %s days!", maxDays));
+        }
+        TransactionService.lowestOf(from, transactionPartitionService);
+        if (minAmount != null && maxAmount != null && minAmount.compareTo(maxAmount) > 0) {
+            throw new NotValidTransactionSearchException("Transaction search amount range is not valid!");
+        }
+        if ((cursorDate == null) != (cursorId == null)) {
+            throw new NotValidTransactionSearchException("Transaction search cursor needs both a date and an id!");
+        }
+        if (size < 1) {
+            throw new NotValidTransactionSearchException("Transaction search page size must be positive!");
+        }
+
+        TransactionSearch search = TransactionSearch.builder()
+                .type(type)
+                .status(status)
+                .minAmount(minAmount)
+                .maxAmount(maxAmount)
+                .from(from)
+                .to(to)
+                .minId(TransactionService.minIdOf(from))
+                .maxId(TransactionService.maxIdOf(to))
+                .order(order)
+                .cursorDate(cursorDate)
+                .cursorId(cursorId)
+                .build();
+        List<Transaction> found = transactionRepository.search(search, Math.min(size, MAX_PAGE_SIZE));
+
+        log.info("Found transactions: {}, count={}", search, found.size());
+        return found;
+    }
+}
@@ -1,64 +1,296 @@
 package com.aminnorouzi.transactionservice.service;
 
-import com.aminnorouzi.transactionservice.client.AccountClient;
+import com.aminnorouzi.accountverifier.AccountVerifier;
+import com.aminnorouzi.transactionservice.exception.ArchivedTransactionRangeException;
+import com.aminnorouzi.transactionservice.exception.NotValidPageSizeException;
 import com.aminnorouzi.transactionservice.exception.NotValidTransactionAccountException;
+import com.aminnorouzi.transactionservice.exception.NotValidTransactionBatchException;
 import com.aminnorouzi.transactionservice.exception.TransactionNotFoundException;
+import com.aminnorouzi.transactionservice.model.Direction;
 import com.aminnorouzi.transactionservice.model.Transaction;
 import com.aminnorouzi.transactionservice.model.TransactionRequest;
 import com.aminnorouzi.transactionservice.repository.TransactionRepository;
 import com.aminnorouzi.transactionservice.util.IdGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.time.LocalDate;
-import java.util.List;
+import java.time.ZoneOffset;
+import java.util.*;
 
 @Slf4j
 @RequiredArgsConstructor
 @Service
 public class TransactionService {
 
+    private static final int MAX_PAGE_SIZE = 1000;
+    static final LocalDate MIN_DATE = LocalDate.of(1000, 1, 1); // bounds of the mysql date column
+    static final LocalDate MAX_DATE = LocalDate.of(9999, 12, 31);
+
     private final TransactionRepository transactionRepository;
-    private final AccountClient accountClient;
+    private final AccountVerifier accountVerifier;
+    private final IdGenerator idGenerator;
+    private final TransactionWriter transactionWriter;
+    private final ObjectMapper objectMapper;
+    private final IdempotencyKeyService idempotencyKeyService;
+
+    @Autowired(required = false)
+    private TransactionPartitionService transactionPartitionService;
 
+    @Value("${transaction.batch.chunk-size:1000}")
+    private Integer chunkSize;
+
+    /**
+     * Creates a transaction once per idempotency key: a retry with a recently used key is answered from memory before
+     * it is queued. Any other taken key fails on the unique key, the writer then retries its batch row by row, so only
+     * the retry fails and is answered from the transaction stored under its key.
+     */
     public Transaction createTransaction(TransactionRequest request) {
-        Transaction transaction = Transaction.builder()
-                .id(IdGenerator.get())
-                .senderId(request.getSenderId())
-                .receiverId(request.getReceiverId())
-                .amount(request.getAmount())
-                .note(request.getNote())
-                .type(request.getType())
-                .status(request.getStatus())
-                .createdAt(LocalDate.now())
-                .build();
+        String key = request.getIdempotencyKey();
+        if (key != null) {
+            idempotencyKeyService.validate(key);
+
+            Optional<Transaction> repeated = idempotencyKeyService.findRecent(key);
+            if (repeated.isPresent()) {
+                log.info("Found a repeated transaction: idempotencyKey={}, {}", key, repeated.get());
+                return repeated.get();
+            }
+        }
+
+        Transaction saved;
+        try {
+            saved = transactionWriter.write(toTransaction(request, idGenerator.next()));
+        } catch (RuntimeException exception) {
+            if (key == null) {
+                throw exception;
+            }
 
-        Transaction saved = transactionRepository.save(transaction);
+            saved = findStored(key).orElseThrow(() -> exception);
+
+            log.info("Found a repeated transaction: idempotencyKey={}, {}", key, saved);
+            return saved;
+        }
+        idempotencyKeyService.remember(saved);
 
         log.info("Created new transaction: {}", saved);
         return saved;
     }
 
+    /**
+     * Imports a json array or newline delimited json of requests and returns their tracking codes in order. The body
+     * is read one chunk of requests at a time and each chunk is flushed as a jdbc batch, all in one commit.
+     * <p>
+     * The used idempotency keys of a chunk are looked up in one query; their requests are skipped and answered with
+     * the tracking code stored under the key.
+     */
+    @Transactional
+    public List<Long> createTransactions(InputStream body) {
+        List<Long> created = new ArrayList<>();
+        List<TransactionRequest> chunk = new ArrayList<>(chunkSize);
+        try (MappingIterator<TransactionRequest> requests = objectMapper.readerFor(TransactionRequest.class)
+                .readValues(body)) {
+            while (requests.hasNextValue()) {
+                chunk.add(requests.nextValue());
+                if (chunk.size() == chunkSize) {
+                    writeChunk(chunk, created);
+                }
+            }
+        } catch (JsonProcessingException exception) {
+            throw new NotValidTransactionBatchException(String.format("Transaction batch is not valid: %s",
+                    exception.getOriginalMessage()));
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+        writeChunk(chunk, created);
+
+        log.info("Created new transactions: count={}", created.size());
+        return created;
+    }
+
     public Transaction getTransactionById(Long id) {
         Transaction found = transactionRepository.findById(id)
+                .or(() -> transactionPartitionService != null
+                        ? transactionPartitionService.findArchived(id)
+                        : Optional.empty())
                 .orElseThrow(() -> new TransactionNotFoundException(String.format("Transaction: %s not found!", id)));
 
         log.info("Found a transaction: id={}, {}", id, found);
         return found;
     }
 
-    public List<Transaction> getTransactionsByAccountId(Long accountId) {
+    // keys are kept for the idempotency retention, an older one is not found
+    public Transaction getTransactionByIdempotencyKey(String key) {
+        Transaction found = idempotencyKeyService.findRecent(key)
+                .or(() -> findStored(key))
+                .orElseThrow(() -> new TransactionNotFoundException(String.format(
+                        "Transaction with idempotency key: %s not found!", key)));
+
+        log.info("Found a transaction: idempotencyKey={}, {}", key, found);
+        return found;
+    }
+
+    /**
+     * Returns one page of an account history, newest first. The next page starts before the last returned
+     * transaction, passed back as {@code beforeDate} and {@code beforeId}. With partitioning on the history covers
+     * the hot months, see {@link #lowestOf}.
+     */
+    public List<Transaction> getTransactionsByAccountId(Long accountId, Direction direction, LocalDate from, LocalDate to,
+                                                        LocalDate beforeDate, Long beforeId, Integer size) {
+        if (size < 1) {
+            throw new NotValidPageSizeException(String.format("Page size: %s is not valid!", size));
+        }
         verifyAccount(accountId);
 
-        List<Transaction> found = transactionRepository.findBySenderIdEqualsOrReceiverIdEquals(accountId, accountId);
+        LocalDate lowest = lowestOf(from, transactionPartitionService);
+        LocalDate highest = to != null ? to : MAX_DATE;
+        if (beforeDate == null || beforeDate.isAfter(highest)) {
+            beforeDate = highest;
+            beforeId = Long.MAX_VALUE;
+        } else if (beforeId == null) {
+            beforeId = Long.MAX_VALUE;
+        }
+
+        int limit = Math.min(size, MAX_PAGE_SIZE);
+        long minId = minIdOf(lowest);
+        long maxId = maxIdOf(beforeDate);
+        List<Transaction> found;
+        switch (direction) {
+            case IN:
+                found = transactionRepository.findIncomingHistory(accountId, lowest, beforeDate, beforeId,
+                        minId, maxId, limit);
+                break;
+            case OUT:
+                found = transactionRepository.findOutgoingHistory(accountId, lowest, beforeDate, beforeId,
+                        minId, maxId, limit);
+                break;
+            default:
+                found = transactionRepository.findHistory(accountId, lowest, beforeDate, beforeId,
+                        minId, maxId, limit);
+        }
 
-        log.info("Found an account transactions: accountId={}, {}", accountId, found);
+        log.info("Found an account transactions: accountId={}, direction={}, beforeDate={}, beforeId={}, count={}",
+                accountId, direction, beforeDate, beforeId, found.size());
         return found;
     }
 
+    /**
+     * Lowest date of a range read. Once months are archived a range without a start begins at the first hot date,
+     * and a range starting before it is rejected rather than answered with the hot part only.
+     */
+    static LocalDate lowestOf(LocalDate from, TransactionPartitionService transactionPartitionService) {
+        if (transactionPartitionService == null) {
+            return from != null ? from : MIN_DATE;
+        }
+
+        LocalDate firstHot = transactionPartitionService.firstHotDate();
+        if (from == null) {
+            return firstHot;
+        }
+        if (from.isBefore(firstHot)) {
+            throw new ArchivedTransactionRangeException(String.format(
+                    "Transactions before %s are archived, only their tracking codes can be looked up!", firstHot));
+        }
+        return from;
+    }
+
+    /**
+     * Id bounds of the transactions created within a date range. Creation dates are local while ids carry utc time,
+     * so the bounds are widened by a day on each side.
+     */
+    static long minIdOf(LocalDate from) {
+        return IdGenerator.firstIdOf(from.minusDays(1).atStartOfDay(ZoneOffset.UTC).toInstant());
+    }
+
+    static long maxIdOf(LocalDate to) {
+        if (!to.isBefore(MAX_DATE)) {
+            return Long.MAX_VALUE;
+        }
+        return IdGenerator.firstIdOf(to.plusDays(2).atStartOfDay(ZoneOffset.UTC).toInstant());
+    }
+
+    private void writeChunk(List<TransactionRequest> chunk, List<Long> created) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+
+        Set<String> keys = new HashSet<>();
+        for (TransactionRequest request : chunk) {
+            if (request.getIdempotencyKey() != null) {
+                idempotencyKeyService.validate(request.getIdempotencyKey());
+                keys.add(request.getIdempotencyKey());
+            }
+        }
+        Map<String, Long> used = keys.isEmpty() ? new HashMap<>()
+                : new HashMap<>(idempotencyKeyService.findTransactionIds(keys));
+
+        int fresh = 0;
+        Set<String> seen = new HashSet<>(used.keySet());
+        for (TransactionRequest request : chunk) {
+            if (request.getIdempotencyKey() == null || seen.add(request.getIdempotencyKey())) {
+                fresh++;
+            }
+        }
+
+        long[] ids = idGenerator.next(fresh);
+        List<Transaction> transactions = new ArrayList<>(fresh);
+        for (TransactionRequest request : chunk) {
+            String key = request.getIdempotencyKey();
+            Long id = key != null ? used.get(key) : null;
+            if (id == null) {
+                id = ids[transactions.size()];
+                transactions.add(toTransaction(request, id));
+                if (key != null) {
+                    used.put(key, id);
+                }
+            }
+            created.add(id);
+        }
+
+        if (transactions.size() < chunk.size()) {
+            log.info("Skipped repeated transactions of a batch: count={}", chunk.size() - transactions.size());
+        }
+        if (!transactions.isEmpty()) {
+            transactionWriter.writeAll(transactions);
+        }
+        chunk.clear();
+    }
+
+    private Optional<Transaction> findStored(String key) {
+        Optional<Transaction> stored = idempotencyKeyService.findTransactionId(key)
+                .map(this::getTransactionById);
+        stored.ifPresent(transaction -> {
+            transaction.setIdempotencyKey(key);
+            idempotencyKeyService.remember(transaction);
+        });
+        return stored;
+    }
+
+    private Transaction toTransaction(TransactionRequest request, long id) {
+        return Transaction.builder()
+                .id(id)
+                .senderId(request.getSenderId())
+                .receiverId(request.getReceiverId())
+                .amount(request.getAmount())
+                .note(request.getNote())
+                .type(request.getType())
+                .status(request.getStatus())
+                .createdAt(LocalDate.now())
+                .idempotencyKey(request.getIdempotencyKey())
+                .build();
+    }
+
     private void verifyAccount(Long id) {
-        boolean exists = accountClient.verifyAccount(id);
+        boolean exists = accountVerifier.exists(id);
         if (!exists) {
             throw new NotValidTransactionAccountException(String.format("Account: %s not found!", id));
         }
@@ -0,0 +1,241 @@
+package com.aminnorouzi.transactionservice.service;
+
+import com.aminnorouzi.transactionservice.exception.TransactionQueueFullException;
+import com.aminnorouzi.transactionservice.model.IdempotencyKey;
+import com.aminnorouzi.transactionservice.model.Transaction;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+
+/**
+ * Group commit for transaction inserts: callers queue their transaction and wait, a single writer thread persists
+ * whatever is queued as one JDBC batch in one commit and then completes every caller of that batch.
+ * <p>
+ * A batch is flushed once it is full or once its first transaction waited {@code max-delay}; with no delay it holds
+ * whatever queued up while the previous batch was committing. If a batch fails, its transactions are written one by one
+ * so a single bad row only fails its own caller. Repeats of an idempotency key within a batch are not written, they
+ * are answered with the transaction of the first.
+ */
+@Slf4j
+@Service
+public class TransactionWriter {
+
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionRollupService transactionRollupService;
+    private final BlockingQueue<PendingTransaction> queue;
+    private final Integer batchSize;
+    private final Duration maxDelay;
+    private final Duration offerTimeout;
+    private final Thread writer;
+
+    private volatile boolean running = true;
+
+    @Autowired(required = false)
+    private TransactionAnalyticsService transactionAnalyticsService;
+
+    public TransactionWriter(EntityManager entityManager,
+                             TransactionTemplate transactionTemplate,
+                             TransactionRollupService transactionRollupService,
+                             @Value("${transaction.writer.queue-capacity:10000}") Integer queueCapacity,
+                             @Value("${transaction.writer.batch-size:100}") Integer batchSize,
+                             @Value("${transaction.writer.max-delay:0ms}") Duration maxDelay,
+                             @Value("${transaction.writer.offer-timeout:1s}") Duration offerTimeout) {
+        this.entityManager = entityManager;
+        this.transactionTemplate = transactionTemplate;
+        this.transactionRollupService = transactionRollupService;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSize = batchSize;
+        this.maxDelay = maxDelay;
+        this.offerTimeout = offerTimeout;
+        this.writer = new Thread(this::writeLoop, "transaction-writer");
+    }
+
+    @PostConstruct
+    public void start() {
+        writer.start();
+    }
+
+    // stops taking new transactions and writes out the queued ones
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        writer.join();
+    }
+
+    // blocks until the batch holding the transaction is committed, keeping the synchronous api contract
+    public Transaction write(Transaction transaction) {
+        CompletableFuture<Transaction> future = submit(transaction);
+        try {
+            return future.get();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while writing a transaction!", exception);
+        } catch (ExecutionException exception) {
+            if (exception.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) exception.getCause();
+            }
+            throw new IllegalStateException(exception.getCause());
+        }
+    }
+
+    /**
+     * Writes an already collected chunk in the caller's thread, bypassing the queue. Called inside a surrounding
+     * transaction the chunk joins it and is only flushed here, so a bulk import commits once at its end.
+     */
+    public void writeAll(List<Transaction> transactions) {
+        transactionTemplate.executeWithoutResult(status -> persistAll(transactions));
+    }
+
+    public CompletableFuture<Transaction> submit(Transaction transaction) {
+        PendingTransaction pending = new PendingTransaction(transaction);
+        try {
+            if (!running || !queue.offer(pending, offerTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                throw new TransactionQueueFullException("Transaction queue is full, try again later!");
+            }
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while queueing a transaction!", exception);
+        }
+
+        return pending.future;
+    }
+
+    private void writeLoop() {
+        List<PendingTransaction> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                collect(batch);
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                running = false;
+            }
+
+            if (!batch.isEmpty()) {
+                flush(batch);
+                batch.clear();
+            }
+        }
+
+        queue.drainTo(batch);
+        batch.forEach(pending -> pending.future.completeExceptionally(
+                new TransactionQueueFullException("Transaction writer is stopped, try again later!")));
+    }
+
+    private void collect(List<PendingTransaction> batch) throws InterruptedException {
+        PendingTransaction first = queue.poll(100, TimeUnit.MILLISECONDS);
+        if (first == null) {
+            return;
+        }
+
+        batch.add(first);
+        long deadline = System.nanoTime() + maxDelay.toNanos();
+        while (batch.size() < batchSize) {
+            if (queue.drainTo(batch, batchSize - batch.size()) > 0) {
+                continue;
+            }
+
+            long remaining = deadline - System.nanoTime();
+            PendingTransaction next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    private void flush(List<PendingTransaction> batch) {
+        List<PendingTransaction> unique = withoutRepeatedKeys(batch);
+        try {
+            persist(unique);
+            unique.forEach(pending -> pending.future.complete(pending.transaction));
+
+            log.info("Wrote a transaction batch: count={}", unique.size());
+        } catch (RuntimeException exception) {
+            log.warn("Could not write a transaction batch, writing one by one: count={}, {}",
+                    unique.size(), exception.getMessage());
+
+            for (PendingTransaction pending : unique) {
+                try {
+                    persist(List.of(pending));
+                    pending.future.complete(pending.transaction);
+                } catch (RuntimeException single) {
+                    pending.future.completeExceptionally(single);
+                }
+            }
+        }
+    }
+
+    // a key queued twice would fail the whole batch on the unique key, the repeat gets the outcome of the first
+    private List<PendingTransaction> withoutRepeatedKeys(List<PendingTransaction> batch) {
+        Map<String, PendingTransaction> firsts = new HashMap<>();
+        List<PendingTransaction> unique = new ArrayList<>(batch.size());
+        for (PendingTransaction pending : batch) {
+            String key = pending.transaction.getIdempotencyKey();
+            PendingTransaction first = key != null ? firsts.putIfAbsent(key, pending) : null;
+            if (first == null) {
+                unique.add(pending);
+                continue;
+            }
+
+            first.future.whenComplete((written, exception) -> {
+                if (exception != null) {
+                    pending.future.completeExceptionally(exception);
+                } else {
+                    pending.future.complete(written);
+                }
+            });
+        }
+        return unique;
+    }
+
+    // persist, not save: ids are assigned up front, so save would merge and select every row first
+    private void persist(List<PendingTransaction> batch) {
+        transactionTemplate.executeWithoutResult(status -> persistAll(batch.stream()
+                .map(pending -> pending.transaction)
+                .collect(Collectors.toList())));
+    }
+
+    // the daily rollups and idempotency keys of the rows are written within the same commit
+    private void persistAll(List<Transaction> transactions) {
+        transactions.forEach(entityManager::persist);
+        transactions.stream()
+                .filter(transaction -> transaction.getIdempotencyKey() != null)
+                .map(transaction -> IdempotencyKey.builder()
+                        .idempotencyKey(transaction.getIdempotencyKey())
+                        .transactionId(transaction.getId())
+                        .createdAt(transaction.getCreatedAt())
+                        .build())
+                .forEach(entityManager::persist);
+        entityManager.flush();
+        entityManager.clear();
+
+        transactionRollupService.apply(transactions);
+        if (transactionAnalyticsService != null) {
+            transactionAnalyticsService.appendAfterCommit(transactions);
+        }
+    }
+
+    private static class PendingTransaction {
+
+        private final Transaction transaction;
+        private final CompletableFuture<Transaction> future = new CompletableFuture<>();
+
+        private PendingTransaction(Transaction transaction) {
+            this.transaction = transaction;
+        }
+    }
+}
@@ -1,18 +1,113 @@
 package com.aminnorouzi.transactionservice.util;
 
+import com.netflix.appinfo.EurekaInstanceConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Snowflake style tracking codes: 41 bits of milliseconds since {@link #EPOCH}, 10 bits of node id and a 12 bit
+ * per millisecond sequence, so ids are unique across nodes and roughly ordered by time.
+ * <p>
+ * The last issued time and sequence live in one {@link AtomicLong} and are advanced with a CAS. A clock that goes
+ * backwards (or a sequence that runs out within a millisecond) does not block: the generator keeps counting from the
+ * last issued value, borrowing from the following milliseconds until the wall clock catches up.
+ */
+@Slf4j
+@Component
 public class IdGenerator {
 
-    private static final Long LIMIT = 10000000000L;
-    private static Long last = 0L;
+    public static final long EPOCH = Instant.parse("2022-01-01T00:00:00Z").toEpochMilli();
+    public static final long LEGACY_LIMIT = 10_000_000_000L; // codes of the former 10 digit generator are below it
+
+    static final int NODE_BITS = 10;
+    static final int SEQUENCE_BITS = 12;
+    static final long MAX_NODE_ID = (1L << NODE_BITS) - 1;
+
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    private final long nodeId;
+    private final LongSupplier clock;
+    private final AtomicLong last = new AtomicLong(); // (milliseconds since epoch << SEQUENCE_BITS) | sequence
+
+    @Autowired
+    public IdGenerator(@Value("${transaction.id.node-id:-1}") Long nodeId,
+                       ObjectProvider<EurekaInstanceConfig> eurekaInstanceConfig) {
+        this(nodeId >= 0 ? nodeId : nodeIdOf(eurekaInstanceConfig.getIfAvailable()), System::currentTimeMillis);
+    }
+
+    IdGenerator(long nodeId, LongSupplier clock) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException(String.format("Node id must be between 0 and %s!", MAX_NODE_ID));
+        }
+
+        this.nodeId = nodeId;
+        this.clock = clock;
+
+        log.info("Created an id generator: nodeId={}", nodeId);
+    }
+
+    public long next() {
+        return toId(reserve(1));
+    }
+
+    // reserves a whole block with a single CAS, ids of a block are consecutive in time and sequence
+    public long[] next(int count) {
+        if (count < 1) {
+            return new long[0];
+        }
+
+        long first = reserve(count);
+        long[] ids = new long[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = toId(first + i);
+        }
+        return ids;
+    }
+
+    public static Instant instantOf(long id) {
+        return Instant.ofEpochMilli((id >>> (NODE_BITS + SEQUENCE_BITS)) + EPOCH);
+    }
+
+    // the smallest id any node can issue at the given instant, ids below it were issued before
+    public static long firstIdOf(Instant instant) {
+        long millis = Math.max(instant.toEpochMilli() - EPOCH, 0);
+        if (millis >= 1L << (Long.SIZE - 1 - NODE_BITS - SEQUENCE_BITS)) {
+            return Long.MAX_VALUE; // past the range of the time bits
+        }
+        return millis << (NODE_BITS + SEQUENCE_BITS);
+    }
+
+    // returns the first of count time and sequence values, the last of them becomes the last issued value
+    private long reserve(int count) {
+        long now = clock.getAsLong() - EPOCH;
+        while (true) {
+            long previous = last.get();
+            long first = now > previous >>> SEQUENCE_BITS ? now << SEQUENCE_BITS : previous + 1;
+            if (last.compareAndSet(previous, first + count - 1)) {
+                return first;
+            }
+        }
+    }
+
+    private long toId(long value) {
+        return (value >>> SEQUENCE_BITS) << (NODE_BITS + SEQUENCE_BITS)
+                | nodeId << SEQUENCE_BITS
+                | value & SEQUENCE_MASK;
+    }
 
-    // returns 10 digits id
-    public static Long get() {
-        long id = System.currentTimeMillis() % LIMIT;
-        if (id <= last) {
-            id = (last + 1) % LIMIT;
+    // best effort when no node id is configured, instances that must never collide should set one explicitly
+    static long nodeIdOf(EurekaInstanceConfig eurekaInstanceConfig) {
+        if (eurekaInstanceConfig == null || eurekaInstanceConfig.getInstanceId() == null) {
+            return 0;
         }
 
-        last = id;
-        return id;
+        return Math.floorMod(eurekaInstanceConfig.getInstanceId().hashCode(), MAX_NODE_ID + 1);
     }
 }
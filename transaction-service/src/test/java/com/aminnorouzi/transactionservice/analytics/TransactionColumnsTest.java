@@ -0,0 +1,86 @@
+package com.aminnorouzi.transactionservice.analytics;
+
+import com.aminnorouzi.transactionservice.model.Status;
+import com.aminnorouzi.transactionservice.model.Type;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+
+class TransactionColumnsTest {
+
+    private static final int DAY = 19_000;
+
+    @Test
+    void shouldSumFlowsOfAccount() {
+        // given
+        TransactionColumns transactionColumns = new TransactionColumns(4);
+        transactionColumns.append(1, 10, 10, 10_000, DAY, Type.DEPOSIT, Status.SUCCEED);
+        transactionColumns.append(2, 10, 10, 2_500, DAY, Type.WITHDRAWAL, Status.SUCCEED);
+        transactionColumns.append(3, 10, 11, 1_000, DAY + 1, Type.TRANSFER, Status.SUCCEED);
+        transactionColumns.append(4, 11, 10, 300, DAY + 2, Type.TRANSFER, Status.SUCCEED);
+        transactionColumns.append(5, 11, 10, 700, DAY + 2, Type.TRANSFER, Status.FAILED);
+        transactionColumns.append(6, 11, 10, 900, DAY + 5, Type.TRANSFER, Status.SUCCEED);
+
+        // when
+        FlowTotals totals = transactionColumns.flowOf(10, DAY, DAY + 2);
+
+        // then
+        assertThat(transactionColumns.size()).isEqualTo(6);
+        assertThat(transactionColumns.capacity()).isGreaterThanOrEqualTo(6);
+        assertThat(totals.getInflow()).isEqualTo(10_300L);
+        assertThat(totals.getInflowCount()).isEqualTo(2L);
+        assertThat(totals.getOutflow()).isEqualTo(3_500L);
+        assertThat(totals.getOutflowCount()).isEqualTo(2L);
+    }
+
+    @Test
+    void shouldCountSelfTransferAsInflowAndOutflow() {
+        // given
+        TransactionColumns transactionColumns = new TransactionColumns(4);
+        transactionColumns.append(1, 10, 10, 10_000, DAY, Type.DEPOSIT, Status.SUCCEED);
+        transactionColumns.append(2, 10, 10, 400, DAY, Type.TRANSFER, Status.SUCCEED);
+
+        // when
+        FlowTotals totals = transactionColumns.flowOf(10, DAY, DAY);
+        FlowTotals scanned = transactionColumns.flows(DAY, DAY).get(10L);
+
+        // then
+        assertThat(totals.getInflow()).isEqualTo(10_400L);
+        assertThat(totals.getOutflow()).isEqualTo(400L);
+        assertThat(scanned.getInflow()).isEqualTo(10_400L);
+        assertThat(scanned.getOutflow()).isEqualTo(400L);
+        assertThat(scanned.getOutflowCount()).isEqualTo(1L);
+    }
+
+    @Test
+    void shouldMatchAccountFlowsInParallelScanOfAllAccounts() {
+        // given
+        TransactionColumns transactionColumns = new TransactionColumns(16);
+        Random random = new Random(42);
+        Type[] types = Type.values();
+        for (int i = 0; i < 300_000; i++) {
+            long senderId = 1 + random.nextInt(50);
+            Type type = types[random.nextInt(types.length)];
+            long receiverId = type == Type.TRANSFER ? 1 + random.nextInt(50) : senderId;
+            transactionColumns.append(i + 1, senderId, receiverId, 1 + random.nextInt(10_000), DAY + random.nextInt(30),
+                    type, random.nextInt(10) == 0 ? Status.FAILED : Status.SUCCEED);
+        }
+
+        // when
+        Map<Long, FlowTotals> flows = transactionColumns.flows(DAY + 5, DAY + 20);
+
+        // then
+        for (long accountId = 1; accountId <= 50; accountId++) {
+            FlowTotals expected = transactionColumns.flowOf(accountId, DAY + 5, DAY + 20);
+            FlowTotals actual = flows.get(accountId);
+
+            assertThat(actual.getInflow()).isEqualTo(expected.getInflow());
+            assertThat(actual.getOutflow()).isEqualTo(expected.getOutflow());
+            assertThat(actual.getInflowCount()).isEqualTo(expected.getInflowCount());
+            assertThat(actual.getOutflowCount()).isEqualTo(expected.getOutflowCount());
+        }
+    }
+}
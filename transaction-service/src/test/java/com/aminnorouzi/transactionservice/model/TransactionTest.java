@@ -0,0 +1,30 @@
+package com.aminnorouzi.transactionservice.model;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+
+class TransactionTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    @Test
+    void shouldWriteTrackingCodeAsString() throws Exception {
+        // given
+        long id = (1L << 53) + 1; // the first integer a javascript number can not hold
+        Transaction transaction = Transaction.builder()
+                .id(id)
+                .senderId(10L)
+                .build();
+
+        // when
+        String json = objectMapper.writeValueAsString(transaction);
+        Transaction read = objectMapper.readValue(json, Transaction.class);
+
+        // then
+        assertThat(json).contains(String.format("\"id\":\"%s\"", id));
+        assertThat(json).contains("\"senderId\":10");
+        assertThat(read.getId()).isEqualTo(id);
+    }
+}
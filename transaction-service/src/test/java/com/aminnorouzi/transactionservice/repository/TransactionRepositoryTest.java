@@ -0,0 +1,103 @@
+package com.aminnorouzi.transactionservice.repository;
+
+import com.aminnorouzi.transactionservice.model.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect")
+class TransactionRepositoryTest {
+
+    private static final LocalDate DAY = LocalDate.of(2022, 5, 1);
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @BeforeEach
+    void setUp() {
+        persist(1L, DAY, 100, Type.TRANSFER, Status.FAILED);
+        persist(2L, DAY, 200, Type.TRANSFER, Status.SUCCEED);
+        persist(3L, DAY.plusDays(1), 300, Type.TRANSFER, Status.FAILED);
+        persist(4L, DAY.plusDays(1), 400, Type.DEPOSIT, Status.FAILED);
+        persist(5L, DAY.plusDays(2), 500, Type.TRANSFER, Status.FAILED);
+        persist(6L, DAY.plusDays(9), 600, Type.TRANSFER, Status.FAILED);
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    @Test
+    void shouldSearchFilteredTransactionsInKeysetPages() {
+        // given
+        TransactionSearch search = TransactionSearch.builder()
+                .type(Type.TRANSFER)
+                .status(Status.FAILED)
+                .from(DAY)
+                .to(DAY.plusDays(2))
+                .minId(0L)
+                .maxId(Long.MAX_VALUE)
+                .order(SearchOrder.NEWEST)
+                .build();
+
+        // when
+        List<Transaction> firstPage = transactionRepository.search(search, 2);
+
+        Transaction last = firstPage.get(firstPage.size() - 1);
+        search.setCursorDate(last.getCreatedAt());
+        search.setCursorId(last.getId());
+        List<Transaction> secondPage = transactionRepository.search(search, 2);
+
+        // then
+        assertThat(idsOf(firstPage)).isEqualTo(List.of(5L, 3L));
+        assertThat(idsOf(secondPage)).isEqualTo(List.of(1L));
+    }
+
+    @Test
+    void shouldSearchAmountRangeOldestFirst() {
+        // given
+        TransactionSearch search = TransactionSearch.builder()
+                .minAmount(BigDecimal.valueOf(200))
+                .maxAmount(BigDecimal.valueOf(400))
+                .from(DAY)
+                .to(DAY.plusDays(30))
+                .minId(0L)
+                .maxId(Long.MAX_VALUE)
+                .order(SearchOrder.OLDEST)
+                .build();
+
+        // when
+        List<Transaction> found = transactionRepository.search(search, 10);
+
+        // then
+        assertThat(idsOf(found)).isEqualTo(List.of(2L, 3L, 4L));
+    }
+
+    private void persist(Long id, LocalDate createdAt, long amount, Type type, Status status) {
+        entityManager.persist(Transaction.builder()
+                .id(id)
+                .senderId(10L)
+                .receiverId(11L)
+                .amount(BigDecimal.valueOf(amount))
+                .type(type)
+                .status(status)
+                .createdAt(createdAt)
+                .build());
+    }
+
+    private List<Long> idsOf(List<Transaction> transactions) {
+        return transactions.stream()
+                .map(Transaction::getId)
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,58 @@
+package com.aminnorouzi.transactionservice.repository;
+
+import com.aminnorouzi.transactionservice.model.*;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect")
+class TransactionRollupRepositoryTest {
+
+    private static final LocalDate DAY = LocalDate.of(2022, 5, 1);
+
+    @Autowired
+    private TransactionRollupRepository transactionRollupRepository;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Test
+    void shouldFindNetsOfSuccessfulTransactionsInAccountRange() {
+        // given
+        persist(10L, DAY, Direction.IN, Type.DEPOSIT, Status.SUCCEED, 1000);
+        persist(10L, DAY.plusDays(1), Direction.IN, Type.DEPOSIT, Status.SUCCEED, 500);
+        persist(10L, DAY, Direction.OUT, Type.TRANSFER, Status.SUCCEED, 300);
+        persist(10L, DAY, Direction.OUT, Type.WITHDRAWAL, Status.FAILED, 9000);
+        persist(11L, DAY, Direction.IN, Type.TRANSFER, Status.SUCCEED, 300);
+        persist(12L, DAY, Direction.IN, Type.TRANSFER, Status.SUCCEED, 700);
+        entityManager.flush();
+
+        // when
+        List<AccountNet> nets = transactionRollupRepository.findNets(10L, 11L);
+
+        // then
+        assertThat(nets.size()).isEqualTo(2);
+        assertThat(nets.get(0).getAccountId()).isEqualTo(10L);
+        assertThat(nets.get(0).getNet().compareTo(BigDecimal.valueOf(1200))).isEqualTo(0);
+        assertThat(nets.get(1).getAccountId()).isEqualTo(11L);
+        assertThat(nets.get(1).getNet().compareTo(BigDecimal.valueOf(300))).isEqualTo(0);
+    }
+
+    private void persist(Long accountId, LocalDate day, Direction direction, Type type, Status status, long amount) {
+        TransactionRollupId id = TransactionRollupId.builder()
+                .accountId(accountId)
+                .day(day)
+                .direction(direction)
+                .type(type)
+                .status(status)
+                .build();
+        entityManager.persist(new TransactionRollup(id, 1L, BigDecimal.valueOf(amount)));
+    }
+}
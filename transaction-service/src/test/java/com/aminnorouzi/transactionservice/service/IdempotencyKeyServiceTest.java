@@ -0,0 +1,87 @@
+package com.aminnorouzi.transactionservice.service;
+
+import com.aminnorouzi.transactionservice.exception.NotValidIdempotencyKeyException;
+import com.aminnorouzi.transactionservice.model.IdempotencyKey;
+import com.aminnorouzi.transactionservice.model.Transaction;
+import com.aminnorouzi.transactionservice.repository.IdempotencyKeyRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class IdempotencyKeyServiceTest {
+
+    @Mock
+    private IdempotencyKeyRepository idempotencyKeyRepository;
+
+    private IdempotencyKeyService idempotencyKeyService;
+
+    @BeforeEach
+    void setUp() {
+        idempotencyKeyService = new IdempotencyKeyService(idempotencyKeyRepository, 100L, Duration.ofHours(1),
+                Duration.ofDays(7));
+    }
+
+    @Test
+    void shouldFindRememberedKeysWithoutQuery() {
+        // given
+        Transaction transaction = Transaction.builder()
+                .id(10L)
+                .idempotencyKey("a")
+                .build();
+        idempotencyKeyService.remember(transaction);
+
+        given(idempotencyKeyRepository.findAllById(List.of("b")))
+                .willReturn(List.of(new IdempotencyKey("b", 11L, null)));
+
+        // when
+        Map<String, Long> found = idempotencyKeyService.findTransactionIds(List.of("a", "b"));
+
+        // then
+        verify(idempotencyKeyRepository, times(1)).findAllById(List.of("b"));
+
+        assertThat(found).isEqualTo(Map.of("a", 10L, "b", 11L));
+        assertThat(idempotencyKeyService.findRecent("a").orElseThrow()).isEqualTo(transaction);
+    }
+
+    @Test
+    void shouldPurgeKeysOlderThanRetentionInBatches() {
+        // given
+        LocalDate before = LocalDate.now().minusDays(7);
+        given(idempotencyKeyRepository.deleteCreatedBefore(before, 10_000))
+                .willReturn(10_000)
+                .willReturn(42);
+
+        // when
+        idempotencyKeyService.purgeExpired();
+
+        // then
+        verify(idempotencyKeyRepository, times(2)).deleteCreatedBefore(before, 10_000);
+    }
+
+    @Test
+    void shouldNotAcceptTooLongKey() {
+        // given
+        String key = "k".repeat(65);
+
+        // when
+        // then
+        assertThatThrownBy(() -> idempotencyKeyService.validate(key))
+                .isInstanceOf(NotValidIdempotencyKeyException.class)
+                .hasMessageContaining("is not valid");
+
+        verify(idempotencyKeyRepository, never()).findById(key);
+    }
+}
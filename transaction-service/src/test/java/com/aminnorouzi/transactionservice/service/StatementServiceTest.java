@@ -0,0 +1,138 @@
+package com.aminnorouzi.transactionservice.service;
+
+import com.aminnorouzi.accountverifier.AccountVerifier;
+import com.aminnorouzi.transactionservice.exception.NotValidTransactionAccountException;
+import com.aminnorouzi.transactionservice.model.StatementFormat;
+import com.aminnorouzi.transactionservice.model.Status;
+import com.aminnorouzi.transactionservice.model.Transaction;
+import com.aminnorouzi.transactionservice.model.Type;
+import com.aminnorouzi.transactionservice.repository.TransactionRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import javax.persistence.EntityManager;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class StatementServiceTest {
+
+    private static final LocalDate FROM = LocalDate.of(2022, 1, 1);
+    private static final LocalDate TO = LocalDate.of(2022, 12, 31);
+
+    @Mock
+    private TransactionRepository transactionRepository;
+    @Mock
+    private AccountVerifier accountVerifier;
+    @Mock
+    private EntityManager entityManager;
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    @InjectMocks
+    private StatementService statementService;
+
+    @Test
+    void shouldExportMergedStatementAsCsv() throws IOException {
+        // given
+        long accountId = 10;
+        given(transactionRepository.streamOutgoing(eq(accountId), eq(FROM), eq(TO), anyLong(), anyLong()))
+                .willReturn(Stream.of(buildTransaction(1L, 10L, 11L, LocalDate.of(2022, 1, 2), "rent"),
+                        buildTransaction(4L, 10L, 12L, LocalDate.of(2022, 3, 1), "dinner, \"large\"")));
+        given(transactionRepository.streamIncoming(eq(accountId), eq(FROM), eq(TO), anyLong(), anyLong()))
+                .willReturn(Stream.of(buildTransaction(2L, 11L, 10L, LocalDate.of(2022, 1, 2), null),
+                        buildTransaction(3L, 12L, 10L, LocalDate.of(2022, 2, 1), null)));
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        // when
+        statementService.exportStatement(accountId, FROM, TO, StatementFormat.CSV, false, outputStream);
+
+        // then
+        String[] lines = outputStream.toString(StandardCharsets.UTF_8).split("\n");
+
+        verify(entityManager, times(4)).detach(any(Transaction.class));
+
+        assertThat(lines.length).isEqualTo(5);
+        assertThat(lines[0]).isEqualTo("id,createdAt,senderId,receiverId,amount,type,status,note");
+        assertThat(lines[1]).isEqualTo("1,2022-01-02,10,11,100,TRANSFER,SUCCEED,rent");
+        assertThat(lines[2]).startsWith("2,");
+        assertThat(lines[3]).startsWith("3,");
+        assertThat(lines[4]).isEqualTo("4,2022-03-01,10,12,100,TRANSFER,SUCCEED,\"dinner, \"\"large\"\"\"");
+    }
+
+    @Test
+    void shouldExportGzippedNdjsonStatement() throws IOException {
+        // given
+        long accountId = 10;
+        given(transactionRepository.streamOutgoing(accountId, TransactionService.MIN_DATE, TransactionService.MAX_DATE,
+                0L, Long.MAX_VALUE))
+                .willReturn(Stream.of(buildTransaction(1L, 10L, 11L, LocalDate.of(2022, 1, 2), "rent")));
+        given(transactionRepository.streamIncoming(accountId, TransactionService.MIN_DATE, TransactionService.MAX_DATE,
+                0L, Long.MAX_VALUE))
+                .willReturn(Stream.empty());
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        // when
+        statementService.exportStatement(accountId, null, null, StatementFormat.NDJSON, true, outputStream);
+
+        // then
+        String content;
+        try (GZIPInputStream inputStream = new GZIPInputStream(new ByteArrayInputStream(outputStream.toByteArray()))) {
+            content = new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+        }
+
+        Transaction exported = objectMapper.readValue(content.trim(), Transaction.class);
+
+        assertThat(content.endsWith("\n")).isTrue();
+        assertThat(exported.getId()).isEqualTo(1L);
+        assertThat(exported.getNote()).isEqualTo("rent");
+    }
+
+    @Test
+    void shouldNotExportStatementWhenAccountNotFound() {
+        // given
+        long accountId = 10;
+        given(accountVerifier.exists(accountId))
+                .willReturn(false);
+
+        // when
+        // then
+        assertThatThrownBy(() -> statementService.verifyAccount(accountId))
+                .isInstanceOf(NotValidTransactionAccountException.class)
+                .hasMessageContaining(String.format("Account: %s not found!", accountId));
+    }
+
+    private Transaction buildTransaction(Long id, Long senderId, Long receiverId, LocalDate createdAt, String note) {
+        return Transaction.builder()
+                .id(id)
+                .senderId(senderId)
+                .receiverId(receiverId)
+                .amount(BigDecimal.valueOf(100))
+                .note(note)
+                .type(Type.TRANSFER)
+                .status(Status.SUCCEED)
+                .createdAt(createdAt)
+                .build();
+    }
+}
@@ -0,0 +1,103 @@
+package com.aminnorouzi.transactionservice.service;
+
+import com.aminnorouzi.transactionservice.model.Transaction;
+import com.aminnorouzi.transactionservice.util.IdGenerator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.testcontainers.containers.MySQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+
+/**
+ * Runs the partition statements against a real mysql, the table comes from the entity mapping. Skipped where no
+ * docker is available.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED) // ddl commits implicitly in mysql
+class TransactionPartitionServiceMySqlTest {
+
+    @Container
+    private static final MySQLContainer<?> MYSQL = new MySQLContainer<>("mysql:8.0");
+
+    @DynamicPropertySource
+    static void mysqlProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", MYSQL::getJdbcUrl);
+        registry.add("spring.datasource.username", MYSQL::getUsername);
+        registry.add("spring.datasource.password", MYSQL::getPassword);
+        registry.add("spring.jpa.hibernate.ddl-auto", () -> "create");
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private TransactionPartitionService transactionPartitionService;
+
+    @BeforeEach
+    void setUp() {
+        Clock clock = Clock.fixed(Instant.parse("2023-06-15T00:00:00Z"), ZoneOffset.UTC);
+        transactionPartitionService = new TransactionPartitionService(jdbcTemplate, clock, 3, 12);
+    }
+
+    @Test
+    void shouldPartitionAndArchiveMonths() {
+        // given
+        long archived = IdGenerator.firstIdOf(Instant.parse("2022-02-10T10:00:00Z"));
+        long hot = IdGenerator.firstIdOf(Instant.parse("2023-05-10T10:00:00Z"));
+        insert(1_650_000_000L, "2022-01-05");
+        insert(archived, "2022-02-10");
+        insert(hot, "2023-05-10");
+
+        String partitioning = jdbcTemplate.execute((ConnectionCallback<String>) connection ->
+                transactionPartitionService.partitioningStatement(connection));
+        jdbcTemplate.execute(partitioning);
+
+        // when
+        transactionPartitionService.maintain();
+        transactionPartitionService.maintain(); // a second run finds nothing left to do
+
+        // then
+        List<String> partitions = jdbcTemplate.queryForList("SELECT PARTITION_NAME FROM information_schema.PARTITIONS " +
+                "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'transaction' ORDER BY PARTITION_ORDINAL_POSITION",
+                String.class);
+        assertThat(partitions.get(0)).isEqualTo("p_legacy");
+        assertThat(partitions.get(1)).isEqualTo("p202207");
+        assertThat(partitions.get(partitions.size() - 2)).isEqualTo("p202309");
+        assertThat(partitions.get(partitions.size() - 1)).isEqualTo("p_future");
+
+        assertThat(jdbcTemplate.queryForObject("SELECT ROW_FORMAT FROM information_schema.TABLES " +
+                "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'transaction_archive_202202'", String.class))
+                .isEqualTo("Compressed");
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM transaction", Long.class)).isEqualTo(2L);
+
+        Optional<Transaction> found = transactionPartitionService.findArchived(archived);
+        assertThat(found.isPresent()).isTrue();
+        assertThat(found.get().getSenderId()).isEqualTo(10L);
+
+        // the month of the hot transaction was never archived, its archive table does not exist
+        assertThat(transactionPartitionService.findArchived(hot).isPresent()).isFalse();
+    }
+
+    private void insert(long id, String createdAt) {
+        jdbcTemplate.update("INSERT INTO transaction (id, sender_id, receiver_id, amount, note, type, status, " +
+                "created_at) VALUES (?, 10, 11, 100, 'test', 'TRANSFER', 'SUCCEED', ?)", id, createdAt);
+    }
+}
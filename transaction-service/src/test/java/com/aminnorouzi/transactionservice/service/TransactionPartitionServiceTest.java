@@ -0,0 +1,111 @@
+package com.aminnorouzi.transactionservice.service;
+
+import com.aminnorouzi.transactionservice.model.Transaction;
+import com.aminnorouzi.transactionservice.util.IdGenerator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.BadSqlGrammarException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.SQLException;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TransactionPartitionServiceTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private TransactionPartitionService transactionPartitionService;
+
+    @BeforeEach
+    void setUp() {
+        Clock clock = Clock.fixed(Instant.parse("2023-06-15T00:00:00Z"), ZoneOffset.UTC);
+        transactionPartitionService = new TransactionPartitionService(jdbcTemplate, clock, 3, 12);
+    }
+
+    @Test
+    void shouldFindArchivedTransactionInArchiveOfItsMonth() {
+        // given
+        long id = IdGenerator.firstIdOf(Instant.parse("2022-02-10T10:00:00Z"));
+        given(jdbcTemplate.queryForObject(eq("SELECT * FROM transaction_archive_202202 WHERE id = ?"),
+                ArgumentMatchers.<RowMapper<Transaction>>any(), eq(id)))
+                .willReturn(Transaction.builder().id(id).build());
+
+        // when
+        Optional<Transaction> found = transactionPartitionService.findArchived(id);
+
+        // then
+        assertThat(found.isPresent()).isTrue();
+        assertThat(found.get().getId()).isEqualTo(id);
+    }
+
+    @Test
+    void shouldNotFindTransactionOfMonthNeverArchived() {
+        // given
+        long id = IdGenerator.firstIdOf(Instant.parse("2023-05-10T10:00:00Z"));
+        given(jdbcTemplate.queryForObject(eq("SELECT * FROM transaction_archive_202305 WHERE id = ?"),
+                ArgumentMatchers.<RowMapper<Transaction>>any(), eq(id)))
+                .willThrow(new BadSqlGrammarException("select", "SELECT",
+                        new SQLException("Table 'transaction_db.transaction_archive_202305' doesn't exist", "42S02", 1146)));
+
+        // when
+        Optional<Transaction> found = transactionPartitionService.findArchived(id);
+
+        // then
+        assertThat(found.isPresent()).isFalse();
+    }
+
+    @Test
+    void shouldNotHideOtherErrorsOfArchive() {
+        // given
+        long id = IdGenerator.firstIdOf(Instant.parse("2022-02-10T10:00:00Z"));
+        given(jdbcTemplate.queryForObject(eq("SELECT * FROM transaction_archive_202202 WHERE id = ?"),
+                ArgumentMatchers.<RowMapper<Transaction>>any(), eq(id)))
+                .willThrow(new BadSqlGrammarException("select", "SELECT",
+                        new SQLException("Unknown column 'sender_id' in 'field list'", "42S22", 1054)));
+
+        // when
+        // then
+        assertThatThrownBy(() -> transactionPartitionService.findArchived(id))
+                .isInstanceOf(BadSqlGrammarException.class);
+    }
+
+    @Test
+    void shouldKeepFirstHotDateInsideOldestHotMonth() {
+        // when
+        LocalDate firstHot = transactionPartitionService.firstHotDate();
+
+        // then
+        assertThat(firstHot).isEqualTo(LocalDate.of(2022, 7, 2));
+    }
+
+    @Test
+    void shouldNotLookUpArchivesForLegacyIds() {
+        // given
+        long id = 1_650_000_000L;
+
+        // when
+        Optional<Transaction> found = transactionPartitionService.findArchived(id);
+
+        // then
+        verifyNoInteractions(jdbcTemplate);
+
+        assertThat(found.isPresent()).isFalse();
+    }
+}
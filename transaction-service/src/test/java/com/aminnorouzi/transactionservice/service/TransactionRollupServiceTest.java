@@ -0,0 +1,202 @@
+package com.aminnorouzi.transactionservice.service;
+
+import com.aminnorouzi.accountverifier.AccountVerifier;
+import com.aminnorouzi.transactionservice.exception.ArchivedTransactionRangeException;
+import com.aminnorouzi.transactionservice.exception.NotValidTransactionAccountException;
+import com.aminnorouzi.transactionservice.model.Status;
+import com.aminnorouzi.transactionservice.model.Transaction;
+import com.aminnorouzi.transactionservice.model.Type;
+import com.aminnorouzi.transactionservice.repository.TransactionRollupRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TransactionRollupServiceTest {
+
+    private static final LocalDate DAY = LocalDate.of(2022, 5, 1);
+
+    @Mock
+    private TransactionRollupRepository transactionRollupRepository;
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+    @Mock
+    private AccountVerifier accountVerifier;
+    @InjectMocks
+    private TransactionRollupService transactionRollupService;
+
+    @Test
+    void shouldFoldTransactionsIntoDailyRollups() throws SQLException {
+        // given
+        List<Transaction> transactions = List.of(
+                buildTransaction(10L, 10L, 100, Type.DEPOSIT),
+                buildTransaction(10L, 10L, 40, Type.WITHDRAWAL),
+                buildTransaction(10L, 11L, 20, Type.TRANSFER),
+                buildTransaction(10L, 11L, 30, Type.TRANSFER));
+
+        // when
+        transactionRollupService.apply(transactions);
+
+        // then
+        ArgumentCaptor<BatchPreparedStatementSetter> setterArgumentCaptor =
+                ArgumentCaptor.forClass(BatchPreparedStatementSetter.class);
+
+        verify(jdbcTemplate, times(1)).batchUpdate(anyString(), setterArgumentCaptor.capture());
+
+        BatchPreparedStatementSetter setter = setterArgumentCaptor.getValue();
+
+        assertThat(setter.getBatchSize()).isEqualTo(4); // 10 in, 10 out withdrawal, 10 out transfer, 11 in
+
+        PreparedStatement statement = mock(PreparedStatement.class);
+        for (int i = 0; i < setter.getBatchSize(); i++) {
+            setter.setValues(statement, i);
+        }
+
+        verify(statement, times(2)).setString(3, "IN");
+        verify(statement, times(3)).setLong(1, 10L);
+        verify(statement, times(1)).setLong(1, 11L);
+        verify(statement, times(2)).setLong(6, 2L);
+        verify(statement, times(2)).setBigDecimal(7, BigDecimal.valueOf(50));
+        verify(statement, times(1)).setBigDecimal(7, BigDecimal.valueOf(100));
+    }
+
+    @Test
+    void shouldFoldSelfTransferIntoBothDirections() throws SQLException {
+        // given
+        List<Transaction> transactions = List.of(buildTransaction(10L, 10L, 20, Type.TRANSFER));
+
+        // when
+        transactionRollupService.apply(transactions);
+
+        // then
+        ArgumentCaptor<BatchPreparedStatementSetter> setterArgumentCaptor =
+                ArgumentCaptor.forClass(BatchPreparedStatementSetter.class);
+        verify(jdbcTemplate, times(1)).batchUpdate(anyString(), setterArgumentCaptor.capture());
+
+        BatchPreparedStatementSetter setter = setterArgumentCaptor.getValue();
+
+        assertThat(setter.getBatchSize()).isEqualTo(2);
+
+        PreparedStatement statement = mock(PreparedStatement.class);
+        for (int i = 0; i < setter.getBatchSize(); i++) {
+            setter.setValues(statement, i);
+        }
+
+        verify(statement, times(1)).setString(3, "IN");
+        verify(statement, times(1)).setString(3, "OUT");
+        verify(statement, times(2)).setBigDecimal(7, BigDecimal.valueOf(20));
+    }
+
+    @Test
+    void shouldNotWriteRollupsWithoutTransactions() {
+        // given
+        // when
+        transactionRollupService.apply(List.of());
+
+        // then
+        verify(jdbcTemplate, never()).batchUpdate(anyString(), any(BatchPreparedStatementSetter.class));
+    }
+
+    @Test
+    void shouldSummarizeAccountFromRollups() {
+        // given
+        long accountId = 10;
+        LocalDate from = LocalDate.of(2022, 5, 1);
+        LocalDate to = LocalDate.of(2022, 5, 31);
+        given(accountVerifier.exists(accountId))
+                .willReturn(true);
+
+        // when
+        transactionRollupService.getSummary(accountId, from, to);
+
+        // then
+        verify(transactionRollupRepository, times(1)).summarize(accountId, from, to);
+    }
+
+    @Test
+    void shouldNotSummarizeAccountWhenNotFound() {
+        // given
+        long accountId = 10;
+        given(accountVerifier.exists(accountId))
+                .willReturn(false);
+
+        // when
+        // then
+        assertThatThrownBy(() -> transactionRollupService.getSummary(accountId, null, null))
+                .isInstanceOf(NotValidTransactionAccountException.class)
+                .hasMessageContaining(String.format("Account: %s not found!", accountId));
+
+        verify(transactionRollupRepository, never()).summarize(any(), any(), any());
+    }
+
+    @Test
+    void shouldRebuildRollupsOfHotMonths() {
+        // given
+        LocalDate from = LocalDate.of(2022, 7, 2);
+        LocalDate to = LocalDate.of(2022, 7, 31);
+        TransactionPartitionService transactionPartitionService = mock(TransactionPartitionService.class);
+        ReflectionTestUtils.setField(transactionRollupService, "transactionPartitionService", transactionPartitionService);
+
+        given(transactionPartitionService.firstHotDate())
+                .willReturn(LocalDate.of(2022, 7, 2));
+        given(transactionRollupRepository.insertFromTransactions(eq(from), eq(to), anyLong(), anyLong()))
+                .willReturn(3);
+
+        // when
+        int inserted = transactionRollupService.rebuild(from, to);
+
+        // then
+        verify(transactionRollupRepository, times(1)).deleteByDayBetween(from, to);
+
+        assertThat(inserted).isEqualTo(3);
+    }
+
+    @Test
+    void shouldNotRebuildRollupsOfArchivedMonths() {
+        // given
+        TransactionPartitionService transactionPartitionService = mock(TransactionPartitionService.class);
+        ReflectionTestUtils.setField(transactionRollupService, "transactionPartitionService", transactionPartitionService);
+
+        given(transactionPartitionService.firstHotDate())
+                .willReturn(LocalDate.of(2022, 7, 2));
+
+        // when
+        // then
+        assertThatThrownBy(() -> transactionRollupService.rebuild(LocalDate.of(2022, 6, 1), LocalDate.of(2022, 7, 31)))
+                .isInstanceOf(ArchivedTransactionRangeException.class)
+                .hasMessageContaining("Transactions before 2022-07-02 are archived");
+
+        verify(transactionRollupRepository, never()).deleteByDayBetween(any(), any());
+        verify(transactionRollupRepository, never()).insertFromTransactions(any(), any(), anyLong(), anyLong());
+    }
+
+    private Transaction buildTransaction(Long senderId, Long receiverId, long amount, Type type) {
+        return Transaction.builder()
+                .senderId(senderId)
+                .receiverId(receiverId)
+                .amount(BigDecimal.valueOf(amount))
+                .type(type)
+                .status(Status.SUCCEED)
+                .createdAt(DAY)
+                .build();
+    }
+}
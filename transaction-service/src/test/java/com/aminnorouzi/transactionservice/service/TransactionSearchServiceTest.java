@@ -0,0 +1,92 @@
+package com.aminnorouzi.transactionservice.service;
+
+import com.aminnorouzi.transactionservice.exception.NotValidTransactionSearchException;
+import com.aminnorouzi.transactionservice.model.SearchOrder;
+import com.aminnorouzi.transactionservice.model.Status;
+import com.aminnorouzi.transactionservice.model.TransactionSearch;
+import com.aminnorouzi.transactionservice.model.Type;
+import com.aminnorouzi.transactionservice.repository.TransactionRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TransactionSearchServiceTest {
+
+    private static final LocalDate DAY = LocalDate.of(2022, 5, 1);
+
+    @Mock
+    private TransactionRepository transactionRepository;
+    @InjectMocks
+    private TransactionSearchService transactionSearchService;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(transactionSearchService, "maxDays", 31);
+    }
+
+    @Test
+    void shouldSearchTransactionsWithinDateRange() {
+        // given
+        // when
+        transactionSearchService.searchTransactions(Type.TRANSFER, Status.FAILED, null, null, DAY, DAY,
+                SearchOrder.NEWEST, null, null, 5000);
+
+        // then
+        ArgumentCaptor<TransactionSearch> searchArgumentCaptor = ArgumentCaptor.forClass(TransactionSearch.class);
+
+        verify(transactionRepository, times(1)).search(searchArgumentCaptor.capture(), eq(1000));
+
+        TransactionSearch search = searchArgumentCaptor.getValue();
+
+        assertThat(search.getType()).isEqualTo(Type.TRANSFER);
+        assertThat(search.getStatus()).isEqualTo(Status.FAILED);
+        assertThat(search.getMinId()).isEqualTo(TransactionService.minIdOf(DAY));
+        assertThat(search.getMaxId()).isEqualTo(TransactionService.maxIdOf(DAY));
+    }
+
+    @Test
+    void shouldNotSearchTransactionsOverTooLongRange() {
+        // given
+        // when
+        // then
+        assertThatThrownBy(() -> transactionSearchService.searchTransactions(null, Status.FAILED, null, null,
+                DAY, DAY.plusDays(31), SearchOrder.NEWEST, null, null, 100))
+                .isInstanceOf(NotValidTransactionSearchException.class)
+                .hasMessageContaining("at most 31 days");
+
+        verify(transactionRepository, never()).search(any(TransactionSearch.class), anyInt());
+    }
+
+    @Test
+    void shouldNotSearchTransactionsWithInvalidFilters() {
+        // given
+        // when
+        // then
+        assertThatThrownBy(() -> transactionSearchService.searchTransactions(null, null, BigDecimal.TEN,
+                BigDecimal.ONE, DAY, DAY, SearchOrder.NEWEST, null, null, 100))
+                .isInstanceOf(NotValidTransactionSearchException.class)
+                .hasMessageContaining("amount range");
+        assertThatThrownBy(() -> transactionSearchService.searchTransactions(null, null, null, null,
+                DAY, DAY, SearchOrder.NEWEST, DAY, null, 100))
+                .isInstanceOf(NotValidTransactionSearchException.class)
+                .hasMessageContaining("cursor");
+
+        verify(transactionRepository, never()).search(any(TransactionSearch.class), anyInt());
+    }
+}
@@ -1,24 +1,39 @@
 package com.aminnorouzi.transactionservice.service;
 
-import com.aminnorouzi.transactionservice.client.AccountClient;
+import com.aminnorouzi.accountverifier.AccountVerifier;
+import com.aminnorouzi.transactionservice.exception.ArchivedTransactionRangeException;
+import com.aminnorouzi.transactionservice.exception.NotValidPageSizeException;
 import com.aminnorouzi.transactionservice.exception.NotValidTransactionAccountException;
+import com.aminnorouzi.transactionservice.exception.NotValidTransactionBatchException;
 import com.aminnorouzi.transactionservice.exception.TransactionNotFoundException;
+import com.aminnorouzi.transactionservice.model.Direction;
 import com.aminnorouzi.transactionservice.model.Status;
 import com.aminnorouzi.transactionservice.model.Transaction;
 import com.aminnorouzi.transactionservice.model.TransactionRequest;
 import com.aminnorouzi.transactionservice.model.Type;
 import com.aminnorouzi.transactionservice.repository.TransactionRepository;
 import com.aminnorouzi.transactionservice.util.IdGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
@@ -31,9 +46,19 @@ class TransactionServiceTest {
     @Mock
     private TransactionRepository transactionRepository;
     @Mock
-    private AccountClient accountClient;
+    private AccountVerifier accountVerifier;
+    @Mock
+    private IdGenerator idGenerator;
+    @Mock
+    private TransactionWriter transactionWriter;
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper();
+    @Mock
+    private IdempotencyKeyService idempotencyKeyService;
     @InjectMocks
     private TransactionService transactionService;
+    @Captor
+    private ArgumentCaptor<List<Transaction>> chunkArgumentCaptor;
 
     @Test
     void shouldCreateTransaction() {
@@ -47,8 +72,12 @@ class TransactionServiceTest {
                 .status(Status.SUCCEED)
                 .build();
 
+        long id = 10;
+        given(idGenerator.next())
+                .willReturn(id);
+
         Transaction transaction = Transaction.builder()
-                .id(IdGenerator.get())
+                .id(id)
                 .senderId(request.getSenderId())
                 .receiverId(request.getReceiverId())
                 .amount(request.getAmount())
@@ -64,11 +93,192 @@ class TransactionServiceTest {
         // then
         ArgumentCaptor<Transaction> transactionArgumentCaptor = ArgumentCaptor.forClass(Transaction.class);
 
-        verify(transactionRepository, times(1)).save(transactionArgumentCaptor.capture());
+        verify(transactionWriter, times(1)).write(transactionArgumentCaptor.capture());
+        verify(transactionRepository, never()).save(any(Transaction.class));
 
         Transaction capturedTransaction = transactionArgumentCaptor.getValue();
 
-        assertThat(capturedTransaction).isEqualToIgnoringGivenFields(transaction, "id");
+        assertThat(capturedTransaction).isEqualTo(transaction);
+    }
+
+    @Test
+    void shouldCreateTransactionsFromJsonArrayInChunks() {
+        // given
+        ReflectionTestUtils.setField(transactionService, "chunkSize", 2);
+        InputStream body = toBody("[" +
+                "{\"senderId\":10,\"receiverId\":11,\"amount\":100,\"type\":\"TRANSFER\",\"status\":\"SUCCEED\"}," +
+                "{\"senderId\":11,\"receiverId\":12,\"amount\":200,\"type\":\"TRANSFER\",\"status\":\"SUCCEED\"}," +
+                "{\"senderId\":12,\"receiverId\":13,\"amount\":300,\"type\":\"TRANSFER\",\"status\":\"SUCCEED\"}]");
+
+        given(idGenerator.next(2))
+                .willReturn(new long[]{1, 2});
+        given(idGenerator.next(1))
+                .willReturn(new long[]{3});
+
+        // when
+        List<Long> created = transactionService.createTransactions(body);
+
+        // then
+        verify(transactionWriter, times(2)).writeAll(chunkArgumentCaptor.capture());
+        verify(transactionWriter, never()).write(any(Transaction.class));
+
+        List<Transaction> lastChunk = chunkArgumentCaptor.getAllValues().get(1);
+
+        assertThat(created).isEqualTo(List.of(1L, 2L, 3L));
+        assertThat(lastChunk.size()).isEqualTo(1);
+        assertThat(lastChunk.get(0).getId()).isEqualTo(3L);
+        assertThat(lastChunk.get(0).getAmount()).isEqualTo(BigDecimal.valueOf(300));
+    }
+
+    @Test
+    void shouldCreateTransactionsFromNdjson() {
+        // given
+        ReflectionTestUtils.setField(transactionService, "chunkSize", 1000);
+        InputStream body = toBody(
+                "{\"senderId\":10,\"receiverId\":11,\"amount\":100,\"type\":\"TRANSFER\",\"status\":\"SUCCEED\"}\n" +
+                "{\"senderId\":0,\"receiverId\":12,\"amount\":200,\"type\":\"DEPOSIT\",\"status\":\"SUCCEED\"}\n");
+
+        given(idGenerator.next(2))
+                .willReturn(new long[]{1, 2});
+
+        // when
+        List<Long> created = transactionService.createTransactions(body);
+
+        // then
+        verify(transactionWriter, times(1)).writeAll(anyList());
+
+        assertThat(created).isEqualTo(List.of(1L, 2L));
+    }
+
+    @Test
+    void shouldNotCreateTransactionsFromMalformedBody() {
+        // given
+        ReflectionTestUtils.setField(transactionService, "chunkSize", 1000);
+        InputStream body = toBody("[{\"senderId\":10,");
+
+        // when
+        // then
+        assertThatThrownBy(() -> transactionService.createTransactions(body))
+                .isInstanceOf(NotValidTransactionBatchException.class)
+                .hasMessageContaining("Transaction batch is not valid");
+
+        verify(transactionWriter, never()).writeAll(anyList());
+    }
+
+    @Test
+    void shouldReturnRecentTransactionForRepeatedKey() {
+        // given
+        TransactionRequest request = TransactionRequest.builder()
+                .senderId(10L)
+                .receiverId(11L)
+                .amount(BigDecimal.valueOf(10000))
+                .idempotencyKey("account-outbox-1")
+                .build();
+
+        Transaction transaction = Transaction.builder()
+                .id(10L)
+                .idempotencyKey("account-outbox-1")
+                .build();
+        given(idempotencyKeyService.findRecent("account-outbox-1"))
+                .willReturn(Optional.of(transaction));
+
+        // when
+        Transaction created = transactionService.createTransaction(request);
+
+        // then
+        verify(transactionWriter, never()).write(any(Transaction.class));
+        verify(idGenerator, never()).next();
+
+        assertThat(created).isEqualTo(transaction);
+    }
+
+    @Test
+    void shouldReturnStoredTransactionWhenKeyIsTaken() {
+        // given
+        TransactionRequest request = TransactionRequest.builder()
+                .senderId(10L)
+                .receiverId(11L)
+                .amount(BigDecimal.valueOf(10000))
+                .idempotencyKey("account-outbox-1")
+                .build();
+
+        long id = 10;
+        given(idempotencyKeyService.findRecent("account-outbox-1"))
+                .willReturn(Optional.empty());
+        given(idGenerator.next())
+                .willReturn(11L);
+        given(transactionWriter.write(any(Transaction.class)))
+                .willThrow(new IllegalStateException("Duplicate entry"));
+        given(idempotencyKeyService.findTransactionId("account-outbox-1"))
+                .willReturn(Optional.of(id));
+        given(transactionRepository.findById(id))
+                .willReturn(Optional.of(Transaction.builder().id(id).build()));
+
+        // when
+        Transaction created = transactionService.createTransaction(request);
+
+        // then
+        verify(idempotencyKeyService, times(1)).remember(created);
+
+        assertThat(created.getId()).isEqualTo(id);
+        assertThat(created.getIdempotencyKey()).isEqualTo("account-outbox-1");
+    }
+
+    @Test
+    void shouldNotLookUpStoredKeyBeforeQueueing() {
+        // given
+        TransactionRequest request = TransactionRequest.builder()
+                .senderId(10L)
+                .receiverId(11L)
+                .amount(BigDecimal.valueOf(10000))
+                .idempotencyKey("account-outbox-1")
+                .build();
+
+        given(idempotencyKeyService.findRecent("account-outbox-1"))
+                .willReturn(Optional.empty());
+        given(idGenerator.next())
+                .willReturn(11L);
+        given(transactionWriter.write(any(Transaction.class)))
+                .willAnswer(invocation -> invocation.getArgument(0));
+
+        // when
+        Transaction created = transactionService.createTransaction(request);
+
+        // then
+        verify(idempotencyKeyService, never()).findTransactionId(anyString());
+        verify(idempotencyKeyService, times(1)).remember(created);
+
+        assertThat(created.getId()).isEqualTo(11L);
+        assertThat(created.getIdempotencyKey()).isEqualTo("account-outbox-1");
+    }
+
+    @Test
+    void shouldSkipRepeatedKeysOfBatch() {
+        // given
+        ReflectionTestUtils.setField(transactionService, "chunkSize", 1000);
+        InputStream body = toBody(
+                "{\"senderId\":10,\"receiverId\":11,\"amount\":100,\"idempotencyKey\":\"a\"}\n" +
+                "{\"senderId\":10,\"receiverId\":11,\"amount\":200,\"idempotencyKey\":\"b\"}\n" +
+                "{\"senderId\":10,\"receiverId\":11,\"amount\":200,\"idempotencyKey\":\"b\"}\n" +
+                "{\"senderId\":10,\"receiverId\":11,\"amount\":300}\n");
+
+        given(idempotencyKeyService.findTransactionIds(Set.of("a", "b")))
+                .willReturn(Map.of("a", 7L));
+        given(idGenerator.next(2))
+                .willReturn(new long[]{1, 2});
+
+        // when
+        List<Long> created = transactionService.createTransactions(body);
+
+        // then
+        verify(transactionWriter, times(1)).writeAll(chunkArgumentCaptor.capture());
+
+        List<Transaction> written = chunkArgumentCaptor.getValue();
+
+        assertThat(created).isEqualTo(List.of(7L, 1L, 1L, 2L));
+        assertThat(written.size()).isEqualTo(2);
+        assertThat(written.get(0).getIdempotencyKey()).isEqualTo("b");
+        assertThat(written.get(1).getIdempotencyKey()).isNull();
     }
 
     @Test
@@ -85,6 +295,65 @@ class TransactionServiceTest {
         verify(transactionRepository, times(1)).findById(id);
     }
 
+    @Test
+    void shouldGetArchivedTransactionById() {
+        // given
+        long id = IdGenerator.firstIdOf(Instant.parse("2022-02-01T10:00:00Z"));
+        TransactionPartitionService transactionPartitionService = mock(TransactionPartitionService.class);
+        ReflectionTestUtils.setField(transactionService, "transactionPartitionService", transactionPartitionService);
+
+        given(transactionRepository.findById(id))
+                .willReturn(Optional.empty());
+        given(transactionPartitionService.findArchived(id))
+                .willReturn(Optional.of(Transaction.builder().id(id).build()));
+
+        // when
+        Transaction found = transactionService.getTransactionById(id);
+
+        // then
+        verify(transactionPartitionService, times(1)).findArchived(id);
+
+        assertThat(found.getId()).isEqualTo(id);
+    }
+
+    @Test
+    void shouldGetTransactionByIdempotencyKey() {
+        // given
+        long id = 10;
+        given(idempotencyKeyService.findRecent("account-outbox-1"))
+                .willReturn(Optional.empty());
+        given(idempotencyKeyService.findTransactionId("account-outbox-1"))
+                .willReturn(Optional.of(id));
+        given(transactionRepository.findById(id))
+                .willReturn(Optional.of(Transaction.builder().id(id).build()));
+
+        // when
+        Transaction found = transactionService.getTransactionByIdempotencyKey("account-outbox-1");
+
+        // then
+        verify(idempotencyKeyService, times(1)).remember(found);
+
+        assertThat(found.getId()).isEqualTo(id);
+        assertThat(found.getIdempotencyKey()).isEqualTo("account-outbox-1");
+    }
+
+    @Test
+    void shouldNotGetTransactionByIdempotencyKeyWhenNotFound() {
+        // given
+        given(idempotencyKeyService.findRecent("account-outbox-1"))
+                .willReturn(Optional.empty());
+        given(idempotencyKeyService.findTransactionId("account-outbox-1"))
+                .willReturn(Optional.empty());
+
+        // when
+        // then
+        assertThatThrownBy(() -> transactionService.getTransactionByIdempotencyKey("account-outbox-1"))
+                .isInstanceOf(TransactionNotFoundException.class)
+                .hasMessageContaining("Transaction with idempotency key: account-outbox-1 not found!");
+
+        verify(transactionRepository, never()).findById(any(Long.class));
+    }
+
     @Test
     void shouldNotGetTransactionByIdWhenNotFound() {
         // given
@@ -102,34 +371,132 @@ class TransactionServiceTest {
     }
 
     @Test
-    void shouldGetTransactionsByAccountId() {
+    void shouldGetFirstHistoryPageOfAccount() {
         // given
         long accountId = 10;
-        given(accountClient.verifyAccount(accountId))
+        given(accountVerifier.exists(accountId))
                 .willReturn(true);
 
         // when
-        transactionService.getTransactionsByAccountId(accountId);
+        transactionService.getTransactionsByAccountId(accountId, Direction.ALL, null, null, null, null, 5000);
 
         // then
-        verify(transactionRepository, times(1)).findBySenderIdEqualsOrReceiverIdEquals(
-                accountId, accountId);
+        verify(transactionRepository, times(1)).findHistory(accountId, LocalDate.of(1000, 1, 1),
+                LocalDate.of(9999, 12, 31), Long.MAX_VALUE, 0L, Long.MAX_VALUE, 1000);
+    }
+
+    @Test
+    void shouldGetNextIncomingHistoryPageWithinDateRange() {
+        // given
+        long accountId = 10;
+        LocalDate from = LocalDate.of(2022, 1, 1);
+        LocalDate to = LocalDate.of(2022, 6, 30);
+        LocalDate beforeDate = LocalDate.of(2022, 3, 15);
+        given(accountVerifier.exists(accountId))
+                .willReturn(true);
+
+        // when
+        transactionService.getTransactionsByAccountId(accountId, Direction.IN, from, to, beforeDate, 42L, 100);
+
+        // then
+        verify(transactionRepository, times(1)).findIncomingHistory(accountId, from, beforeDate, 42L,
+                IdGenerator.firstIdOf(Instant.parse("2021-12-31T00:00:00Z")),
+                IdGenerator.firstIdOf(Instant.parse("2022-03-17T00:00:00Z")), 100);
+        verify(transactionRepository, never()).findHistory(any(), any(), any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void shouldNotStartHistoryPageAfterDateRange() {
+        // given
+        long accountId = 10;
+        LocalDate to = LocalDate.of(2022, 6, 30);
+        given(accountVerifier.exists(accountId))
+                .willReturn(true);
+
+        // when
+        transactionService.getTransactionsByAccountId(accountId, Direction.OUT, null, to,
+                LocalDate.of(2022, 7, 1), 42L, 100);
+
+        // then
+        verify(transactionRepository, times(1)).findOutgoingHistory(eq(accountId), eq(LocalDate.of(1000, 1, 1)),
+                eq(to), eq(Long.MAX_VALUE), eq(0L), anyLong(), eq(100));
+    }
+
+    @Test
+    void shouldStartHistoryAtFirstHotDateWhenMonthsAreArchived() {
+        // given
+        long accountId = 10;
+        LocalDate firstHot = LocalDate.of(2022, 7, 2);
+        TransactionPartitionService transactionPartitionService = mock(TransactionPartitionService.class);
+        ReflectionTestUtils.setField(transactionService, "transactionPartitionService", transactionPartitionService);
+
+        given(accountVerifier.exists(accountId))
+                .willReturn(true);
+        given(transactionPartitionService.firstHotDate())
+                .willReturn(firstHot);
+
+        // when
+        transactionService.getTransactionsByAccountId(accountId, Direction.ALL, null, null, null, null, 100);
+
+        // then
+        verify(transactionRepository, times(1)).findHistory(accountId, firstHot, LocalDate.of(9999, 12, 31),
+                Long.MAX_VALUE, IdGenerator.firstIdOf(Instant.parse("2022-07-01T00:00:00Z")), Long.MAX_VALUE, 100);
+    }
+
+    @Test
+    void shouldNotGetHistoryReachingIntoArchivedMonths() {
+        // given
+        long accountId = 10;
+        TransactionPartitionService transactionPartitionService = mock(TransactionPartitionService.class);
+        ReflectionTestUtils.setField(transactionService, "transactionPartitionService", transactionPartitionService);
+
+        given(accountVerifier.exists(accountId))
+                .willReturn(true);
+        given(transactionPartitionService.firstHotDate())
+                .willReturn(LocalDate.of(2022, 7, 2));
+
+        // when
+        // then
+        assertThatThrownBy(() -> transactionService.getTransactionsByAccountId(accountId, Direction.ALL,
+                LocalDate.of(2022, 7, 1), null, null, null, 100))
+                .isInstanceOf(ArchivedTransactionRangeException.class)
+                .hasMessageContaining("Transactions before 2022-07-02 are archived");
+
+        verify(transactionRepository, never()).findHistory(any(), any(), any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void shouldNotGetHistoryPageOfNonPositiveSize() {
+        // given
+        // when
+        // then
+        assertThatThrownBy(() -> transactionService.getTransactionsByAccountId(10L, Direction.ALL,
+                null, null, null, null, 0))
+                .isInstanceOf(NotValidPageSizeException.class)
+                .hasMessageContaining("Page size: 0 is not valid!");
+
+        verify(transactionRepository, never()).findHistory(any(), any(), any(), any(), any(), any(), any());
     }
 
     @Test
     void shouldNotGetTransactionsByAccountId() {
         // given
         long accountId = 10;
-        given(accountClient.verifyAccount(accountId))
+        given(accountVerifier.exists(accountId))
                 .willReturn(false);
 
         // when
         // then
-        assertThatThrownBy(() -> transactionService.getTransactionsByAccountId(accountId))
+        assertThatThrownBy(() -> transactionService.getTransactionsByAccountId(accountId, Direction.ALL,
+                null, null, null, null, 100))
                 .isInstanceOf(NotValidTransactionAccountException.class)
                 .hasMessageContaining(String.format("Account: %s not found!", accountId));
 
-        verify(transactionRepository, never()).findBySenderIdEqualsOrReceiverIdEquals(accountId, accountId);
-        verify(accountClient, times(1)).verifyAccount(accountId);
+        verify(transactionRepository, never()).findHistory(any(), any(), any(), any(), any(), any(), any());
+        verify(accountVerifier, times(1)).exists(accountId);
+    }
+
+    private InputStream toBody(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
     }
 }
\ No newline at end of file
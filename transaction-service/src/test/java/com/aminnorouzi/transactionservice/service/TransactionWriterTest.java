@@ -0,0 +1,145 @@
+package com.aminnorouzi.transactionservice.service;
+
+import com.aminnorouzi.transactionservice.exception.TransactionQueueFullException;
+import com.aminnorouzi.transactionservice.model.IdempotencyKey;
+import com.aminnorouzi.transactionservice.model.Transaction;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TransactionWriterTest {
+
+    @Mock
+    private EntityManager entityManager;
+    @Mock
+    private TransactionTemplate transactionTemplate;
+    @Mock
+    private TransactionRollupService transactionRollupService;
+
+    private TransactionWriter transactionWriter;
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        transactionWriter.stop();
+    }
+
+    @Test
+    void shouldWriteQueuedTransactionsInOneBatch() throws Exception {
+        // given
+        givenTransactionTemplateRunsCallbacks();
+        transactionWriter = new TransactionWriter(entityManager, transactionTemplate, transactionRollupService, 100, 10,
+                Duration.ofSeconds(5), Duration.ofSeconds(1));
+
+        List<CompletableFuture<Transaction>> futures = new ArrayList<>();
+        for (long id = 1; id <= 10; id++) {
+            futures.add(transactionWriter.submit(Transaction.builder().id(id).build()));
+        }
+
+        // when
+        transactionWriter.start();
+
+        // then
+        for (CompletableFuture<Transaction> future : futures) {
+            future.get(5, TimeUnit.SECONDS);
+        }
+
+        verify(transactionTemplate, times(1)).executeWithoutResult(any());
+        verify(entityManager, times(10)).persist(any(Transaction.class));
+        verify(entityManager, times(1)).flush();
+        verify(transactionRollupService, times(1)).apply(anyList());
+    }
+
+    @Test
+    void shouldFailOnlyTheBadTransactionOfBatch() throws Exception {
+        // given
+        givenTransactionTemplateRunsCallbacks();
+        Transaction bad = Transaction.builder().id(2L).build();
+        lenient().doThrow(new PersistenceException("duplicate id")).when(entityManager).persist(bad);
+
+        transactionWriter = new TransactionWriter(entityManager, transactionTemplate, transactionRollupService, 100, 10,
+                Duration.ZERO, Duration.ofSeconds(1));
+
+        CompletableFuture<Transaction> first = transactionWriter.submit(Transaction.builder().id(1L).build());
+        CompletableFuture<Transaction> second = transactionWriter.submit(bad);
+        CompletableFuture<Transaction> third = transactionWriter.submit(Transaction.builder().id(3L).build());
+
+        // when
+        transactionWriter.start();
+
+        // then
+        assertThat(first.get(5, TimeUnit.SECONDS).getId()).isEqualTo(1L);
+        assertThat(third.get(5, TimeUnit.SECONDS).getId()).isEqualTo(3L);
+        assertThatThrownBy(() -> second.get(5, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(PersistenceException.class);
+
+        verify(transactionTemplate, times(4)).executeWithoutResult(any());
+    }
+
+    @Test
+    void shouldAnswerRepeatedKeyOfBatchWithFirstTransaction() throws Exception {
+        // given
+        givenTransactionTemplateRunsCallbacks();
+        transactionWriter = new TransactionWriter(entityManager, transactionTemplate, transactionRollupService, 100, 10,
+                Duration.ofSeconds(5), Duration.ofSeconds(1));
+
+        List<CompletableFuture<Transaction>> futures = new ArrayList<>();
+        futures.add(transactionWriter.submit(Transaction.builder().id(1L).idempotencyKey("a").build()));
+        futures.add(transactionWriter.submit(Transaction.builder().id(2L).idempotencyKey("a").build()));
+        for (long id = 3; id <= 10; id++) {
+            futures.add(transactionWriter.submit(Transaction.builder().id(id).build()));
+        }
+
+        // when
+        transactionWriter.start();
+
+        // then
+        assertThat(futures.get(1).get(5, TimeUnit.SECONDS).getId()).isEqualTo(1L);
+
+        verify(transactionTemplate, times(1)).executeWithoutResult(any());
+        verify(entityManager, times(9)).persist(any(Transaction.class));
+        verify(entityManager, times(1)).persist(any(IdempotencyKey.class));
+    }
+
+    @Test
+    void shouldRejectTransactionWhenQueueIsFull() {
+        // given
+        transactionWriter = new TransactionWriter(entityManager, transactionTemplate, transactionRollupService, 1, 10,
+                Duration.ZERO, Duration.ofMillis(10));
+        transactionWriter.submit(Transaction.builder().id(1L).build());
+
+        // when
+        // then
+        assertThatThrownBy(() -> transactionWriter.submit(Transaction.builder().id(2L).build()))
+                .isInstanceOf(TransactionQueueFullException.class)
+                .hasMessageContaining("Transaction queue is full, try again later!");
+    }
+
+    @SuppressWarnings("unchecked")
+    private void givenTransactionTemplateRunsCallbacks() {
+        doAnswer(invocation -> {
+            invocation.getArgument(0, Consumer.class).accept(mock(TransactionStatus.class));
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+    }
+}
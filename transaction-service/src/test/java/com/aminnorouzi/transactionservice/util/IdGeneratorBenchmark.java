@@ -0,0 +1,44 @@
+package com.aminnorouzi.transactionservice.util;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Id generation throughput, single threaded and with every core contending on the same generator.
+ * Run with {@code mvn test-compile} and then the main method from the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IdGeneratorBenchmark {
+
+    private final IdGenerator idGenerator = new IdGenerator(1, System::currentTimeMillis);
+
+    @Benchmark
+    @Threads(1)
+    public long singleThread() {
+        return idGenerator.next();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public long contended() {
+        return idGenerator.next();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(IdGeneratorBenchmark.class.getSimpleName())
+                .build();
+
+        new Runner(options).run();
+    }
+}
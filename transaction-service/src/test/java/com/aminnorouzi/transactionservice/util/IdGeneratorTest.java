@@ -0,0 +1,161 @@
+package com.aminnorouzi.transactionservice.util;
+
+import com.netflix.appinfo.EurekaInstanceConfig;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+class IdGeneratorTest {
+
+    private static final int THREADS = 8;
+    private static final int IDS_PER_THREAD = 1_000_000;
+
+    @Test
+    void shouldGenerateUniqueIdsAcrossThreads() throws Exception {
+        // given
+        IdGenerator idGenerator = new IdGenerator(1, System::currentTimeMillis);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+
+        List<Future<long[]>> futures = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            futures.add(executor.submit(() -> {
+                long[] ids = new long[IDS_PER_THREAD];
+                start.await();
+                for (int j = 0; j < ids.length; j++) {
+                    ids[j] = idGenerator.next();
+                }
+                return ids;
+            }));
+        }
+
+        // when
+        start.countDown();
+
+        long[] all = new long[THREADS * IDS_PER_THREAD];
+        for (int i = 0; i < THREADS; i++) {
+            long[] ids = futures.get(i).get(1, TimeUnit.MINUTES);
+            for (int j = 1; j < ids.length; j++) {
+                assertThat(ids[j] > ids[j - 1]).isTrue();
+            }
+            System.arraycopy(ids, 0, all, i * IDS_PER_THREAD, IDS_PER_THREAD);
+        }
+        executor.shutdown();
+
+        // then
+        Arrays.sort(all);
+        for (int i = 1; i < all.length; i++) {
+            assertThat(all[i]).isNotEqualTo(all[i - 1]);
+        }
+    }
+
+    @Test
+    void shouldKeepIdsIncreasingWhenClockGoesBackwards() {
+        // given
+        AtomicLong now = new AtomicLong(IdGenerator.EPOCH + 10_000);
+        IdGenerator idGenerator = new IdGenerator(1, now::get);
+
+        // when
+        long first = idGenerator.next();
+        now.addAndGet(-5_000);
+        long second = idGenerator.next();
+        long third = idGenerator.next();
+
+        // then
+        assertThat(second > first).isTrue();
+        assertThat(third > second).isTrue();
+        assertThat(IdGenerator.instantOf(second).toEpochMilli()).isEqualTo(IdGenerator.EPOCH + 10_000);
+    }
+
+    @Test
+    void shouldBorrowNextMillisecondWhenSequenceRunsOut() {
+        // given
+        long millis = IdGenerator.EPOCH + 10_000;
+        IdGenerator idGenerator = new IdGenerator(1, () -> millis);
+
+        // when
+        long last = 0;
+        for (int i = 0; i <= 1 << IdGenerator.SEQUENCE_BITS; i++) {
+            last = idGenerator.next();
+        }
+
+        // then
+        assertThat(IdGenerator.instantOf(last).toEpochMilli()).isEqualTo(millis + 1);
+    }
+
+    @Test
+    void shouldReserveBlockOfIds() {
+        // given
+        long millis = IdGenerator.EPOCH + 10_000;
+        IdGenerator idGenerator = new IdGenerator(1, () -> millis);
+
+        // when
+        long first = idGenerator.next();
+        long[] block = idGenerator.next(1 << IdGenerator.SEQUENCE_BITS);
+        long after = idGenerator.next();
+
+        // then
+        assertThat(block[0] > first).isTrue();
+        for (int i = 1; i < block.length; i++) {
+            assertThat(block[i] > block[i - 1]).isTrue();
+        }
+        assertThat(after > block[block.length - 1]).isTrue();
+        assertThat(IdGenerator.instantOf(block[block.length - 1]).toEpochMilli()).isEqualTo(millis + 1);
+        assertThat(idGenerator.next(0).length).isEqualTo(0);
+    }
+
+    @Test
+    void shouldBoundIdsOfInstant() {
+        // given
+        Instant instant = Instant.parse("2022-03-01T00:00:00Z");
+        IdGenerator idGenerator = new IdGenerator(IdGenerator.MAX_NODE_ID, instant::toEpochMilli);
+
+        // when
+        long first = IdGenerator.firstIdOf(instant);
+
+        // then
+        assertThat(idGenerator.next() >= first).isTrue();
+        assertThat(IdGenerator.instantOf(first)).isEqualTo(instant);
+        assertThat(IdGenerator.firstIdOf(Instant.parse("2020-01-01T00:00:00Z"))).isEqualTo(0L);
+        assertThat(IdGenerator.firstIdOf(Instant.parse("9999-12-31T00:00:00Z"))).isEqualTo(Long.MAX_VALUE);
+        assertThat(first > IdGenerator.LEGACY_LIMIT).isTrue();
+    }
+
+    @Test
+    void shouldEncodeNodeId() {
+        // given
+        IdGenerator first = new IdGenerator(1, () -> IdGenerator.EPOCH);
+        IdGenerator second = new IdGenerator(2, () -> IdGenerator.EPOCH);
+
+        // when
+        // then
+        assertThat(first.next()).isNotEqualTo(second.next());
+        assertThatThrownBy(() -> new IdGenerator(IdGenerator.MAX_NODE_ID + 1, System::currentTimeMillis))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void shouldDeriveNodeIdFromEurekaInstance() {
+        // given
+        EurekaInstanceConfig eurekaInstanceConfig = mock(EurekaInstanceConfig.class);
+        given(eurekaInstanceConfig.getInstanceId())
+                .willReturn("localhost:transaction-service:8093");
+
+        // when
+        long nodeId = IdGenerator.nodeIdOf(eurekaInstanceConfig);
+
+        // then
+        assertThat(nodeId >= 0 && nodeId <= IdGenerator.MAX_NODE_ID).isTrue();
+        assertThat(IdGenerator.nodeIdOf(null)).isEqualTo(0L);
+    }
+}